@@ -2,6 +2,7 @@
 CREATE SCHEMA IF NOT EXISTS ReviewApplication;
 USE ReviewApplication;
 
+DROP TABLE IF EXISTS RatingStats;
 DROP TABLE IF EXISTS Reservations;
 DROP TABLE IF EXISTS Recommendations;
 DROP TABLE IF EXISTS Reviews;
@@ -58,6 +59,7 @@ CREATE TABLE Restaurants
     Zip          INT           NOT NULL,
     CompanyName  VARCHAR(255),
     CONSTRAINT pk_Restaurants_RestaurantId PRIMARY KEY (RestaurantId),
+    INDEX idx_Restaurants_CuisineType (CuisineType),
     CONSTRAINT fk_Restaurants_CompanyName FOREIGN KEY (CompanyName)
         REFERENCES Companies (CompanyName)
         ON UPDATE CASCADE ON DELETE SET NULL
@@ -103,6 +105,9 @@ CREATE TABLE Reviews
     RestaurantId INT,
     CONSTRAINT pk_Reviews_ReviewId PRIMARY KEY (ReviewId),
     CONSTRAINT uq_Reviews_Review UNIQUE (UserName, RestaurantId),
+    # Keyset pagination: ORDER BY Created DESC, ReviewId DESC per user/restaurant.
+    INDEX idx_Reviews_UserName_Created (UserName, Created, ReviewId),
+    INDEX idx_Reviews_RestaurantId_Created (RestaurantId, Created, ReviewId),
     CONSTRAINT fk_Reviews_UserName FOREIGN KEY (UserName)
         REFERENCES Users (UserName)
         ON UPDATE CASCADE ON DELETE SET NULL,
@@ -117,6 +122,7 @@ CREATE TABLE Recommendations
     UserName         VARCHAR(255),
     RestaurantId     INT,
     CONSTRAINT pk_Recommendations_RecommendationId PRIMARY KEY (RecommendationId),
+    INDEX idx_Recommendations_RestaurantId (RestaurantId, RecommendationId),
     CONSTRAINT fk_Recommendations_UserName FOREIGN KEY (UserName)
         REFERENCES Users (UserName)
         ON UPDATE CASCADE ON DELETE SET NULL,
@@ -134,6 +140,7 @@ CREATE TABLE Reservations
     UserName      VARCHAR(255),
     RestaurantId  INT,
     CONSTRAINT pk_Reservations_ReservationId PRIMARY KEY (ReservationId),
+    INDEX idx_Reservations_RestaurantId_Start (RestaurantId, Start, ReservationId),
     CONSTRAINT fk_Reservations_UserName FOREIGN KEY (UserName)
         REFERENCES Users (UserName)
         ON UPDATE CASCADE ON DELETE CASCADE,
@@ -141,3 +148,27 @@ CREATE TABLE Reservations
         REFERENCES SitDownRestaurant (RestaurantId)
         ON UPDATE CASCADE ON DELETE CASCADE
 );
+
+# One row per restaurant with reviews, kept in step with Reviews by ReviewsDao.
+# Rating00 .. Rating50 count the reviews rated 0.0, 0.5, ..., 5.0.
+CREATE TABLE RatingStats
+(
+    RestaurantId INT,
+    ReviewCount  INT            NOT NULL DEFAULT 0,
+    RatingSum    DECIMAL(12, 1) NOT NULL DEFAULT 0,
+    Rating00     INT            NOT NULL DEFAULT 0,
+    Rating05     INT            NOT NULL DEFAULT 0,
+    Rating10     INT            NOT NULL DEFAULT 0,
+    Rating15     INT            NOT NULL DEFAULT 0,
+    Rating20     INT            NOT NULL DEFAULT 0,
+    Rating25     INT            NOT NULL DEFAULT 0,
+    Rating30     INT            NOT NULL DEFAULT 0,
+    Rating35     INT            NOT NULL DEFAULT 0,
+    Rating40     INT            NOT NULL DEFAULT 0,
+    Rating45     INT            NOT NULL DEFAULT 0,
+    Rating50     INT            NOT NULL DEFAULT 0,
+    CONSTRAINT pk_RatingStats_RestaurantId PRIMARY KEY (RestaurantId),
+    CONSTRAINT fk_RatingStats_RestaurantId FOREIGN KEY (RestaurantId)
+        REFERENCES Restaurants (RestaurantId)
+        ON UPDATE CASCADE ON DELETE CASCADE
+);
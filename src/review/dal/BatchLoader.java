@@ -0,0 +1,128 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import review.model.*;
+
+/**
+ * Collects the foreign keys a DAO needs while it reads a result set, then
+ * resolves each entity type with one batched IN-list query (chunked at
+ * {@link #CHUNK_SIZE} keys) instead of one query per row. This is the same idea
+ * as a DataLoader: request() while reading rows, dispatch() once, then get().
+ *
+ * A BatchLoader is meant for one result set (or one request) and is not
+ * thread-safe.
+ */
+public class BatchLoader {
+	// Maximum number of keys in a single "WHERE ... IN (...)" query.
+	public static final int CHUNK_SIZE = 500;
+
+	private final Set<String> pendingUserNames = new LinkedHashSet<String>();
+	private final Set<Integer> pendingRestaurantIds = new LinkedHashSet<Integer>();
+	private final Set<Integer> pendingSitDownRestaurantIds = new LinkedHashSet<Integer>();
+
+	private final Map<String, Users> users = new HashMap<String, Users>();
+	private final Map<Integer, Restaurants> restaurants = new HashMap<Integer, Restaurants>();
+	private final Map<Integer, SitDownRestaurants> sitDownRestaurants = new HashMap<Integer, SitDownRestaurants>();
+
+	public void requestUser(String userName) {
+		if (userName != null && !users.containsKey(userName)) {
+			pendingUserNames.add(userName);
+		}
+	}
+
+	public void requestRestaurant(int restaurantId) {
+		if (!restaurants.containsKey(restaurantId)) {
+			pendingRestaurantIds.add(restaurantId);
+		}
+	}
+
+	public void requestSitDownRestaurant(int restaurantId) {
+		if (!sitDownRestaurants.containsKey(restaurantId)) {
+			pendingSitDownRestaurantIds.add(restaurantId);
+		}
+	}
+
+	/**
+	 * Resolve everything requested since the last dispatch, with one batch per
+	 * entity type. Keys that do not exist resolve to null.
+	 *
+	 * @throws SQLException
+	 */
+	public void dispatch() throws SQLException {
+		if (!pendingUserNames.isEmpty()) {
+			Map<String, Users> loaded = UsersDao.getInstance().getUsersByUserNames(pendingUserNames);
+			for (String userName : pendingUserNames) {
+				users.put(userName, loaded.get(userName));
+			}
+			pendingUserNames.clear();
+		}
+		if (!pendingRestaurantIds.isEmpty()) {
+			Map<Integer, Restaurants> loaded =
+					RestaurantsDao.getInstance().getRestaurantsByIds(toIntArray(pendingRestaurantIds));
+			for (Integer restaurantId : pendingRestaurantIds) {
+				restaurants.put(restaurantId, loaded.get(restaurantId));
+			}
+			pendingRestaurantIds.clear();
+		}
+		if (!pendingSitDownRestaurantIds.isEmpty()) {
+			Map<Integer, SitDownRestaurants> loaded = SitDownRestaurantsDao.getInstance()
+					.getSitDownRestaurantsByIds(toIntArray(pendingSitDownRestaurantIds));
+			for (Integer restaurantId : pendingSitDownRestaurantIds) {
+				sitDownRestaurants.put(restaurantId, loaded.get(restaurantId));
+			}
+			pendingSitDownRestaurantIds.clear();
+		}
+	}
+
+	public Users getUser(String userName) {
+		return userName == null ? null : users.get(userName);
+	}
+
+	public Restaurants getRestaurant(int restaurantId) {
+		return restaurants.get(restaurantId);
+	}
+
+	public SitDownRestaurants getSitDownRestaurant(int restaurantId) {
+		return sitDownRestaurants.get(restaurantId);
+	}
+
+	/**
+	 * Build the "?,?,?" placeholder list for an IN clause with count keys.
+	 */
+	static String placeholders(int count) {
+		StringBuilder builder = new StringBuilder(count * 2);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append('?');
+		}
+		return builder.toString();
+	}
+
+	static int[] toIntArray(Collection<Integer> values) {
+		int[] array = new int[values.size()];
+		int i = 0;
+		for (Integer value : values) {
+			array[i++] = value;
+		}
+		return array;
+	}
+
+	/**
+	 * Remove duplicates from restaurantIds, keeping their first-seen order.
+	 */
+	static int[] distinct(int[] restaurantIds) {
+		Set<Integer> unique = new LinkedHashSet<Integer>();
+		for (int restaurantId : restaurantIds) {
+			unique.add(restaurantId);
+		}
+		return toIntArray(unique);
+	}
+}
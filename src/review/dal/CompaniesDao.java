@@ -4,6 +4,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import review.model.*;
 
@@ -13,20 +19,24 @@ import review.model.*;
  * your MySQL instance and retrieve {@link CompaniesDao} from MySQL instance.
  */
 public class CompaniesDao {
+	// Maximum number of Companies kept in the cache. 0 turns the cache off.
+	private static final int CACHE_SIZE = Integer.getInteger("review.cache.companies.maxSize", 10000);
+
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static CompaniesDao instance = null;
+	// Read-through cache of ImmutableCompanies by CompanyName. Companies are read
+	// for every restaurant row but only change through updateAbout() and delete(),
+	// which invalidate their entry.
+	protected final EntityCache<String, Companies> cache;
 
-	protected CompaniesDao() {
-		connectionManager = new ConnectionManager();
+	protected CompaniesDao(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+		this.cache = new EntityCache<String, Companies>("Companies", CACHE_SIZE);
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static CompaniesDao getInstance() {
-		if (instance == null) {
-			instance = new CompaniesDao();
-		}
-		return instance;
+		return DaoRegistry.get().getCompaniesDao();
 	}
 
 	/**
@@ -57,6 +67,7 @@ public class CompaniesDao {
 			// http://docs.oracle.com/javase/7/docs/api/java/sql/PreparedStatement.html
 			// I'll leave it as an exercise for you to write UPDATE/DELETE methods.
 			insertStmt.executeUpdate();
+			UnitOfWork.evict(Companies.class, company.getCompanyName());
 			// Note 1: if this was an UPDATE statement, then the user fields should be
 			// updated before returning to the caller.
 			// Note 2: there are no auto-generated keys, so no update to perform on the
@@ -75,13 +86,82 @@ public class CompaniesDao {
 		}
 	}
 
+	/**
+	 * Save all the Companies instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Companies> createAll(List<Companies> companies) throws SQLException {
+		return createAll(companies, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the Companies instances by storing them in your MySQL instance.
+	 * This runs the INSERT statements as JDBC batches of batchSize rows, each sent
+	 * as one multi-row INSERT and committed as one transaction. If a batch fails,
+	 * it is rolled back; the batches before it stay committed.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Companies> createAll(List<Companies> companies, int batchSize) throws SQLException {
+		String insertCompany = "INSERT INTO Companies(CompanyName,About) VALUES(?,?);";
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(insertCompany);
+			for (List<Companies> batch : JdbcBatch.partition(companies, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, (stmt, company) -> {
+					stmt.setString(1, company.getCompanyName());
+					stmt.setString(2, company.getAbout());
+				}, null);
+				connection.commit();
+				for (Companies company : batch) {
+					UnitOfWork.evict(Companies.class, company.getCompanyName());
+				}
+			}
+			return companies;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
+	public EntityCache<String, Companies> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Get the Companies record from the cache, fetching it from your MySQL instance
+	 * on a miss. The returned instance is an ImmutableCompanies shared with other
+	 * callers.
+	 * 
+	 * @throws SQLException
+	 */
+	public Companies getCompanyByCompanyName(String companyName) throws SQLException {
+		return UnitOfWork.get(Companies.class, companyName,
+				key -> cache.get(key, this::selectCompanyByCompanyName));
+	}
+
 	/**
 	 * Get the Companies record by fetching it from your MySQL instance. This runs a
 	 * SELECT statement and returns a single Companies instance.
 	 * 
 	 * @throws SQLException
 	 */
-	public Companies getCompanyByCompanyName(String companyName) throws SQLException {
+	protected Companies selectCompanyByCompanyName(String companyName) throws SQLException {
 		String selectCompany = "SELECT CompanyName,About FROM Companies WHERE CompanyName=?;";
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
@@ -101,7 +181,7 @@ public class CompaniesDao {
 			if (results.next()) {
 				String resultCompanyName = results.getString("CompanyName");
 				String about = results.getString("About");
-				Companies company = new Companies(resultCompanyName, about);
+				Companies company = new ImmutableCompanies(resultCompanyName, about);
 				return company;
 			}
 		} catch (SQLException e) {
@@ -122,7 +202,9 @@ public class CompaniesDao {
 	}
 
 	/**
-	 * Update the About of the Companies instance. This runs a UPDATE statement.
+	 * Update the About of the Companies instance. This runs a UPDATE statement and
+	 * invalidates the cached company and restaurants. If company is an ImmutableCompanies, a new
+	 * instance with the new About is returned instead.
 	 * 
 	 * @throws SQLException
 	 */
@@ -136,8 +218,16 @@ public class CompaniesDao {
 			updateStmt.setString(1, newAbout);
 			updateStmt.setString(2, company.getCompanyName());
 			updateStmt.executeUpdate();
+			cache.invalidate(company.getCompanyName());
+			UnitOfWork.evict(Companies.class, company.getCompanyName());
+			// Cached restaurants (and the views that embed them) hold the company too.
+			RestaurantsDao.getInstance().getRestaurantCache().invalidateAll();
+			UnitOfWork.evictAll(Restaurants.class);
 
 			// Update the company param before returning to the caller.
+			if (company instanceof ImmutableCompanies) {
+				return new ImmutableCompanies(company.getCompanyName(), newAbout);
+			}
 			company.setAbout(newAbout);
 			return company;
 		} catch (SQLException e) {
@@ -154,7 +244,77 @@ public class CompaniesDao {
 	}
 
 	/**
-	 * Delete the Companies instance. This runs a DELETE statement.
+	 * Get the Companies records for the given companyNames from the cache, fetching
+	 * all the misses from your MySQL instance with selectCompaniesByNames(). Names
+	 * without a record are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	public Map<String, Companies> getCompaniesByNames(Collection<String> companyNames) throws SQLException {
+		List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(companyNames));
+		keys.remove(null);
+		return UnitOfWork.getAll(Companies.class, keys,
+				missing -> cache.getAll(missing, this::selectCompaniesByNames));
+	}
+
+	/**
+	 * Get the Companies records for the given companyNames by fetching them from your
+	 * MySQL instance. This runs one "WHERE CompanyName IN (...)" SELECT statement per
+	 * chunk of BatchLoader.CHUNK_SIZE names and returns the matching Companies
+	 * keyed by CompanyName. Names without a record are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	protected Map<String, Companies> selectCompaniesByNames(Collection<String> companyNames) throws SQLException {
+		Map<String, Companies> companies = new HashMap<String, Companies>();
+		List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(companyNames));
+		keys.remove(null);
+		if (keys.isEmpty()) {
+			return companies;
+		}
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			for (int from = 0; from < keys.size(); from += BatchLoader.CHUNK_SIZE) {
+				List<String> chunk = keys.subList(from, Math.min(from + BatchLoader.CHUNK_SIZE, keys.size()));
+				String selectCompanies =
+					"SELECT CompanyName,About FROM Companies "
+					+ "WHERE CompanyName IN (" + BatchLoader.placeholders(chunk.size()) + ");";
+				selectStmt = connection.prepareStatement(selectCompanies);
+				for (int i = 0; i < chunk.size(); i++) {
+					selectStmt.setString(i + 1, chunk.get(i));
+				}
+				results = selectStmt.executeQuery();
+				while (results.next()) {
+					String resultCompanyName = results.getString("CompanyName");
+					String about = results.getString("About");
+					companies.put(resultCompanyName, new ImmutableCompanies(resultCompanyName, about));
+				}
+				results.close();
+				selectStmt.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return companies;
+	}
+
+	/**
+	 * Delete the Companies instance. This runs a DELETE statement and invalidates
+	 * the cached company and restaurants.
 	 * 
 	 * @throws SQLException
 	 */
@@ -167,6 +327,11 @@ public class CompaniesDao {
 			deleteStmt = connection.prepareStatement(deleteCompany);
 			deleteStmt.setString(1, company.getCompanyName());
 			deleteStmt.executeUpdate();
+			cache.invalidate(company.getCompanyName());
+			UnitOfWork.evict(Companies.class, company.getCompanyName());
+			// Cached restaurants (and the views that embed them) hold the company too.
+			RestaurantsDao.getInstance().getRestaurantCache().invalidateAll();
+			UnitOfWork.evictAll(Restaurants.class);
 
 			// Return null so the caller can no longer operate on the Companies instance.
 			return null;
@@ -0,0 +1,148 @@
+package review.dal;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Use ConnectionManager to connect to your database instance.
+ *
+ * ConnectionManager uses the MySQL Connector/J driver to connect to your local
+ * MySQL instance. The DAOs share one ConnectionManager (see {@link DaoRegistry})
+ * that borrows from a {@link ConnectionPool}, so a DAO call no longer pays for
+ * a fresh MySQL handshake. Closing a borrowed Connection returns it to the pool.
+ *
+ * In our example, we will create a DAO (data access object) java class to
+ * interact with each MySQL table. The DAO java classes will use
+ * ConnectionManager to open and close connections.
+ *
+ * Instructions:
+ * 1. Install MySQL Community Server. During installation, you will need to set
+ * up a user, password, and port. Keep track of these values.
+ * 2. Download and install Connector/J: http://dev.mysql.com/downloads/connector/j/
+ * 3. Add the Connector/J JAR to your buildpath. This allows your application to
+ * use the Connector/J library. You can add the JAR using either of the following
+ * methods:
+ * A. When creating a new Eclipse Dynamic Web Project, configure the build path.
+ * B. Copy the Connector/J JAR into the WebContent/WEB-INF/lib directory.
+ * 4. Update the user, password, hostName, port, and schema below. Each of them
+ * can also be overridden with a "review.db.*" system property, e.g.
+ * -Dreview.db.schema=ReviewApplicationBench.
+ */
+public class ConnectionManager {
+
+	// User to connect to your database instance. By default, this is "root".
+	private static final String user = System.getProperty("review.db.user", "root");
+	// Password for the user.
+	private static final String password = System.getProperty("review.db.password", "password");
+	// URI to your database server. If running on the same machine, then this is "localhost".
+	private static final String hostName = System.getProperty("review.db.hostName", "localhost");
+	// Port to your database server. By default, this is 3306.
+	private static final int port = Integer.getInteger("review.db.port", 3306);
+	// Name of the MySQL schema that contains your tables.
+	private static final String schema = System.getProperty("review.db.schema", "ReviewApplication");
+	// Default timezone for MySQL server.
+	private static final String timezone = "UTC";
+
+	// Pool sizing. The pool keeps at least MIN_IDLE connections warm and never
+	// opens more than MAX_SIZE physical connections at once.
+	private static final int MIN_IDLE = Integer.getInteger("review.db.pool.minIdle", 2);
+	private static final int MAX_SIZE = Integer.getInteger("review.db.pool.maxSize", 16);
+
+	// Default number of rows per JDBC batch in the DAOs' createAll() methods.
+	public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("review.db.batchSize", 1000);
+
+	// The pool shared by every ConnectionManager that uses the default constructor.
+	private static ConnectionPool defaultPool = null;
+
+	protected ConnectionPool pool;
+
+	public ConnectionManager() {
+		this.pool = getDefaultPool();
+	}
+
+	public ConnectionManager(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Get the pool shared by all DAOs, creating it on first use.
+	 */
+	public static synchronized ConnectionPool getDefaultPool() {
+		if (defaultPool == null) {
+			defaultPool = new ConnectionPool(getJdbcUrl(), getConnectionProperties(), MIN_IDLE, MAX_SIZE);
+		}
+		return defaultPool;
+	}
+
+	/** Get the connection to the database instance. */
+	public Connection getConnection() throws SQLException {
+		try {
+			return pool.getConnection();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		}
+	}
+
+	/** Close the connection to the database instance. */
+	public void closeConnection(Connection connection) throws SQLException {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		}
+	}
+
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Open a physical connection that bypasses the pool. This is what every DAO
+	 * call used to do; it is kept for benchmarks and one-off maintenance jobs.
+	 */
+	public static Connection getUnpooledConnection() throws SQLException {
+		return getUnpooledConnection(new Properties());
+	}
+
+	/**
+	 * Open a physical connection that bypasses the pool, with extra Connector/J
+	 * properties (e.g. allowLoadLocalInfile=true) on top of the defaults.
+	 */
+	public static Connection getUnpooledConnection(Properties extraProperties) throws SQLException {
+		try {
+			Properties connectionProperties = getConnectionProperties();
+			connectionProperties.putAll(extraProperties);
+			return DriverManager.getConnection(getJdbcUrl(), connectionProperties);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		}
+	}
+
+	static String getJdbcUrl() {
+		// rewriteBatchedStatements makes Connector/J send a batch of INSERTs as one
+		// multi-row INSERT, which is what the DAOs' createAll() methods rely on.
+		return "jdbc:mysql://" + hostName + ":" + port + "/" + schema
+				+ "?useSSL=false&rewriteBatchedStatements=true";
+	}
+
+	static Properties getConnectionProperties() {
+		Properties connectionProperties = new Properties();
+		connectionProperties.put("user", user);
+		connectionProperties.put("password", password);
+		connectionProperties.put("serverTimezone", timezone);
+		// Ensure the JDBC driver is loaded by retrieving the runtime Class descriptor.
+		// Otherwise, Tomcat may have issues loading libraries in the proper order.
+		// One alternative is calling this in the HttpServlet init() override.
+		try {
+			Class.forName("com.mysql.cj.jdbc.Driver");
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+		return connectionProperties;
+	}
+}
@@ -0,0 +1,473 @@
+package review.dal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of MySQL connections shared by the DAOs.
+ *
+ * Callers borrow with {@link #getConnection()} and give the connection back by
+ * calling close() on it, so the DAOs keep their usual try/finally blocks. The
+ * pool:
+ * - never opens more than maxSize physical connections, and makes borrowers
+ * wait up to borrowTimeoutMillis for one to come back;
+ * - keeps at least minIdle connections open, and closes extra connections that
+ * sat idle for longer than idleTimeoutMillis;
+ * - validates a connection on borrow if it has been idle for longer than
+ * validationWindowMillis;
+ * - remembers the stack of every borrower and reports connections held for
+ * longer than leakThresholdMillis;
+ * - counts borrows, wait time, timeouts and leaks.
+ */
+public class ConnectionPool {
+	private final String url;
+	private final Properties connectionProperties;
+	private final int minIdle;
+	private final int maxSize;
+
+	private volatile long borrowTimeoutMillis = 30000;
+	private volatile long idleTimeoutMillis = 600000;
+	private volatile long validationWindowMillis = 500;
+	private volatile int validationTimeoutSeconds = 5;
+	private volatile long leakThresholdMillis = 60000;
+
+	// Borrowers take a permit before touching the idle deque, which bounds the
+	// number of connections handed out at once.
+	private final Semaphore permits;
+	// Most recently returned connections are at the head (LIFO keeps them warm).
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private final ConcurrentHashMap<PooledConnection, Boolean> active =
+			new ConcurrentHashMap<PooledConnection, Boolean>();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean shutdown = false;
+
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder evictedCount = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder leakCount = new LongAdder();
+
+	public ConnectionPool(String url, Properties connectionProperties, int minIdle, int maxSize) {
+		if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + " maxSize=" + maxSize);
+		}
+		this.url = url;
+		this.connectionProperties = connectionProperties;
+		this.minIdle = minIdle;
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize, true);
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "review-connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.housekeeper.scheduleWithFixedDelay(this::housekeep, 1, 30, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Borrow a connection. Closing the returned Connection gives it back to the
+	 * pool.
+	 *
+	 * @throws SQLException if the pool is shut down, no connection became
+	 * available within borrowTimeoutMillis, or MySQL refused a new connection.
+	 */
+	public Connection getConnection() throws SQLException {
+		if (shutdown) {
+			throw new SQLException("Connection pool is shut down.");
+		}
+		long waitStart = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.increment();
+				throw new SQLException("Timed out after " + borrowTimeoutMillis
+						+ "ms waiting for a connection (active=" + getActiveConnections() + ", maxSize=" + maxSize + ").");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection.", e);
+		}
+		PooledConnection pooled;
+		try {
+			pooled = takeIdleOrCreate();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		long waited = System.nanoTime() - waitStart;
+		borrowCount.increment();
+		totalWaitNanos.add(waited);
+		maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+		pooled.borrowedAt = System.currentTimeMillis();
+		pooled.borrowStack = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+		pooled.leakReported = false;
+		active.put(pooled, Boolean.TRUE);
+		return pooled.newHandle();
+	}
+
+	private PooledConnection takeIdleOrCreate() throws SQLException {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (isUsable(pooled)) {
+				return pooled;
+			}
+			closePhysical(pooled);
+		}
+		Connection physical = DriverManager.getConnection(url, connectionProperties);
+		createdCount.increment();
+		return new PooledConnection(physical);
+	}
+
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			if (System.currentTimeMillis() - pooled.lastReturnedAt <= validationWindowMillis) {
+				return !pooled.physical.isClosed();
+			}
+			return pooled.physical.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/** Called by a handle's close(). */
+	private void release(PooledConnection pooled, boolean broken) {
+		active.remove(pooled);
+		pooled.borrowStack = null;
+		try {
+			if (!broken && !shutdown && resetState(pooled)) {
+				pooled.lastReturnedAt = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			} else {
+				closePhysical(pooled);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	// Undo whatever the borrower left behind so the next borrower gets a clean
+	// connection. Returns false if the connection should be discarded.
+	private boolean resetState(PooledConnection pooled) {
+		try {
+			if (pooled.physical.isClosed()) {
+				return false;
+			}
+			if (!pooled.physical.getAutoCommit()) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+			if (pooled.physical.isReadOnly()) {
+				pooled.physical.setReadOnly(false);
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void closePhysical(PooledConnection pooled) {
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			// Nothing useful to do; the connection is gone either way.
+		}
+	}
+
+	private void housekeep() {
+		try {
+			long now = System.currentTimeMillis();
+			// Evict idle connections above minIdle, oldest first.
+			Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+			while (oldestFirst.hasNext() && idle.size() > minIdle) {
+				PooledConnection pooled = oldestFirst.next();
+				if (now - pooled.lastReturnedAt > idleTimeoutMillis && idle.remove(pooled)) {
+					closePhysical(pooled);
+					evictedCount.increment();
+				}
+			}
+			// Top up to minIdle without exceeding maxSize physical connections. Every
+			// taken permit may stand for a connection, including those of borrowers
+			// still opening one in takeIdleOrCreate(), so count maxSize minus the
+			// available permits rather than the active connections. The housekeeper
+			// takes a permit itself while it opens one, so that no borrower can open
+			// one at the same time past maxSize.
+			while (!shutdown && idle.size() < minIdle && permits.tryAcquire()) {
+				try {
+					if (idle.size() + maxSize - permits.availablePermits() > maxSize) {
+						break;
+					}
+					PooledConnection pooled =
+							new PooledConnection(DriverManager.getConnection(url, connectionProperties));
+					createdCount.increment();
+					pooled.lastReturnedAt = now;
+					idle.offerLast(pooled);
+				} finally {
+					permits.release();
+				}
+			}
+			// Report connections that have been out for too long.
+			if (leakThresholdMillis > 0) {
+				for (PooledConnection pooled : active.keySet()) {
+					if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+						pooled.leakReported = true;
+						leakCount.increment();
+						Throwable stack = pooled.borrowStack;
+						System.err.println("Possible connection leak: connection held for "
+								+ (now - pooled.borrowedAt) + "ms.");
+						if (stack != null) {
+							stack.printStackTrace();
+						}
+					}
+				}
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Close every idle connection and refuse new borrows. Connections that are
+	 * still borrowed are closed when they are returned.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			closePhysical(pooled);
+		}
+	}
+
+	/** Pool statistics. */
+
+	public int getActiveConnections() {
+		return active.size();
+	}
+
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public int getThreadsAwaitingConnection() {
+		return permits.getQueueLength();
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.sum();
+	}
+
+	public long getTotalWaitNanos() {
+		return totalWaitNanos.sum();
+	}
+
+	public double getAverageWaitMillis() {
+		long borrows = borrowCount.sum();
+		return borrows == 0 ? 0.0 : totalWaitNanos.sum() / 1e6 / borrows;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	public long getCreatedCount() {
+		return createdCount.sum();
+	}
+
+	public long getEvictedCount() {
+		return evictedCount.sum();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.sum();
+	}
+
+	public long getLeakCount() {
+		return leakCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ConnectionPool[active=%d idle=%d waiting=%d borrows=%d avgWait=%.3fms maxWait=%.3fms "
+				+ "created=%d evicted=%d timeouts=%d leaks=%d]",
+				getActiveConnections(), getIdleConnections(), getThreadsAwaitingConnection(), getBorrowCount(),
+				getAverageWaitMillis(), getMaxWaitMillis(), getCreatedCount(), getEvictedCount(), getTimeoutCount(),
+				getLeakCount());
+	}
+
+	/** Getters and setters. */
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getBorrowTimeoutMillis() {
+		return borrowTimeoutMillis;
+	}
+
+	public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public long getValidationWindowMillis() {
+		return validationWindowMillis;
+	}
+
+	public void setValidationWindowMillis(long validationWindowMillis) {
+		this.validationWindowMillis = validationWindowMillis;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	public long getLeakThresholdMillis() {
+		return leakThresholdMillis;
+	}
+
+	/** A threshold of 0 turns leak detection (and borrow stack capture) off. */
+	public void setLeakThresholdMillis(long leakThresholdMillis) {
+		this.leakThresholdMillis = leakThresholdMillis;
+	}
+
+	/**
+	 * A physical connection owned by the pool. Each borrow hands out a new proxy
+	 * handle, so a stale handle kept by an earlier borrower cannot touch the
+	 * connection once it has been closed.
+	 */
+	private class PooledConnection {
+		final Connection physical;
+		volatile long lastReturnedAt;
+		volatile long borrowedAt;
+		volatile Throwable borrowStack;
+		volatile boolean leakReported;
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+		}
+
+		Connection newHandle() {
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Handle(this));
+		}
+	}
+
+	/**
+	 * Proxy behind the Connection handed to DAOs. close() returns the connection
+	 * to the pool and closes any statement the borrower left open (the DAOs close
+	 * the connection before their statements).
+	 */
+	private class Handle implements InvocationHandler {
+		private final PooledConnection pooled;
+		private final List<Statement> statements = new ArrayList<Statement>();
+		private boolean closed = false;
+		private boolean broken = false;
+
+		Handle(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				if (!closed) {
+					closed = true;
+					for (Statement statement : statements) {
+						try {
+							statement.close();
+						} catch (SQLException e) {
+							broken = true;
+						}
+					}
+					statements.clear();
+					release(pooled, broken);
+				}
+				return null;
+			}
+			if (name.equals("isClosed")) {
+				return closed || pooled.physical.isClosed();
+			}
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("toString")) {
+				return "PooledConnection[" + pooled.physical + (closed ? ", closed]" : "]");
+			}
+			if (closed) {
+				throw new SQLException("Connection is closed.");
+			}
+			try {
+				Object result = method.invoke(pooled.physical, args);
+				if (result instanceof Statement) {
+					if (statements.size() >= 64) {
+						pruneClosedStatements();
+					}
+					statements.add((Statement) result);
+				}
+				return result;
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+					broken = true;
+				}
+				throw cause;
+			}
+		}
+
+		private void pruneClosedStatements() throws SQLException {
+			Iterator<Statement> iterator = statements.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().isClosed()) {
+					iterator.remove();
+				}
+			}
+		}
+
+		// SQLState class 08 is "connection exception".
+		private boolean isFatal(SQLException e) {
+			String state = e.getSQLState();
+			return state != null && state.startsWith("08");
+		}
+	}
+}
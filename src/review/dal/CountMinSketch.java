@@ -0,0 +1,158 @@
+package review.dal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A Count-Min sketch: an estimate of how often each item was added, e.g. the
+ * number of reviews each user wrote, in depth * width counters whatever the
+ * number of distinct items.
+ *
+ * Each of the depth rows maps an item to one of its width counters by a
+ * different hash. An item's estimate is the smallest of its counters, which
+ * never undercounts; it overcounts by at most about e / width of the total
+ * with probability 1 - e^-depth. Adds are conservative updates: only the
+ * counters below the new estimate are raised, which keeps collisions from
+ * inflating the other counters more than needed.
+ *
+ * Sketches of the same dimensions merge by adding their counters. Unlike
+ * HyperLogLog, the merge counts an item added to both sketches twice, so only
+ * merge sketches of disjoint additions (e.g. the writes of different nodes).
+ * Counts cannot be removed. A CountMinSketch is not thread-safe.
+ */
+public class CountMinSketch {
+	private static final int VERSION = 1;
+
+	private final int depth;
+	private final int width;
+	// Row i is counters[i * width .. (i + 1) * width).
+	private final long[] counters;
+	private long total = 0;
+
+	/** width is rounded up to a power of two. */
+	public CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 1 || width > 1 << 30 || (long) depth * width > 1 << 30) {
+			throw new IllegalArgumentException("Invalid dimensions: depth " + depth + ", width " + width);
+		}
+		this.depth = depth;
+		this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+		this.counters = new long[depth * this.width];
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/** The sum of all the counts added. */
+	public long getTotal() {
+		return total;
+	}
+
+	public void add(String item, long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative: " + count);
+		}
+		long hash = HyperLogLog.hash(item);
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < depth; i++) {
+			estimate = Math.min(estimate, counters[slot(hash, i)]);
+		}
+		long target = estimate + count;
+		for (int i = 0; i < depth; i++) {
+			int slot = slot(hash, i);
+			if (counters[slot] < target) {
+				counters[slot] = target;
+			}
+		}
+		total += count;
+	}
+
+	/** The estimated count of item: at least the count added, 0 if never added. */
+	public long estimate(String item) {
+		long hash = HyperLogLog.hash(item);
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < depth; i++) {
+			estimate = Math.min(estimate, counters[slot(hash, i)]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Add the counts of other to this sketch.
+	 *
+	 * @throws IllegalArgumentException if other has other dimensions.
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.depth != depth || other.width != width) {
+			throw new IllegalArgumentException("Cannot merge a " + other.depth + "x" + other.width
+					+ " sketch into a " + depth + "x" + width + " one");
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] += other.counters[i];
+		}
+		total += other.total;
+	}
+
+	/**
+	 * Write the sketch. The counters are variable-length, so the zeros of a
+	 * sketch wider than its number of items take one byte each.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeByte(VERSION);
+		out.writeInt(depth);
+		out.writeInt(width);
+		writeVarLong(out, total);
+		for (long counter : counters) {
+			writeVarLong(out, counter);
+		}
+	}
+
+	/** Read a sketch written by writeTo(). */
+	public static CountMinSketch readFrom(DataInput in) throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unknown CountMinSketch version: " + version);
+		}
+		int depth = in.readInt();
+		int width = in.readInt();
+		CountMinSketch sketch = new CountMinSketch(depth, width);
+		sketch.total = readVarLong(in);
+		for (int i = 0; i < sketch.counters.length; i++) {
+			sketch.counters[i] = readVarLong(in);
+		}
+		return sketch;
+	}
+
+	/** Write a non-negative long in 7-bit groups, low group first. */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length long");
+	}
+
+	// Row i's counter of the item: the double hash h1 + i * h2 over the two halves of the hash.
+	private int slot(long hash, int i) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		return i * width + ((h1 + i * h2) & (width - 1));
+	}
+}
@@ -19,18 +19,13 @@ import review.model.*;
 public class CreditCardsDao {
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static CreditCardsDao instance = null;
-
-	protected CreditCardsDao() {
-		connectionManager = new ConnectionManager();
+	protected CreditCardsDao(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static CreditCardsDao getInstance() {
-		if (instance == null) {
-			instance = new CreditCardsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getCreditCardsDao();
 	}
 
 	/**
@@ -82,6 +77,57 @@ public class CreditCardsDao {
 		}
 	}
 
+	/**
+	 * Save all the CreditCards instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<CreditCards> createAll(List<CreditCards> creditCards) throws SQLException {
+		return createAll(creditCards, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the CreditCards instances by storing them in your MySQL instance.
+	 * This runs the INSERT statements as JDBC batches of batchSize rows, each sent
+	 * as one multi-row INSERT and committed as one transaction. If a batch fails,
+	 * it is rolled back; the batches before it stay committed.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<CreditCards> createAll(List<CreditCards> creditCards, int batchSize) throws SQLException {
+		String insertCreditCard = "INSERT INTO CreditCards(cardNumber,expiration,userName) VALUES(?,?,?);";
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(insertCreditCard);
+			for (List<CreditCards> batch : JdbcBatch.partition(creditCards, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, (stmt, creditCard) -> {
+					stmt.setLong(1, creditCard.getCardNumber());
+					stmt.setTimestamp(2, new Timestamp(creditCard.getExpiration().getTime()));
+					stmt.setString(3, creditCard.getUserName());
+				}, null);
+				connection.commit();
+			}
+			return creditCards;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
 	/**
 	 * Get the CreditCards record by fetching it from your MySQL instance. This runs
 	 * a SELECT statement and returns a single CreditCards instance.
@@ -0,0 +1,243 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import review.model.*;
+
+/**
+ * An in-memory result cache of RestaurantsDao.getRestaurantsByCuisine(): for
+ * each CuisineType, the unmodifiable list of its restaurants, plus the
+ * unmodifiable list of just the active ones. There are only five cuisines, so
+ * browsing by cuisine is served from two EnumMaps once each cuisine has been
+ * loaded.
+ *
+ * The lists are kept current incrementally rather than reloaded: the restaurant
+ * DAOs call added() after they commit new or changed restaurants, which queues
+ * their ids until the next lookup of their cuisine fetches just those
+ * restaurants and merges them into the list, which stays in RestaurantId order
+ * (a restaurant already in it is replaced where it is). As a
+ * RestaurantCache.InvalidationListener the index drops a deleted restaurant
+ * from its list. An invalidateAll() of the RestaurantCache (e.g. after a
+ * company changes) clears the index.
+ *
+ * The maps are replaced, never modified, under the index's lock, and readers
+ * see them through a volatile field without locking. As in EntityCache, a list
+ * loaded while the index changed is returned but not cached.
+ */
+public class CuisineIndex implements RestaurantCache.InvalidationListener {
+
+	/** Loads all the restaurants of one cuisine, in RestaurantId order. */
+	public interface Loader {
+		List<Restaurants> load(Restaurants.CuisineType cuisine) throws SQLException;
+	}
+
+	// Whether the index is used. false makes every lookup go to the loader.
+	public static final boolean DEFAULT_ENABLED =
+			Boolean.parseBoolean(System.getProperty("review.cache.cuisineIndex.enabled", "true"));
+
+	private final boolean enabled;
+
+	// Replaced as a whole under "this"; never modified once published.
+	private volatile EnumMap<Restaurants.CuisineType, List<Restaurants>> all =
+			new EnumMap<Restaurants.CuisineType, List<Restaurants>>(Restaurants.CuisineType.class);
+	private volatile EnumMap<Restaurants.CuisineType, List<Restaurants>> active =
+			new EnumMap<Restaurants.CuisineType, List<Restaurants>>(Restaurants.CuisineType.class);
+	// Ids of restaurants created since their cuisine was loaded, not yet appended.
+	private volatile EnumMap<Restaurants.CuisineType, List<Integer>> pending =
+			new EnumMap<Restaurants.CuisineType, List<Integer>>(Restaurants.CuisineType.class);
+	// Guarded by "this".
+	private long generation = 0;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public CuisineIndex(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Get the restaurants of cuisine (only the active ones if activeOnly), calling
+	 * loader if the cuisine has not been loaded yet, or byIds for the restaurants
+	 * created since it was.
+	 *
+	 * @throws SQLException
+	 */
+	public List<Restaurants> get(Restaurants.CuisineType cuisine, boolean activeOnly, Loader loader,
+			EntityCache.BulkLoader<Integer, Restaurants> byIds) throws SQLException {
+		List<Restaurants> restaurants = (activeOnly ? active : all).get(cuisine);
+		if (restaurants != null && !pending.containsKey(cuisine)) {
+			hits.increment();
+			return restaurants;
+		}
+		long loadGeneration;
+		List<Restaurants> current;
+		List<Integer> pendingIds;
+		synchronized (this) {
+			loadGeneration = generation;
+			current = all.get(cuisine);
+			pendingIds = pending.get(cuisine);
+		}
+		List<Restaurants> updated;
+		if (current == null) {
+			misses.increment();
+			updated = new ArrayList<Restaurants>(loader.load(cuisine));
+		} else {
+			hits.increment();
+			updated = new ArrayList<Restaurants>(current);
+			if (pendingIds != null) {
+				Map<Integer, Restaurants> created = byIds.loadAll(pendingIds);
+				for (Integer restaurantId : pendingIds) {
+					Restaurants restaurant = created.get(restaurantId);
+					if (restaurant != null) {
+						insert(updated, restaurant);
+					}
+				}
+			}
+		}
+		List<Restaurants> unmodifiable = Collections.unmodifiableList(updated);
+		List<Restaurants> unmodifiableActive = activeOf(unmodifiable);
+		if (enabled) {
+			synchronized (this) {
+				if (generation == loadGeneration) {
+					publish(cuisine, unmodifiable, unmodifiableActive);
+					EnumMap<Restaurants.CuisineType, List<Integer>> newPending =
+							new EnumMap<Restaurants.CuisineType, List<Integer>>(pending);
+					newPending.remove(cuisine);
+					pending = newPending;
+				}
+			}
+		}
+		return activeOnly ? unmodifiableActive : unmodifiable;
+	}
+
+	/**
+	 * Queue newly created or changed restaurants for the lists of their cuisines,
+	 * if those are loaded. Only the RestaurantId and CuisineType of the
+	 * restaurants are used.
+	 */
+	public synchronized void added(Collection<? extends Restaurants> restaurants) {
+		generation++;
+		EnumMap<Restaurants.CuisineType, List<Integer>> newPending = null;
+		for (Restaurants restaurant : restaurants) {
+			Restaurants.CuisineType cuisine = restaurant.getCuisineType();
+			if (!all.containsKey(cuisine)) {
+				continue;
+			}
+			if (newPending == null) {
+				newPending = new EnumMap<Restaurants.CuisineType, List<Integer>>(pending);
+			}
+			List<Integer> ids = new ArrayList<Integer>();
+			if (newPending.containsKey(cuisine)) {
+				ids.addAll(newPending.get(cuisine));
+			}
+			ids.add(restaurant.getRestaurantId());
+			newPending.put(cuisine, Collections.unmodifiableList(ids));
+		}
+		if (newPending != null) {
+			pending = newPending;
+		}
+	}
+
+	@Override
+	public synchronized void restaurantInvalidated(int restaurantId) {
+		generation++;
+		EnumMap<Restaurants.CuisineType, List<Integer>> newPending =
+				new EnumMap<Restaurants.CuisineType, List<Integer>>(Restaurants.CuisineType.class);
+		for (Map.Entry<Restaurants.CuisineType, List<Integer>> entry : pending.entrySet()) {
+			List<Integer> ids = new ArrayList<Integer>(entry.getValue());
+			ids.remove(Integer.valueOf(restaurantId));
+			if (!ids.isEmpty()) {
+				newPending.put(entry.getKey(), Collections.unmodifiableList(ids));
+			}
+		}
+		pending = newPending;
+		for (Map.Entry<Restaurants.CuisineType, List<Restaurants>> entry : all.entrySet()) {
+			List<Restaurants> current = entry.getValue();
+			List<Restaurants> updated = new ArrayList<Restaurants>(current.size());
+			for (Restaurants restaurant : current) {
+				if (restaurant.getRestaurantId() != restaurantId) {
+					updated.add(restaurant);
+				}
+			}
+			if (updated.size() != current.size()) {
+				List<Restaurants> unmodifiable = Collections.unmodifiableList(updated);
+				publish(entry.getKey(), unmodifiable, activeOf(unmodifiable));
+				return;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void allRestaurantsInvalidated() {
+		generation++;
+		all = new EnumMap<Restaurants.CuisineType, List<Restaurants>>(Restaurants.CuisineType.class);
+		active = new EnumMap<Restaurants.CuisineType, List<Restaurants>>(Restaurants.CuisineType.class);
+		pending = new EnumMap<Restaurants.CuisineType, List<Integer>>(Restaurants.CuisineType.class);
+	}
+
+	// Replace both maps with copies that map cuisine to the given lists. Holds "this".
+	private void publish(Restaurants.CuisineType cuisine, List<Restaurants> allOfCuisine,
+			List<Restaurants> activeOfCuisine) {
+		EnumMap<Restaurants.CuisineType, List<Restaurants>> newAll =
+				new EnumMap<Restaurants.CuisineType, List<Restaurants>>(all);
+		EnumMap<Restaurants.CuisineType, List<Restaurants>> newActive =
+				new EnumMap<Restaurants.CuisineType, List<Restaurants>>(active);
+		newAll.put(cuisine, allOfCuisine);
+		newActive.put(cuisine, activeOfCuisine);
+		// Publish active first: a reader that finds a cuisine in all finds it in active too.
+		active = newActive;
+		all = newAll;
+	}
+
+	// Put restaurant at its place in restaurants, sorted by RestaurantId, replacing
+	// the restaurant with the same id if there is one. Ids are not created in
+	// commit order, and a changed restaurant keeps its place.
+	private static void insert(List<Restaurants> restaurants, Restaurants restaurant) {
+		int low = 0;
+		int high = restaurants.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = restaurants.get(mid).getRestaurantId();
+			if (midId < restaurant.getRestaurantId()) {
+				low = mid + 1;
+			} else if (midId > restaurant.getRestaurantId()) {
+				high = mid - 1;
+			} else {
+				restaurants.set(mid, restaurant);
+				return;
+			}
+		}
+		restaurants.add(low, restaurant);
+	}
+
+	private static List<Restaurants> activeOf(List<Restaurants> restaurants) {
+		List<Restaurants> activeRestaurants = new ArrayList<Restaurants>();
+		for (Restaurants restaurant : restaurants) {
+			if (restaurant.isActive()) {
+				activeRestaurants.add(restaurant);
+			}
+		}
+		return Collections.unmodifiableList(activeRestaurants);
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CuisineIndex[loaded=%s hits=%d misses=%d]", all.keySet(), getHitCount(),
+				getMissCount());
+	}
+}
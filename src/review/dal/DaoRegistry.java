@@ -0,0 +1,237 @@
+package review.dal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the one instance of every DAO. The DAOs' getInstance() methods delegate
+ * here, so they no longer race to create duplicate instances (each with its own
+ * ConnectionManager) when concurrent servlet threads call them first.
+ *
+ * A DaoRegistry builds all of its DAOs up front, on a single ConnectionManager
+ * that they all share. The installed registry is created on first use of
+ * get(), or explicitly with install(), e.g. from a servlet's init() or a
+ * benchmark's main(). Installing a registry built on a different
+ * ConnectionManager (another pool, another schema) swaps the backend of every
+ * DAO at once. DAOs look up the DAOs they depend on through getInstance(), so a
+ * registry takes effect only once it is installed.
+ */
+public class DaoRegistry {
+
+	private static volatile DaoRegistry installed = null;
+
+	private final ConnectionManager connectionManager;
+	private final RestaurantCache restaurantCache;
+	private final CuisineIndex cuisineIndex;
+	private final RankingIndex rankingIndex;
+	private final RatingTrendIndex ratingTrendIndex;
+	private final ReviewerSketches reviewerSketches;
+	private final UsersDao usersDao;
+	private final CreditCardsDao creditCardsDao;
+	private final CompaniesDao companiesDao;
+	private final RestaurantsDao restaurantsDao;
+	private final SitDownRestaurantsDao sitDownRestaurantsDao;
+	private final TakeOutRestaurantsDao takeOutRestaurantsDao;
+	private final FoodCartRestaurantsDao foodCartRestaurantsDao;
+	private final ReviewsDao reviewsDao;
+	private final RecommendationsDao recommendationsDao;
+	private final ReservationsDao reservationsDao;
+	private final RatingStatsDao ratingStatsDao;
+
+	/**
+	 * Build every DAO on connectionManager. DAO constructors must not call
+	 * getInstance(), since the registry is not installed yet.
+	 *
+	 * RestaurantsDao and the three subtype DAOs share one RestaurantCache, one
+	 * CuisineIndex and one RankingIndex. The indexes, and the DAOs that cache views
+	 * embedding restaurants, listen to the RestaurantCache's invalidations. The
+	 * RankingIndex and ReviewsDao's RatingTrendIndex also listen to the reviews
+	 * ReviewsDao creates and deletes. The ReviewerSketches, shared by ReviewsDao
+	 * and RecommendationsDao, count the reviews and recommendations they create;
+	 * with review.sketch.file set they are merged with the saved sketches and
+	 * saved again (see persistReviewerSketches()).
+	 */
+	public DaoRegistry(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+		this.restaurantCache = new RestaurantCache(RestaurantCache.DEFAULT_MAX_SIZE);
+		this.cuisineIndex = new CuisineIndex(CuisineIndex.DEFAULT_ENABLED);
+		this.rankingIndex = new RankingIndex(RankingIndex.DEFAULT_TOP_K, RankingIndex.DEFAULT_PRIOR_WEIGHT);
+		this.ratingTrendIndex = new RatingTrendIndex(RatingTrendIndex.DEFAULT_DAYS,
+				RatingTrendIndex.DEFAULT_ZONE);
+		this.reviewerSketches = new ReviewerSketches(ReviewerSketches.DEFAULT_PRECISION,
+				ReviewerSketches.DEFAULT_WIDTH, ReviewerSketches.DEFAULT_DEPTH,
+				ReviewerSketches.DEFAULT_TOP_CAPACITY);
+		this.usersDao = new UsersDao(connectionManager);
+		this.creditCardsDao = new CreditCardsDao(connectionManager);
+		this.companiesDao = new CompaniesDao(connectionManager);
+		this.restaurantsDao = new RestaurantsDao(connectionManager, restaurantCache, cuisineIndex, rankingIndex);
+		this.sitDownRestaurantsDao = new SitDownRestaurantsDao(connectionManager, restaurantCache, cuisineIndex,
+				rankingIndex);
+		this.takeOutRestaurantsDao = new TakeOutRestaurantsDao(connectionManager, restaurantCache, cuisineIndex,
+				rankingIndex);
+		this.foodCartRestaurantsDao = new FoodCartRestaurantsDao(connectionManager, restaurantCache, cuisineIndex,
+				rankingIndex);
+		this.reviewsDao = new ReviewsDao(connectionManager, ratingTrendIndex, reviewerSketches);
+		this.recommendationsDao = new RecommendationsDao(connectionManager, reviewerSketches);
+		this.reservationsDao = new ReservationsDao(connectionManager);
+		this.ratingStatsDao = new RatingStatsDao(connectionManager);
+		restaurantCache.addInvalidationListener(cuisineIndex);
+		restaurantCache.addInvalidationListener(reviewsDao);
+		restaurantCache.addInvalidationListener(reservationsDao);
+		restaurantCache.addInvalidationListener(ratingStatsDao);
+		restaurantCache.addInvalidationListener(rankingIndex);
+		restaurantCache.addInvalidationListener(ratingTrendIndex);
+		reviewsDao.addReviewListener(rankingIndex);
+		reviewsDao.addReviewListener(ratingTrendIndex);
+		reviewsDao.addReviewListener(reviewerSketches);
+		recommendationsDao.addRecommendationListener(reviewerSketches);
+		if (ReviewerSketches.DEFAULT_FILE != null) {
+			persistReviewerSketches(Paths.get(ReviewerSketches.DEFAULT_FILE),
+					ReviewerSketches.DEFAULT_SAVE_SECONDS);
+		}
+	}
+
+	/**
+	 * Merge the sketches saved in file, if it exists, into the reviewer sketches,
+	 * then save them to file every saveSeconds (if positive) and when the JVM
+	 * shuts down. Saves replace the file atomically, and each holds everything
+	 * the file held plus what this registry counted since, so a restart neither
+	 * loses nor double counts. If the file cannot be read it is left as is and
+	 * nothing is saved over it. Registries of one process that share the file
+	 * overwrite each other's saves, so set review.sketch.file only where a
+	 * process builds one registry.
+	 */
+	private void persistReviewerSketches(Path file, int saveSeconds) {
+		if (Files.exists(file)) {
+			try {
+				reviewerSketches.merge(ReviewerSketches.load(file));
+			} catch (IOException | IllegalArgumentException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		Runnable save = () -> {
+			try {
+				reviewerSketches.save(file);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		};
+		if (saveSeconds > 0) {
+			ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "review-sketch-saver");
+				thread.setDaemon(true);
+				return thread;
+			});
+			saver.scheduleWithFixedDelay(save, saveSeconds, saveSeconds, TimeUnit.SECONDS);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(save, "review-sketch-saver-shutdown"));
+	}
+
+	/**
+	 * Get the installed registry, building one on the default pool if none has
+	 * been installed yet.
+	 */
+	public static DaoRegistry get() {
+		DaoRegistry registry = installed;
+		if (registry == null) {
+			synchronized (DaoRegistry.class) {
+				registry = installed;
+				if (registry == null) {
+					registry = new DaoRegistry(new ConnectionManager());
+					installed = registry;
+				}
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * Make registry the one every getInstance() returns from now on, and return
+	 * the previously installed registry (or null). Callers that already hold a DAO
+	 * keep using the old one.
+	 */
+	public static synchronized DaoRegistry install(DaoRegistry registry) {
+		DaoRegistry previous = installed;
+		installed = registry;
+		return previous;
+	}
+
+	/**
+	 * Build a registry on connectionManager and install it.
+	 */
+	public static DaoRegistry install(ConnectionManager connectionManager) {
+		DaoRegistry registry = new DaoRegistry(connectionManager);
+		install(registry);
+		return registry;
+	}
+
+	public ConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	public RestaurantCache getRestaurantCache() {
+		return restaurantCache;
+	}
+
+	public CuisineIndex getCuisineIndex() {
+		return cuisineIndex;
+	}
+
+	public RankingIndex getRankingIndex() {
+		return rankingIndex;
+	}
+
+	public ReviewerSketches getReviewerSketches() {
+		return reviewerSketches;
+	}
+
+	public UsersDao getUsersDao() {
+		return usersDao;
+	}
+
+	public CreditCardsDao getCreditCardsDao() {
+		return creditCardsDao;
+	}
+
+	public CompaniesDao getCompaniesDao() {
+		return companiesDao;
+	}
+
+	public RestaurantsDao getRestaurantsDao() {
+		return restaurantsDao;
+	}
+
+	public SitDownRestaurantsDao getSitDownRestaurantsDao() {
+		return sitDownRestaurantsDao;
+	}
+
+	public TakeOutRestaurantsDao getTakeOutRestaurantsDao() {
+		return takeOutRestaurantsDao;
+	}
+
+	public FoodCartRestaurantsDao getFoodCartRestaurantsDao() {
+		return foodCartRestaurantsDao;
+	}
+
+	public ReviewsDao getReviewsDao() {
+		return reviewsDao;
+	}
+
+	public RecommendationsDao getRecommendationsDao() {
+		return recommendationsDao;
+	}
+
+	public ReservationsDao getReservationsDao() {
+		return reservationsDao;
+	}
+
+	public RatingStatsDao getRatingStatsDao() {
+		return ratingStatsDao;
+	}
+}
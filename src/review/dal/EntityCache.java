@@ -0,0 +1,273 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, concurrent, read-through cache of entities keyed by their primary
+ * key. Null values (missing rows) are never cached.
+ *
+ * The keys are spread over SEGMENT_COUNT segments. Each segment is an
+ * access-ordered LinkedHashMap with its own lock, so a lookup only contends with
+ * lookups of keys in the same segment, and a full segment evicts its least
+ * recently used entry.
+ *
+ * A load that races an invalidate() of the same segment is not cached, so the
+ * cache never holds a value older than the last invalidation: every segment
+ * keeps a generation number that invalidate() bumps, and loaded values are
+ * stored only if the generation is unchanged.
+ */
+public class EntityCache<K, V> {
+
+	/** Loads one entity on a cache miss. Returns null if there is no such row. */
+	public interface Loader<K, V> {
+		V load(K key) throws SQLException;
+	}
+
+	/** Loads the entities of a batch of missing keys in one go. */
+	public interface BulkLoader<K, V> {
+		Map<K, V> loadAll(Collection<K> keys) throws SQLException;
+	}
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private final String name;
+	private final int maxSize;
+	private final List<Segment> segments;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Create a cache that holds at most about maxSize entries (rounded up to a
+	 * multiple of SEGMENT_COUNT). A maxSize of 0 disables caching: every get() is a
+	 * miss that goes to the loader.
+	 */
+	public EntityCache(String name, int maxSize) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.segments = new ArrayList<Segment>(SEGMENT_COUNT);
+		int segmentSize = (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments.add(new Segment(segmentSize));
+		}
+	}
+
+	/**
+	 * Get the value for key, calling loader on a miss and caching what it returns.
+	 * A null key has no value, and neither the cache nor loader is asked for it.
+	 *
+	 * @throws SQLException
+	 */
+	public V get(K key, Loader<K, V> loader) throws SQLException {
+		if (key == null) {
+			return null;
+		}
+		Segment segment = segmentFor(key);
+		long generation;
+		synchronized (segment) {
+			V value = segment.get(key);
+			if (value != null) {
+				hits.increment();
+				return value;
+			}
+			generation = segment.generation;
+		}
+		misses.increment();
+		V value = loader.load(key);
+		if (value != null) {
+			putIfCurrent(segment, key, value, generation);
+		}
+		return value;
+	}
+
+	/**
+	 * Get the values for keys, loading all the misses with one call to loader.
+	 * Keys without a value are absent from the returned map.
+	 *
+	 * @throws SQLException
+	 */
+	public Map<K, V> getAll(Collection<K> keys, BulkLoader<K, V> loader) throws SQLException {
+		Map<K, V> values = new HashMap<K, V>();
+		List<K> missing = new ArrayList<K>();
+		long[] generations = new long[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			Segment segment = segments.get(i);
+			synchronized (segment) {
+				generations[i] = segment.generation;
+			}
+		}
+		for (K key : keys) {
+			V value = getIfPresent(key);
+			if (value != null) {
+				values.put(key, value);
+			} else {
+				missing.add(key);
+			}
+		}
+		if (missing.isEmpty()) {
+			return values;
+		}
+		Map<K, V> loaded = loader.loadAll(missing);
+		for (Map.Entry<K, V> entry : loaded.entrySet()) {
+			if (entry.getValue() != null) {
+				putIfCurrent(segmentFor(entry.getKey()), entry.getKey(), entry.getValue(),
+						generations[segmentIndex(entry.getKey())]);
+				values.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Get the cached value for key, or null. Counts as a hit or a miss.
+	 */
+	public V getIfPresent(K key) {
+		Segment segment = segmentFor(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * Cache value for key, replacing any cached value. Use this only for a value
+	 * that is known to be current, e.g. right after writing it.
+	 */
+	public void put(K key, V value) {
+		if (maxSize == 0) {
+			return;
+		}
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+	}
+
+	/**
+	 * Drop the cached value for key, and make any load of a key in the same
+	 * segment that is in flight discard its result.
+	 */
+	public void invalidate(K key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.generation++;
+			segment.remove(key);
+		}
+		invalidations.increment();
+	}
+
+	public void invalidateAll() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.generation++;
+				segment.clear();
+			}
+		}
+		invalidations.increment();
+	}
+
+	private void putIfCurrent(Segment segment, K key, V value, long generation) {
+		if (maxSize == 0) {
+			return;
+		}
+		synchronized (segment) {
+			if (segment.generation == generation) {
+				segment.put(key, value);
+			}
+		}
+	}
+
+	private int segmentIndex(K key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return hash & (SEGMENT_COUNT - 1);
+	}
+
+	private Segment segmentFor(K key) {
+		return segments.get(segmentIndex(key));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("EntityCache[%s size=%d/%d hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d]",
+				name, size(), maxSize, getHitCount(), getMissCount(), getHitRate(), getEvictionCount(),
+				getInvalidationCount());
+	}
+
+	/** One lock's worth of the cache: an LRU map that evicts past capacity. */
+	private class Segment extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private long generation = 0;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package review.dal;
+
+/**
+ * How a DAO resolves the Users, Restaurants and Companies referenced by the
+ * rows it reads.
+ */
+public enum FetchMode {
+	/**
+	 * One extra lookup per referenced entity per row, through UsersDao,
+	 * RestaurantsDao and CompaniesDao. This is the original behavior.
+	 */
+	NESTED,
+	/**
+	 * A single SELECT that joins the referenced tables and builds every object
+	 * from the same row. Parents repeated across rows are shared.
+	 */
+	JOIN,
+	/**
+	 * Read the rows first, then resolve every referenced entity type with one
+	 * batched IN-list query through {@link BatchLoader}. The number of queries is
+	 * fixed no matter how many rows come back. DAOs that have no JOIN
+	 * implementation (Recommendations, Reservations) use BATCH for JOIN as well.
+	 */
+	BATCH,
+	/**
+	 * Read the rows only, and reference each Users and Restaurants by its key
+	 * through LazyUsers, LazyRestaurants or LazySitDownRestaurants. The first
+	 * use of any other property of a reference resolves every reference of the
+	 * result with one BatchLoader dispatch, as in BATCH. Callers that only need
+	 * the keys run a single query. Unlike BATCH and JOIN, a LazyRestaurants is a
+	 * plain Restaurants whatever the restaurant's subtype; its getTarget() returns
+	 * the restaurant as its most specific type.
+	 */
+	LAZY
+}
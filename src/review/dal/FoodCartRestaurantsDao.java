@@ -4,7 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import review.model.*;
@@ -17,46 +19,50 @@ import review.model.*;
  */
 public class FoodCartRestaurantsDao extends RestaurantsDao {
 
-	// Single pattern: instantiation is limited to one object.
-	private static FoodCartRestaurantsDao instance = null;
-
-	protected FoodCartRestaurantsDao() {
-		super();
+	protected FoodCartRestaurantsDao(ConnectionManager connectionManager, RestaurantCache restaurantCache,
+			CuisineIndex cuisineIndex, RankingIndex rankingIndex) {
+		super(connectionManager, restaurantCache, cuisineIndex, rankingIndex);
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static FoodCartRestaurantsDao getInstance() {
-		if (instance == null) {
-			instance = new FoodCartRestaurantsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getFoodCartRestaurantsDao();
 	}
 
 	/**
 	 * Save the FoodCartRestaurants instance by storing it in your MySQL instance.
-	 * This runs a INSERT statement.
+	 * This runs two INSERT statements, into Restaurants and then FoodCartRestaurant, in
+	 * a single transaction on one connection. The auto-generated RestaurantId is
+	 * set on foodCartRestaurant and used for the FoodCartRestaurant row.
 	 * 
 	 * @throws SQLException
 	 */
 	public FoodCartRestaurants create(FoodCartRestaurants foodCartRestaurant) throws SQLException {
-		// Insert into the superclass table first.
-		create(new Restaurants(foodCartRestaurant.getRestaurantId(), foodCartRestaurant.getName(),
-				foodCartRestaurant.getDescription(), foodCartRestaurant.getMenu(), foodCartRestaurant.getHours(),
-				foodCartRestaurant.isActive(), foodCartRestaurant.getCuisineType(), foodCartRestaurant.getStreet1(),
-				foodCartRestaurant.getStreet2(), foodCartRestaurant.getCity(), foodCartRestaurant.getState(),
-				foodCartRestaurant.getZip(), foodCartRestaurant.getCompany()));
-
 		String insertFoodCartRestaurant = "INSERT INTO FoodCartRestaurant(RestaurantId,Licensed) VALUES(?,?);";
+		int originalRestaurantId = foodCartRestaurant.getRestaurantId();
 		Connection connection = null;
 		PreparedStatement insertStmt = null;
 		try {
 			connection = connectionManager.getConnection();
+			// Both rows are committed together, so a failure can never leave a
+			// Restaurants row without its FoodCartRestaurant row.
+			connection.setAutoCommit(false);
+			// Insert into the superclass table first; this sets the generated key.
+			insertRestaurant(connection, foodCartRestaurant);
+
 			insertStmt = connection.prepareStatement(insertFoodCartRestaurant);
 			insertStmt.setInt(1, foodCartRestaurant.getRestaurantId());
 			insertStmt.setBoolean(2, foodCartRestaurant.isLicensed());
 			insertStmt.executeUpdate();
+			connection.commit();
+			cuisineIndex.added(Collections.singletonList(foodCartRestaurant));
 			return foodCartRestaurant;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			foodCartRestaurant.setRestaurantId(originalRestaurantId);
 			throw e;
 		} finally {
 			if (connection != null) {
@@ -69,64 +75,82 @@ public class FoodCartRestaurantsDao extends RestaurantsDao {
 	}
 
 	/**
-	 * Get the FoodCartRestaurants record by fetching it from your MySQL instance.
-	 * This runs a SELECT statement and returns a single FoodCartRestaurants
-	 * instance. Note that we use CompaniesDao to retrieve the referenced Companies
-	 * instance. One alternative (possibly more efficient) is using a single SELECT
-	 * statement to join the FoodCartRestaurants, Companies tables and then build
-	 * each object.
+	 * Save all the FoodCartRestaurants instances,
+	 * ConnectionManager.DEFAULT_BATCH_SIZE restaurants per batch. See
+	 * createAllFoodCartRestaurants(List, int).
 	 * 
 	 * @throws SQLException
 	 */
-	public FoodCartRestaurants getFoodCartRestaurantById(int foodCartRestaurantId) throws SQLException {
-		// To build an FoodCartRestaurants object, we need the Restaurants record, too.
-		String selectFoodCartRestaurant = "SELECT FoodCartRestaurant.RestaurantId AS RestaurantId, Name, Description, Menu, Hours, Active, CuisineType, Street1, Street2, City, State, Zip, CompanyName, Licensed "
-				+ "FROM FoodCartRestaurant INNER JOIN Restaurants "
-				+ "  ON FoodCartRestaurant.RestaurantId = Restaurants.RestaurantId "
-				+ "WHERE FoodCartRestaurant.RestaurantId=?;";
+	public List<FoodCartRestaurants> createAllFoodCartRestaurants(List<FoodCartRestaurants> foodCartRestaurants)
+			throws SQLException {
+		return createAllFoodCartRestaurants(foodCartRestaurants, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the FoodCartRestaurants instances by storing them in your MySQL
+	 * instance. For every batch of batchSize restaurants, this runs one batched
+	 * INSERT into Restaurants (setting the auto-generated RestaurantIds) and one
+	 * into FoodCartRestaurant, and commits both in a single transaction. If a batch
+	 * fails, it is rolled back; the batches before it stay committed.
+	 *
+	 * This is not named createAll() because it would clash with
+	 * RestaurantsDao.createAll(List) after erasure.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<FoodCartRestaurants> createAllFoodCartRestaurants(List<FoodCartRestaurants> foodCartRestaurants,
+			int batchSize) throws SQLException {
+		String insertFoodCartRestaurant = "INSERT INTO FoodCartRestaurant(RestaurantId,Licensed) VALUES(?,?);";
 		Connection connection = null;
-		PreparedStatement selectStmt = null;
-		ResultSet results = null;
+		PreparedStatement insertRestaurantStmt = null;
+		PreparedStatement insertStmt = null;
 		try {
 			connection = connectionManager.getConnection();
-			selectStmt = connection.prepareStatement(selectFoodCartRestaurant);
-			selectStmt.setInt(1, foodCartRestaurantId);
-			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
-			if (results.next()) {
-				int resultRestaurantId = results.getInt("RestaurantId");
-				String name = results.getString("Name");
-				String description = results.getString("Description");
-				String menu = results.getString("Menu");
-				String hours = results.getString("Hours");
-				boolean active = results.getBoolean("Active");
-				Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
-				String street1 = results.getString("Street1");
-				String street2 = results.getString("Street2");
-				String city = results.getString("City");
-				String state = results.getString("State");
-				int zip = results.getInt("Zip");
-				String companyName = results.getString("CompanyName");
-				Companies company = companiesDao.getCompanyByCompanyName(companyName);
-				boolean Licensed = results.getBoolean("Licensed");
-				FoodCartRestaurants foodCartRestaurant = new FoodCartRestaurants(resultRestaurantId, name, description,
-						menu, hours, active, cuisineType, street1, street2, city, state, zip, company, Licensed);
-				return foodCartRestaurant;
+			connection.setAutoCommit(false);
+			insertRestaurantStmt = connection.prepareStatement(INSERT_RESTAURANT, Statement.RETURN_GENERATED_KEYS);
+			insertStmt = connection.prepareStatement(insertFoodCartRestaurant);
+			for (List<FoodCartRestaurants> batch : JdbcBatch.partition(foodCartRestaurants, batchSize)) {
+				JdbcBatch.execute(insertRestaurantStmt, batch, RestaurantsDao::bindRestaurant,
+						Restaurants::setRestaurantId);
+				JdbcBatch.execute(insertStmt, batch, (stmt, foodCartRestaurant) -> {
+					stmt.setInt(1, foodCartRestaurant.getRestaurantId());
+					stmt.setBoolean(2, foodCartRestaurant.isLicensed());
+				}, null);
+				connection.commit();
+				cuisineIndex.added(batch);
 			}
+			return foodCartRestaurants;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
 				connection.close();
 			}
-			if (selectStmt != null) {
-				selectStmt.close();
+			if (insertRestaurantStmt != null) {
+				insertRestaurantStmt.close();
 			}
-			if (results != null) {
-				results.close();
+			if (insertStmt != null) {
+				insertStmt.close();
 			}
 		}
+	}
+
+	/**
+	 * Get the FoodCartRestaurants record from the restaurant cache shared with
+	 * RestaurantsDao, fetching it from your MySQL instance on a miss. Returns null
+	 * if there is no such restaurant, or if it is not a FoodCartRestaurants.
+	 * 
+	 * @throws SQLException
+	 */
+	public FoodCartRestaurants getFoodCartRestaurantById(int foodCartRestaurantId) throws SQLException {
+		Restaurants restaurant = getRestaurantById(foodCartRestaurantId);
+		if (restaurant instanceof FoodCartRestaurants) {
+			return (FoodCartRestaurants) restaurant;
+		}
 		return null;
 	}
 
@@ -146,12 +170,12 @@ public class FoodCartRestaurantsDao extends RestaurantsDao {
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
+		String resultCompanyName = null;
 		try {
 			connection = connectionManager.getConnection();
 			selectStmt = connection.prepareStatement(selectFoodCartRestaurants);
 			selectStmt.setString(1, companyName);
 			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
 			while (results.next()) {
 				int restaurantId = results.getInt("RestaurantId");
 				String name = results.getString("Name");
@@ -165,11 +189,10 @@ public class FoodCartRestaurantsDao extends RestaurantsDao {
 				String city = results.getString("City");
 				String state = results.getString("State");
 				int zip = results.getInt("Zip");
-				String resultCompanyName = results.getString("CompanyName");
-				Companies resultCompany = companiesDao.getCompanyByCompanyName(resultCompanyName);
+				resultCompanyName = results.getString("CompanyName");
 				boolean Licensed = results.getBoolean("Licensed");
 				FoodCartRestaurants foodCartRestaurant = new FoodCartRestaurants(restaurantId, name, description, menu,
-						hours, active, cuisineType, street1, street2, city, state, zip, resultCompany, Licensed);
+						hours, active, cuisineType, street1, street2, city, state, zip, null, Licensed);
 				foodCartRestaurants.add(foodCartRestaurant);
 			}
 		} catch (SQLException e) {
@@ -186,11 +209,34 @@ public class FoodCartRestaurantsDao extends RestaurantsDao {
 				results.close();
 			}
 		}
+		// Every row is of the one company. It is looked up once the connection is
+		// given back, since CompaniesDao borrows its own on a cache miss.
+		if (resultCompanyName != null) {
+			Companies company = CompaniesDao.getInstance().getCompanyByCompanyName(resultCompanyName);
+			for (FoodCartRestaurants foodCartRestaurant : foodCartRestaurants) {
+				foodCartRestaurant.setCompany(company);
+			}
+		}
 		return foodCartRestaurants;
 	}
 
 	/**
-	 * Delete the FoodCartRestaurants instance. This runs a DELETE statement.
+	 * Get the RestaurantSummary of every FoodCartRestaurants of a company, in
+	 * RestaurantId order. This runs a SELECT statement for just the summary
+	 * columns; see RestaurantsDao.getRestaurantSummariesByCuisine().
+	 * 
+	 * @throws SQLException
+	 */
+	public List<RestaurantSummary> getFoodCartRestaurantSummariesByCompanyName(String companyName) throws SQLException {
+		return selectRestaurantSummaries("INNER JOIN FoodCartRestaurant "
+				+ "  ON FoodCartRestaurant.RestaurantId = Restaurants.RestaurantId "
+				+ "WHERE CompanyName=? ORDER BY Restaurants.RestaurantId;", companyName);
+	}
+
+	/**
+	 * Delete the FoodCartRestaurants instance. This runs two DELETE statements, from
+	 * FoodCartRestaurant and then Restaurants, in a single transaction on one
+	 * connection, and then invalidates the cached restaurant.
 	 * 
 	 * @throws SQLException
 	 */
@@ -200,6 +246,7 @@ public class FoodCartRestaurantsDao extends RestaurantsDao {
 		PreparedStatement deleteStmt = null;
 		try {
 			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
 			deleteStmt = connection.prepareStatement(deleteFoodCartRestaurant);
 			deleteStmt.setInt(1, foodCartRestaurant.getRestaurantId());
 			int affectedRows = deleteStmt.executeUpdate();
@@ -208,15 +255,21 @@ public class FoodCartRestaurantsDao extends RestaurantsDao {
 						"No records available to delete for RestaurantId=" + foodCartRestaurant.getRestaurantId());
 			}
 
-			// Then also delete from the superclass.
+			// Then also delete from the superclass, on the same connection.
 			// Notes:
-			// Due to the fk constraint (ON DELETE CASCADE), we could simply call
-			// super.delete() without even needing to delete from Restaurants first.
-			super.delete(foodCartRestaurant);
+			// Due to the fk constraint (ON DELETE CASCADE), we could simply delete
+			// from Restaurants without even needing to delete from FoodCartRestaurant first.
+			deleteRestaurant(connection, foodCartRestaurant);
+			connection.commit();
+			restaurantCache.invalidate(foodCartRestaurant.getRestaurantId());
+			UnitOfWork.evict(Restaurants.class, foodCartRestaurant.getRestaurantId());
 
 			return null;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
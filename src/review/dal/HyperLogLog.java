@@ -0,0 +1,247 @@
+package review.dal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch: an estimate of the number of distinct items added to
+ * it, e.g. the distinct reviewers of a restaurant, in at most 2^precision
+ * bytes. The standard error of the estimate is about 1.04 / sqrt(2^precision),
+ * 1.6% at precision 12.
+ *
+ * Each item is hashed to 64 bits. The first precision bits pick one of the
+ * 2^precision registers, which keeps the longest run of leading zeros (plus
+ * one) seen in the remaining bits. Small cardinalities are estimated by linear
+ * counting of the empty registers.
+ *
+ * Most sketches see few items, so a sketch starts sparse: it keeps only the
+ * registers that are set, as sorted (index, value) pairs, and switches to the
+ * array of all registers once that would be smaller.
+ *
+ * Sketches of the same precision merge losslessly: the merge of two sketches
+ * is the sketch of the union of their items, so sketches built on different
+ * nodes, or of different restaurants, can be combined. Items cannot be
+ * removed. A HyperLogLog is not thread-safe.
+ */
+public class HyperLogLog {
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 16;
+
+	private static final int VERSION = 1;
+	private static final int SPARSE = 0;
+	private static final int DENSE = 1;
+
+	private final int precision;
+	// While sparse: (index << 8 | value) of each set register, sorted by index.
+	private int[] sparse = new int[4];
+	private int sparseSize = 0;
+	// Once dense: the value of every register. null while sparse.
+	private byte[] registers = null;
+
+	public HyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and "
+					+ MAX_PRECISION + ": " + precision);
+		}
+		this.precision = precision;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public void add(String item) {
+		addHash(hash(item));
+	}
+
+	/** Add an item by its 64-bit hash, which must be evenly distributed. */
+	public void addHash(long hash) {
+		int index = (int) (hash >>> (64 - precision));
+		// The marker bit caps the value at 64 - precision + 1 when the rest is all zeros.
+		int value = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		set(index, value);
+	}
+
+	/** The estimated number of distinct items added. */
+	public long estimate() {
+		int m = 1 << precision;
+		double sum = 0;
+		int zeros = 0;
+		if (registers != null) {
+			for (byte value : registers) {
+				if (value == 0) {
+					zeros++;
+				}
+				sum += 1.0 / (1L << value);
+			}
+		} else {
+			zeros = m - sparseSize;
+			sum = zeros;
+			for (int i = 0; i < sparseSize; i++) {
+				sum += 1.0 / (1L << (sparse[i] & 0xff));
+			}
+		}
+		double estimate = alpha(m) * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Add the items of other to this sketch.
+	 *
+	 * @throws IllegalArgumentException if other has another precision.
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge a sketch of precision " + other.precision
+					+ " into one of precision " + precision);
+		}
+		if (other.registers != null) {
+			toDense();
+			for (int i = 0; i < registers.length; i++) {
+				if (other.registers[i] > registers[i]) {
+					registers[i] = other.registers[i];
+				}
+			}
+		} else {
+			for (int i = 0; i < other.sparseSize; i++) {
+				set(other.sparse[i] >>> 8, other.sparse[i] & 0xff);
+			}
+		}
+	}
+
+	/**
+	 * Write the sketch: a sparse sketch as 3 bytes per set register, a dense one
+	 * as 1 byte per register.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeByte(VERSION);
+		out.writeByte(precision);
+		if (registers == null) {
+			out.writeByte(SPARSE);
+			out.writeShort(sparseSize);
+			for (int i = 0; i < sparseSize; i++) {
+				out.writeShort(sparse[i] >>> 8);
+				out.writeByte(sparse[i] & 0xff);
+			}
+		} else {
+			out.writeByte(DENSE);
+			out.write(registers);
+		}
+	}
+
+	/** Read a sketch written by writeTo(). */
+	public static HyperLogLog readFrom(DataInput in) throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unknown HyperLogLog version: " + version);
+		}
+		HyperLogLog sketch = new HyperLogLog(in.readUnsignedByte());
+		if (in.readUnsignedByte() == SPARSE) {
+			// sparseSize is at most 2^14, which does not fit a signed short.
+			int size = in.readUnsignedShort();
+			for (int i = 0; i < size; i++) {
+				int index = in.readUnsignedShort();
+				sketch.set(index, in.readUnsignedByte());
+			}
+		} else {
+			sketch.registers = new byte[1 << sketch.precision];
+			in.readFully(sketch.registers);
+			sketch.sparse = null;
+		}
+		return sketch;
+	}
+
+	/**
+	 * A 64-bit hash of s: FNV-1a over its chars, then the MurmurHash3 finalizer
+	 * so that every bit depends on every char.
+	 */
+	public static long hash(String s) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private void set(int index, int value) {
+		if (registers != null) {
+			if (value > registers[index]) {
+				registers[index] = (byte) value;
+			}
+			return;
+		}
+		int i = find(index);
+		if (i >= 0) {
+			if (value > (sparse[i] & 0xff)) {
+				sparse[i] = index << 8 | value;
+			}
+			return;
+		}
+		// 4 bytes per sparse register against 1 byte per dense one.
+		if (sparseSize == (1 << precision) / 4) {
+			toDense();
+			registers[index] = (byte) value;
+			return;
+		}
+		i = -i - 1;
+		if (sparseSize == sparse.length) {
+			sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, (1 << precision) / 4));
+		}
+		System.arraycopy(sparse, i, sparse, i + 1, sparseSize - i);
+		sparse[i] = index << 8 | value;
+		sparseSize++;
+	}
+
+	// The position of index in sparse, or (-(insertion point) - 1).
+	private int find(int index) {
+		int low = 0;
+		int high = sparseSize - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midIndex = sparse[mid] >>> 8;
+			if (midIndex < index) {
+				low = mid + 1;
+			} else if (midIndex > index) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private void toDense() {
+		if (registers != null) {
+			return;
+		}
+		registers = new byte[1 << precision];
+		for (int i = 0; i < sparseSize; i++) {
+			registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xff);
+		}
+		sparse = null;
+		sparseSize = 0;
+	}
+
+	private static double alpha(int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+}
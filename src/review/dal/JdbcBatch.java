@@ -0,0 +1,80 @@
+package review.dal;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers shared by the DAOs' createAll() methods to run JDBC batches.
+ *
+ * With rewriteBatchedStatements=true (see ConnectionManager), Connector/J sends
+ * each executeBatch() of an INSERT as a single multi-row INSERT statement.
+ */
+class JdbcBatch {
+
+	/** Sets the parameters of the INSERT statement for one row. */
+	interface Binder<T> {
+		void bind(PreparedStatement insertStmt, T row) throws SQLException;
+	}
+
+	/** Stores the auto-generated key of one row on the row object. */
+	interface KeySetter<T> {
+		void setKey(T row, int key);
+	}
+
+	private JdbcBatch() {
+	}
+
+	/**
+	 * Add one INSERT per row to insertStmt and execute them as one batch. If
+	 * keySetter is not null, insertStmt must have been prepared with
+	 * Statement.RETURN_GENERATED_KEYS, and the generated keys are handed out to the
+	 * rows in order.
+	 *
+	 * @throws SQLException
+	 */
+	static <T> void execute(PreparedStatement insertStmt, List<T> rows, Binder<T> binder, KeySetter<T> keySetter)
+			throws SQLException {
+		if (rows.isEmpty()) {
+			return;
+		}
+		for (T row : rows) {
+			binder.bind(insertStmt, row);
+			insertStmt.addBatch();
+		}
+		insertStmt.executeBatch();
+		if (keySetter == null) {
+			return;
+		}
+		ResultSet resultKeys = null;
+		try {
+			resultKeys = insertStmt.getGeneratedKeys();
+			for (T row : rows) {
+				if (!resultKeys.next()) {
+					throw new SQLException("Unable to retrieve auto-generated key.");
+				}
+				keySetter.setKey(row, resultKeys.getInt(1));
+			}
+		} finally {
+			if (resultKeys != null) {
+				resultKeys.close();
+			}
+		}
+	}
+
+	/**
+	 * Split rows into consecutive views of at most batchSize rows.
+	 */
+	static <T> List<List<T>> partition(List<T> rows, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		List<List<T>> batches = new ArrayList<List<T>>();
+		for (int from = 0; from < rows.size(); from += batchSize) {
+			batches.add(rows.subList(from, Math.min(from + batchSize, rows.size())));
+		}
+		return batches;
+	}
+}
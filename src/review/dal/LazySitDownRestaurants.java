@@ -0,0 +1,219 @@
+package review.dal;
+
+import java.sql.SQLException;
+
+import review.model.*;
+
+/**
+ * A SitDownRestaurants that holds only its RestaurantId until one of its other
+ * properties is used. Then it loads the restaurant through the BatchLoader of
+ * the result it came from, together with every other lazy reference of that
+ * result, and copies the fields in. See FetchMode.LAZY and LazyUsers.
+ */
+public class LazySitDownRestaurants extends SitDownRestaurants {
+	private final BatchLoader loader;
+	private boolean initialized = false;
+
+	public LazySitDownRestaurants(int restaurantId, BatchLoader loader) {
+		super(restaurantId);
+		this.loader = loader;
+		loader.requestSitDownRestaurant(restaurantId);
+	}
+
+	public synchronized boolean isInitialized() {
+		return initialized;
+	}
+
+	private synchronized void initialize() {
+		if (initialized) {
+			return;
+		}
+		SitDownRestaurants restaurant;
+		synchronized (loader) {
+			try {
+				loader.dispatch();
+			} catch (SQLException e) {
+				throw new IllegalStateException("Unable to load SitDownRestaurants " + restaurantId, e);
+			}
+			restaurant = loader.getSitDownRestaurant(restaurantId);
+		}
+		if (restaurant != null) {
+			super.setName(restaurant.getName());
+			super.setDescription(restaurant.getDescription());
+			super.setMenu(restaurant.getMenu());
+			super.setHours(restaurant.getHours());
+			super.setActive(restaurant.isActive());
+			super.setCuisineType(restaurant.getCuisineType());
+			super.setStreet1(restaurant.getStreet1());
+			super.setStreet2(restaurant.getStreet2());
+			super.setCity(restaurant.getCity());
+			super.setState(restaurant.getState());
+			super.setZip(restaurant.getZip());
+			super.setCompany(restaurant.getCompany());
+			super.setCapacity(restaurant.getCapacity());
+		}
+		initialized = true;
+	}
+
+	@Override
+	public void setRestaurantId(int restaurantId) {
+		initialize();
+		super.setRestaurantId(restaurantId);
+	}
+
+	@Override
+	public String getName() {
+		initialize();
+		return super.getName();
+	}
+
+	@Override
+	public void setName(String name) {
+		initialize();
+		super.setName(name);
+	}
+
+	@Override
+	public String getDescription() {
+		initialize();
+		return super.getDescription();
+	}
+
+	@Override
+	public void setDescription(String description) {
+		initialize();
+		super.setDescription(description);
+	}
+
+	@Override
+	public String getMenu() {
+		initialize();
+		return super.getMenu();
+	}
+
+	@Override
+	public void setMenu(String menu) {
+		initialize();
+		super.setMenu(menu);
+	}
+
+	@Override
+	public String getHours() {
+		initialize();
+		return super.getHours();
+	}
+
+	@Override
+	public void setHours(String hours) {
+		initialize();
+		super.setHours(hours);
+	}
+
+	@Override
+	public boolean isActive() {
+		initialize();
+		return super.isActive();
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		initialize();
+		super.setActive(active);
+	}
+
+	@Override
+	public CuisineType getCuisineType() {
+		initialize();
+		return super.getCuisineType();
+	}
+
+	@Override
+	public void setCuisineType(CuisineType cuisineType) {
+		initialize();
+		super.setCuisineType(cuisineType);
+	}
+
+	@Override
+	public String getStreet1() {
+		initialize();
+		return super.getStreet1();
+	}
+
+	@Override
+	public void setStreet1(String street1) {
+		initialize();
+		super.setStreet1(street1);
+	}
+
+	@Override
+	public String getStreet2() {
+		initialize();
+		return super.getStreet2();
+	}
+
+	@Override
+	public void setStreet2(String street2) {
+		initialize();
+		super.setStreet2(street2);
+	}
+
+	@Override
+	public String getCity() {
+		initialize();
+		return super.getCity();
+	}
+
+	@Override
+	public void setCity(String city) {
+		initialize();
+		super.setCity(city);
+	}
+
+	@Override
+	public String getState() {
+		initialize();
+		return super.getState();
+	}
+
+	@Override
+	public void setState(String state) {
+		initialize();
+		super.setState(state);
+	}
+
+	@Override
+	public int getZip() {
+		initialize();
+		return super.getZip();
+	}
+
+	@Override
+	public void setZip(int zip) {
+		initialize();
+		super.setZip(zip);
+	}
+
+	@Override
+	public Companies getCompany() {
+		initialize();
+		return super.getCompany();
+	}
+
+	@Override
+	public void setCompany(Companies company) {
+		initialize();
+		super.setCompany(company);
+	}
+
+	@Override
+	public int getCapacity() {
+		initialize();
+		return super.getCapacity();
+	}
+
+	@Override
+	public void setCapacity(int capacity) {
+		initialize();
+		super.setCapacity(capacity);
+	}
+}
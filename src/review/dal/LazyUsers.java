@@ -0,0 +1,119 @@
+package review.dal;
+
+import java.sql.SQLException;
+
+import review.model.*;
+
+/**
+ * A Users that holds only its UserName until one of its other properties is
+ * used. Then it loads the user through the BatchLoader of the result it came
+ * from, together with every other lazy reference of that result, and copies
+ * the fields in. See FetchMode.LAZY.
+ *
+ * getUserName() never loads. If the user no longer exists, the other
+ * properties stay null. A failed load throws IllegalStateException, because
+ * the getters cannot throw SQLException.
+ */
+public class LazyUsers extends Users {
+	private final BatchLoader loader;
+	private boolean initialized = false;
+
+	public LazyUsers(String userName, BatchLoader loader) {
+		super(userName);
+		this.loader = loader;
+		loader.requestUser(userName);
+	}
+
+	public synchronized boolean isInitialized() {
+		return initialized;
+	}
+
+	private synchronized void initialize() {
+		if (initialized) {
+			return;
+		}
+		Users user;
+		synchronized (loader) {
+			try {
+				loader.dispatch();
+			} catch (SQLException e) {
+				throw new IllegalStateException("Unable to load Users " + userName, e);
+			}
+			user = loader.getUser(userName);
+		}
+		if (user != null) {
+			super.setPassword(user.getPassword());
+			super.setFirstName(user.getFirstName());
+			super.setLastName(user.getLastName());
+			super.setEmail(user.getEmail());
+			super.setPhone(user.getPhone());
+		}
+		initialized = true;
+	}
+
+	@Override
+	public void setUserName(String userName) {
+		initialize();
+		super.setUserName(userName);
+	}
+
+	@Override
+	public String getPassword() {
+		initialize();
+		return super.getPassword();
+	}
+
+	@Override
+	public void setPassword(String password) {
+		initialize();
+		super.setPassword(password);
+	}
+
+	@Override
+	public String getFirstName() {
+		initialize();
+		return super.getFirstName();
+	}
+
+	@Override
+	public void setFirstName(String firstName) {
+		initialize();
+		super.setFirstName(firstName);
+	}
+
+	@Override
+	public String getLastName() {
+		initialize();
+		return super.getLastName();
+	}
+
+	@Override
+	public void setLastName(String lastName) {
+		initialize();
+		super.setLastName(lastName);
+	}
+
+	@Override
+	public String getEmail() {
+		initialize();
+		return super.getEmail();
+	}
+
+	@Override
+	public void setEmail(String email) {
+		initialize();
+		super.setEmail(email);
+	}
+
+	@Override
+	public String getPhone() {
+		initialize();
+		return super.getPhone();
+	}
+
+	@Override
+	public void setPhone(String phone) {
+		initialize();
+		super.setPhone(phone);
+	}
+}
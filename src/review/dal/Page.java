@@ -0,0 +1,106 @@
+package review.dal;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated query: up to pageSize items, plus the cursor
+ * of the next page, or null if this is the last one.
+ *
+ * A cursor is an opaque token that encodes the sort key and id of the last item
+ * of the page. The next page is read with "WHERE (SortKey, Id) < (cursor)" on a
+ * composite index rather than with OFFSET, so page 100 costs the same as page 1
+ * and rows inserted meanwhile neither repeat nor skip items.
+ */
+public class Page<T> {
+	// Largest pageSize the paged DAO methods accept.
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	private final List<T> items;
+	private final String nextCursor;
+
+	public Page(List<T> items, String nextCursor) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextCursor = nextCursor;
+	}
+
+	/** The items of the page. Unmodifiable. */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/** The cursor to pass for the next page, or null if there is none. */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+	/**
+	 * Build the page from rows read with "LIMIT pageSize + 1": the extra row only
+	 * tells that there is a next page, whose cursor is that of the last item kept.
+	 */
+	static <T> Page<T> of(List<T> rows, int pageSize, Function<T, Cursor> cursorOf) {
+		if (rows.size() <= pageSize) {
+			return new Page<T>(rows, null);
+		}
+		List<T> items = rows.subList(0, pageSize);
+		return new Page<T>(items, cursorOf.apply(items.get(pageSize - 1)).encode());
+	}
+
+	static void checkPageSize(int pageSize) {
+		if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE + ": " + pageSize);
+		}
+	}
+
+	/**
+	 * The position after an item: its sort key (e.g. a timestamp in milliseconds)
+	 * and its id, which breaks ties between equal sort keys.
+	 */
+	static class Cursor {
+		private static final byte VERSION = 1;
+
+		final long sortKey;
+		final int id;
+
+		Cursor(long sortKey, int id) {
+			this.sortKey = sortKey;
+			this.id = id;
+		}
+
+		String encode() {
+			ByteBuffer buffer = ByteBuffer.allocate(13);
+			buffer.put(VERSION).putLong(sortKey).putInt(id);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+		}
+
+		/**
+		 * Decode a token made by encode(), or return null for a null token (the
+		 * first page).
+		 *
+		 * @throws IllegalArgumentException if the token is not a cursor.
+		 */
+		static Cursor decode(String token) {
+			if (token == null) {
+				return null;
+			}
+			byte[] bytes;
+			try {
+				bytes = Base64.getUrlDecoder().decode(token);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid page cursor: " + token, e);
+			}
+			if (bytes.length != 13 || bytes[0] != VERSION) {
+				throw new IllegalArgumentException("Invalid page cursor: " + token);
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, 12);
+			return new Cursor(buffer.getLong(), buffer.getInt());
+		}
+	}
+}
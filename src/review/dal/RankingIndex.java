@@ -0,0 +1,457 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import review.model.*;
+
+/**
+ * An in-memory index of the top-rated active restaurants of every (CuisineType,
+ * City, State), e.g. the best AFRICAN restaurants in Seattle, WA. City and State
+ * match case-insensitively, as they do in MySQL.
+ *
+ * Restaurants are ranked by the Bayesian average of their ratings,
+ * (priorWeight * priorMean + ratingSum) / (priorWeight + reviewCount), which
+ * treats every restaurant as if it also had priorWeight reviews at the average
+ * rating of all reviews, so a single 5.0 review does not outrank hundreds of
+ * 4.8 ones. The prior mean is taken when the index is loaded and then held
+ * fixed, so a review only moves the score of its own restaurant. Restaurants
+ * without reviews are not ranked.
+ *
+ * The index is loaded on first use with one streaming scan of RatingStats
+ * joined with Restaurants, so no request groups Reviews. Each group keeps the
+ * topK best of its active restaurants in a bounded TreeSet, and publishes them
+ * as an unmodifiable list that getTop() returns without locking or allocating
+ * beyond a subList. It is then kept current incrementally: as a
+ * ReviewsDao.ReviewListener it applies each committed review to its
+ * restaurant's score and top set in O(log topK), and rescans a group only when
+ * one of its top restaurants falls below restaurants outside the set. As a
+ * RestaurantCache.InvalidationListener it queues a restaurant that changed or
+ * was deleted (e.g. RestaurantsDao.updateActive()) until the next lookup rereads
+ * it, together with any restaurant getting its first review.
+ *
+ * A review that commits just before the load's scan but is reported after the
+ * load completes is counted twice; invalidateAll() reloads the index.
+ */
+public class RankingIndex implements RestaurantCache.InvalidationListener, ReviewsDao.ReviewListener {
+
+	/** Scans the Rows of every restaurant with reviews. */
+	interface Scanner {
+		ScanIterator<Row> scan() throws SQLException;
+	}
+
+	// Number of restaurants kept per group; the largest n that getTop() accepts.
+	public static final int DEFAULT_TOP_K = Integer.getInteger("review.ranking.topK", 100);
+	// Weight of the prior mean in the Bayesian average, as a number of reviews.
+	public static final int DEFAULT_PRIOR_WEIGHT = Integer.getInteger("review.ranking.priorWeight", 10);
+
+	/** The columns of Restaurants and RatingStats that rank one restaurant. */
+	static class Row {
+		final int restaurantId;
+		final Restaurants.CuisineType cuisineType;
+		final String city;
+		final String state;
+		final boolean active;
+		final int reviewCount;
+		final double ratingSum;
+
+		Row(int restaurantId, Restaurants.CuisineType cuisineType, String city, String state, boolean active,
+				int reviewCount, double ratingSum) {
+			this.restaurantId = restaurantId;
+			this.cuisineType = cuisineType;
+			this.city = city;
+			this.state = state;
+			this.active = active;
+			this.reviewCount = reviewCount;
+			this.ratingSum = ratingSum;
+		}
+	}
+
+	// A ranked restaurant. Mutable, guarded by the index; remove it from its
+	// group's top set before changing ranked, which the set is ordered by.
+	private static class Member {
+		final int restaurantId;
+		final Group group;
+		final boolean active;
+		int reviewCount;
+		double ratingSum;
+		RankedRestaurant ranked;
+
+		Member(Row row, Group group) {
+			this.restaurantId = row.restaurantId;
+			this.group = group;
+			this.active = row.active;
+			this.reviewCount = row.reviewCount;
+			this.ratingSum = row.ratingSum;
+		}
+	}
+
+	// The ranked restaurants of one (CuisineType, City, State).
+	private static class Group {
+		// Guarded by the index.
+		final Set<Member> members = new HashSet<Member>();
+		final TreeSet<Member> top = new TreeSet<Member>(BY_SCORE);
+		// The members of top, in order. Replaced, never modified.
+		volatile List<RankedRestaurant> ranking = Collections.emptyList();
+	}
+
+	// Best first; ties by RestaurantId so that distinct members never compare equal.
+	private static final Comparator<Member> BY_SCORE = (a, b) -> {
+		int byScore = Double.compare(b.ranked.getScore(), a.ranked.getScore());
+		return byScore != 0 ? byScore : Integer.compare(a.restaurantId, b.restaurantId);
+	};
+
+	private final int topK;
+	private final int priorWeight;
+
+	// null until loaded. Groups are added under "this" and read without locking.
+	private volatile Map<String, Group> groups = null;
+	// Guarded by "this".
+	private Map<Integer, Member> members = new HashMap<Integer, Member>();
+	private double priorMean = RatingStats.MAX_RATING / 2;
+	// Ids to reread before the next lookup, and whether there are any.
+	private Set<Integer> pending = new HashSet<Integer>();
+	private volatile boolean stale = false;
+	// Whether a load is scanning, and the ids a refresh is rereading. Reviews of
+	// these restaurants are queued rather than applied, since the rows read may
+	// or may not include them.
+	private boolean loading = false;
+	private Set<Integer> refreshing = Collections.emptySet();
+	// Serializes loads and refreshes, without blocking the listeners meanwhile.
+	private final Object loadLock = new Object();
+
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder rescans = new LongAdder();
+
+	public RankingIndex(int topK, int priorWeight) {
+		if (topK < 1 || priorWeight < 0) {
+			throw new IllegalArgumentException("topK must be positive and priorWeight not negative");
+		}
+		this.topK = topK;
+		this.priorWeight = priorWeight;
+	}
+
+	/**
+	 * Get the n best active restaurants of cuisineType in city, state, best first,
+	 * loading the index with scanner on first use and rereading queued
+	 * restaurants with byIds. The list is unmodifiable and may be shorter than n.
+	 *
+	 * @throws SQLException
+	 */
+	List<RankedRestaurant> getTop(Restaurants.CuisineType cuisineType, String city, String state, int n,
+			Scanner scanner, EntityCache.BulkLoader<Integer, Row> byIds) throws SQLException {
+		if (n < 1 || n > topK) {
+			throw new IllegalArgumentException("n must be between 1 and " + topK + ": " + n);
+		}
+		lookups.increment();
+		Map<String, Group> current = groups;
+		if (current == null || stale) {
+			synchronized (loadLock) {
+				if (groups == null) {
+					load(scanner);
+				}
+				refresh(byIds);
+				// Read under loadLock: once it is released, invalidateAll() may clear groups.
+				current = groups;
+			}
+		}
+		Group group = current.get(groupKey(cuisineType, city, state));
+		if (group == null) {
+			return Collections.emptyList();
+		}
+		List<RankedRestaurant> ranking = group.ranking;
+		return ranking.size() <= n ? ranking : ranking.subList(0, n);
+	}
+
+	// Build the whole index from one scan, then install it. Holds loadLock.
+	private void load(Scanner scanner) throws SQLException {
+		synchronized (this) {
+			loading = true;
+			pending = new HashSet<Integer>();
+		}
+		try {
+			List<Row> rows = new ArrayList<Row>();
+			long reviewCount = 0;
+			double ratingSum = 0;
+			ScanIterator<Row> scan = scanner.scan();
+			try {
+				while (scan.hasNext()) {
+					Row row = scan.next();
+					if (row.reviewCount > 0) {
+						rows.add(row);
+						reviewCount += row.reviewCount;
+						ratingSum += row.ratingSum;
+					}
+				}
+			} finally {
+				scan.close();
+			}
+			synchronized (this) {
+				priorMean = reviewCount == 0 ? RatingStats.MAX_RATING / 2 : ratingSum / reviewCount;
+				members = new HashMap<Integer, Member>(rows.size() * 2);
+				groups = new ConcurrentHashMap<String, Group>();
+				for (Row row : rows) {
+					add(row, false);
+				}
+				for (Group group : groups.values()) {
+					publish(group);
+				}
+			}
+		} finally {
+			synchronized (this) {
+				loading = false;
+			}
+		}
+	}
+
+	// Reread the queued restaurants and replace their members. Holds loadLock.
+	private void refresh(EntityCache.BulkLoader<Integer, Row> byIds) throws SQLException {
+		Set<Integer> ids;
+		synchronized (this) {
+			ids = pending;
+			pending = new HashSet<Integer>();
+			stale = false;
+			refreshing = ids;
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+		Map<Integer, Row> rows;
+		try {
+			rows = byIds.loadAll(ids);
+		} catch (SQLException e) {
+			synchronized (this) {
+				refreshing = Collections.emptySet();
+				pending.addAll(ids);
+				stale = true;
+			}
+			throw e;
+		}
+		synchronized (this) {
+			refreshing = Collections.emptySet();
+			for (Integer restaurantId : ids) {
+				Member member = members.get(restaurantId);
+				if (member != null) {
+					remove(member);
+				}
+				Row row = rows.get(restaurantId);
+				if (row != null && row.reviewCount > 0) {
+					add(row, true);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void reviewsCreated(Collection<Reviews> reviews) {
+		apply(reviews, 1);
+	}
+
+	@Override
+	public void reviewsDeleted(Collection<Reviews> reviews) {
+		apply(reviews, -1);
+	}
+
+	private synchronized void apply(Collection<Reviews> reviews, int sign) {
+		if (groups == null && !loading) {
+			// Not loaded; the load will read them.
+			return;
+		}
+		for (Reviews review : reviews) {
+			if (review.getRestaurant() == null) {
+				continue;
+			}
+			int restaurantId = review.getRestaurant().getRestaurantId();
+			Member member = members.get(restaurantId);
+			if (loading || member == null || refreshing.contains(restaurantId)) {
+				queue(restaurantId);
+			} else {
+				change(member, sign, sign * review.getRating());
+			}
+		}
+	}
+
+	@Override
+	public synchronized void restaurantInvalidated(int restaurantId) {
+		if (groups != null || loading) {
+			queue(restaurantId);
+		}
+	}
+
+	@Override
+	public void allRestaurantsInvalidated() {
+		// Companies changed; they do not affect rankings.
+	}
+
+	/**
+	 * Drop the index, so the next lookup loads it again (and takes a new prior
+	 * mean).
+	 */
+	public void invalidateAll() {
+		synchronized (loadLock) {
+			synchronized (this) {
+				groups = null;
+				members = new HashMap<Integer, Member>();
+				pending = new HashSet<Integer>();
+				stale = false;
+			}
+		}
+	}
+
+	// Holds "this".
+	private void queue(int restaurantId) {
+		pending.add(restaurantId);
+		stale = true;
+	}
+
+	// Add a member for row. Holds "this".
+	private void add(Row row, boolean publish) {
+		String key = groupKey(row.cuisineType, row.city, row.state);
+		Group group = groups.computeIfAbsent(key, k -> new Group());
+		Member member = new Member(row, group);
+		rank(member);
+		members.put(member.restaurantId, member);
+		group.members.add(member);
+		if (offer(group, member) && publish) {
+			publish(group);
+		}
+	}
+
+	// Holds "this".
+	private void remove(Member member) {
+		members.remove(member.restaurantId);
+		Group group = member.group;
+		group.members.remove(member);
+		if (group.top.remove(member)) {
+			if (group.members.size() > group.top.size()) {
+				rescan(group);
+			}
+			publish(group);
+		}
+	}
+
+	// Apply reviews to member's count and sum. Holds "this".
+	private void change(Member member, int countDelta, double sumDelta) {
+		Group group = member.group;
+		boolean wasTop = group.top.remove(member);
+		member.reviewCount += countDelta;
+		member.ratingSum += sumDelta;
+		if (member.reviewCount <= 0) {
+			// Its last review is gone; it is ranked again once it gets another.
+			members.remove(member.restaurantId);
+			group.members.remove(member);
+			if (wasTop) {
+				if (group.members.size() > group.top.size()) {
+					rescan(group);
+				}
+				publish(group);
+			}
+			return;
+		}
+		rank(member);
+		if (!wasTop) {
+			if (offer(group, member)) {
+				publish(group);
+			}
+			return;
+		}
+		// The restaurants outside the top set are no better than the rest of it. If
+		// member fell below the rest, one of them may now beat it.
+		boolean outsiders = group.members.size() > group.top.size() + 1;
+		if (outsiders && (group.top.isEmpty() || BY_SCORE.compare(member, group.top.last()) > 0)) {
+			rescan(group);
+		} else {
+			group.top.add(member);
+		}
+		publish(group);
+	}
+
+	// Put member into the top set if it belongs there. Holds "this".
+	private boolean offer(Group group, Member member) {
+		if (!member.active) {
+			return false;
+		}
+		if (group.top.size() < topK) {
+			group.top.add(member);
+			return true;
+		}
+		if (BY_SCORE.compare(member, group.top.last()) >= 0) {
+			return false;
+		}
+		group.top.pollLast();
+		group.top.add(member);
+		return true;
+	}
+
+	// Rebuild the top set from all members, in O(members * log topK). Holds "this".
+	private void rescan(Group group) {
+		rescans.increment();
+		group.top.clear();
+		for (Member member : group.members) {
+			offer(group, member);
+		}
+	}
+
+	// Holds "this".
+	private void rank(Member member) {
+		double score = (priorWeight * priorMean + member.ratingSum) / (priorWeight + member.reviewCount);
+		member.ranked = new RankedRestaurant(member.restaurantId, member.reviewCount,
+				member.ratingSum / member.reviewCount, score);
+	}
+
+	// Holds "this".
+	private static void publish(Group group) {
+		List<RankedRestaurant> ranking = new ArrayList<RankedRestaurant>(group.top.size());
+		for (Member member : group.top) {
+			ranking.add(member.ranked);
+		}
+		group.ranking = Collections.unmodifiableList(ranking);
+	}
+
+	private static String groupKey(Restaurants.CuisineType cuisineType, String city, String state) {
+		return cuisineType + "|" + String.valueOf(city).toLowerCase(Locale.ROOT) + "|"
+				+ String.valueOf(state).toLowerCase(Locale.ROOT);
+	}
+
+	public int getTopK() {
+		return topK;
+	}
+
+	/** The mean rating of all reviews when the index was loaded. */
+	public synchronized double getPriorMean() {
+		return priorMean;
+	}
+
+	/** The number of ranked restaurants, 0 if not loaded. */
+	public synchronized int size() {
+		return members.size();
+	}
+
+	public long getLookupCount() {
+		return lookups.sum();
+	}
+
+	public long getRescanCount() {
+		return rescans.sum();
+	}
+
+	@Override
+	public String toString() {
+		Map<String, Group> current = groups;
+		return String.format("RankingIndex[loaded=%b restaurants=%d groups=%d priorMean=%.3f lookups=%d rescans=%d]",
+				current != null, size(), current == null ? 0 : current.size(), getPriorMean(),
+				getLookupCount(), getRescanCount());
+	}
+}
@@ -0,0 +1,333 @@
+package review.dal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import review.model.*;
+
+/**
+ * Data access object (DAO) class to interact with the underlying RatingStats
+ * table in your MySQL instance, which holds one {@link RatingStats} row per
+ * restaurant with reviews.
+ *
+ * The rows are not written by callers: ReviewsDao.create(), createAll() and
+ * delete() apply the change of every review to the row of its restaurant in the
+ * same transaction as the review itself, so the stats never disagree with the
+ * committed reviews. rebuild() recomputes them from the Reviews table; the
+ * RatingStatsBackfill tool runs it in parallel over slices of RestaurantIds
+ * (e.g. once after the table is added).
+ *
+ * Writers lock Reviews rows before RatingStats rows, here and in ReviewsDao, so
+ * a rebuild and concurrent reviews wait for each other instead of deadlocking.
+ */
+public class RatingStatsDao implements RestaurantCache.InvalidationListener {
+	// Maximum number of RatingStats kept in the cache. 0 turns the cache off.
+	private static final int CACHE_SIZE = Integer.getInteger("review.cache.ratingStats.maxSize", 10000);
+
+	// The histogram columns: Rating00 for 0.0, Rating05 for 0.5, ..., Rating50 for 5.0.
+	private static final String[] HISTOGRAM_COLUMNS = new String[RatingStats.BUCKET_COUNT];
+	static {
+		for (int i = 0; i < RatingStats.BUCKET_COUNT; i++) {
+			HISTOGRAM_COLUMNS[i] = String.format("Rating%02d", i * 5);
+		}
+	}
+	private static final String COLUMNS =
+			"RestaurantId,ReviewCount,RatingSum," + String.join(",", HISTOGRAM_COLUMNS);
+
+	protected ConnectionManager connectionManager;
+
+	// Read-through cache of RatingStats by RestaurantId, including the empty stats
+	// of restaurants without reviews. ReviewsDao invalidates the restaurants it
+	// changed once it has committed.
+	protected final EntityCache<Integer, RatingStats> cache;
+
+	protected RatingStatsDao(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+		this.cache = new EntityCache<Integer, RatingStats>("RatingStats", CACHE_SIZE);
+	}
+
+	// The single instance is built and owned by DaoRegistry.
+	public static RatingStatsDao getInstance() {
+		return DaoRegistry.get().getRatingStatsDao();
+	}
+
+	public EntityCache<Integer, RatingStats> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Get the RatingStats of a restaurant from the cache, fetching it from your
+	 * MySQL instance on a miss. A restaurant without reviews (or that does not
+	 * exist) has empty stats. The returned instance is shared with other callers.
+	 *
+	 * @throws SQLException
+	 */
+	public RatingStats getRatingStatsByRestaurantId(int restaurantId) throws SQLException {
+		return cache.get(restaurantId,
+				key -> selectRatingStatsByRestaurantIds(Collections.singletonList(key)).get(key));
+	}
+
+	/**
+	 * Get the RatingStats of the given restaurants from the cache, fetching all the
+	 * misses from your MySQL instance with one batch, e.g. for the rating badges
+	 * of a list page. Every id is in the returned map.
+	 *
+	 * @throws SQLException
+	 */
+	public Map<Integer, RatingStats> getRatingStatsByRestaurantIds(int[] restaurantIds) throws SQLException {
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int restaurantId : BatchLoader.distinct(restaurantIds)) {
+			keys.add(restaurantId);
+		}
+		return cache.getAll(keys, this::selectRatingStatsByRestaurantIds);
+	}
+
+	/**
+	 * Get the RatingStats of the given restaurants by fetching them from your MySQL
+	 * instance. This runs one "WHERE RestaurantId IN (...)" SELECT statement per
+	 * chunk of BatchLoader.CHUNK_SIZE ids. Ids without a row get empty stats.
+	 *
+	 * @throws SQLException
+	 */
+	protected Map<Integer, RatingStats> selectRatingStatsByRestaurantIds(Collection<Integer> restaurantIds)
+			throws SQLException {
+		Map<Integer, RatingStats> stats = new HashMap<Integer, RatingStats>();
+		int[] keys = BatchLoader.toIntArray(new LinkedHashSet<Integer>(restaurantIds));
+		if (keys.length == 0) {
+			return stats;
+		}
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			for (int from = 0; from < keys.length; from += BatchLoader.CHUNK_SIZE) {
+				int to = Math.min(from + BatchLoader.CHUNK_SIZE, keys.length);
+				String selectStats = "SELECT " + COLUMNS + " FROM RatingStats "
+						+ "WHERE RestaurantId IN (" + BatchLoader.placeholders(to - from) + ");";
+				selectStmt = connection.prepareStatement(selectStats);
+				for (int i = from; i < to; i++) {
+					selectStmt.setInt(i - from + 1, keys[i]);
+				}
+				results = selectStmt.executeQuery();
+				while (results.next()) {
+					int restaurantId = results.getInt("RestaurantId");
+					int reviewCount = results.getInt("ReviewCount");
+					double ratingSum = results.getDouble("RatingSum");
+					int[] histogram = new int[RatingStats.BUCKET_COUNT];
+					for (int i = 0; i < histogram.length; i++) {
+						histogram[i] = results.getInt(HISTOGRAM_COLUMNS[i]);
+					}
+					stats.put(restaurantId, new RatingStats(restaurantId, reviewCount, ratingSum, histogram));
+				}
+				results.close();
+				selectStmt.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		for (int restaurantId : keys) {
+			if (!stats.containsKey(restaurantId)) {
+				stats.put(restaurantId, new RatingStats(restaurantId));
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Add the ratings of reviews to the stats of their restaurants (or subtract
+	 * them, if sign is -1) on the caller's connection, as part of the caller's
+	 * transaction. This runs one batched upsert with a row per restaurant, in
+	 * RestaurantId order so that concurrent writers lock the rows in the same
+	 * order. Reviews without a restaurant are skipped. Call invalidate() for the
+	 * same reviews once the transaction has committed.
+	 *
+	 * @throws SQLException
+	 */
+	void applyReviews(Connection connection, Collection<Reviews> reviews, int sign) throws SQLException {
+		Map<Integer, Delta> deltas = new TreeMap<Integer, Delta>();
+		for (Reviews review : reviews) {
+			if (review.getRestaurant() == null) {
+				continue;
+			}
+			int restaurantId = review.getRestaurant().getRestaurantId();
+			Delta delta = deltas.get(restaurantId);
+			if (delta == null) {
+				delta = new Delta(restaurantId);
+				deltas.put(restaurantId, delta);
+			}
+			delta.reviewCount += sign;
+			delta.ratingSum += sign * review.getRating();
+			delta.histogram[RatingStats.bucketOf(review.getRating())] += sign;
+		}
+		if (deltas.isEmpty()) {
+			return;
+		}
+		StringBuilder upsertStats = new StringBuilder("INSERT INTO RatingStats(" + COLUMNS + ") VALUES(?,?,?,"
+				+ BatchLoader.placeholders(RatingStats.BUCKET_COUNT) + ") "
+				+ "ON DUPLICATE KEY UPDATE ReviewCount=ReviewCount+VALUES(ReviewCount),"
+				+ "RatingSum=RatingSum+VALUES(RatingSum)");
+		for (String column : HISTOGRAM_COLUMNS) {
+			upsertStats.append(',').append(column).append('=').append(column).append("+VALUES(").append(column)
+					.append(')');
+		}
+		upsertStats.append(';');
+		PreparedStatement upsertStmt = null;
+		try {
+			upsertStmt = connection.prepareStatement(upsertStats.toString());
+			JdbcBatch.execute(upsertStmt, new ArrayList<Delta>(deltas.values()), (stmt, delta) -> {
+				stmt.setInt(1, delta.restaurantId);
+				stmt.setInt(2, delta.reviewCount);
+				stmt.setDouble(3, delta.ratingSum);
+				for (int i = 0; i < delta.histogram.length; i++) {
+					stmt.setInt(4 + i, delta.histogram[i]);
+				}
+			}, null);
+		} finally {
+			if (upsertStmt != null) {
+				upsertStmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Drop the cached stats of the restaurants of reviews.
+	 */
+	void invalidate(Collection<Reviews> reviews) {
+		for (Reviews review : reviews) {
+			if (review.getRestaurant() != null) {
+				cache.invalidate(review.getRestaurant().getRestaurantId());
+			}
+		}
+	}
+
+	/**
+	 * Recompute the stats of the restaurants with fromRestaurantId <= RestaurantId
+	 * <= toRestaurantId from their Reviews, in one transaction. This runs an
+	 * INSERT ... SELECT that aggregates the Reviews of the range, then deletes the
+	 * rows of restaurants in the range that no longer have reviews. While it runs,
+	 * reviews of the range wait for it to commit. Returns the number of
+	 * restaurants with reviews in the range.
+	 *
+	 * @throws SQLException
+	 */
+	public int rebuild(int fromRestaurantId, int toRestaurantId) throws SQLException {
+		StringBuilder aggregates = new StringBuilder("RestaurantId,COUNT(*),SUM(Rating)");
+		StringBuilder updates = new StringBuilder("ReviewCount=VALUES(ReviewCount),RatingSum=VALUES(RatingSum)");
+		for (int i = 0; i < RatingStats.BUCKET_COUNT; i++) {
+			// Rounded like RatingStats.bucketOf(), so that both count a rating in the same bucket.
+			aggregates.append(",SUM(ROUND(Rating*2)=").append(i).append(')');
+			updates.append(',').append(HISTOGRAM_COLUMNS[i]).append("=VALUES(").append(HISTOGRAM_COLUMNS[i])
+					.append(')');
+		}
+		String insertStats = "INSERT INTO RatingStats(" + COLUMNS + ") "
+				+ "SELECT " + aggregates + " FROM Reviews "
+				+ "WHERE RestaurantId BETWEEN ? AND ? GROUP BY RestaurantId "
+				+ "ON DUPLICATE KEY UPDATE " + updates + ";";
+		String deleteStats = "DELETE FROM RatingStats WHERE RestaurantId BETWEEN ? AND ? "
+				+ "AND RestaurantId NOT IN (SELECT RestaurantId FROM Reviews WHERE RestaurantId BETWEEN ? AND ?);";
+		String countStats = "SELECT COUNT(*) FROM RatingStats WHERE RestaurantId BETWEEN ? AND ?;";
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		PreparedStatement deleteStmt = null;
+		PreparedStatement countStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			// The INSERT ... SELECT locks the Reviews of the range before any RatingStats
+			// row, in the same order as ReviewsDao.
+			insertStmt = connection.prepareStatement(insertStats);
+			insertStmt.setInt(1, fromRestaurantId);
+			insertStmt.setInt(2, toRestaurantId);
+			insertStmt.executeUpdate();
+			deleteStmt = connection.prepareStatement(deleteStats);
+			deleteStmt.setInt(1, fromRestaurantId);
+			deleteStmt.setInt(2, toRestaurantId);
+			deleteStmt.setInt(3, fromRestaurantId);
+			deleteStmt.setInt(4, toRestaurantId);
+			deleteStmt.executeUpdate();
+			countStmt = connection.prepareStatement(countStats);
+			countStmt.setInt(1, fromRestaurantId);
+			countStmt.setInt(2, toRestaurantId);
+			results = countStmt.executeQuery();
+			results.next();
+			int count = results.getInt(1);
+			connection.commit();
+			if ((long) toRestaurantId - fromRestaurantId >= CACHE_SIZE) {
+				cache.invalidateAll();
+			} else {
+				for (int restaurantId = fromRestaurantId; restaurantId <= toRestaurantId; restaurantId++) {
+					cache.invalidate(restaurantId);
+				}
+			}
+			return count;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+			if (deleteStmt != null) {
+				deleteStmt.close();
+			}
+			if (countStmt != null) {
+				countStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+	}
+
+	// The change applyReviews() makes to the row of one restaurant.
+	private static class Delta {
+		final int restaurantId;
+		int reviewCount = 0;
+		double ratingSum = 0;
+		final int[] histogram = new int[RatingStats.BUCKET_COUNT];
+
+		Delta(int restaurantId) {
+			this.restaurantId = restaurantId;
+		}
+	}
+
+	// The RatingStats row of a restaurant is deleted with it (ON DELETE CASCADE).
+	@Override
+	public void restaurantInvalidated(int restaurantId) {
+		cache.invalidate(restaurantId);
+	}
+
+	@Override
+	public void allRestaurantsInvalidated() {
+		// Companies do not affect ratings.
+	}
+}
@@ -0,0 +1,427 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import review.model.*;
+
+/**
+ * An in-memory index of the daily review counts and rating sums of every
+ * restaurant over the last DEFAULT_DAYS days, for rating trends (e.g. the
+ * average rating over the last 7, 30 or 90 days) and weekly review volumes per
+ * restaurant and per company. Days are calendar days in the zone the index was
+ * built with.
+ *
+ * Each restaurant with reviews in the window has a ring buffer of one bucket
+ * per day: the bucket of a day is reused for the day DEFAULT_DAYS later, and is
+ * reset lazily when that day gets its first review, so old days expire without
+ * a sweep. A company's trend is the sum of its restaurants' rings, by the
+ * CompanyName each restaurant had when its reviews were read.
+ *
+ * The index is built on first use from a streaming scan of the Reviews created
+ * in the window, joined with Restaurants for the CompanyName. It is then kept
+ * current as a ReviewsDao.ReviewListener: a created or deleted review adds to
+ * or subtracts from the bucket of its Created day. A restaurant's first review
+ * in the window, and a restaurant the RestaurantCache invalidates, are queued
+ * until the next lookup rereads that restaurant's window (an index range scan
+ * of idx_Reviews_RestaurantId_Created). Otherwise lookups do not touch MySQL.
+ *
+ * As with RankingIndex, a review that commits just before the build's scan but
+ * is reported after the build completes is counted twice; invalidateAll()
+ * rebuilds the index.
+ */
+public class RatingTrendIndex implements RestaurantCache.InvalidationListener, ReviewsDao.ReviewListener {
+
+	/** Scans the Rows of all the Reviews created at or after fromMillis. */
+	interface Scanner {
+		ScanIterator<Row> scan(long fromMillis) throws SQLException;
+	}
+
+	/** Reads the Rows of the Reviews of some restaurants created at or after fromMillis. */
+	interface Reader {
+		List<Row> read(Collection<Integer> restaurantIds, long fromMillis) throws SQLException;
+	}
+
+	// Number of days kept per restaurant; the longest window a trend can cover.
+	public static final int DEFAULT_DAYS = Integer.getInteger("review.trend.days", 120);
+	// The zone whose calendar days the reviews are bucketed by.
+	public static final ZoneId DEFAULT_ZONE = ZoneId.of(System.getProperty("review.trend.zone",
+			ZoneId.systemDefault().getId()));
+
+	/** The columns of Reviews and Restaurants that place one review. */
+	static class Row {
+		final int restaurantId;
+		final String companyName;
+		final long createdMillis;
+		final double rating;
+
+		Row(int restaurantId, String companyName, long createdMillis, double rating) {
+			this.restaurantId = restaurantId;
+			this.companyName = companyName;
+			this.createdMillis = createdMillis;
+			this.rating = rating;
+		}
+	}
+
+	// The ring of daily buckets of one restaurant. Guarded by the index.
+	private static class DailyBuckets {
+		final String companyName;
+		// The epoch day each slot holds; slot = day mod length.
+		final long[] days;
+		final int[] counts;
+		// Ratings in tenths, so fractional ratings sum exactly.
+		final int[] ratingSums;
+
+		DailyBuckets(String companyName, int capacity) {
+			this.companyName = companyName;
+			this.days = new long[capacity];
+			this.counts = new int[capacity];
+			this.ratingSums = new int[capacity];
+			Arrays.fill(days, Long.MIN_VALUE);
+		}
+
+		void add(long day, int count, int ratingSum) {
+			int slot = (int) Math.floorMod(day, (long) days.length);
+			if (days[slot] != day) {
+				// A removal from a day that has expired, or a day older than the one the
+				// slot holds now, has nothing left to change.
+				if (count < 0 || days[slot] > day) {
+					return;
+				}
+				days[slot] = day;
+				counts[slot] = 0;
+				ratingSums[slot] = 0;
+			}
+			counts[slot] += count;
+			ratingSums[slot] += ratingSum;
+		}
+
+		// Add the buckets of fromDay onwards to counts and ratingSums, whose element
+		// 0 is fromDay.
+		void addTo(long fromDay, int[] toCounts, int[] toRatingSums) {
+			for (int i = 0; i < toCounts.length; i++) {
+				long day = fromDay + i;
+				int slot = (int) Math.floorMod(day, (long) days.length);
+				if (days[slot] == day) {
+					toCounts[i] += counts[slot];
+					toRatingSums[i] += ratingSums[slot];
+				}
+			}
+		}
+	}
+
+	private final int capacity;
+	private final ZoneId zone;
+
+	// null until built. Guarded by "this".
+	private Map<Integer, DailyBuckets> restaurants = null;
+	private Map<String, Set<Integer>> restaurantsByCompany = new HashMap<String, Set<Integer>>();
+	// Whether the index is built; read without locking.
+	private volatile boolean built = false;
+	// Restaurants to reread before the next lookup, and whether there are any.
+	private Set<Integer> pending = new HashSet<Integer>();
+	private volatile boolean stale = false;
+	// Whether a build is scanning, and the restaurants a refresh is rereading.
+	// Their reviews are queued rather than applied, since the rows read may or may
+	// not include them.
+	private boolean loading = false;
+	private Set<Integer> refreshing = Collections.emptySet();
+	// Serializes builds and refreshes, without blocking the listeners meanwhile.
+	private final Object loadLock = new Object();
+
+	public RatingTrendIndex(int capacity, ZoneId zone) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.zone = zone;
+	}
+
+	/**
+	 * Get the trend of a restaurant over the last days days, ending today. See
+	 * getCompanyTrend().
+	 *
+	 * @throws SQLException
+	 */
+	RatingTrend getRestaurantTrend(int restaurantId, int days, Scanner scanner, Reader reader)
+			throws SQLException {
+		return getTrend(Collections.singleton(restaurantId), null, days, scanner, reader);
+	}
+
+	/**
+	 * Get the trend of all the restaurants of a company over the last days days,
+	 * ending today, building the index with scanner on first use and rereading
+	 * queued restaurants with reader. days is at most DEFAULT_DAYS.
+	 *
+	 * @throws SQLException
+	 */
+	RatingTrend getCompanyTrend(String companyName, int days, Scanner scanner, Reader reader)
+			throws SQLException {
+		return getTrend(null, companyName, days, scanner, reader);
+	}
+
+	private RatingTrend getTrend(Set<Integer> restaurantIds, String companyName, int days, Scanner scanner,
+			Reader reader) throws SQLException {
+		if (days < 1 || days > capacity) {
+			throw new IllegalArgumentException("days must be between 1 and " + capacity + ": " + days);
+		}
+		if (!built || stale) {
+			synchronized (loadLock) {
+				if (!built) {
+					load(scanner);
+				}
+				refresh(reader);
+			}
+		}
+		long fromDay = today() - days + 1;
+		int[] counts = new int[days];
+		int[] ratingSums = new int[days];
+		synchronized (this) {
+			// restaurants is null if invalidateAll() ran since the build.
+			if (restaurants != null) {
+				Set<Integer> ids = restaurantIds != null ? restaurantIds
+						: restaurantsByCompany.getOrDefault(companyName, Collections.<Integer>emptySet());
+				for (Integer restaurantId : ids) {
+					DailyBuckets buckets = restaurants.get(restaurantId);
+					if (buckets != null) {
+						buckets.addTo(fromDay, counts, ratingSums);
+					}
+				}
+			}
+		}
+		double[] sums = new double[days];
+		for (int i = 0; i < days; i++) {
+			sums[i] = ratingSums[i] / 10.0;
+		}
+		return new RatingTrend(LocalDate.ofEpochDay(fromDay), counts, sums);
+	}
+
+	// Build the whole index from one scan, then install it. Holds loadLock.
+	private void load(Scanner scanner) throws SQLException {
+		synchronized (this) {
+			loading = true;
+			pending = new HashSet<Integer>();
+		}
+		try {
+			long today = today();
+			Map<Integer, DailyBuckets> loaded = new HashMap<Integer, DailyBuckets>();
+			ScanIterator<Row> rows = scanner.scan(startOfDay(today - capacity + 1));
+			try {
+				while (rows.hasNext()) {
+					add(loaded, rows.next(), today);
+				}
+			} finally {
+				rows.close();
+			}
+			synchronized (this) {
+				restaurants = loaded;
+				restaurantsByCompany = new HashMap<String, Set<Integer>>();
+				for (Map.Entry<Integer, DailyBuckets> entry : loaded.entrySet()) {
+					addToCompany(entry.getKey(), entry.getValue());
+				}
+				built = true;
+			}
+		} finally {
+			synchronized (this) {
+				loading = false;
+			}
+		}
+	}
+
+	// Reread the window of the queued restaurants and replace their rings. Holds
+	// loadLock.
+	private void refresh(Reader reader) throws SQLException {
+		Set<Integer> ids;
+		long today = today();
+		synchronized (this) {
+			ids = pending;
+			pending = new HashSet<Integer>();
+			stale = false;
+			refreshing = ids;
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+		List<Row> rows;
+		try {
+			rows = reader.read(ids, startOfDay(today - capacity + 1));
+		} catch (SQLException e) {
+			synchronized (this) {
+				refreshing = Collections.emptySet();
+				pending.addAll(ids);
+				stale = true;
+			}
+			throw e;
+		}
+		synchronized (this) {
+			refreshing = Collections.emptySet();
+			for (Integer restaurantId : ids) {
+				DailyBuckets buckets = restaurants.remove(restaurantId);
+				if (buckets != null && buckets.companyName != null) {
+					Set<Integer> ofCompany = restaurantsByCompany.get(buckets.companyName);
+					ofCompany.remove(restaurantId);
+					if (ofCompany.isEmpty()) {
+						restaurantsByCompany.remove(buckets.companyName);
+					}
+				}
+			}
+			Map<Integer, DailyBuckets> reread = new HashMap<Integer, DailyBuckets>();
+			for (Row row : rows) {
+				add(reread, row, today);
+			}
+			for (Map.Entry<Integer, DailyBuckets> entry : reread.entrySet()) {
+				restaurants.put(entry.getKey(), entry.getValue());
+				addToCompany(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	// Add row to the ring of its restaurant in rings, creating it if needed.
+	private void add(Map<Integer, DailyBuckets> rings, Row row, long today) {
+		long day = dayOf(row.createdMillis);
+		if (!inWindow(day, today)) {
+			return;
+		}
+		DailyBuckets buckets = rings.get(row.restaurantId);
+		if (buckets == null) {
+			buckets = new DailyBuckets(row.companyName, capacity);
+			rings.put(row.restaurantId, buckets);
+		}
+		buckets.add(day, 1, tenthsOf(row.rating));
+	}
+
+	// Holds "this".
+	private void addToCompany(int restaurantId, DailyBuckets buckets) {
+		if (buckets.companyName != null) {
+			restaurantsByCompany.computeIfAbsent(buckets.companyName, name -> new HashSet<Integer>())
+					.add(restaurantId);
+		}
+	}
+
+	@Override
+	public void reviewsCreated(Collection<Reviews> reviews) {
+		apply(reviews, 1);
+	}
+
+	@Override
+	public void reviewsDeleted(Collection<Reviews> reviews) {
+		apply(reviews, -1);
+	}
+
+	private synchronized void apply(Collection<Reviews> reviews, int sign) {
+		if (!built && !loading) {
+			// Not built; the build will read them.
+			return;
+		}
+		long today = today();
+		for (Reviews review : reviews) {
+			if (review.getRestaurant() == null || review.getCreated() == null) {
+				continue;
+			}
+			int restaurantId = review.getRestaurant().getRestaurantId();
+			if (loading || refreshing.contains(restaurantId)) {
+				queue(restaurantId);
+				continue;
+			}
+			DailyBuckets buckets = restaurants.get(restaurantId);
+			if (buckets == null) {
+				// A restaurant without reviews in the window. Reread it, which also gets
+				// its CompanyName; a removal has nothing to subtract from.
+				if (sign > 0) {
+					queue(restaurantId);
+				}
+				continue;
+			}
+			long day = dayOf(review.getCreated().getTime());
+			if (inWindow(day, today)) {
+				buckets.add(day, sign, sign * tenthsOf(review.getRating()));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void restaurantInvalidated(int restaurantId) {
+		if (loading || (built && restaurants.containsKey(restaurantId))) {
+			queue(restaurantId);
+		}
+	}
+
+	@Override
+	public void allRestaurantsInvalidated() {
+		// A company changed. A deleted company's restaurants stay under its name
+		// until they are next reread; nothing looks the company up any more.
+	}
+
+	/**
+	 * Drop the index, so the next lookup builds it again.
+	 */
+	public void invalidateAll() {
+		synchronized (loadLock) {
+			synchronized (this) {
+				built = false;
+				restaurants = null;
+				restaurantsByCompany = new HashMap<String, Set<Integer>>();
+				pending = new HashSet<Integer>();
+				stale = false;
+			}
+		}
+	}
+
+	// Holds "this".
+	private void queue(int restaurantId) {
+		pending.add(restaurantId);
+		stale = true;
+	}
+
+	// Days older than the ring, or after today (a Created from a skewed clock), are
+	// not kept: a later day would take the slot of the oldest day still in the
+	// window.
+	private boolean inWindow(long day, long today) {
+		return day > today - capacity && day <= today;
+	}
+
+	private static int tenthsOf(double rating) {
+		return (int) Math.round(rating * 10);
+	}
+
+	private long today() {
+		return LocalDate.now(zone).toEpochDay();
+	}
+
+	private long dayOf(long millis) {
+		return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+	}
+
+	private long startOfDay(long day) {
+		return LocalDate.ofEpochDay(day).atStartOfDay(zone).toInstant().toEpochMilli();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	/** The number of restaurants with reviews in the window, 0 if not built. */
+	public synchronized int size() {
+		return restaurants == null ? 0 : restaurants.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("RatingTrendIndex[built=%b days=%d restaurants=%d companies=%d pending=%d]", built,
+				capacity, size(), restaurantsByCompany.size(), pending.size());
+	}
+}
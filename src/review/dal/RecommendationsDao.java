@@ -6,7 +6,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import review.model.*;
 
@@ -16,20 +19,50 @@ import review.model.*;
  * MySQL instance and retrieve {@link Recommendations} from MySQL instance.
  */
 public class RecommendationsDao {
+
+	/**
+	 * Told about every recommendation created through the RecommendationsDao it
+	 * is registered with, after it is committed.
+	 */
+	public interface RecommendationListener {
+		void recommendationsCreated(Collection<Recommendations> recommendations);
+	}
+
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static RecommendationsDao instance = null;
+	// The sketches behind getTopRecommenders(). DaoRegistry registers them as a
+	// RecommendationListener.
+	protected final ReviewerSketches reviewerSketches;
+
+	// How the referenced Users and Restaurants are loaded. See FetchMode.
+	protected volatile FetchMode fetchMode = FetchMode.BATCH;
 
-	protected RecommendationsDao() {
-		connectionManager = new ConnectionManager();
+	private final List<RecommendationListener> listeners = new CopyOnWriteArrayList<RecommendationListener>();
+
+	protected RecommendationsDao(ConnectionManager connectionManager, ReviewerSketches reviewerSketches) {
+		this.connectionManager = connectionManager;
+		this.reviewerSketches = reviewerSketches;
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static RecommendationsDao getInstance() {
-		if (instance == null) {
-			instance = new RecommendationsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getRecommendationsDao();
+	}
+
+	public FetchMode getFetchMode() {
+		return fetchMode;
+	}
+
+	public void setFetchMode(FetchMode fetchMode) {
+		this.fetchMode = fetchMode;
+	}
+
+	public void addRecommendationListener(RecommendationListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeRecommendationListener(RecommendationListener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
@@ -74,6 +107,9 @@ public class RecommendationsDao {
 				throw new SQLException("Unable to retrieve auto-generated key.");
 			}
 			recommendation.setRecommendationId(recommendationId);
+			for (RecommendationListener listener : listeners) {
+				listener.recommendationsCreated(Collections.singletonList(recommendation));
+			}
 			// Note 1: if this was an UPDATE statement, then the user fields should be
 			// updated before returning to the caller.
 			// Note 2: there are no auto-generated keys, so no update to perform on the
@@ -92,21 +128,81 @@ public class RecommendationsDao {
 		}
 	}
 
+	/**
+	 * Save all the Recommendations instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Recommendations> createAll(List<Recommendations> recommendations) throws SQLException {
+		return createAll(recommendations, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the Recommendations instances by storing them in your MySQL
+	 * instance. This runs the INSERT statements as JDBC batches of batchSize rows,
+	 * each sent as one multi-row INSERT and committed as one transaction, and sets
+	 * the auto-generated RecommendationId on every instance. If a batch fails, it
+	 * is rolled back; the batches before it stay committed.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Recommendations> createAll(List<Recommendations> recommendations, int batchSize) throws SQLException {
+		String insertRecommendation = "INSERT INTO Recommendations(UserName,RestaurantId) VALUES(?,?);";
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(insertRecommendation, Statement.RETURN_GENERATED_KEYS);
+			for (List<Recommendations> batch : JdbcBatch.partition(recommendations, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, (stmt, recommendation) -> {
+					stmt.setString(1, recommendation.getUser().getUserName());
+					stmt.setInt(2, recommendation.getRestaurant().getRestaurantId());
+				}, Recommendations::setRecommendationId);
+				connection.commit();
+				for (RecommendationListener listener : listeners) {
+					listener.recommendationsCreated(batch);
+				}
+			}
+			return recommendations;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
 	/**
 	 * Get the Recommendations record by fetching it from your MySQL instance. This
-	 * runs a SELECT statement and returns a single Recommendations instance. Note
-	 * that we use UsersDao and RestaurantsDao to retrieve the referenced Users and
-	 * Restaurants instances. One alternative (possibly more efficient) is using a
-	 * single SELECT statement to join the Reviews, Users, Restaurants tables and
-	 * then build each object.
+	 * runs a SELECT statement and returns a single Recommendations instance. With
+	 * FetchMode.NESTED, we use UsersDao and RestaurantsDao to retrieve the
+	 * referenced Users and Restaurants instances; otherwise they are resolved in
+	 * batch through BatchLoader.
 	 * 
 	 * @throws SQLException
 	 */
 	public Recommendations getRecommendationById(int recommendationId) throws SQLException {
+		if (fetchMode != FetchMode.NESTED) {
+			List<Recommendations> recommendations = getRecommendationsBatched("RecommendationId=?", recommendationId);
+			return recommendations.isEmpty() ? null : recommendations.get(0);
+		}
 		String selectRecommendation =
 				"SELECT RecommendationId,UserName,RestaurantId "
 				+ "FROM Recommendations "
 				+ "WHERE RecommendationId=?;";
+		List<Recommendations> recommendations = new ArrayList<Recommendations>();
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> restaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -115,18 +211,16 @@ public class RecommendationsDao {
 			selectStmt = connection.prepareStatement(selectRecommendation);
 			selectStmt.setInt(1, recommendationId);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
 			if (results.next()) {
 				int resultRecommendationId = results.getInt("RecommendationId");
 				String userName = results.getString("UserName");
 				int restaurantId = results.getInt("RestaurantId");
 
-				Users user = usersDao.getUserByUserName(userName);
-				Restaurants restaurant = restaurantsDao.getRestaurantById(restaurantId);
+				userNames.add(userName);
+				restaurantIds.add(restaurantId);
 
-				Recommendations recommendation = new Recommendations(resultRecommendationId, user, restaurant);
-				return recommendation;
+				Recommendations recommendation = new Recommendations(resultRecommendationId, null, null);
+				recommendations.add(recommendation);
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -142,7 +236,8 @@ public class RecommendationsDao {
 				results.close();
 			}
 		}
-		return null;
+		resolveNested(recommendations, userNames, restaurantIds);
+		return recommendations.isEmpty() ? null : recommendations.get(0);
 	}
 
 	/**
@@ -151,11 +246,16 @@ public class RecommendationsDao {
 	 * @throws SQLException
 	 */
 	public List<Recommendations> getRecommendationsByUserName(String userName) throws SQLException {
+		if (fetchMode != FetchMode.NESTED) {
+			return getRecommendationsBatched("UserName=?", userName);
+		}
 		List<Recommendations> recommendations = new ArrayList<Recommendations>();
 		String selectRecommendations = 
 				"SELECT RecommendationId,UserName,RestaurantId "
 				+ "FROM Recommendations "
 				+ "WHERE UserName=?;";
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> restaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -164,18 +264,16 @@ public class RecommendationsDao {
 			selectStmt = connection.prepareStatement(selectRecommendations);
 			selectStmt.setString(1, userName);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
 			while (results.next()) {
 				int recommendationId = results.getInt("RecommendationId");
 				
 				String resultUserName = results.getString("UserName");
-				Users resultUser = usersDao.getUserByUserName(resultUserName);
+				userNames.add(resultUserName);
 				
 				int restaurantId = results.getInt("RestaurantId");
-				Restaurants restaurant = restaurantsDao.getRestaurantById(restaurantId);
+				restaurantIds.add(restaurantId);
 				
-				Recommendations recommendation = new Recommendations(recommendationId, resultUser, restaurant);
+				Recommendations recommendation = new Recommendations(recommendationId, null, null);
 				recommendations.add(recommendation);
 			}
 		} catch (SQLException e) {
@@ -192,6 +290,7 @@ public class RecommendationsDao {
 				results.close();
 			}
 		}
+		resolveNested(recommendations, userNames, restaurantIds);
 		return recommendations;
 	}
 
@@ -200,11 +299,16 @@ public class RecommendationsDao {
 	 * @throws SQLException 
 	 */
 	public List<Recommendations> getRecommendationsByRestaurantId(int restaurantId) throws SQLException {
+		if (fetchMode != FetchMode.NESTED) {
+			return getRecommendationsBatched("RestaurantId=?", restaurantId);
+		}
 		List<Recommendations> recommendations = new ArrayList<Recommendations>();
 		String selectRecommendations = 
 				"SELECT RecommendationId,UserName,RestaurantId "
 				+ "FROM Recommendations "
 				+ "WHERE RestaurantId=?;";
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> restaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -213,18 +317,16 @@ public class RecommendationsDao {
 			selectStmt = connection.prepareStatement(selectRecommendations);
 			selectStmt.setInt(1, restaurantId);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
 			while (results.next()) {
 				int recommendationId = results.getInt("RecommendationId");
 								
 				String userName = results.getString("UserName");
-				Users user = usersDao.getUserByUserName(userName);
+				userNames.add(userName);
 				
 				int resultRestaurantId = results.getInt("RestaurantId");
-				Restaurants resultRestaurant = restaurantsDao.getRestaurantById(resultRestaurantId);
+				restaurantIds.add(resultRestaurantId);
 				
-				Recommendations recommendation = new Recommendations(recommendationId, user, resultRestaurant);
+				Recommendations recommendation = new Recommendations(recommendationId, null, null);
 				recommendations.add(recommendation);
 			}
 		} catch (SQLException e) {
@@ -241,9 +343,164 @@ public class RecommendationsDao {
 				results.close();
 			}
 		}
+		resolveNested(recommendations, userNames, restaurantIds);
+		return recommendations;
+	}
+
+	// FetchMode.NESTED: look up the user and restaurant of each recommendation,
+	// one call each, once the caller has given its connection back (see
+	// ReviewsDao.resolveNested()).
+	private static void resolveNested(List<Recommendations> recommendations, List<String> userNames,
+			List<Integer> restaurantIds) throws SQLException {
+		UsersDao usersDao = UsersDao.getInstance();
+		RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
+		for (int i = 0; i < recommendations.size(); i++) {
+			recommendations.get(i).setUser(usersDao.getUserByUserName(userNames.get(i)));
+			recommendations.get(i).setRestaurant(restaurantsDao.getRestaurantById(restaurantIds.get(i)));
+		}
+	}
+
+	/**
+	 * Get one page of the Recommendations for a restaurantId, newest first. Pass
+	 * a null cursor for the first page, then the getNextCursor() of the previous
+	 * page. The page starts after the cursor with "RecommendationId < ?" on the
+	 * (RestaurantId, RecommendationId) index instead of an OFFSET.
+	 * FetchMode.NESTED pages are resolved as with FetchMode.BATCH.
+	 * 
+	 * @throws SQLException
+	 */
+	public Page<Recommendations> getRecommendationsByRestaurantId(int restaurantId, int pageSize, String cursor)
+			throws SQLException {
+		Page.checkPageSize(pageSize);
+		Page.Cursor after = Page.Cursor.decode(cursor);
+		List<Recommendations> recommendations;
+		// One row more than the page tells whether there is a next page.
+		if (after == null) {
+			recommendations = getRecommendationsBatched(
+					"RestaurantId=? ORDER BY RecommendationId DESC LIMIT ?", restaurantId, pageSize + 1);
+		} else {
+			recommendations = getRecommendationsBatched(
+					"RestaurantId=? AND RecommendationId<? ORDER BY RecommendationId DESC LIMIT ?",
+					restaurantId, after.id, pageSize + 1);
+		}
+		return Page.of(recommendations, pageSize, recommendation -> new Page.Cursor(
+				recommendation.getRecommendationId(), recommendation.getRecommendationId()));
+	}
+
+	/**
+	 * Get the Recommendations matching the WHERE clause, then resolve the
+	 * referenced Users and Restaurants with one BatchLoader dispatch instead of
+	 * per-row lookups. whereClause may end with ORDER BY and LIMIT; keys are bound
+	 * to its parameters in order.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Recommendations> getRecommendationsBatched(String whereClause, Object... keys) throws SQLException {
+		List<Recommendations> recommendations = new ArrayList<Recommendations>();
+		String selectRecommendations =
+				"SELECT RecommendationId,UserName,RestaurantId "
+				+ "FROM Recommendations "
+				+ "WHERE " + whereClause + ";";
+		BatchLoader loader = new BatchLoader();
+		// In LAZY mode the references stay unresolved until they are first used.
+		boolean lazy = fetchMode == FetchMode.LAZY;
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(selectRecommendations);
+			for (int i = 0; i < keys.length; i++) {
+				selectStmt.setObject(i + 1, keys[i]);
+			}
+			results = selectStmt.executeQuery();
+			while (results.next()) {
+				int recommendationId = results.getInt("RecommendationId");
+				// Keep only the foreign keys for now; they are resolved below.
+				String userName = results.getString("UserName");
+				Users user = null;
+				if (userName != null) {
+					user = lazy ? new LazyUsers(userName, loader) : new Users(userName);
+				}
+				int restaurantId = results.getInt("RestaurantId");
+				Restaurants restaurant = null;
+				if (!results.wasNull()) {
+					// A lazy reference has no subtype; see LazyRestaurants.getTarget().
+					restaurant = lazy ? new LazyRestaurants(restaurantId, loader) : new Restaurants(restaurantId);
+				}
+				loader.requestUser(userName);
+				if (restaurant != null) {
+					loader.requestRestaurant(restaurantId);
+				}
+				recommendations.add(new Recommendations(recommendationId, user, restaurant));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+
+		if (lazy) {
+			return recommendations;
+		}
+		loader.dispatch();
+		for (Recommendations recommendation : recommendations) {
+			if (recommendation.getUser() != null) {
+				recommendation.setUser(loader.getUser(recommendation.getUser().getUserName()));
+			}
+			if (recommendation.getRestaurant() != null) {
+				recommendation.setRestaurant(
+						loader.getRestaurant(recommendation.getRestaurant().getRestaurantId()));
+			}
+		}
 		return recommendations;
 	}
 
+	/**
+	 * Scan all the Recommendations in RecommendationId order, streaming them from
+	 * your MySQL instance in chunks of ScanIterator.DEFAULT_CHUNK_SIZE. Their
+	 * Users and Restaurants carry only their keys. The caller must close the
+	 * returned iterator.
+	 * 
+	 * @throws SQLException
+	 */
+	public ScanIterator<Recommendations> scanRecommendations() throws SQLException {
+		String selectRecommendations = "SELECT RecommendationId,UserName,RestaurantId FROM Recommendations "
+				+ "ORDER BY RecommendationId;";
+		return new ScanIterator<Recommendations>(connectionManager, selectRecommendations,
+				RecommendationsDao::buildRecommendationWithKeys, null, ScanIterator.DEFAULT_CHUNK_SIZE);
+	}
+
+	private static Recommendations buildRecommendationWithKeys(ResultSet results) throws SQLException {
+		int recommendationId = results.getInt("RecommendationId");
+		String userName = results.getString("UserName");
+		Users user = userName == null ? null : new Users(userName);
+		int restaurantId = results.getInt("RestaurantId");
+		Restaurants restaurant = results.wasNull() ? null : new Restaurants(restaurantId);
+		return new Recommendations(recommendationId, user, restaurant);
+	}
+
+	public ReviewerSketches getReviewerSketches() {
+		return reviewerSketches;
+	}
+
+	/**
+	 * Get the users who made the most recommendations, most first, from the
+	 * reviewer sketches (see ReviewerSketches). The counts are approximate.
+	 */
+	public List<HeavyHitter> getTopRecommenders(int n) {
+		return reviewerSketches.getTopRecommenders(n);
+	}
+
 	/**
 	 * Delete the Recommendations instance. This runs a DELETE statement.
 	 * 
@@ -7,6 +7,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -17,21 +18,39 @@ import review.model.*;
  * table in your MySQL instance. This is used to store {@link Reservations} into
  * your MySQL instance and retrieve {@link Reservations} from MySQL instance.
  */
-public class ReservationsDao {
+public class ReservationsDao implements RestaurantCache.InvalidationListener {
+	// Maximum number of restaurants whose Reservations are cached. 0 turns the cache off.
+	private static final int VIEW_CACHE_SIZE = Integer.getInteger("review.cache.reservationsByRestaurant.maxSize", 1000);
+	// The page cursor sort key of a Reservation without a Start.
+	private static final long NULL_START = Long.MIN_VALUE;
+
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static ReservationsDao instance = null;
+	// The Reservations of each restaurant, as returned by getReservationsBySitDownRestaurantId().
+	// The lists embed the restaurant and the users, so they are evicted when the
+	// RestaurantCache invalidates the restaurant, when a reservation of the restaurant
+	// is created or deleted, and when a user is renamed or deleted.
+	protected final EntityCache<Integer, List<Reservations>> reservationsByRestaurant;
+
+	// How the referenced Users and SitDownRestaurants are loaded. See FetchMode.
+	protected volatile FetchMode fetchMode = FetchMode.BATCH;
 
-	protected ReservationsDao() {
-		connectionManager = new ConnectionManager();
+	protected ReservationsDao(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+		this.reservationsByRestaurant = new EntityCache<Integer, List<Reservations>>("ReservationsByRestaurant", VIEW_CACHE_SIZE);
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static ReservationsDao getInstance() {
-		if (instance == null) {
-			instance = new ReservationsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getReservationsDao();
+	}
+
+	public FetchMode getFetchMode() {
+		return fetchMode;
+	}
+
+	public void setFetchMode(FetchMode fetchMode) {
+		this.fetchMode = fetchMode;
 	}
 
 	/**
@@ -80,6 +99,7 @@ public class ReservationsDao {
 				throw new SQLException("Unable to retrieve auto-generated key.");
 			}
 			reservation.setReservationId(reservationId);
+			invalidateView(reservation.getSitDownRestaurants());
 			// Note 1: if this was an UPDATE statement, then the user fields should be
 			// updated before returning to the caller.
 			// Note 2: there are no auto-generated keys, so no update to perform on the
@@ -98,19 +118,82 @@ public class ReservationsDao {
 		}
 	}
 
+	/**
+	 * Save all the Reservations instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Reservations> createAll(List<Reservations> reservations) throws SQLException {
+		return createAll(reservations, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the Reservations instances by storing them in your MySQL instance.
+	 * This runs the INSERT statements as JDBC batches of batchSize rows, each sent
+	 * as one multi-row INSERT and committed as one transaction, and sets the
+	 * auto-generated ReservationId on every instance. If a batch fails, it is
+	 * rolled back; the batches before it stay committed.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Reservations> createAll(List<Reservations> reservations, int batchSize) throws SQLException {
+		String insertReservation = "INSERT INTO Reservations(Start,End,Size,UserName,RestaurantId) VALUES(?,?,?,?,?);";
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(insertReservation, Statement.RETURN_GENERATED_KEYS);
+			for (List<Reservations> batch : JdbcBatch.partition(reservations, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, (stmt, reservation) -> {
+					stmt.setTimestamp(1, new Timestamp(reservation.getStart().getTime()));
+					stmt.setTimestamp(2, new Timestamp(reservation.getEnd().getTime()));
+					stmt.setInt(3, reservation.getSize());
+					stmt.setString(4, reservation.getUser().getUserName());
+					stmt.setInt(5, reservation.getSitDownRestaurants().getRestaurantId());
+				}, Reservations::setReservationId);
+				connection.commit();
+				for (Reservations reservation : batch) {
+					invalidateView(reservation.getSitDownRestaurants());
+				}
+			}
+			return reservations;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
 	/**
 	 * Get the Reservations record by fetching it from your MySQL instance. This
-	 * runs a SELECT statement and returns a single Reservations instance. Note that
-	 * we use UsersDao and SitDownRestaurantsDao to retrieve the referenced Users
-	 * and SitDownRestaurants instances. One alternative (possibly more efficient)
-	 * is using a single SELECT statement to join the Reservations, Users,
-	 * SitDownRestaurants tables and then build each object.
+	 * runs a SELECT statement and returns a single Reservations instance. With
+	 * FetchMode.NESTED, we use UsersDao and SitDownRestaurantsDao to retrieve the
+	 * referenced Users and SitDownRestaurants instances; otherwise they are
+	 * resolved in batch through BatchLoader.
 	 * 
 	 * @throws SQLException
 	 */
 	public Reservations getReservationById(int reservationId) throws SQLException {
+		if (fetchMode != FetchMode.NESTED) {
+			List<Reservations> reservations = getReservationsBatched("ReservationId=?", reservationId);
+			return reservations.isEmpty() ? null : reservations.get(0);
+		}
 		String selectReservation = "SELECT ReservationId,Start,End,Size,UserName,RestaurantId " + "FROM Reservations "
 				+ "WHERE ReservationId=?;";
+		List<Reservations> reservations = new ArrayList<Reservations>();
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> sitDownRestaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -119,8 +202,6 @@ public class ReservationsDao {
 			selectStmt = connection.prepareStatement(selectReservation);
 			selectStmt.setInt(1, reservationId);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			SitDownRestaurantsDao sitDownRestaurantsDao = SitDownRestaurantsDao.getInstance();
 			if (results.next()) {
 				int resultReservationId = results.getInt("ReservationId");
 				Date start = new Date(results.getTimestamp("Start").getTime());
@@ -129,13 +210,11 @@ public class ReservationsDao {
 				String userName = results.getString("UserName");
 				int sitDownRestaurantId = results.getInt("RestaurantId");
 
-				Users user = usersDao.getUserByUserName(userName);
-				SitDownRestaurants sitDownRestaurant = sitDownRestaurantsDao
-						.getSitDownRestaurantById(sitDownRestaurantId);
+				userNames.add(userName);
+				sitDownRestaurantIds.add(sitDownRestaurantId);
 
-				Reservations reservation = new Reservations(resultReservationId, start, end, size, user,
-						sitDownRestaurant);
-				return reservation;
+				Reservations reservation = new Reservations(resultReservationId, start, end, size, null, null);
+				reservations.add(reservation);
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -151,7 +230,8 @@ public class ReservationsDao {
 				results.close();
 			}
 		}
-		return null;
+		resolveNested(reservations, userNames, sitDownRestaurantIds);
+		return reservations.isEmpty() ? null : reservations.get(0);
 	}
 
 	/**
@@ -160,9 +240,14 @@ public class ReservationsDao {
 	 * @throws SQLException
 	 */
 	public List<Reservations> getReservationsByUserName(String userName) throws SQLException {
+		if (fetchMode != FetchMode.NESTED) {
+			return getReservationsBatched("UserName=?", userName);
+		}
 		List<Reservations> reservations = new ArrayList<Reservations>();
 		String selectReservations = "SELECT ReservationId,Start,End,Size,UserName,RestaurantId " + "FROM Reservations "
 				+ "WHERE UserName=?;";
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> sitDownRestaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -171,8 +256,6 @@ public class ReservationsDao {
 			selectStmt = connection.prepareStatement(selectReservations);
 			selectStmt.setString(1, userName);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			SitDownRestaurantsDao sitDownRestaurantsDao = SitDownRestaurantsDao.getInstance();
 			while (results.next()) {
 				int reservationId = results.getInt("ReservationId");
 				Date start = new Date(results.getTimestamp("Start").getTime());
@@ -180,14 +263,12 @@ public class ReservationsDao {
 				int size = results.getInt("Size");
 
 				String resultUserName = results.getString("UserName");
-				Users resultUser = usersDao.getUserByUserName(resultUserName);
+				userNames.add(resultUserName);
 
 				int sitDownRestaurantId = results.getInt("RestaurantId");
-				SitDownRestaurants sitDownRestaurant = sitDownRestaurantsDao
-						.getSitDownRestaurantById(sitDownRestaurantId);
+				sitDownRestaurantIds.add(sitDownRestaurantId);
 
-				Reservations reservation = new Reservations(reservationId, start, end, size, resultUser,
-						sitDownRestaurant);
+				Reservations reservation = new Reservations(reservationId, start, end, size, null, null);
 				reservations.add(reservation);
 			}
 		} catch (SQLException e) {
@@ -204,19 +285,94 @@ public class ReservationsDao {
 				results.close();
 			}
 		}
+		resolveNested(reservations, userNames, sitDownRestaurantIds);
 		return reservations;
 	}
 
+	public EntityCache<Integer, List<Reservations>> getReservationsByRestaurantCache() {
+		return reservationsByRestaurant;
+	}
+
 	/**
-	 * Get the all the Reservations for a restaurantId.
+	 * Get the all the Reservations for a restaurantId, from the per-restaurant cache if
+	 * possible. The returned list is unmodifiable and shared with other callers, and
+	 * so are its ImmutableReservations and their restaurants (see Immutable).
 	 * 
 	 * @throws SQLException
 	 */
 	public List<Reservations> getReservationsBySitDownRestaurantId(int sitDownRestaurantId) throws SQLException {
+		return reservationsByRestaurant.get(sitDownRestaurantId,
+				key -> toImmutable(selectReservationsBySitDownRestaurantId(key)));
+	}
+
+	// The cached view of reservations: an unmodifiable list of ImmutableReservations,
+	// whose users and restaurants are immutable too.
+	private static List<Reservations> toImmutable(List<Reservations> reservations) {
+		List<Reservations> immutable = new ArrayList<Reservations>(reservations.size());
+		for (Reservations reservation : reservations) {
+			immutable.add(new ImmutableReservations(reservation.getReservationId(), reservation.getStart(),
+					reservation.getEnd(), reservation.getSize(), UsersDao.toImmutable(reservation.getUser()),
+					RestaurantsDao.toImmutable(reservation.getSitDownRestaurants())));
+		}
+		return Collections.unmodifiableList(immutable);
+	}
+
+	/**
+	 * Get one page of the Reservations for a restaurantId, by Start and then
+	 * ReservationId. Pass a null cursor for the first page, then the
+	 * getNextCursor() of the previous page. The page starts after the cursor with
+	 * a keyset condition on the (RestaurantId, Start, ReservationId) index instead
+	 * of an OFFSET, and is read from your MySQL instance, not from the
+	 * per-restaurant cache. Reservations without a Start sort first, as MySQL
+	 * sorts NULLs. FetchMode.NESTED pages are resolved as with FetchMode.BATCH.
+	 * 
+	 * @throws SQLException
+	 */
+	public Page<Reservations> getReservationsBySitDownRestaurantId(int sitDownRestaurantId, int pageSize,
+			String cursor) throws SQLException {
+		Page.checkPageSize(pageSize);
+		Page.Cursor after = Page.Cursor.decode(cursor);
+		List<Object> keys = new ArrayList<Object>();
+		keys.add(sitDownRestaurantId);
+		String clause = "RestaurantId=?";
+		if (after != null && after.sortKey == NULL_START) {
+			clause += " AND (Start IS NOT NULL OR ReservationId>?)";
+			keys.add(after.id);
+		} else if (after != null) {
+			Timestamp start = new Timestamp(after.sortKey);
+			clause += " AND (Start>? OR (Start=? AND ReservationId>?))";
+			keys.add(start);
+			keys.add(start);
+			keys.add(after.id);
+		}
+		// One row more than the page tells whether there is a next page.
+		clause += " ORDER BY Start,ReservationId LIMIT ?";
+		keys.add(pageSize + 1);
+		List<Reservations> reservations = getReservationsBatched(clause, keys.toArray());
+		return Page.of(reservations, pageSize,
+				reservation -> new Page.Cursor(
+						reservation.getStart() == null ? NULL_START : reservation.getStart().getTime(),
+						reservation.getReservationId()));
+	}
+
+	/**
+	 * Get the all the Reservations for a restaurantId by fetching them from your MySQL
+	 * instance, as configured by the fetch mode.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Reservations> selectReservationsBySitDownRestaurantId(int sitDownRestaurantId) throws SQLException {
+		// The result is cached and shared, so LAZY resolves the references as BATCH
+		// does instead of sharing lazy references between threads.
+		if (fetchMode != FetchMode.NESTED) {
+			return getReservationsBatched(false, "RestaurantId=?", sitDownRestaurantId);
+		}
 		List<Reservations> reservations = new ArrayList<Reservations>();
 		String selectReservations = "SELECT ReservationId,Start,End,Size,UserName,RestaurantId "
 		+ "FROM Reservations "
 		+ "WHERE RestaurantId=?;";
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> sitDownRestaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -225,8 +381,6 @@ public class ReservationsDao {
 			selectStmt = connection.prepareStatement(selectReservations);
 			selectStmt.setInt(1, sitDownRestaurantId);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			SitDownRestaurantsDao sitDownRestaurantsDao = SitDownRestaurantsDao.getInstance();
 			while (results.next()) {
 				int reservationId = results.getInt("ReservationId");
 				Date start = new Date(results.getTimestamp("Start").getTime());
@@ -234,14 +388,12 @@ public class ReservationsDao {
 				int size = results.getInt("Size");
 
 				String userName = results.getString("UserName");
-				Users user = usersDao.getUserByUserName(userName);
+				userNames.add(userName);
 
 				int resultSitDownRestaurantId = results.getInt("RestaurantId");
-				SitDownRestaurants resultSitDownRestaurant = sitDownRestaurantsDao
-						.getSitDownRestaurantById(resultSitDownRestaurantId);
+				sitDownRestaurantIds.add(resultSitDownRestaurantId);
 
-				Reservations reservation = new Reservations(reservationId, start, end, size, user,
-						resultSitDownRestaurant);
+				Reservations reservation = new Reservations(reservationId, start, end, size, null, null);
 				reservations.add(reservation);
 			}
 		} catch (SQLException e) {
@@ -258,11 +410,196 @@ public class ReservationsDao {
 				results.close();
 			}
 		}
+		resolveNested(reservations, userNames, sitDownRestaurantIds);
 		return reservations;
 	}
 
+	// FetchMode.NESTED: look up the user and restaurant of each reservation, one
+	// call each, once the caller has given its connection back (see
+	// ReviewsDao.resolveNested()).
+	private static void resolveNested(List<Reservations> reservations, List<String> userNames,
+			List<Integer> sitDownRestaurantIds) throws SQLException {
+		UsersDao usersDao = UsersDao.getInstance();
+		SitDownRestaurantsDao sitDownRestaurantsDao = SitDownRestaurantsDao.getInstance();
+		for (int i = 0; i < reservations.size(); i++) {
+			reservations.get(i).setUser(usersDao.getUserByUserName(userNames.get(i)));
+			reservations.get(i).setSitDownRestaurants(
+					sitDownRestaurantsDao.getSitDownRestaurantById(sitDownRestaurantIds.get(i)));
+		}
+	}
+
+	/**
+	 * Get the Reservations matching the WHERE clause, then resolve the referenced
+	 * Users and SitDownRestaurants with one BatchLoader dispatch instead of
+	 * per-row lookups. whereClause may end with ORDER BY and LIMIT; keys are bound
+	 * to its parameters in order.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Reservations> getReservationsBatched(String whereClause, Object... keys) throws SQLException {
+		// In LAZY mode the references stay unresolved until they are first used.
+		return getReservationsBatched(fetchMode == FetchMode.LAZY, whereClause, keys);
+	}
+
+	// getReservationsBatched(), with lazy references or resolved ones.
+	protected List<Reservations> getReservationsBatched(boolean lazy, String whereClause, Object... keys)
+			throws SQLException {
+		List<Reservations> reservations = new ArrayList<Reservations>();
+		String selectReservations = "SELECT ReservationId,Start,End,Size,UserName,RestaurantId "
+				+ "FROM Reservations "
+				+ "WHERE " + whereClause + ";";
+		BatchLoader loader = new BatchLoader();
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(selectReservations);
+			for (int i = 0; i < keys.length; i++) {
+				selectStmt.setObject(i + 1, keys[i]);
+			}
+			results = selectStmt.executeQuery();
+			while (results.next()) {
+				int reservationId = results.getInt("ReservationId");
+				Date start = new Date(results.getTimestamp("Start").getTime());
+				Date end = new Date(results.getTimestamp("End").getTime());
+				int size = results.getInt("Size");
+				// Keep only the foreign keys for now; they are resolved below.
+				String userName = results.getString("UserName");
+				Users user = null;
+				if (userName != null) {
+					user = lazy ? new LazyUsers(userName, loader) : new Users(userName);
+				}
+				int sitDownRestaurantId = results.getInt("RestaurantId");
+				SitDownRestaurants sitDownRestaurant = null;
+				if (!results.wasNull()) {
+					sitDownRestaurant = lazy ? new LazySitDownRestaurants(sitDownRestaurantId, loader)
+							: new SitDownRestaurants(sitDownRestaurantId);
+				}
+				loader.requestUser(userName);
+				if (sitDownRestaurant != null) {
+					loader.requestSitDownRestaurant(sitDownRestaurantId);
+				}
+				reservations.add(new Reservations(reservationId, start, end, size, user, sitDownRestaurant));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+
+		if (lazy) {
+			return reservations;
+		}
+		loader.dispatch();
+		for (Reservations reservation : reservations) {
+			if (reservation.getUser() != null) {
+				reservation.setUser(loader.getUser(reservation.getUser().getUserName()));
+			}
+			if (reservation.getSitDownRestaurants() != null) {
+				reservation.setSitDownRestaurants(
+						loader.getSitDownRestaurant(reservation.getSitDownRestaurants().getRestaurantId()));
+			}
+		}
+		return reservations;
+	}
+
+	/**
+	 * Scan all the Reservations, resolving their Users and SitDownRestaurants. See
+	 * scanReservations(boolean).
+	 * 
+	 * @throws SQLException
+	 */
+	public ScanIterator<Reservations> scanReservations() throws SQLException {
+		return scanReservations(true);
+	}
+
+	/**
+	 * Scan all the Reservations in ReservationId order, streaming them from your
+	 * MySQL instance in chunks of ScanIterator.DEFAULT_CHUNK_SIZE instead of
+	 * building one list. If resolveReferences, the Users and SitDownRestaurants of
+	 * each chunk are resolved with one BatchLoader dispatch; otherwise they carry
+	 * only their keys. The fetch mode is not used. The caller must close the
+	 * returned iterator.
+	 * 
+	 * @throws SQLException
+	 */
+	public ScanIterator<Reservations> scanReservations(boolean resolveReferences) throws SQLException {
+		String selectReservations = "SELECT ReservationId,Start,End,Size,UserName,RestaurantId "
+				+ "FROM Reservations "
+				+ "ORDER BY ReservationId;";
+		ScanIterator.ChunkResolver<Reservations> resolver =
+				resolveReferences ? ReservationsDao::resolveReferences : null;
+		return new ScanIterator<Reservations>(connectionManager, selectReservations,
+				ReservationsDao::buildReservationWithKeys, resolver, ScanIterator.DEFAULT_CHUNK_SIZE);
+	}
+
+	// Build the Reservations of the current row, with its references as keys only.
+	private static Reservations buildReservationWithKeys(ResultSet results) throws SQLException {
+		int reservationId = results.getInt("ReservationId");
+		Date start = new Date(results.getTimestamp("Start").getTime());
+		Date end = new Date(results.getTimestamp("End").getTime());
+		int size = results.getInt("Size");
+		String userName = results.getString("UserName");
+		Users user = userName == null ? null : new Users(userName);
+		int sitDownRestaurantId = results.getInt("RestaurantId");
+		SitDownRestaurants sitDownRestaurant =
+				results.wasNull() ? null : new SitDownRestaurants(sitDownRestaurantId);
+		return new Reservations(reservationId, start, end, size, user, sitDownRestaurant);
+	}
+
+	// Replace the key-only references of reservations with one BatchLoader dispatch.
+	private static void resolveReferences(List<Reservations> reservations) throws SQLException {
+		BatchLoader loader = new BatchLoader();
+		for (Reservations reservation : reservations) {
+			if (reservation.getUser() != null) {
+				loader.requestUser(reservation.getUser().getUserName());
+			}
+			if (reservation.getSitDownRestaurants() != null) {
+				loader.requestSitDownRestaurant(reservation.getSitDownRestaurants().getRestaurantId());
+			}
+		}
+		loader.dispatch();
+		for (Reservations reservation : reservations) {
+			if (reservation.getUser() != null) {
+				reservation.setUser(loader.getUser(reservation.getUser().getUserName()));
+			}
+			if (reservation.getSitDownRestaurants() != null) {
+				reservation.setSitDownRestaurants(
+						loader.getSitDownRestaurant(reservation.getSitDownRestaurants().getRestaurantId()));
+			}
+		}
+	}
+
+	// Evict the cached Reservations of restaurant, if there is one.
+	private void invalidateView(Restaurants restaurant) {
+		if (restaurant != null) {
+			reservationsByRestaurant.invalidate(restaurant.getRestaurantId());
+		}
+	}
+
+	@Override
+	public void restaurantInvalidated(int restaurantId) {
+		reservationsByRestaurant.invalidate(restaurantId);
+	}
+
+	@Override
+	public void allRestaurantsInvalidated() {
+		reservationsByRestaurant.invalidateAll();
+	}
+
 	/**
-	 * Delete the Reservations instance. This runs a DELETE statement.
+	 * Delete the Reservations instance. This runs a DELETE statement and evicts the cached
+	 * Reservations of its restaurant.
 	 * 
 	 * @throws SQLException
 	 */
@@ -275,6 +612,7 @@ public class ReservationsDao {
 			deleteStmt = connection.prepareStatement(deleteReservation);
 			deleteStmt.setInt(1, reservation.getReservationId());
 			deleteStmt.executeUpdate();
+			invalidateView(reservation.getSitDownRestaurants());
 
 			// Return null so the caller can no longer operate on the BlogComments instance.
 			return null;
@@ -0,0 +1,62 @@
+package review.dal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import review.model.*;
+
+/**
+ * The cache of Restaurants by RestaurantId that RestaurantsDao and the three
+ * subtype DAOs share. Every entry is the restaurant as its most specific type
+ * (SitDownRestaurants, TakeOutRestaurants, FoodCartRestaurants or plain
+ * Restaurants), as loaded by RestaurantsDao.getRestaurantsWithSubtypeByIds(), so
+ * one entry serves getRestaurantById() as well as the subtype lookups, and a
+ * delete through any of the DAOs drops it for all of them.
+ *
+ * Other caches that embed restaurants (e.g. the per-restaurant Reviews and
+ * Reservations views) register an InvalidationListener, and are told about every
+ * invalidation after the entry is dropped.
+ *
+ * The cached instances are shared by every caller; do not modify them.
+ */
+public class RestaurantCache extends EntityCache<Integer, Restaurants> {
+	// Maximum number of Restaurants in the cache DaoRegistry builds. 0 turns it off.
+	public static final int DEFAULT_MAX_SIZE = Integer.getInteger("review.cache.restaurants.maxSize", 10000);
+
+	/** Told about every invalidation of the RestaurantCache it is registered with. */
+	public interface InvalidationListener {
+		void restaurantInvalidated(int restaurantId);
+
+		void allRestaurantsInvalidated();
+	}
+
+	private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+	public RestaurantCache(int maxSize) {
+		super("Restaurants", maxSize);
+	}
+
+	public void addInvalidationListener(InvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeInvalidationListener(InvalidationListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void invalidate(Integer restaurantId) {
+		super.invalidate(restaurantId);
+		for (InvalidationListener listener : listeners) {
+			listener.restaurantInvalidated(restaurantId);
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		super.invalidateAll();
+		for (InvalidationListener listener : listeners) {
+			listener.allRestaurantsInvalidated();
+		}
+	}
+}
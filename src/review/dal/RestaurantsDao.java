@@ -6,7 +6,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import review.model.*;
 
@@ -16,20 +21,56 @@ import review.model.*;
  * your MySQL instance and retrieve {@link Restaurants} from MySQL instance.
  */
 public class RestaurantsDao {
+	protected static final String INSERT_RESTAURANT =
+		"INSERT INTO Restaurants(Name,Description,Menu,Hours,Active,CuisineType,Street1,Street2,City,State,Zip,CompanyName) "
+		+ "VALUES(?,?,?,?,?,?,?,?,?,?,?,?);";
+	// Restaurants LEFT JOINed with the three subtype tables and Companies, for
+	// buildRestaurantWithSubtype(). Append the WHERE clause.
+	protected static final String SELECT_RESTAURANT_WITH_SUBTYPE =
+		"SELECT Restaurants.RestaurantId,Name,Description,Menu,Hours,Active,CuisineType,"
+		+ "Street1,Street2,City,State,Zip,Companies.CompanyName,Companies.About,"
+		+ "SitDownRestaurant.RestaurantId AS SitDownRestaurantId,Capacity,"
+		+ "TakeOutRestaurant.RestaurantId AS TakeOutRestaurantId,MaxWaitTime,"
+		+ "FoodCartRestaurant.RestaurantId AS FoodCartRestaurantId,Licensed "
+		+ "FROM Restaurants "
+		+ "  LEFT JOIN SitDownRestaurant ON Restaurants.RestaurantId = SitDownRestaurant.RestaurantId "
+		+ "  LEFT JOIN TakeOutRestaurant ON Restaurants.RestaurantId = TakeOutRestaurant.RestaurantId "
+		+ "  LEFT JOIN FoodCartRestaurant ON Restaurants.RestaurantId = FoodCartRestaurant.RestaurantId "
+		+ "  LEFT JOIN Companies ON Restaurants.CompanyName = Companies.CompanyName ";
+	// The RestaurantSummary columns of Restaurants. Append any JOIN and the WHERE
+	// clause.
+	protected static final String SELECT_RESTAURANT_SUMMARY =
+		"SELECT Restaurants.RestaurantId,Name,Active,CuisineType,City,State,CompanyName "
+		+ "FROM Restaurants ";
+	// The RankingIndex.Row columns of the restaurants with RatingStats. Append the
+	// WHERE clause, if any.
+	protected static final String SELECT_RANKING_ROW =
+		"SELECT Restaurants.RestaurantId,CuisineType,City,State,Active,ReviewCount,RatingSum "
+		+ "FROM RatingStats INNER JOIN Restaurants ON RatingStats.RestaurantId = Restaurants.RestaurantId ";
+
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static RestaurantsDao instance = null;
+	// Shared with the subtype DAOs; see RestaurantCache. delete() invalidates the
+	// restaurant, for this DAO and the subtype DAOs alike.
+	protected final RestaurantCache restaurantCache;
+	// Shared with the subtype DAOs too. Every create method reports the new
+	// restaurants to it after they are committed.
+	protected final CuisineIndex cuisineIndex;
+	// Shared with the subtype DAOs too. It learns of restaurant changes from the
+	// RestaurantCache, and of reviews from ReviewsDao.
+	protected final RankingIndex rankingIndex;
 
-	protected RestaurantsDao() {
-		connectionManager = new ConnectionManager();
+	protected RestaurantsDao(ConnectionManager connectionManager, RestaurantCache restaurantCache,
+			CuisineIndex cuisineIndex, RankingIndex rankingIndex) {
+		this.connectionManager = connectionManager;
+		this.restaurantCache = restaurantCache;
+		this.cuisineIndex = cuisineIndex;
+		this.rankingIndex = rankingIndex;
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static RestaurantsDao getInstance() {
-		if (instance == null) {
-			instance = new RestaurantsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getRestaurantsDao();
 	}
 
 	/**
@@ -39,16 +80,36 @@ public class RestaurantsDao {
 	 * @throws SQLException
 	 */
 	public Restaurants create(Restaurants restaurant) throws SQLException {
-		String insertRestaurant =
-			"INSERT INTO Restaurants(Name,Description,Menu,Hours,Active,CuisineType,Street1,Street2,City,State,Zip,CompanyName) "
-			+ "VALUES(?,?,?,?,?,?,?,?,?,?,?,?);";
 		Connection connection = null;
+		try {
+			connection = connectionManager.getConnection();
+			insertRestaurant(connection, restaurant);
+			cuisineIndex.added(Collections.singletonList(restaurant));
+			return restaurant;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Run the INSERT into Restaurants on the caller's connection and set the
+	 * auto-generated RestaurantId on restaurant. The connection is left open (and
+	 * uncommitted if the caller turned auto-commit off), so the subclass DAOs can
+	 * insert the Restaurants row and their own row in a single transaction.
+	 * 
+	 * @throws SQLException
+	 */
+	protected Restaurants insertRestaurant(Connection connection, Restaurants restaurant) throws SQLException {
 		PreparedStatement insertStmt = null;
 		ResultSet resultKey = null;
 		try {
-			connection = connectionManager.getConnection();
 			// Restaurants has an auto-generated key. So we want to retrieve that key.
-			insertStmt = connection.prepareStatement(insertRestaurant,
+			insertStmt = connection.prepareStatement(INSERT_RESTAURANT,
 					Statement.RETURN_GENERATED_KEYS);
 			// PreparedStatement allows us to substitute specific types into the query
 			// template.
@@ -57,23 +118,11 @@ public class RestaurantsDao {
 			// http://docs.oracle.com/javase/7/docs/api/java/sql/PreparedStatement.html
 			// For nullable fields, you can check the property first and then call setNull()
 			// as applicable.
-			insertStmt.setString(1, restaurant.getName());
-			insertStmt.setString(2, restaurant.getDescription());
-			insertStmt.setString(3, restaurant.getMenu());
-			insertStmt.setString(4, restaurant.getHours());
-			insertStmt.setBoolean(5, restaurant.isActive());
-			insertStmt.setString(6, restaurant.getCuisineType().name());
-			insertStmt.setString(7, restaurant.getStreet1());
-			insertStmt.setString(8, restaurant.getStreet2());
-			insertStmt.setString(9, restaurant.getCity());
-			insertStmt.setString(10, restaurant.getState());
-			insertStmt.setInt(11, restaurant.getZip());
-			insertStmt.setString(12, restaurant.getCompany().getCompanyName());
+			bindRestaurant(insertStmt, restaurant);
 			// Note that we call executeUpdate(). This is used for a INSERT/UPDATE/DELETE
 			// statements, and it returns an int for the row counts affected (or 0 if the
 			// statement returns nothing). For more information, see:
 			// http://docs.oracle.com/javase/7/docs/api/java/sql/PreparedStatement.html
-			// I'll leave it as an exercise for you to write UPDATE/DELETE methods.
 			insertStmt.executeUpdate();
 
 			// Retrieve the auto-generated key and set it, so it can be used by the caller.
@@ -85,13 +134,70 @@ public class RestaurantsDao {
 				throw new SQLException("Unable to retrieve auto-generated key.");
 			}
 			restaurant.setRestaurantId(restaurantId);
-			// Note 1: if this was an UPDATE statement, then the user fields should be
-			// updated before returning to the caller.
-			// Note 2: there are no auto-generated keys, so no update to perform on the
-			// input param user.
 			return restaurant;
+		} finally {
+			if (resultKey != null) {
+				resultKey.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
+	// Set the parameters of INSERT_RESTAURANT from restaurant.
+	protected static void bindRestaurant(PreparedStatement insertStmt, Restaurants restaurant) throws SQLException {
+		insertStmt.setString(1, restaurant.getName());
+		insertStmt.setString(2, restaurant.getDescription());
+		insertStmt.setString(3, restaurant.getMenu());
+		insertStmt.setString(4, restaurant.getHours());
+		insertStmt.setBoolean(5, restaurant.isActive());
+		insertStmt.setString(6, restaurant.getCuisineType().name());
+		insertStmt.setString(7, restaurant.getStreet1());
+		insertStmt.setString(8, restaurant.getStreet2());
+		insertStmt.setString(9, restaurant.getCity());
+		insertStmt.setString(10, restaurant.getState());
+		insertStmt.setInt(11, restaurant.getZip());
+		insertStmt.setString(12, restaurant.getCompany().getCompanyName());
+	}
+
+	/**
+	 * Save all the Restaurants instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Restaurants> createAll(List<Restaurants> restaurants) throws SQLException {
+		return createAll(restaurants, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the Restaurants instances by storing them in your MySQL instance.
+	 * This runs the INSERT statements as JDBC batches of batchSize rows, each sent
+	 * as one multi-row INSERT and committed as one transaction, and sets the
+	 * auto-generated RestaurantId on every instance. If a batch fails, it is rolled
+	 * back; the batches before it stay committed.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Restaurants> createAll(List<Restaurants> restaurants, int batchSize) throws SQLException {
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(INSERT_RESTAURANT, Statement.RETURN_GENERATED_KEYS);
+			for (List<Restaurants> batch : JdbcBatch.partition(restaurants, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, RestaurantsDao::bindRestaurant, Restaurants::setRestaurantId);
+				connection.commit();
+				cuisineIndex.added(batch);
+			}
+			return restaurants;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
@@ -103,47 +209,73 @@ public class RestaurantsDao {
 		}
 	}
 
+	public RestaurantCache getRestaurantCache() {
+		return restaurantCache;
+	}
+
 	/**
-	 * Get the Restaurants record by fetching it from your MySQL instance. This runs
-	 * a SELECT statement and returns a single Restaurants instance. Note that we
-	 * use CompaniesDao to retrieve the referenced Companies instance. One
-	 * alternative (possibly more efficient) is using a single SELECT statement to
-	 * join the Restaurants, Companies tables and then build each object.
+	 * Get the Restaurants record from the restaurant cache, fetching it from your
+	 * MySQL instance with selectRestaurantsWithSubtypeByIds() on a miss. The returned
+	 * instance is the restaurant as its most specific type, and is shared with
+	 * other callers.
 	 * 
 	 * @throws SQLException
 	 */
 	public Restaurants getRestaurantById(int restaurantId) throws SQLException {
-		String selectRestaurant =
-			"SELECT RestaurantId,Name,Description,Menu,Hours,Active,CuisineType,Street1,Street2,City,State,Zip,CompanyName "
-			+ "FROM Restaurants " + "WHERE RestaurantId=?;";
+		return UnitOfWork.get(Restaurants.class, restaurantId,
+				key -> restaurantCache.get(key, this::selectRestaurantWithSubtypeById));
+	}
+
+	public CuisineIndex getCuisineIndex() {
+		return cuisineIndex;
+	}
+
+	/**
+	 * Get the Restaurants of a cuisine, each as its most specific type, from the
+	 * cuisine index. The returned list is unmodifiable and shared with other
+	 * callers.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Restaurants> getRestaurantsByCuisine(Restaurants.CuisineType cuisine) throws SQLException {
+		return cuisineIndex.get(cuisine, false, this::selectRestaurantsByCuisine, this::getRestaurantsByIds);
+	}
+
+	/**
+	 * Get the active Restaurants of a cuisine from the cuisine index. See
+	 * getRestaurantsByCuisine().
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Restaurants> getActiveRestaurantsByCuisine(Restaurants.CuisineType cuisine) throws SQLException {
+		return cuisineIndex.get(cuisine, true, this::selectRestaurantsByCuisine, this::getRestaurantsByIds);
+	}
+
+	/**
+	 * Get the matching Restaurants records, each as its most specific type, by
+	 * fetching from your MySQL instance. This runs a SELECT statement that joins
+	 * the subtype tables and Companies, and returns a list of matching Restaurants
+	 * in RestaurantId order.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Restaurants> selectRestaurantsByCuisine(Restaurants.CuisineType cuisine) throws SQLException {
+		List<Restaurants> restaurants = new ArrayList<Restaurants>();
+		String selectRestaurants = SELECT_RESTAURANT_WITH_SUBTYPE
+				+ "WHERE CuisineType=? ORDER BY Restaurants.RestaurantId;";
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
 		try {
 			connection = connectionManager.getConnection();
-			selectStmt = connection.prepareStatement(selectRestaurant);
-			selectStmt.setInt(1, restaurantId);
+			selectStmt = connection.prepareStatement(selectRestaurants);
+			selectStmt.setString(1, cuisine.name());
 			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
-			if (results.next()) {
-				int resultRestaurantId = results.getInt("RestaurantId");
-				String name = results.getString("Name");
-				String description = results.getString("Description");
-				String menu = results.getString("Menu");
-				String hours = results.getString("Hours");
-				boolean active = results.getBoolean("Active");
-				Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
-				String street1 = results.getString("Street1");
-				String street2 = results.getString("Street2");
-				String city = results.getString("City");
-				String state = results.getString("State");
-				int zip = results.getInt("Zip");
-				String companyName = results.getString("CompanyName");
-				Companies company = companiesDao.getCompanyByCompanyName(companyName);
-
-				Restaurants restaurant = new Restaurants(resultRestaurantId, name, description, menu, hours, active,
-						cuisineType, street1, street2, city, state, zip, company);
-				return restaurant;
+			// Companies shared by several restaurants are built once.
+			Map<String, Companies> companies = new HashMap<String, Companies>();
+			while (results.next()) {
+				// The cuisine index shares these, like the restaurant cache.
+				restaurants.add(buildRestaurantWithSubtype(results, companies, true));
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -159,7 +291,7 @@ public class RestaurantsDao {
 				results.close();
 			}
 		}
-		return null;
+		return restaurants;
 	}
 
 	/**
@@ -168,20 +300,20 @@ public class RestaurantsDao {
 	 * 
 	 * @throws SQLException
 	 */
-	public List<Restaurants> getRestaurantsByCuisine(Restaurants.CuisineType cuisine) throws SQLException {
+	public List<Restaurants> getRestaurantsByCompanyName(String companyName) throws SQLException {
 		List<Restaurants> restaurants = new ArrayList<Restaurants>();
 		String selectRestaurants =
 			"SELECT RestaurantId,Name,Description,Menu,Hours,Active,CuisineType,Street1,Street2,City,State,Zip,CompanyName "
-			+ "FROM Restaurants " + "WHERE CuisineType=?;";
+			+ "FROM Restaurants " + "WHERE CompanyName=?;";
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
+		String resultCompanyName = null;
 		try {
 			connection = connectionManager.getConnection();
 			selectStmt = connection.prepareStatement(selectRestaurants);
-			selectStmt.setString(1, cuisine.toString());
+			selectStmt.setString(1, companyName);
 			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
 			while (results.next()) {
 				int restaurantId = results.getInt("RestaurantId");
 				String name = results.getString("Name");
@@ -189,18 +321,16 @@ public class RestaurantsDao {
 				String menu = results.getString("Menu");
 				String hours = results.getString("Hours");
 				boolean active = results.getBoolean("Active");
-				Restaurants.CuisineType resultCuisineType = Restaurants.CuisineType
-						.valueOf(results.getString("CuisineType"));
+				Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
 				String street1 = results.getString("Street1");
 				String street2 = results.getString("Street2");
 				String city = results.getString("City");
 				String state = results.getString("State");
 				int zip = results.getInt("Zip");
-				String companyName = results.getString("CompanyName");
-				Companies company = companiesDao.getCompanyByCompanyName(companyName);
+				resultCompanyName = results.getString("CompanyName");
 
 				Restaurants restaurant = new Restaurants(restaurantId, name, description, menu, hours, active,
-						resultCuisineType, street1, street2, city, state, zip, company);
+						cuisineType, street1, street2, city, state, zip, null);
 				restaurants.add(restaurant);
 			}
 		} catch (SQLException e) {
@@ -217,48 +347,257 @@ public class RestaurantsDao {
 				results.close();
 			}
 		}
+		// Every row is of the one company. It is looked up once the connection is
+		// given back, since CompaniesDao borrows its own on a cache miss.
+		if (resultCompanyName != null) {
+			Companies company = CompaniesDao.getInstance().getCompanyByCompanyName(resultCompanyName);
+			for (Restaurants restaurant : restaurants) {
+				restaurant.setCompany(company);
+			}
+		}
 		return restaurants;
 	}
 
+	public RankingIndex getRankingIndex() {
+		return rankingIndex;
+	}
+
 	/**
-	 * Get the matching Restaurants records by fetching from your MySQL instance.
-	 * This runs a SELECT statement and returns a list of matching Restaurants.
+	 * Get the n best-rated active restaurants of a cuisine in a city, best first,
+	 * from the ranking index (see RankingIndex). n is at most
+	 * RankingIndex.DEFAULT_TOP_K. The returned list is unmodifiable and shared
+	 * with other callers.
 	 * 
 	 * @throws SQLException
 	 */
-	public List<Restaurants> getRestaurantsByCompanyName(String companyName) throws SQLException {
-		List<Restaurants> restaurants = new ArrayList<Restaurants>();
-		String selectRestaurants =
-			"SELECT RestaurantId,Name,Description,Menu,Hours,Active,CuisineType,Street1,Street2,City,State,Zip,CompanyName "
-			+ "FROM Restaurants " + "WHERE CompanyName=?;";
+	public List<RankedRestaurant> getTopRatedRestaurants(Restaurants.CuisineType cuisine, String city,
+			String state, int n) throws SQLException {
+		return rankingIndex.getTop(cuisine, city, state, n, this::scanRankingRows, this::selectRankingRowsByIds);
+	}
+
+	// Loader of rankingIndex: every restaurant with RatingStats.
+	protected ScanIterator<RankingIndex.Row> scanRankingRows() throws SQLException {
+		return new ScanIterator<RankingIndex.Row>(connectionManager, SELECT_RANKING_ROW + ";",
+				RestaurantsDao::buildRankingRow, null, ScanIterator.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Get the RankingIndex.Row of the given restaurants by fetching them from your
+	 * MySQL instance, with one SELECT statement per chunk of
+	 * BatchLoader.CHUNK_SIZE ids. Restaurants that do not exist or have no
+	 * RatingStats are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	protected Map<Integer, RankingIndex.Row> selectRankingRowsByIds(Collection<Integer> restaurantIds)
+			throws SQLException {
+		Map<Integer, RankingIndex.Row> rows = new HashMap<Integer, RankingIndex.Row>();
+		int[] keys = BatchLoader.toIntArray(new LinkedHashSet<Integer>(restaurantIds));
+		if (keys.length == 0) {
+			return rows;
+		}
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
 		try {
 			connection = connectionManager.getConnection();
-			selectStmt = connection.prepareStatement(selectRestaurants);
-			selectStmt.setString(1, companyName);
+			for (int from = 0; from < keys.length; from += BatchLoader.CHUNK_SIZE) {
+				int to = Math.min(from + BatchLoader.CHUNK_SIZE, keys.length);
+				String selectRows = SELECT_RANKING_ROW
+					+ "WHERE Restaurants.RestaurantId IN (" + BatchLoader.placeholders(to - from) + ");";
+				selectStmt = connection.prepareStatement(selectRows);
+				for (int i = from; i < to; i++) {
+					selectStmt.setInt(i - from + 1, keys[i]);
+				}
+				results = selectStmt.executeQuery();
+				while (results.next()) {
+					RankingIndex.Row row = buildRankingRow(results);
+					rows.put(row.restaurantId, row);
+				}
+				results.close();
+				selectStmt.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return rows;
+	}
+
+	private static RankingIndex.Row buildRankingRow(ResultSet results) throws SQLException {
+		String cuisineType = results.getString("CuisineType");
+		return new RankingIndex.Row(results.getInt("RestaurantId"),
+				cuisineType == null ? null : Restaurants.CuisineType.valueOf(cuisineType),
+				results.getString("City"), results.getString("State"), results.getBoolean("Active"),
+				results.getInt("ReviewCount"), results.getDouble("RatingSum"));
+	}
+
+	/**
+	 * Get the RestaurantSummary of every restaurant of a cuisine, in RestaurantId
+	 * order. This runs a SELECT statement for just the summary columns, for list
+	 * views that do not need the full restaurants.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<RestaurantSummary> getRestaurantSummariesByCuisine(Restaurants.CuisineType cuisine)
+			throws SQLException {
+		return selectRestaurantSummaries("WHERE CuisineType=? ORDER BY Restaurants.RestaurantId;", cuisine.name());
+	}
+
+	/**
+	 * Get the RestaurantSummary of every restaurant of a company, in RestaurantId
+	 * order. See getRestaurantSummariesByCuisine().
+	 * 
+	 * @throws SQLException
+	 */
+	public List<RestaurantSummary> getRestaurantSummariesByCompanyName(String companyName) throws SQLException {
+		return selectRestaurantSummaries("WHERE CompanyName=? ORDER BY Restaurants.RestaurantId;", companyName);
+	}
+
+	/**
+	 * Get the RestaurantSummary records matching the clause (any JOIN, then the
+	 * WHERE clause with one parameter) by fetching them from your MySQL instance.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<RestaurantSummary> selectRestaurantSummaries(String clause, Object key) throws SQLException {
+		List<RestaurantSummary> summaries = new ArrayList<RestaurantSummary>();
+		String selectSummaries = SELECT_RESTAURANT_SUMMARY + clause;
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(selectSummaries);
+			selectStmt.setObject(1, key);
 			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
 			while (results.next()) {
 				int restaurantId = results.getInt("RestaurantId");
 				String name = results.getString("Name");
-				String description = results.getString("Description");
-				String menu = results.getString("Menu");
-				String hours = results.getString("Hours");
 				boolean active = results.getBoolean("Active");
 				Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
-				String street1 = results.getString("Street1");
-				String street2 = results.getString("Street2");
 				String city = results.getString("City");
 				String state = results.getString("State");
-				int zip = results.getInt("Zip");
-				String resultCompanyName = results.getString("CompanyName");
-				Companies resultCompany = companiesDao.getCompanyByCompanyName(resultCompanyName);
+				String companyName = results.getString("CompanyName");
+				summaries.add(new RestaurantSummary(restaurantId, name, active, cuisineType, city, state, companyName));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return summaries;
+	}
 
-				Restaurants restaurant = new Restaurants(restaurantId, name, description, menu, hours, active,
-						cuisineType, street1, street2, city, state, zip, resultCompany);
-				restaurants.add(restaurant);
+	/**
+	 * Get the Restaurants records for the given restaurantIds from the restaurant
+	 * cache, fetching all the misses with one batch. Returns the matching
+	 * Restaurants, as their most specific types, keyed by RestaurantId; ids without
+	 * a record are absent.
+	 * 
+	 * @throws SQLException
+	 */
+	public Map<Integer, Restaurants> getRestaurantsByIds(int[] restaurantIds) throws SQLException {
+		return getRestaurantsWithSubtypeByIds(restaurantIds);
+	}
+
+	// Collection variant of getRestaurantsByIds(), for CuisineIndex.
+	protected Map<Integer, Restaurants> getRestaurantsByIds(Collection<Integer> restaurantIds) throws SQLException {
+		return getRestaurantsWithSubtypeByIds(BatchLoader.toIntArray(restaurantIds));
+	}
+
+	/**
+	 * Get the Restaurants record with the given restaurantId as its most specific
+	 * type: SitDownRestaurants, TakeOutRestaurants, FoodCartRestaurants, or plain
+	 * Restaurants if it has no subtype row. This is the same cached lookup as
+	 * getRestaurantById().
+	 * 
+	 * @throws SQLException
+	 */
+	public Restaurants getRestaurantWithSubtypeById(int restaurantId) throws SQLException {
+		return getRestaurantById(restaurantId);
+	}
+
+	/**
+	 * Batch variant of getRestaurantWithSubtypeById(). Restaurants that are not in
+	 * the restaurant cache are fetched with selectRestaurantsWithSubtypeByIds().
+	 * Ids without a record are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	public Map<Integer, Restaurants> getRestaurantsWithSubtypeByIds(int[] restaurantIds) throws SQLException {
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int restaurantId : BatchLoader.distinct(restaurantIds)) {
+			keys.add(restaurantId);
+		}
+		return UnitOfWork.getAll(Restaurants.class, keys,
+				missing -> restaurantCache.getAll(missing, this::selectRestaurantsWithSubtypeByIds));
+	}
+
+	// Loader of restaurantCache for a single restaurant.
+	protected Restaurants selectRestaurantWithSubtypeById(Integer restaurantId) throws SQLException {
+		List<Integer> keys = new ArrayList<Integer>();
+		keys.add(restaurantId);
+		return selectRestaurantsWithSubtypeByIds(keys).get(restaurantId);
+	}
+
+	/**
+	 * Get the Restaurants records for the given restaurantIds, each as its most
+	 * specific type, by fetching them from your MySQL instance. This runs one
+	 * SELECT statement per chunk of BatchLoader.CHUNK_SIZE ids that LEFT JOINs
+	 * Restaurants with the three subtype tables and Companies, instead of probing
+	 * each subtype DAO in turn. Ids without a record are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	protected Map<Integer, Restaurants> selectRestaurantsWithSubtypeByIds(Collection<Integer> restaurantIds)
+			throws SQLException {
+		Map<Integer, Restaurants> restaurants = new HashMap<Integer, Restaurants>();
+		int[] keys = BatchLoader.toIntArray(new LinkedHashSet<Integer>(restaurantIds));
+		if (keys.length == 0) {
+			return restaurants;
+		}
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			for (int from = 0; from < keys.length; from += BatchLoader.CHUNK_SIZE) {
+				int to = Math.min(from + BatchLoader.CHUNK_SIZE, keys.length);
+				String selectRestaurants = SELECT_RESTAURANT_WITH_SUBTYPE
+					+ "WHERE Restaurants.RestaurantId IN (" + BatchLoader.placeholders(to - from) + ");";
+				selectStmt = connection.prepareStatement(selectRestaurants);
+				for (int i = from; i < to; i++) {
+					selectStmt.setInt(i - from + 1, keys[i]);
+				}
+				results = selectStmt.executeQuery();
+				// Companies shared by several restaurants are built once.
+				Map<String, Companies> companies = new HashMap<String, Companies>();
+				while (results.next()) {
+					Restaurants restaurant = buildRestaurantWithSubtype(results, companies, true);
+					restaurants.put(restaurant.getRestaurantId(), restaurant);
+				}
+				results.close();
+				selectStmt.close();
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -277,26 +616,190 @@ public class RestaurantsDao {
 		return restaurants;
 	}
 
+	// Build the most specific Restaurants subclass from a row of the subtype join.
+	// The restaurant cache holds immutable instances, since they are shared.
+	static Restaurants buildRestaurantWithSubtype(ResultSet results, Map<String, Companies> companies,
+			boolean immutable) throws SQLException {
+		int restaurantId = results.getInt("RestaurantId");
+		String name = results.getString("Name");
+		String description = results.getString("Description");
+		String menu = results.getString("Menu");
+		String hours = results.getString("Hours");
+		boolean active = results.getBoolean("Active");
+		Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
+		String street1 = results.getString("Street1");
+		String street2 = results.getString("Street2");
+		String city = results.getString("City");
+		String state = results.getString("State");
+		int zip = results.getInt("Zip");
+		Companies company = null;
+		String companyName = results.getString("CompanyName");
+		if (companyName != null) {
+			company = companies.get(companyName);
+			if (company == null) {
+				company = UnitOfWork.intern(Companies.class, companyName,
+						new ImmutableCompanies(companyName, results.getString("About")));
+				companies.put(companyName, company);
+			}
+		}
+
+		results.getInt("SitDownRestaurantId");
+		if (!results.wasNull()) {
+			int capacity = results.getInt("Capacity");
+			if (immutable) {
+				return new ImmutableSitDownRestaurants(restaurantId, name, description, menu, hours, active,
+						cuisineType, street1, street2, city, state, zip, company, capacity);
+			}
+			return new SitDownRestaurants(restaurantId, name, description, menu, hours, active, cuisineType,
+					street1, street2, city, state, zip, company, capacity);
+		}
+		results.getInt("TakeOutRestaurantId");
+		if (!results.wasNull()) {
+			int maxWaitTime = results.getInt("MaxWaitTime");
+			if (immutable) {
+				return new ImmutableTakeOutRestaurants(restaurantId, name, description, menu, hours, active,
+						cuisineType, street1, street2, city, state, zip, company, maxWaitTime);
+			}
+			return new TakeOutRestaurants(restaurantId, name, description, menu, hours, active, cuisineType,
+					street1, street2, city, state, zip, company, maxWaitTime);
+		}
+		results.getInt("FoodCartRestaurantId");
+		if (!results.wasNull()) {
+			boolean licensed = results.getBoolean("Licensed");
+			if (immutable) {
+				return new ImmutableFoodCartRestaurants(restaurantId, name, description, menu, hours, active,
+						cuisineType, street1, street2, city, state, zip, company, licensed);
+			}
+			return new FoodCartRestaurants(restaurantId, name, description, menu, hours, active, cuisineType,
+					street1, street2, city, state, zip, company, licensed);
+		}
+		if (immutable) {
+			return new ImmutableRestaurants(restaurantId, name, description, menu, hours, active, cuisineType,
+					street1, street2, city, state, zip, company);
+		}
+		return new Restaurants(restaurantId, name, description, menu, hours, active, cuisineType, street1,
+				street2, city, state, zip, company);
+	}
+
+	/**
+	 * An immutable copy of restaurant, of the same subtype, for the cached views
+	 * that embed restaurants. Returns restaurant itself if it is immutable already,
+	 * and null for null.
+	 */
+	static Restaurants toImmutable(Restaurants restaurant) {
+		if (restaurant == null || restaurant instanceof Immutable) {
+			return restaurant;
+		}
+		if (restaurant instanceof SitDownRestaurants) {
+			return toImmutable((SitDownRestaurants) restaurant);
+		}
+		if (restaurant instanceof TakeOutRestaurants) {
+			return new ImmutableTakeOutRestaurants(restaurant.getRestaurantId(), restaurant.getName(),
+					restaurant.getDescription(), restaurant.getMenu(), restaurant.getHours(), restaurant.isActive(),
+					restaurant.getCuisineType(), restaurant.getStreet1(), restaurant.getStreet2(),
+					restaurant.getCity(), restaurant.getState(), restaurant.getZip(), restaurant.getCompany(),
+					((TakeOutRestaurants) restaurant).getMaxWaitTime());
+		}
+		if (restaurant instanceof FoodCartRestaurants) {
+			return new ImmutableFoodCartRestaurants(restaurant.getRestaurantId(), restaurant.getName(),
+					restaurant.getDescription(), restaurant.getMenu(), restaurant.getHours(), restaurant.isActive(),
+					restaurant.getCuisineType(), restaurant.getStreet1(), restaurant.getStreet2(),
+					restaurant.getCity(), restaurant.getState(), restaurant.getZip(), restaurant.getCompany(),
+					((FoodCartRestaurants) restaurant).isLicensed());
+		}
+		return new ImmutableRestaurants(restaurant.getRestaurantId(), restaurant.getName(),
+				restaurant.getDescription(), restaurant.getMenu(), restaurant.getHours(), restaurant.isActive(),
+				restaurant.getCuisineType(), restaurant.getStreet1(), restaurant.getStreet2(), restaurant.getCity(),
+				restaurant.getState(), restaurant.getZip(), restaurant.getCompany());
+	}
+
+	// SitDownRestaurants variant of toImmutable(), for the cached Reservations.
+	static SitDownRestaurants toImmutable(SitDownRestaurants restaurant) {
+		if (restaurant == null || restaurant instanceof Immutable) {
+			return restaurant;
+		}
+		return new ImmutableSitDownRestaurants(restaurant.getRestaurantId(), restaurant.getName(),
+				restaurant.getDescription(), restaurant.getMenu(), restaurant.getHours(), restaurant.isActive(),
+				restaurant.getCuisineType(), restaurant.getStreet1(), restaurant.getStreet2(), restaurant.getCity(),
+				restaurant.getState(), restaurant.getZip(), restaurant.getCompany(), restaurant.getCapacity());
+	}
+
+	/**
+	 * Scan all the Restaurants in RestaurantId order, each as its most specific
+	 * type, streaming them from your MySQL instance in chunks of
+	 * ScanIterator.DEFAULT_CHUNK_SIZE instead of building one list. The restaurant
+	 * cache is neither read nor filled. The caller must close the returned
+	 * iterator.
+	 * 
+	 * @throws SQLException
+	 */
+	public ScanIterator<Restaurants> scanRestaurants() throws SQLException {
+		// Companies are shared within a chunk, like within a batch of
+		// selectRestaurantsWithSubtypeByIds(), and forgotten after it.
+		Map<String, Companies> companies = new HashMap<String, Companies>();
+		return new ScanIterator<Restaurants>(connectionManager,
+				SELECT_RESTAURANT_WITH_SUBTYPE + "ORDER BY Restaurants.RestaurantId;",
+				results -> buildRestaurantWithSubtype(results, companies, false), chunk -> companies.clear(),
+				ScanIterator.DEFAULT_CHUNK_SIZE);
+	}
+
 	/**
-	 * Delete the Restaurants instance. This runs a DELETE statement.
+	 * Activate or deactivate the Restaurants instance. This runs a UPDATE statement,
+	 * sets active on restaurant, and invalidates the cached restaurant, which also
+	 * evicts the cached views that embed it and queues it for the cuisine and
+	 * ranking indexes to reread. If restaurant is an immutable instance from the
+	 * cache, it is left as is and the restaurant is read back instead.
+	 * 
+	 * @throws SQLException
+	 */
+	public Restaurants updateActive(Restaurants restaurant, boolean active) throws SQLException {
+		String updateActive = "UPDATE Restaurants SET Active=? WHERE RestaurantId=?;";
+		Connection connection = null;
+		PreparedStatement updateStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			updateStmt = connection.prepareStatement(updateActive);
+			updateStmt.setBoolean(1, active);
+			updateStmt.setInt(2, restaurant.getRestaurantId());
+			updateStmt.executeUpdate();
+			if (!(restaurant instanceof Immutable)) {
+				restaurant.setActive(active);
+			}
+			// The invalidation drops the restaurant from its cuisine's list; added()
+			// has the index read it back with the new Active, in its RestaurantId place.
+			restaurantCache.invalidate(restaurant.getRestaurantId());
+			UnitOfWork.evict(Restaurants.class, restaurant.getRestaurantId());
+			cuisineIndex.added(Collections.singletonList(restaurant));
+			if (restaurant instanceof Immutable) {
+				return getRestaurantById(restaurant.getRestaurantId());
+			}
+			return restaurant;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (updateStmt != null) {
+				updateStmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Delete the Restaurants instance. This runs a DELETE statement and invalidates
+	 * the cached restaurant, which also evicts the cached views that embed it.
 	 * 
 	 * @throws SQLException
 	 */
 	public Restaurants delete(Restaurants restaurant) throws SQLException {
-		// Note: Reservations has a fk constraint on Restaurants with the reference
-		// option ON DELETE CASCADE.
-		// So this delete operation will delete all the referencing Reservations.
-		// Note: Recommendations has a fk constraint on Restaurants with the reference
-		// option ON DELETE CASCADE.
-		// So this delete operation will delete all the referencing Recommendations.
-		String deleteRestaurant = "DELETE FROM Restaurants WHERE RestaurantId=?;";
 		Connection connection = null;
-		PreparedStatement deleteStmt = null;
 		try {
 			connection = connectionManager.getConnection();
-			deleteStmt = connection.prepareStatement(deleteRestaurant);
-			deleteStmt.setInt(1, restaurant.getRestaurantId());
-			deleteStmt.executeUpdate();
+			deleteRestaurant(connection, restaurant);
+			restaurantCache.invalidate(restaurant.getRestaurantId());
+			UnitOfWork.evict(Restaurants.class, restaurant.getRestaurantId());
 
 			// Return null so the caller can no longer operate on the BlogComments instance.
 			return null;
@@ -307,6 +810,32 @@ public class RestaurantsDao {
 			if (connection != null) {
 				connection.close();
 			}
+		}
+	}
+
+	/**
+	 * Run the DELETE from Restaurants on the caller's connection. The connection
+	 * is left open (and uncommitted if the caller turned auto-commit off), so the
+	 * subclass DAOs can delete their own row and the Restaurants row in a single
+	 * transaction without borrowing a second connection. The caller invalidates
+	 * the cached restaurant once it commits.
+	 * 
+	 * @throws SQLException
+	 */
+	protected void deleteRestaurant(Connection connection, Restaurants restaurant) throws SQLException {
+		// Note: Reservations has a fk constraint on Restaurants with the reference
+		// option ON DELETE CASCADE.
+		// So this delete operation will delete all the referencing Reservations.
+		// Note: Recommendations has a fk constraint on Restaurants with the reference
+		// option ON DELETE CASCADE.
+		// So this delete operation will delete all the referencing Recommendations.
+		String deleteRestaurant = "DELETE FROM Restaurants WHERE RestaurantId=?;";
+		PreparedStatement deleteStmt = null;
+		try {
+			deleteStmt = connection.prepareStatement(deleteRestaurant);
+			deleteStmt.setInt(1, restaurant.getRestaurantId());
+			deleteStmt.executeUpdate();
+		} finally {
 			if (deleteStmt != null) {
 				deleteStmt.close();
 			}
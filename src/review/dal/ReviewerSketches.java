@@ -0,0 +1,300 @@
+package review.dal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import review.model.*;
+
+/**
+ * Approximate reviewer statistics for dashboards, kept in sketches instead of
+ * running COUNT(DISTINCT UserName) or GROUP BY UserName over Reviews:
+ * <ul>
+ * <li>the distinct reviewers of each restaurant, in a HyperLogLog per
+ * restaurant. A company's count is the union of its restaurants' sketches, so
+ * a reviewer of two of its restaurants is counted once;</li>
+ * <li>the number of reviews and recommendations of each user, in a
+ * CountMinSketch each;</li>
+ * <li>the top reviewers and recommenders by volume, in a SpaceSaving summary
+ * each.</li>
+ * </ul>
+ *
+ * The sketches count what they are fed: DaoRegistry registers them as a
+ * ReviewsDao.ReviewListener and a RecommendationsDao.RecommendationListener,
+ * so every review and recommendation created through the DAOs is added after
+ * it commits. Deletes are not subtracted, since none of the sketches can
+ * remove an item: the counts are of everything ever created. Rows written
+ * around the DAOs (by BulkLoader, or before the process started) are added by
+ * merging in the sketches built by ReviewerSketchesBackfill.
+ *
+ * With the review.sketch.file property set, DaoRegistry does that merge at
+ * startup and saves the sketches back to the same file every
+ * review.sketch.saveSeconds and at shutdown, so they outlive the process.
+ * Point the property at a ReviewerSketchesBackfill output once; every save
+ * then holds the backfill plus everything created since. Without the property
+ * the sketches only count what this process created.
+ *
+ * Sketches built on different nodes merge with merge(), and persist in a
+ * compact binary form with writeTo() and save(). The distinct counts merge
+ * losslessly; the per-user counts add up, so merge only sketches of disjoint
+ * writes, e.g. one backfill plus what each node was fed since.
+ *
+ * All methods synchronize on the ReviewerSketches.
+ */
+public class ReviewerSketches implements ReviewsDao.ReviewListener, RecommendationsDao.RecommendationListener {
+	// HyperLogLog precision of each restaurant's sketch: 2^precision registers.
+	public static final int DEFAULT_PRECISION = Integer.getInteger("review.sketch.precision", 12);
+	// Counters per row, and rows, of the per-user CountMinSketches.
+	public static final int DEFAULT_WIDTH = Integer.getInteger("review.sketch.width", 1 << 14);
+	public static final int DEFAULT_DEPTH = Integer.getInteger("review.sketch.depth", 4);
+	// Users tracked by each top-by-volume SpaceSaving summary.
+	public static final int DEFAULT_TOP_CAPACITY = Integer.getInteger("review.sketch.topCapacity", 1000);
+	// File DaoRegistry loads the sketches from and saves them to; null to keep them in memory only.
+	public static final String DEFAULT_FILE = System.getProperty("review.sketch.file");
+	// Seconds between saves to DEFAULT_FILE, besides the save at shutdown; 0 to save only at shutdown.
+	public static final int DEFAULT_SAVE_SECONDS = Integer.getInteger("review.sketch.saveSeconds", 300);
+
+	private static final int VERSION = 1;
+	// Orders the locks of two merges whose sketches have the same identity hash code.
+	private static final Object TIE_LOCK = new Object();
+
+	private final int precision;
+	private final Map<Integer, HyperLogLog> reviewersByRestaurant = new HashMap<Integer, HyperLogLog>();
+	private final CountMinSketch reviewCounts;
+	private final SpaceSaving topReviewers;
+	private final CountMinSketch recommendationCounts;
+	private final SpaceSaving topRecommenders;
+
+	public ReviewerSketches(int precision, int width, int depth, int topCapacity) {
+		this(precision, new CountMinSketch(depth, width), new SpaceSaving(topCapacity),
+				new CountMinSketch(depth, width), new SpaceSaving(topCapacity));
+	}
+
+	private ReviewerSketches(int precision, CountMinSketch reviewCounts, SpaceSaving topReviewers,
+			CountMinSketch recommendationCounts, SpaceSaving topRecommenders) {
+		if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+			throw new IllegalArgumentException("Invalid precision: " + precision);
+		}
+		this.precision = precision;
+		this.reviewCounts = reviewCounts;
+		this.topReviewers = topReviewers;
+		this.recommendationCounts = recommendationCounts;
+		this.topRecommenders = topRecommenders;
+	}
+
+	@Override
+	public synchronized void reviewsCreated(Collection<Reviews> reviews) {
+		for (Reviews review : reviews) {
+			if (review.getUser() == null || review.getUser().getUserName() == null) {
+				continue;
+			}
+			String userName = review.getUser().getUserName();
+			reviewCounts.add(userName, 1);
+			topReviewers.add(userName, 1);
+			if (review.getRestaurant() != null) {
+				int restaurantId = review.getRestaurant().getRestaurantId();
+				HyperLogLog reviewers = reviewersByRestaurant.get(restaurantId);
+				if (reviewers == null) {
+					reviewers = new HyperLogLog(precision);
+					reviewersByRestaurant.put(restaurantId, reviewers);
+				}
+				reviewers.add(userName);
+			}
+		}
+	}
+
+	@Override
+	public void reviewsDeleted(Collection<Reviews> reviews) {
+		// The sketches cannot remove a reviewer; see the class comment.
+	}
+
+	@Override
+	public synchronized void recommendationsCreated(Collection<Recommendations> recommendations) {
+		for (Recommendations recommendation : recommendations) {
+			if (recommendation.getUser() == null || recommendation.getUser().getUserName() == null) {
+				continue;
+			}
+			String userName = recommendation.getUser().getUserName();
+			recommendationCounts.add(userName, 1);
+			topRecommenders.add(userName, 1);
+		}
+	}
+
+	/** The estimated number of distinct users who reviewed the restaurant. */
+	public synchronized long getDistinctReviewerCount(int restaurantId) {
+		HyperLogLog reviewers = reviewersByRestaurant.get(restaurantId);
+		return reviewers == null ? 0 : reviewers.estimate();
+	}
+
+	/**
+	 * The estimated number of distinct users who reviewed any of the
+	 * restaurants, e.g. those of a company.
+	 */
+	public synchronized long getDistinctReviewerCount(Collection<Integer> restaurantIds) {
+		HyperLogLog union = new HyperLogLog(precision);
+		for (Integer restaurantId : restaurantIds) {
+			HyperLogLog reviewers = reviewersByRestaurant.get(restaurantId);
+			if (reviewers != null) {
+				union.merge(reviewers);
+			}
+		}
+		return union.estimate();
+	}
+
+	/** The estimated number of reviews the user wrote, never below the true number. */
+	public synchronized long getReviewCount(String userName) {
+		return reviewCounts.estimate(userName);
+	}
+
+	/** The estimated number of recommendations the user made. */
+	public synchronized long getRecommendationCount(String userName) {
+		return recommendationCounts.estimate(userName);
+	}
+
+	/** The n users who wrote the most reviews, most first. */
+	public synchronized List<HeavyHitter> getTopReviewers(int n) {
+		return topReviewers.getTop(n);
+	}
+
+	/** The n users who made the most recommendations, most first. */
+	public synchronized List<HeavyHitter> getTopRecommenders(int n) {
+		return topRecommenders.getTop(n);
+	}
+
+	/**
+	 * Add the sketches of other, e.g. those of another node or of a backfill,
+	 * to these. Both are locked in a fixed order, so a.merge(b) and b.merge(a)
+	 * may run at the same time.
+	 *
+	 * @throws IllegalArgumentException if other was built with other dimensions.
+	 */
+	public void merge(ReviewerSketches other) {
+		if (other == this) {
+			throw new IllegalArgumentException("Cannot merge sketches into themselves");
+		}
+		int thisHash = System.identityHashCode(this);
+		int otherHash = System.identityHashCode(other);
+		if (thisHash == otherHash) {
+			// No order between the two; the tie lock admits one such merge at a time.
+			synchronized (TIE_LOCK) {
+				synchronized (this) {
+					synchronized (other) {
+						mergeLocked(other);
+					}
+				}
+			}
+			return;
+		}
+		Object first = thisHash < otherHash ? this : other;
+		Object second = first == this ? other : this;
+		synchronized (first) {
+			synchronized (second) {
+				mergeLocked(other);
+			}
+		}
+	}
+
+	// Holds "this" and other.
+	private void mergeLocked(ReviewerSketches other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge sketches of precision " + other.precision
+					+ " into sketches of precision " + precision);
+		}
+		// Check the remaining dimensions before anything is merged.
+		if (!sameDimensions(other.reviewCounts, reviewCounts)
+				|| !sameDimensions(other.recommendationCounts, recommendationCounts)) {
+			throw new IllegalArgumentException("Cannot merge sketches of other dimensions");
+		}
+		for (Map.Entry<Integer, HyperLogLog> entry : other.reviewersByRestaurant.entrySet()) {
+			HyperLogLog reviewers = reviewersByRestaurant.get(entry.getKey());
+			if (reviewers == null) {
+				reviewers = new HyperLogLog(precision);
+				reviewersByRestaurant.put(entry.getKey(), reviewers);
+			}
+			reviewers.merge(entry.getValue());
+		}
+		reviewCounts.merge(other.reviewCounts);
+		topReviewers.merge(other.topReviewers);
+		recommendationCounts.merge(other.recommendationCounts);
+		topRecommenders.merge(other.topRecommenders);
+	}
+
+	private static boolean sameDimensions(CountMinSketch a, CountMinSketch b) {
+		return a.getDepth() == b.getDepth() && a.getWidth() == b.getWidth();
+	}
+
+	/**
+	 * Write all the sketches to out. A restaurant's sketch takes 3 bytes per
+	 * distinct reviewer while it is sparse, and at most 2^precision bytes.
+	 */
+	public synchronized void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeByte(VERSION);
+		data.writeByte(precision);
+		data.writeInt(reviewersByRestaurant.size());
+		for (Map.Entry<Integer, HyperLogLog> entry : reviewersByRestaurant.entrySet()) {
+			data.writeInt(entry.getKey());
+			entry.getValue().writeTo(data);
+		}
+		reviewCounts.writeTo(data);
+		topReviewers.writeTo(data);
+		recommendationCounts.writeTo(data);
+		topRecommenders.writeTo(data);
+		data.flush();
+	}
+
+	/** Read sketches written by writeTo(). */
+	public static ReviewerSketches readFrom(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unknown ReviewerSketches version: " + version);
+		}
+		int precision = data.readUnsignedByte();
+		Map<Integer, HyperLogLog> reviewersByRestaurant = new HashMap<Integer, HyperLogLog>();
+		int restaurants = data.readInt();
+		for (int i = 0; i < restaurants; i++) {
+			int restaurantId = data.readInt();
+			HyperLogLog reviewers = HyperLogLog.readFrom(data);
+			if (reviewers.getPrecision() != precision) {
+				throw new IOException("Restaurant " + restaurantId + " has a sketch of precision "
+						+ reviewers.getPrecision() + " instead of " + precision);
+			}
+			reviewersByRestaurant.put(restaurantId, reviewers);
+		}
+		ReviewerSketches sketches = new ReviewerSketches(precision, CountMinSketch.readFrom(data),
+				SpaceSaving.readFrom(data), CountMinSketch.readFrom(data), SpaceSaving.readFrom(data));
+		sketches.reviewersByRestaurant.putAll(reviewersByRestaurant);
+		return sketches;
+	}
+
+	/**
+	 * Write the sketches to file, replacing it only once they are all written, so
+	 * a reader never sees a partial file.
+	 */
+	public void save(Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			writeTo(out);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/** Read sketches saved by save(). */
+	public static ReviewerSketches load(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return readFrom(in);
+		}
+	}
+}
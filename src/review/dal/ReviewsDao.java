@@ -7,8 +7,13 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import review.model.*;
 
@@ -17,37 +22,91 @@ import review.model.*;
  * in your MySQL instance. This is used to store {@link Reviews} into your MySQL
  * instance and retrieve {@link Reviews} from MySQL instance.
  */
-public class ReviewsDao {
+public class ReviewsDao implements RestaurantCache.InvalidationListener {
+	// Maximum number of restaurants whose Reviews are cached. 0 turns the cache off.
+	private static final int VIEW_CACHE_SIZE = Integer.getInteger("review.cache.reviewsByRestaurant.maxSize", 1000);
+
+	/**
+	 * Told about every review created or deleted through the ReviewsDao it is
+	 * registered with, after the change is committed. A deleted review carries its
+	 * stored Created, Rating and RestaurantId.
+	 */
+	public interface ReviewListener {
+		void reviewsCreated(Collection<Reviews> reviews);
+
+		void reviewsDeleted(Collection<Reviews> reviews);
+	}
+
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static ReviewsDao instance = null;
+	// The Reviews of each restaurant, as returned by getReviewsByRestaurantId().
+	// The lists embed the restaurant and the users, so they are evicted when the
+	// RestaurantCache invalidates the restaurant, when a review of the restaurant
+	// is created or deleted, and when a user is renamed or deleted.
+	protected final EntityCache<Integer, List<Reviews>> reviewsByRestaurant;
+
+	// The daily buckets behind getRestaurantRatingTrend() and
+	// getCompanyRatingTrend(). DaoRegistry registers it as a ReviewListener.
+	protected final RatingTrendIndex ratingTrendIndex;
+
+	// The sketches behind getDistinctReviewerCount() and getTopReviewers().
+	// DaoRegistry registers them as a ReviewListener.
+	protected final ReviewerSketches reviewerSketches;
+
+	// How the referenced Users and Restaurants are loaded. See FetchMode.
+	protected volatile FetchMode fetchMode = FetchMode.JOIN;
+
+	private final List<ReviewListener> listeners = new CopyOnWriteArrayList<ReviewListener>();
 
-	protected ReviewsDao() {
-		connectionManager = new ConnectionManager();
+	protected ReviewsDao(ConnectionManager connectionManager, RatingTrendIndex ratingTrendIndex,
+			ReviewerSketches reviewerSketches) {
+		this.connectionManager = connectionManager;
+		this.reviewsByRestaurant = new EntityCache<Integer, List<Reviews>>("ReviewsByRestaurant", VIEW_CACHE_SIZE);
+		this.ratingTrendIndex = ratingTrendIndex;
+		this.reviewerSketches = reviewerSketches;
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static ReviewsDao getInstance() {
-		if (instance == null) {
-			instance = new ReviewsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getReviewsDao();
+	}
+
+	public FetchMode getFetchMode() {
+		return fetchMode;
+	}
+
+	public void setFetchMode(FetchMode fetchMode) {
+		this.fetchMode = fetchMode;
+	}
+
+	public void addReviewListener(ReviewListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeReviewListener(ReviewListener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
 	 * Save the Reviews instance by storing it in your MySQL instance. This runs a
-	 * INSERT statement.
+	 * INSERT statement, and adds the rating to the RatingStats of the restaurant
+	 * in the same transaction. A rating outside 0.0 to 5.0 is rejected before
+	 * anything is written.
 	 * 
 	 * @throws SQLException
 	 */
 	public Reviews create(Reviews review) throws SQLException {
+		checkRating(review);
 		String insertReview = "INSERT INTO Reviews(Created,Content,Rating,UserName,RestaurantId) "
 				+ "VALUES(?,?,?,?,?);";
+		int originalReviewId = review.getReviewId();
+		RatingStatsDao ratingStatsDao = RatingStatsDao.getInstance();
 		Connection connection = null;
 		PreparedStatement insertStmt = null;
 		ResultSet resultKey = null;
 		try {
 			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
 			// Reviews has an auto-generated key. So we want to retrieve that key.
 			insertStmt = connection.prepareStatement(insertReview,
 					Statement.RETURN_GENERATED_KEYS);
@@ -80,6 +139,13 @@ public class ReviewsDao {
 				throw new SQLException("Unable to retrieve auto-generated key.");
 			}
 			review.setReviewId(reviewId);
+			ratingStatsDao.applyReviews(connection, Collections.singletonList(review), 1);
+			connection.commit();
+			ratingStatsDao.invalidate(Collections.singletonList(review));
+			invalidateView(review.getRestaurant());
+			for (ReviewListener listener : listeners) {
+				listener.reviewsCreated(Collections.singletonList(review));
+			}
 			// Note 1: if this was an UPDATE statement, then the user fields should be
 			// updated before returning to the caller.
 			// Note 2: there are no auto-generated keys, so no update to perform on the
@@ -87,6 +153,10 @@ public class ReviewsDao {
 			return review;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			review.setReviewId(originalReviewId);
 			throw e;
 		} finally {
 			if (connection != null) {
@@ -98,19 +168,107 @@ public class ReviewsDao {
 		}
 	}
 
+	/**
+	 * Save all the Reviews instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Reviews> createAll(List<Reviews> reviews) throws SQLException {
+		return createAll(reviews, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the Reviews instances by storing them in your MySQL instance. This
+	 * runs the INSERT statements as JDBC batches of batchSize rows, each sent as
+	 * one multi-row INSERT and committed as one transaction together with the
+	 * RatingStats of its restaurants, and sets the auto-generated ReviewId on
+	 * every instance. If a batch fails, it is rolled back; the batches before it
+	 * stay committed. The ratings of all the reviews are checked, as in create(),
+	 * before the first batch.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Reviews> createAll(List<Reviews> reviews, int batchSize) throws SQLException {
+		for (Reviews review : reviews) {
+			checkRating(review);
+		}
+		String insertReview = "INSERT INTO Reviews(Created,Content,Rating,UserName,RestaurantId) VALUES(?,?,?,?,?);";
+		RatingStatsDao ratingStatsDao = RatingStatsDao.getInstance();
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(insertReview, Statement.RETURN_GENERATED_KEYS);
+			for (List<Reviews> batch : JdbcBatch.partition(reviews, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, (stmt, review) -> {
+					stmt.setTimestamp(1, new Timestamp(review.getCreated().getTime()));
+					stmt.setString(2, review.getContent());
+					stmt.setDouble(3, review.getRating());
+					stmt.setString(4, review.getUser().getUserName());
+					stmt.setInt(5, review.getRestaurant().getRestaurantId());
+				}, Reviews::setReviewId);
+				ratingStatsDao.applyReviews(connection, batch, 1);
+				connection.commit();
+				ratingStatsDao.invalidate(batch);
+				for (Reviews review : batch) {
+					invalidateView(review.getRestaurant());
+				}
+				for (ReviewListener listener : listeners) {
+					listener.reviewsCreated(batch);
+				}
+			}
+			return reviews;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
+	// Rating is a DECIMAL(2,1), which accepts ratings such as 6.0 that have no
+	// RatingStats bucket; reject them as the database would reject a bad row.
+	private static void checkRating(Reviews review) throws SQLException {
+		double rating = review.getRating();
+		if (!(rating >= 0 && rating <= RatingStats.MAX_RATING)) {
+			throw new SQLException("Rating must be between 0.0 and " + RatingStats.MAX_RATING + ": " + rating);
+		}
+	}
+
 	/**
 	 * Get the Reviews record by fetching it from your MySQL instance. This runs a
-	 * SELECT statement and returns a single Reviews instance. Note that we use
-	 * UsersDao and RestaurantsDao to retrieve the referenced Users and Restaurants
-	 * instances. One alternative (possibly more efficient) is using a single SELECT
-	 * statement to join the Reviews, Users, Restaurants tables and then build each
-	 * object.
+	 * SELECT statement and returns a single Reviews instance. With
+	 * FetchMode.NESTED, we use UsersDao and RestaurantsDao to retrieve the
+	 * referenced Users and Restaurants instances. With FetchMode.JOIN (the
+	 * default), a single SELECT statement joins the Reviews, Users, Restaurants and
+	 * Companies tables and then builds each object.
 	 * 
 	 * @throws SQLException
 	 */
 	public Reviews getReviewById(int reviewId) throws SQLException {
+		if (fetchMode == FetchMode.JOIN) {
+			List<Reviews> reviews = getReviewsJoined("Reviews.ReviewId=?", reviewId);
+			return reviews.isEmpty() ? null : reviews.get(0);
+		}
+		if (fetchMode == FetchMode.BATCH || fetchMode == FetchMode.LAZY) {
+			List<Reviews> reviews = getReviewsBatched("ReviewId=?", reviewId);
+			return reviews.isEmpty() ? null : reviews.get(0);
+		}
 		String selectReview = "SELECT ReviewId,Created,Content,Rating,UserName,RestaurantId " + "FROM Reviews "
 				+ "WHERE ReviewId=?;";
+		List<Reviews> reviews = new ArrayList<Reviews>();
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> restaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -119,8 +277,6 @@ public class ReviewsDao {
 			selectStmt = connection.prepareStatement(selectReview);
 			selectStmt.setInt(1, reviewId);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
 			if (results.next()) {
 				int resultReviewId = results.getInt("ReviewId");
 				Date created = new Date(results.getTimestamp("Created").getTime());
@@ -129,11 +285,11 @@ public class ReviewsDao {
 				String userName = results.getString("UserName");
 				int restaurantId = results.getInt("RestaurantId");
 
-				Users user = usersDao.getUserByUserName(userName);
-				Restaurants restaurant = restaurantsDao.getRestaurantById(restaurantId);
+				userNames.add(userName);
+				restaurantIds.add(restaurantId);
 
-				Reviews review = new Reviews(resultReviewId, created, content, rating, user, restaurant);
-				return review;
+				Reviews review = new Reviews(resultReviewId, created, content, rating, null, null);
+				reviews.add(review);
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -149,7 +305,8 @@ public class ReviewsDao {
 				results.close();
 			}
 		}
-		return null;
+		resolveNested(reviews, userNames, restaurantIds);
+		return reviews.isEmpty() ? null : reviews.get(0);
 	}
 
 	/**
@@ -158,9 +315,17 @@ public class ReviewsDao {
 	 * @throws SQLException
 	 */
 	public List<Reviews> getReviewsByUserName(String userName) throws SQLException {
+		if (fetchMode == FetchMode.JOIN) {
+			return getReviewsJoined("Reviews.UserName=?", userName);
+		}
+		if (fetchMode == FetchMode.BATCH || fetchMode == FetchMode.LAZY) {
+			return getReviewsBatched("UserName=?", userName);
+		}
 		List<Reviews> reviews = new ArrayList<Reviews>();
 		String selectReviews = "SELECT ReviewId,Created,Content,Rating,UserName,RestaurantId " + "FROM Reviews "
 				+ "WHERE UserName=?;";
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> restaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -169,8 +334,6 @@ public class ReviewsDao {
 			selectStmt = connection.prepareStatement(selectReviews);
 			selectStmt.setString(1, userName);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
 			while (results.next()) {
 				int reviewId = results.getInt("ReviewId");
 				Date created = new Date(results.getTimestamp("Created").getTime());
@@ -178,12 +341,12 @@ public class ReviewsDao {
 				double rating = results.getDouble("Rating");
 
 				String resultUserName = results.getString("UserName");
-				Users resultUser = usersDao.getUserByUserName(resultUserName);
+				userNames.add(resultUserName);
 
 				int restaurantId = results.getInt("RestaurantId");
-				Restaurants restaurant = restaurantsDao.getRestaurantById(restaurantId);
+				restaurantIds.add(restaurantId);
 
-				Reviews review = new Reviews(reviewId, created, content, rating, resultUser, restaurant);
+				Reviews review = new Reviews(reviewId, created, content, rating, null, null);
 				reviews.add(review);
 			}
 		} catch (SQLException e) {
@@ -200,18 +363,112 @@ public class ReviewsDao {
 				results.close();
 			}
 		}
+		resolveNested(reviews, userNames, restaurantIds);
 		return reviews;
 	}
 
 	/**
-	 * Get the all the Reviews for a restaurantId.
+	 * Get one page of the Reviews for a userName, newest first. Pass a null cursor
+	 * for the first page, then the getNextCursor() of the previous page.
+	 * 
+	 * @throws SQLException
+	 */
+	public Page<Reviews> getReviewsByUserName(String userName, int pageSize, String cursor) throws SQLException {
+		return getReviewsPage("Reviews.UserName=?", userName, pageSize, cursor);
+	}
+
+	public EntityCache<Integer, List<Reviews>> getReviewsByRestaurantCache() {
+		return reviewsByRestaurant;
+	}
+
+	/**
+	 * Get the all the Reviews for a restaurantId, from the per-restaurant cache if
+	 * possible. The returned list is unmodifiable and shared with other callers,
+	 * and so are its ImmutableReviews and their restaurants (see Immutable).
 	 * 
 	 * @throws SQLException
 	 */
 	public List<Reviews> getReviewsByRestaurantId(int restaurantId) throws SQLException {
+		return reviewsByRestaurant.get(restaurantId, key -> toImmutable(selectReviewsByRestaurantId(key)));
+	}
+
+	// The cached view of reviews: an unmodifiable list of ImmutableReviews, whose
+	// users and restaurants are immutable too.
+	private static List<Reviews> toImmutable(List<Reviews> reviews) {
+		List<Reviews> immutable = new ArrayList<Reviews>(reviews.size());
+		for (Reviews review : reviews) {
+			immutable.add(new ImmutableReviews(review.getReviewId(), review.getCreated(), review.getContent(),
+					review.getRating(), UsersDao.toImmutable(review.getUser()),
+					RestaurantsDao.toImmutable(review.getRestaurant())));
+		}
+		return Collections.unmodifiableList(immutable);
+	}
+
+	/**
+	 * Get one page of the Reviews for a restaurantId, newest first. Pass a null
+	 * cursor for the first page, then the getNextCursor() of the previous page.
+	 * Pages are read from your MySQL instance, not from the per-restaurant cache.
+	 * 
+	 * @throws SQLException
+	 */
+	public Page<Reviews> getReviewsByRestaurantId(int restaurantId, int pageSize, String cursor)
+			throws SQLException {
+		return getReviewsPage("Reviews.RestaurantId=?", restaurantId, pageSize, cursor);
+	}
+
+	/**
+	 * Get one page of the Reviews matching whereClause, ordered by (Created,
+	 * ReviewId) descending. The page starts after the cursor with a keyset
+	 * condition instead of an OFFSET, so the (RestaurantId, Created, ReviewId) and
+	 * (UserName, Created, ReviewId) indexes serve every page with one range scan.
+	 * FetchMode.NESTED pages are resolved as with FetchMode.BATCH.
+	 * 
+	 * @throws SQLException
+	 */
+	protected Page<Reviews> getReviewsPage(String whereClause, Object key, int pageSize, String cursor)
+			throws SQLException {
+		Page.checkPageSize(pageSize);
+		Page.Cursor after = Page.Cursor.decode(cursor);
+		List<Object> keys = new ArrayList<Object>();
+		keys.add(key);
+		String clause = whereClause;
+		if (after != null) {
+			Timestamp created = new Timestamp(after.sortKey);
+			clause += " AND (Reviews.Created<? OR (Reviews.Created=? AND Reviews.ReviewId<?))";
+			keys.add(created);
+			keys.add(created);
+			keys.add(after.id);
+		}
+		// One row more than the page tells whether there is a next page.
+		clause += " ORDER BY Reviews.Created DESC,Reviews.ReviewId DESC LIMIT ?";
+		keys.add(pageSize + 1);
+		List<Reviews> reviews = fetchMode == FetchMode.JOIN
+				? getReviewsJoined(clause, keys.toArray())
+				: getReviewsBatched(clause, keys.toArray());
+		return Page.of(reviews, pageSize,
+				review -> new Page.Cursor(review.getCreated().getTime(), review.getReviewId()));
+	}
+
+	/**
+	 * Get the all the Reviews for a restaurantId by fetching them from your MySQL
+	 * instance, as configured by the fetch mode. The result is cached and shared,
+	 * so FetchMode.LAZY resolves the references as FetchMode.BATCH does instead
+	 * of sharing lazy references between threads.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Reviews> selectReviewsByRestaurantId(int restaurantId) throws SQLException {
+		if (fetchMode == FetchMode.JOIN) {
+			return getReviewsJoined("Reviews.RestaurantId=?", restaurantId);
+		}
+		if (fetchMode == FetchMode.BATCH || fetchMode == FetchMode.LAZY) {
+			return getReviewsBatched(false, "RestaurantId=?", restaurantId);
+		}
 		List<Reviews> reviews = new ArrayList<Reviews>();
 		String selectReviews = "SELECT ReviewId,Created,Content,Rating,UserName,RestaurantId " + "FROM Reviews "
 				+ "WHERE RestaurantId=?;";
+		List<String> userNames = new ArrayList<String>();
+		List<Integer> restaurantIds = new ArrayList<Integer>();
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
@@ -220,8 +477,6 @@ public class ReviewsDao {
 			selectStmt = connection.prepareStatement(selectReviews);
 			selectStmt.setInt(1, restaurantId);
 			results = selectStmt.executeQuery();
-			UsersDao usersDao = UsersDao.getInstance();
-			RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
 			while (results.next()) {
 				int reviewId = results.getInt("ReviewId");
 				Date created = new Date(results.getTimestamp("Created").getTime());
@@ -229,12 +484,134 @@ public class ReviewsDao {
 				double rating = results.getDouble("Rating");
 
 				String userName = results.getString("UserName");
-				Users user = usersDao.getUserByUserName(userName);
+				userNames.add(userName);
 
 				int resultRestaurantId = results.getInt("RestaurantId");
-				Restaurants resultRestaurant = restaurantsDao.getRestaurantById(resultRestaurantId);
+				restaurantIds.add(resultRestaurantId);
+
+				Reviews review = new Reviews(reviewId, created, content, rating, null, null);
+				reviews.add(review);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		resolveNested(reviews, userNames, restaurantIds);
+		return reviews;
+	}
+
+	// FetchMode.NESTED: look up the user and restaurant of each review, one call
+	// each. This runs once the caller has given its connection back, since the DAOs
+	// borrow their own on a cache miss and holding two would let concurrent
+	// callers exhaust the pool.
+	private static void resolveNested(List<Reviews> reviews, List<String> userNames, List<Integer> restaurantIds)
+			throws SQLException {
+		UsersDao usersDao = UsersDao.getInstance();
+		RestaurantsDao restaurantsDao = RestaurantsDao.getInstance();
+		for (int i = 0; i < reviews.size(); i++) {
+			reviews.get(i).setUser(usersDao.getUserByUserName(userNames.get(i)));
+			reviews.get(i).setRestaurant(restaurantsDao.getRestaurantById(restaurantIds.get(i)));
+		}
+	}
+
+	/**
+	 * Get the Reviews matching the WHERE clause with one SELECT that joins the
+	 * Reviews, Users, Restaurants and Companies tables, and the three restaurant
+	 * subtype tables, and build each object from the joined row. Each restaurant
+	 * is built as its most specific type, as in the other fetch modes. Users,
+	 * Restaurants and Companies that appear in several rows are built once and
+	 * shared by the returned Reviews. They are built immutable, like the
+	 * instances of the DAOs' caches, and go through the current UnitOfWork, so
+	 * within one the reviews share them with the recommendations and reservations
+	 * read on the same thread.
+	 *
+	 * Users and Restaurants are LEFT JOINed as well, because their foreign keys in
+	 * Reviews are set to NULL when the parent row is deleted; such a Reviews is
+	 * returned with a null user or restaurant, as in FetchMode.NESTED.
+	 *
+	 * whereClause may end with ORDER BY and LIMIT; keys are bound to its
+	 * parameters in order.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Reviews> getReviewsJoined(String whereClause, Object... keys) throws SQLException {
+		List<Reviews> reviews = new ArrayList<Reviews>();
+		String selectReviews =
+			"SELECT Reviews.ReviewId,Reviews.Created,Reviews.Content,Reviews.Rating,"
+			+ "Users.UserName,Users.Password,Users.FirstName,Users.LastName,Users.Email,Users.Phone,"
+			+ "Restaurants.RestaurantId,Restaurants.Name,Restaurants.Description,Restaurants.Menu,"
+			+ "Restaurants.Hours,Restaurants.Active,Restaurants.CuisineType,Restaurants.Street1,"
+			+ "Restaurants.Street2,Restaurants.City,Restaurants.State,Restaurants.Zip,"
+			+ "Companies.CompanyName,Companies.About,"
+			+ "SitDownRestaurant.RestaurantId AS SitDownRestaurantId,SitDownRestaurant.Capacity,"
+			+ "TakeOutRestaurant.RestaurantId AS TakeOutRestaurantId,TakeOutRestaurant.MaxWaitTime,"
+			+ "FoodCartRestaurant.RestaurantId AS FoodCartRestaurantId,FoodCartRestaurant.Licensed "
+			+ "FROM Reviews "
+			+ "  LEFT JOIN Users ON Reviews.UserName = Users.UserName "
+			+ "  LEFT JOIN Restaurants ON Reviews.RestaurantId = Restaurants.RestaurantId "
+			+ "  LEFT JOIN SitDownRestaurant ON Restaurants.RestaurantId = SitDownRestaurant.RestaurantId "
+			+ "  LEFT JOIN TakeOutRestaurant ON Restaurants.RestaurantId = TakeOutRestaurant.RestaurantId "
+			+ "  LEFT JOIN FoodCartRestaurant ON Restaurants.RestaurantId = FoodCartRestaurant.RestaurantId "
+			+ "  LEFT JOIN Companies ON Restaurants.CompanyName = Companies.CompanyName "
+			+ "WHERE " + whereClause + ";";
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(selectReviews);
+			for (int i = 0; i < keys.length; i++) {
+				selectStmt.setObject(i + 1, keys[i]);
+			}
+			results = selectStmt.executeQuery();
+			// Parent objects already built for this result.
+			Map<String, Users> users = new HashMap<String, Users>();
+			Map<Integer, Restaurants> restaurants = new HashMap<Integer, Restaurants>();
+			Map<String, Companies> companies = new HashMap<String, Companies>();
+			while (results.next()) {
+				int reviewId = results.getInt("ReviewId");
+				Date created = new Date(results.getTimestamp("Created").getTime());
+				String content = results.getString("Content");
+				double rating = results.getDouble("Rating");
 
-				Reviews review = new Reviews(reviewId, created, content, rating, user, resultRestaurant);
+				Users user = null;
+				String userName = results.getString("UserName");
+				if (userName != null) {
+					user = users.get(userName);
+					if (user == null) {
+						String password = results.getString("Password");
+						String firstName = results.getString("FirstName");
+						String lastName = results.getString("LastName");
+						String email = results.getString("Email");
+						String phone = results.getString("Phone");
+						user = UnitOfWork.intern(Users.class, userName,
+								new ImmutableUsers(userName, password, firstName, lastName, email, phone));
+						users.put(userName, user);
+					}
+				}
+
+				Restaurants restaurant = null;
+				int restaurantId = results.getInt("RestaurantId");
+				if (!results.wasNull()) {
+					restaurant = restaurants.get(restaurantId);
+					if (restaurant == null) {
+						restaurant = UnitOfWork.intern(Restaurants.class, restaurantId,
+								RestaurantsDao.buildRestaurantWithSubtype(results, companies, true));
+						restaurants.put(restaurantId, restaurant);
+					}
+				}
+
+				Reviews review = new Reviews(reviewId, created, content, rating, user, restaurant);
 				reviews.add(review);
 			}
 		} catch (SQLException e) {
@@ -255,32 +632,401 @@ public class ReviewsDao {
 	}
 
 	/**
-	 * Delete the Reviews instance. This runs a DELETE statement.
+	 * Get the Reviews matching the WHERE clause, then resolve the referenced Users
+	 * and Restaurants with one BatchLoader dispatch (one query per entity type,
+	 * plus one for the Companies) instead of per-row lookups. whereClause and keys
+	 * are as in getReviewsJoined().
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<Reviews> getReviewsBatched(String whereClause, Object... keys) throws SQLException {
+		// In LAZY mode the references stay unresolved until they are first used.
+		return getReviewsBatched(fetchMode == FetchMode.LAZY, whereClause, keys);
+	}
+
+	// getReviewsBatched(), with lazy references or resolved ones.
+	protected List<Reviews> getReviewsBatched(boolean lazy, String whereClause, Object... keys)
+			throws SQLException {
+		List<Reviews> reviews = new ArrayList<Reviews>();
+		String selectReviews = "SELECT ReviewId,Created,Content,Rating,UserName,RestaurantId " + "FROM Reviews "
+				+ "WHERE " + whereClause + ";";
+		BatchLoader loader = new BatchLoader();
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(selectReviews);
+			for (int i = 0; i < keys.length; i++) {
+				selectStmt.setObject(i + 1, keys[i]);
+			}
+			results = selectStmt.executeQuery();
+			while (results.next()) {
+				int reviewId = results.getInt("ReviewId");
+				Date created = new Date(results.getTimestamp("Created").getTime());
+				String content = results.getString("Content");
+				double rating = results.getDouble("Rating");
+				// Keep only the foreign keys for now; they are resolved below.
+				String userName = results.getString("UserName");
+				Users user = null;
+				if (userName != null) {
+					user = lazy ? new LazyUsers(userName, loader) : new Users(userName);
+				}
+				int restaurantId = results.getInt("RestaurantId");
+				Restaurants restaurant = null;
+				if (!results.wasNull()) {
+					// A lazy reference has no subtype; see LazyRestaurants.getTarget().
+					restaurant = lazy ? new LazyRestaurants(restaurantId, loader) : new Restaurants(restaurantId);
+				}
+				loader.requestUser(userName);
+				if (restaurant != null) {
+					loader.requestRestaurant(restaurantId);
+				}
+				reviews.add(new Reviews(reviewId, created, content, rating, user, restaurant));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+
+		if (lazy) {
+			return reviews;
+		}
+		loader.dispatch();
+		for (Reviews review : reviews) {
+			if (review.getUser() != null) {
+				review.setUser(loader.getUser(review.getUser().getUserName()));
+			}
+			if (review.getRestaurant() != null) {
+				review.setRestaurant(loader.getRestaurant(review.getRestaurant().getRestaurantId()));
+			}
+		}
+		return reviews;
+	}
+
+	/**
+	 * Scan all the Reviews, resolving their Users and Restaurants. See
+	 * scanReviews(boolean).
+	 * 
+	 * @throws SQLException
+	 */
+	public ScanIterator<Reviews> scanReviews() throws SQLException {
+		return scanReviews(true);
+	}
+
+	/**
+	 * Scan all the Reviews in ReviewId order, streaming them from your MySQL
+	 * instance in chunks of ScanIterator.DEFAULT_CHUNK_SIZE instead of building
+	 * one list. If resolveReferences, the Users and Restaurants of each chunk are
+	 * resolved with one BatchLoader dispatch; otherwise they carry only their keys,
+	 * which is all an aggregation by user or restaurant needs. The fetch mode is
+	 * not used. The caller must close the returned iterator.
+	 * 
+	 * @throws SQLException
+	 */
+	public ScanIterator<Reviews> scanReviews(boolean resolveReferences) throws SQLException {
+		String selectReviews = "SELECT ReviewId,Created,Content,Rating,UserName,RestaurantId " + "FROM Reviews "
+				+ "ORDER BY ReviewId;";
+		return new ScanIterator<Reviews>(connectionManager, selectReviews, ReviewsDao::buildReviewWithKeys,
+				resolveReferences ? ReviewsDao::resolveReferences : null, ScanIterator.DEFAULT_CHUNK_SIZE);
+	}
+
+	public RatingTrendIndex getRatingTrendIndex() {
+		return ratingTrendIndex;
+	}
+
+	/**
+	 * Get the daily review counts and ratings of a restaurant over the last days
+	 * days, ending today, from the rating trend index (see RatingTrendIndex). days
+	 * is at most RatingTrendIndex.DEFAULT_DAYS.
+	 * 
+	 * @throws SQLException
+	 */
+	public RatingTrend getRestaurantRatingTrend(int restaurantId, int days) throws SQLException {
+		return ratingTrendIndex.getRestaurantTrend(restaurantId, days, this::scanTrendRows,
+				this::selectTrendRows);
+	}
+
+	/**
+	 * Get the daily review counts and ratings of all the restaurants of a company
+	 * over the last days days. See getRestaurantRatingTrend().
+	 * 
+	 * @throws SQLException
+	 */
+	public RatingTrend getCompanyRatingTrend(String companyName, int days) throws SQLException {
+		return ratingTrendIndex.getCompanyTrend(companyName, days, this::scanTrendRows, this::selectTrendRows);
+	}
+
+	public ReviewerSketches getReviewerSketches() {
+		return reviewerSketches;
+	}
+
+	/**
+	 * Get the approximate number of distinct users who reviewed a restaurant,
+	 * from the reviewer sketches (see ReviewerSketches) instead of a
+	 * COUNT(DISTINCT UserName) over its Reviews. The sketches count only the
+	 * reviews this process created unless review.sketch.file names saved
+	 * sketches, e.g. from ReviewerSketchesBackfill, for DaoRegistry to load and
+	 * keep saving.
+	 */
+	public long getDistinctReviewerCount(int restaurantId) {
+		return reviewerSketches.getDistinctReviewerCount(restaurantId);
+	}
+
+	/**
+	 * Get the approximate number of distinct users who reviewed any restaurant of
+	 * a company. Only the company's RestaurantIds are read from MySQL; a user who
+	 * reviewed several of them is counted once.
+	 * 
+	 * @throws SQLException
+	 */
+	public long getCompanyDistinctReviewerCount(String companyName) throws SQLException {
+		List<Integer> restaurantIds = new ArrayList<Integer>();
+		for (RestaurantSummary summary : RestaurantsDao.getInstance()
+				.getRestaurantSummariesByCompanyName(companyName)) {
+			restaurantIds.add(summary.getRestaurantId());
+		}
+		return reviewerSketches.getDistinctReviewerCount(restaurantIds);
+	}
+
+	/**
+	 * Get the users who wrote the most reviews, most first, from the reviewer
+	 * sketches. The counts are approximate; see HeavyHitter.
+	 */
+	public List<HeavyHitter> getTopReviewers(int n) {
+		return reviewerSketches.getTopReviewers(n);
+	}
+
+	// Loader of ratingTrendIndex: the reviews created since fromMillis.
+	protected ScanIterator<RatingTrendIndex.Row> scanTrendRows(long fromMillis) throws SQLException {
+		String selectReviews = "SELECT Reviews.RestaurantId,CompanyName,Created,Rating FROM Reviews "
+				+ "INNER JOIN Restaurants ON Reviews.RestaurantId = Restaurants.RestaurantId WHERE Created>=?;";
+		return new ScanIterator<RatingTrendIndex.Row>(connectionManager, selectReviews,
+				ReviewsDao::buildTrendRow, null, ScanIterator.DEFAULT_CHUNK_SIZE, new Timestamp(fromMillis));
+	}
+
+	/**
+	 * Get the RatingTrendIndex.Row of the Reviews of the given restaurants created
+	 * since fromMillis by fetching them from your MySQL instance, with one SELECT
+	 * statement per chunk of BatchLoader.CHUNK_SIZE ids that range-scans
+	 * idx_Reviews_RestaurantId_Created.
+	 * 
+	 * @throws SQLException
+	 */
+	protected List<RatingTrendIndex.Row> selectTrendRows(Collection<Integer> restaurantIds, long fromMillis)
+			throws SQLException {
+		List<RatingTrendIndex.Row> rows = new ArrayList<RatingTrendIndex.Row>();
+		int[] keys = BatchLoader.toIntArray(restaurantIds);
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			for (int from = 0; from < keys.length; from += BatchLoader.CHUNK_SIZE) {
+				int to = Math.min(from + BatchLoader.CHUNK_SIZE, keys.length);
+				String selectReviews = "SELECT Reviews.RestaurantId,CompanyName,Created,Rating FROM Reviews "
+						+ "INNER JOIN Restaurants ON Reviews.RestaurantId = Restaurants.RestaurantId "
+						+ "WHERE Reviews.RestaurantId IN (" + BatchLoader.placeholders(to - from) + ") "
+						+ "AND Created>=?;";
+				selectStmt = connection.prepareStatement(selectReviews);
+				for (int i = from; i < to; i++) {
+					selectStmt.setInt(i - from + 1, keys[i]);
+				}
+				selectStmt.setTimestamp(to - from + 1, new Timestamp(fromMillis));
+				results = selectStmt.executeQuery();
+				while (results.next()) {
+					rows.add(buildTrendRow(results));
+				}
+				results.close();
+				selectStmt.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return rows;
+	}
+
+	private static RatingTrendIndex.Row buildTrendRow(ResultSet results) throws SQLException {
+		return new RatingTrendIndex.Row(results.getInt("RestaurantId"), results.getString("CompanyName"),
+				results.getTimestamp("Created").getTime(), results.getDouble("Rating"));
+	}
+
+	/**
+	 * Build a ReviewsSnapshot of all the Reviews with one streaming scan. See
+	 * ReviewsSnapshot.
+	 * 
+	 * @throws SQLException
+	 */
+	public ReviewsSnapshot loadSnapshot() throws SQLException {
+		return refreshSnapshot(null);
+	}
+
+	/**
+	 * Build a ReviewsSnapshot of previous plus the Reviews created since, by
+	 * scanning only the reviews with a higher ReviewId. Returns previous if there
+	 * are none, or a snapshot of all the Reviews if previous is null.
+	 * 
+	 * @throws SQLException
+	 */
+	public ReviewsSnapshot refreshSnapshot(ReviewsSnapshot previous) throws SQLException {
+		String selectReviews = "SELECT ReviewId,Created,Rating,UserName,RestaurantId FROM Reviews "
+				+ "WHERE ReviewId>? AND RestaurantId IS NOT NULL ORDER BY ReviewId;";
+		ScanIterator<ReviewsSnapshot.Row> rows = new ScanIterator<ReviewsSnapshot.Row>(connectionManager,
+				selectReviews, ReviewsDao::buildSnapshotRow, null, ScanIterator.DEFAULT_CHUNK_SIZE,
+				previous == null ? 0 : previous.getMaxReviewId());
+		try {
+			return ReviewsSnapshot.build(previous, rows);
+		} finally {
+			rows.close();
+		}
+	}
+
+	private static ReviewsSnapshot.Row buildSnapshotRow(ResultSet results) throws SQLException {
+		return new ReviewsSnapshot.Row(results.getInt("ReviewId"), results.getInt("RestaurantId"),
+				results.getString("UserName"), results.getDouble("Rating"),
+				results.getTimestamp("Created").getTime());
+	}
+
+	// Build the Reviews of the current row, with its Users and Restaurants as keys only.
+	private static Reviews buildReviewWithKeys(ResultSet results) throws SQLException {
+		int reviewId = results.getInt("ReviewId");
+		Date created = new Date(results.getTimestamp("Created").getTime());
+		String content = results.getString("Content");
+		double rating = results.getDouble("Rating");
+		String userName = results.getString("UserName");
+		Users user = userName == null ? null : new Users(userName);
+		int restaurantId = results.getInt("RestaurantId");
+		Restaurants restaurant = results.wasNull() ? null : new Restaurants(restaurantId);
+		return new Reviews(reviewId, created, content, rating, user, restaurant);
+	}
+
+	// Replace the key-only Users and Restaurants of reviews with one BatchLoader dispatch.
+	private static void resolveReferences(List<Reviews> reviews) throws SQLException {
+		BatchLoader loader = new BatchLoader();
+		for (Reviews review : reviews) {
+			if (review.getUser() != null) {
+				loader.requestUser(review.getUser().getUserName());
+			}
+			if (review.getRestaurant() != null) {
+				loader.requestRestaurant(review.getRestaurant().getRestaurantId());
+			}
+		}
+		loader.dispatch();
+		for (Reviews review : reviews) {
+			if (review.getUser() != null) {
+				review.setUser(loader.getUser(review.getUser().getUserName()));
+			}
+			if (review.getRestaurant() != null) {
+				review.setRestaurant(loader.getRestaurant(review.getRestaurant().getRestaurantId()));
+			}
+		}
+	}
+
+	// Evict the cached Reviews of restaurant, if there is one.
+	private void invalidateView(Restaurants restaurant) {
+		if (restaurant != null) {
+			reviewsByRestaurant.invalidate(restaurant.getRestaurantId());
+		}
+	}
+
+	@Override
+	public void restaurantInvalidated(int restaurantId) {
+		reviewsByRestaurant.invalidate(restaurantId);
+	}
+
+	@Override
+	public void allRestaurantsInvalidated() {
+		reviewsByRestaurant.invalidateAll();
+	}
+
+	/**
+	 * Delete the Reviews instance. This runs a DELETE statement, subtracts the
+	 * stored rating from the RatingStats of the restaurant in the same
+	 * transaction, and evicts the cached Reviews of the restaurant.
 	 * 
 	 * @throws SQLException
 	 */
 	public Reviews delete(Reviews review) throws SQLException {
+		// The stats are updated from the stored row, not from the caller's instance.
+		String selectReview = "SELECT Created,Rating,RestaurantId FROM Reviews WHERE ReviewId=? FOR UPDATE;";
 		String deleteReview = "DELETE FROM Reviews WHERE ReviewId=?;";
+		RatingStatsDao ratingStatsDao = RatingStatsDao.getInstance();
 		Connection connection = null;
+		PreparedStatement selectStmt = null;
 		PreparedStatement deleteStmt = null;
+		ResultSet results = null;
 		try {
 			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			selectStmt = connection.prepareStatement(selectReview);
+			selectStmt.setInt(1, review.getReviewId());
+			results = selectStmt.executeQuery();
+			List<Reviews> stored = new ArrayList<Reviews>();
+			if (results.next()) {
+				Date created = new Date(results.getTimestamp("Created").getTime());
+				double rating = results.getDouble("Rating");
+				int restaurantId = results.getInt("RestaurantId");
+				if (!results.wasNull()) {
+					stored.add(new Reviews(review.getReviewId(), created, null, rating, null,
+							new Restaurants(restaurantId)));
+				}
+			}
 			deleteStmt = connection.prepareStatement(deleteReview);
 			deleteStmt.setInt(1, review.getReviewId());
 			deleteStmt.executeUpdate();
+			ratingStatsDao.applyReviews(connection, stored, -1);
+			connection.commit();
+			ratingStatsDao.invalidate(stored);
+			invalidateView(review.getRestaurant());
+			for (Reviews storedReview : stored) {
+				invalidateView(storedReview.getRestaurant());
+			}
+			for (ReviewListener listener : listeners) {
+				listener.reviewsDeleted(stored);
+			}
 
 			// Return null so the caller can no longer operate on the BlogComments instance.
 			return null;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
 				connection.close();
 			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
 			if (deleteStmt != null) {
 				deleteStmt.close();
 			}
+			if (results != null) {
+				results.close();
+			}
 		}
 	}
 
@@ -0,0 +1,581 @@
+package review.dal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+import review.model.*;
+
+/**
+ * A read-only, columnar copy of the Reviews table for analytics. Each review is
+ * 17 bytes in primitive arrays: its RestaurantId, its UserName as a code into
+ * a dictionary of user names, its Rating times two as a byte, and Created in
+ * epoch milliseconds, instead of a Reviews instance with a Date, the Content and
+ * the referenced Users and Restaurants. Reviews without a restaurant are left
+ * out, and ratings are rounded to the nearest 0.5, as in RatingStats.
+ *
+ * The rows are split into segments of up to SEGMENT_SIZE rows. Each segment is
+ * sorted by RestaurantId (then ReviewId) and has an offset index, so the rows of
+ * one restaurant are found by a binary search per segment. Queries over all the
+ * rows run as fork-join tasks over ranges of PARALLEL_THRESHOLD rows of every
+ * segment, each a plain loop over primitive arrays that the JIT can vectorize.
+ *
+ * ReviewsDao.loadSnapshot() builds one with a streaming scan of Reviews, and
+ * ReviewsDao.refreshSnapshot() builds a newer one by scanning only the reviews
+ * whose ReviewId is above getMaxReviewId(). The new snapshot shares the older
+ * one's full segments and merges the new rows into its last one. Deleted
+ * reviews, and reviews that commit after a refresh with a lower ReviewId than
+ * one it read, stay as they were until the next load.
+ *
+ * A snapshot never changes, so it can be queried from any number of threads.
+ */
+public class ReviewsSnapshot {
+	// Rows per segment.
+	public static final int SEGMENT_SIZE = Integer.getInteger("review.snapshot.segmentSize", 1 << 20);
+	// Rows per fork-join task.
+	public static final int PARALLEL_THRESHOLD =
+			Integer.getInteger("review.snapshot.parallelThreshold", 1 << 16);
+
+	/** The columns of one review, as scanned by ReviewsDao. */
+	static class Row {
+		final int reviewId;
+		final int restaurantId;
+		final String userName;
+		final double rating;
+		final long created;
+
+		Row(int reviewId, int restaurantId, String userName, double rating, long created) {
+			this.reviewId = reviewId;
+			this.restaurantId = restaurantId;
+			this.userName = userName;
+			this.rating = rating;
+			this.created = created;
+		}
+	}
+
+	/** Review counts and average ratings per time bucket. Read-only. */
+	public static class Trend {
+		private final long fromMillis;
+		private final long bucketMillis;
+		private final int[] counts;
+		private final long[] ratingSums;
+
+		Trend(long fromMillis, long bucketMillis, int[] counts, long[] ratingSums) {
+			this.fromMillis = fromMillis;
+			this.bucketMillis = bucketMillis;
+			this.counts = counts;
+			this.ratingSums = ratingSums;
+		}
+
+		public int getBucketCount() {
+			return counts.length;
+		}
+
+		/** The start of bucket i, in epoch milliseconds. */
+		public long getBucketStart(int i) {
+			return fromMillis + i * bucketMillis;
+		}
+
+		public int getReviewCount(int i) {
+			return counts[i];
+		}
+
+		/** The average rating of bucket i, or 0 if it has no reviews. */
+		public double getAverageRating(int i) {
+			return counts[i] == 0 ? 0 : ratingSums[i] / 2.0 / counts[i];
+		}
+	}
+
+	// Rows sorted by RestaurantId. The rows of keys[k] are offsets[k] until
+	// offsets[k + 1].
+	private static class Segment {
+		final int size;
+		final int[] restaurantIds;
+		final int[] userIds;
+		final byte[] ratings;
+		final long[] created;
+		final int[] keys;
+		final int[] offsets;
+
+		Segment(int size, int[] restaurantIds, int[] userIds, byte[] ratings, long[] created, int[] keys,
+				int[] offsets) {
+			this.size = size;
+			this.restaurantIds = restaurantIds;
+			this.userIds = userIds;
+			this.ratings = ratings;
+			this.created = created;
+			this.keys = keys;
+			this.offsets = offsets;
+		}
+
+		// The index into keys of restaurantId, or a negative number if it has no rows.
+		int find(int restaurantId) {
+			return Arrays.binarySearch(keys, restaurantId);
+		}
+	}
+
+	// Gathers rows in arrival order and sorts them into a Segment.
+	private static class SegmentBuilder {
+		int size = 0;
+		int[] restaurantIds = new int[1024];
+		int[] userIds = new int[1024];
+		byte[] ratings = new byte[1024];
+		long[] created = new long[1024];
+
+		void add(int restaurantId, int userId, byte rating, long createdMillis) {
+			if (size == restaurantIds.length) {
+				int capacity = size * 2;
+				restaurantIds = Arrays.copyOf(restaurantIds, capacity);
+				userIds = Arrays.copyOf(userIds, capacity);
+				ratings = Arrays.copyOf(ratings, capacity);
+				created = Arrays.copyOf(created, capacity);
+			}
+			restaurantIds[size] = restaurantId;
+			userIds[size] = userId;
+			ratings[size] = rating;
+			created[size] = createdMillis;
+			size++;
+		}
+
+		void addAll(Segment segment) {
+			for (int i = 0; i < segment.size; i++) {
+				add(segment.restaurantIds[i], segment.userIds[i], segment.ratings[i], segment.created[i]);
+			}
+		}
+
+		// Sort by RestaurantId, keeping the arrival (ReviewId) order of each
+		// restaurant's rows: the sort key is the RestaurantId above the position.
+		Segment build() {
+			long[] order = new long[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = ((long) restaurantIds[i] << 32) | i;
+			}
+			Arrays.parallelSort(order);
+			int[] sortedRestaurantIds = new int[size];
+			int[] sortedUserIds = new int[size];
+			byte[] sortedRatings = new byte[size];
+			long[] sortedCreated = new long[size];
+			int distinct = 0;
+			for (int i = 0; i < size; i++) {
+				int from = (int) order[i];
+				sortedRestaurantIds[i] = restaurantIds[from];
+				sortedUserIds[i] = userIds[from];
+				sortedRatings[i] = ratings[from];
+				sortedCreated[i] = created[from];
+				if (i == 0 || sortedRestaurantIds[i] != sortedRestaurantIds[i - 1]) {
+					distinct++;
+				}
+			}
+			int[] keys = new int[distinct];
+			int[] offsets = new int[distinct + 1];
+			int k = -1;
+			for (int i = 0; i < size; i++) {
+				if (i == 0 || sortedRestaurantIds[i] != sortedRestaurantIds[i - 1]) {
+					keys[++k] = sortedRestaurantIds[i];
+					offsets[k] = i;
+				}
+			}
+			offsets[distinct] = size;
+			return new Segment(size, sortedRestaurantIds, sortedUserIds, sortedRatings, sortedCreated, keys,
+					offsets);
+		}
+	}
+
+	// The codes of user names, 0, 1, 2, ... in order of first appearance.
+	// Append-only, and shared by a snapshot and the snapshots refreshed from it,
+	// which only add codes.
+	private static class UserDictionary {
+		private final Map<String, Integer> codes = new HashMap<String, Integer>();
+
+		// The code of userName, or -1 for null.
+		synchronized int encode(String userName) {
+			if (userName == null) {
+				return -1;
+			}
+			Integer code = codes.get(userName);
+			if (code == null) {
+				code = codes.size();
+				codes.put(userName, code);
+			}
+			return code;
+		}
+
+		synchronized int size() {
+			return codes.size();
+		}
+	}
+
+	private final Segment[] segments;
+	private final UserDictionary users;
+	private final int userCount;
+	private final int maxReviewId;
+	private final int size;
+
+	private ReviewsSnapshot(Segment[] segments, UserDictionary users, int maxReviewId) {
+		this.segments = segments;
+		this.users = users;
+		this.userCount = users.size();
+		this.maxReviewId = maxReviewId;
+		int rows = 0;
+		for (Segment segment : segments) {
+			rows += segment.size;
+		}
+		this.size = rows;
+	}
+
+	/**
+	 * Build a snapshot of previous (null for none) plus the rows, which are in
+	 * ReviewId order and all above previous.getMaxReviewId().
+	 */
+	static ReviewsSnapshot build(ReviewsSnapshot previous, Iterator<Row> rows) {
+		List<Segment> segments = new ArrayList<Segment>();
+		UserDictionary users = new UserDictionary();
+		int maxReviewId = 0;
+		SegmentBuilder builder = new SegmentBuilder();
+		if (previous != null) {
+			segments.addAll(Arrays.asList(previous.segments));
+			users = previous.users;
+			maxReviewId = previous.maxReviewId;
+			// Merge the new rows into a last segment that has room, rather than
+			// adding a small segment per refresh.
+			if (!segments.isEmpty() && segments.get(segments.size() - 1).size < SEGMENT_SIZE) {
+				builder.addAll(segments.remove(segments.size() - 1));
+			}
+		}
+		boolean added = false;
+		while (rows.hasNext()) {
+			Row row = rows.next();
+			builder.add(row.restaurantId, users.encode(row.userName), (byte) RatingStats.bucketOf(row.rating),
+					row.created);
+			maxReviewId = Math.max(maxReviewId, row.reviewId);
+			added = true;
+			if (builder.size == SEGMENT_SIZE) {
+				segments.add(builder.build());
+				builder = new SegmentBuilder();
+			}
+		}
+		if (!added && previous != null) {
+			return previous;
+		}
+		if (builder.size > 0) {
+			segments.add(builder.build());
+		}
+		return new ReviewsSnapshot(segments.toArray(new Segment[segments.size()]), users, maxReviewId);
+	}
+
+	/** The number of reviews. */
+	public int size() {
+		return size;
+	}
+
+	/** The highest ReviewId read; the next refresh reads the reviews above it. */
+	public int getMaxReviewId() {
+		return maxReviewId;
+	}
+
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * The number of user names in the dictionary: the distinct users that wrote
+	 * the reviews, plus any added by other refreshes of the same snapshot.
+	 */
+	public int getUserCount() {
+		return userCount;
+	}
+
+	/**
+	 * The RatingStats of one restaurant, computed from its rows.
+	 */
+	public RatingStats getRatingStats(int restaurantId) {
+		int count = 0;
+		int ratingSum = 0;
+		int[] histogram = new int[RatingStats.BUCKET_COUNT];
+		for (Segment segment : segments) {
+			int k = segment.find(restaurantId);
+			if (k < 0) {
+				continue;
+			}
+			byte[] ratings = segment.ratings;
+			for (int i = segment.offsets[k], to = segment.offsets[k + 1]; i < to; i++) {
+				histogram[ratings[i]]++;
+				ratingSum += ratings[i];
+			}
+			count += segment.offsets[k + 1] - segment.offsets[k];
+		}
+		return new RatingStats(restaurantId, count, ratingSum / 2.0, histogram);
+	}
+
+	/** The number of distinct users that reviewed one restaurant. */
+	public int getDistinctUserCount(int restaurantId) {
+		BitSet seen = new BitSet(userCount);
+		for (Segment segment : segments) {
+			int k = segment.find(restaurantId);
+			if (k < 0) {
+				continue;
+			}
+			for (int i = segment.offsets[k], to = segment.offsets[k + 1]; i < to; i++) {
+				if (segment.userIds[i] >= 0) {
+					seen.set(segment.userIds[i]);
+				}
+			}
+		}
+		return seen.cardinality();
+	}
+
+	/** The average rating of all reviews, or 0 if there are none. */
+	public double getAverageRating() {
+		long ratingSum = parallel((segment, from, to) -> {
+			byte[] ratings = segment.ratings;
+			long sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += ratings[i];
+			}
+			return sum;
+		}, Long::sum, 0L);
+		return size == 0 ? 0 : ratingSum / 2.0 / size;
+	}
+
+	/**
+	 * Review counts and average ratings of all restaurants per bucket of
+	 * bucketMillis, from fromMillis (inclusive) to toMillis (exclusive).
+	 */
+	public Trend getTrend(long fromMillis, long toMillis, long bucketMillis) {
+		int buckets = bucketCount(fromMillis, toMillis, bucketMillis);
+		long[][] sums = parallel((segment, from, to) -> {
+			long[] counts = new long[buckets];
+			long[] ratingSums = new long[buckets];
+			addTrend(segment, from, to, fromMillis, toMillis, bucketMillis, counts, ratingSums);
+			return new long[][] { counts, ratingSums };
+		}, (a, b) -> {
+			for (int i = 0; i < buckets; i++) {
+				a[0][i] += b[0][i];
+				a[1][i] += b[1][i];
+			}
+			return a;
+		}, new long[][] { new long[buckets], new long[buckets] });
+		int[] counts = new int[buckets];
+		for (int i = 0; i < buckets; i++) {
+			counts[i] = (int) sums[0][i];
+		}
+		return new Trend(fromMillis, bucketMillis, counts, sums[1]);
+	}
+
+	/**
+	 * The Trend of one restaurant. See getTrend(long, long, long).
+	 */
+	public Trend getTrend(int restaurantId, long fromMillis, long toMillis, long bucketMillis) {
+		int buckets = bucketCount(fromMillis, toMillis, bucketMillis);
+		long[] counts = new long[buckets];
+		long[] ratingSums = new long[buckets];
+		for (Segment segment : segments) {
+			int k = segment.find(restaurantId);
+			if (k >= 0) {
+				addTrend(segment, segment.offsets[k], segment.offsets[k + 1], fromMillis, toMillis, bucketMillis,
+						counts, ratingSums);
+			}
+		}
+		int[] intCounts = new int[buckets];
+		for (int i = 0; i < buckets; i++) {
+			intCounts[i] = (int) counts[i];
+		}
+		return new Trend(fromMillis, bucketMillis, intCounts, ratingSums);
+	}
+
+	private static int bucketCount(long fromMillis, long toMillis, long bucketMillis) {
+		if (bucketMillis <= 0 || toMillis <= fromMillis) {
+			throw new IllegalArgumentException("Need fromMillis < toMillis and a positive bucketMillis");
+		}
+		long buckets = (toMillis - fromMillis + bucketMillis - 1) / bucketMillis;
+		if (buckets > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many buckets: " + buckets);
+		}
+		return (int) buckets;
+	}
+
+	private static void addTrend(Segment segment, int from, int to, long fromMillis, long toMillis,
+			long bucketMillis, long[] counts, long[] ratingSums) {
+		long[] created = segment.created;
+		byte[] ratings = segment.ratings;
+		for (int i = from; i < to; i++) {
+			long t = created[i];
+			if (t >= fromMillis && t < toMillis) {
+				int bucket = (int) ((t - fromMillis) / bucketMillis);
+				counts[bucket]++;
+				ratingSums[bucket] += ratings[i];
+			}
+		}
+	}
+
+	/**
+	 * The n restaurants with the highest average rating among those with at least
+	 * minReviews reviews, best first (ties by more reviews, then RestaurantId).
+	 */
+	public List<RatingStats> getTopRatedRestaurants(int n, int minReviews) {
+		if (n < 1) {
+			throw new IllegalArgumentException("n must be positive: " + n);
+		}
+		// Per-restaurant counts and sums of each range, merged by RestaurantId. A
+		// restaurant split across ranges or segments is summed by the merge.
+		Totals totals = parallel(ReviewsSnapshot::totals, Totals::merge, new Totals(0));
+		PriorityQueue<Integer> top = new PriorityQueue<Integer>(n + 1, (a, b) -> -totals.compare(a, b));
+		for (int k = 0; k < totals.size; k++) {
+			if (totals.counts[k] >= minReviews) {
+				top.add(k);
+				if (top.size() > n) {
+					top.poll();
+				}
+			}
+		}
+		List<Integer> ranked = new ArrayList<Integer>(top);
+		Collections.sort(ranked, totals::compare);
+		List<RatingStats> stats = new ArrayList<RatingStats>(ranked.size());
+		for (int k : ranked) {
+			stats.add(getRatingStats(totals.keys[k]));
+		}
+		return stats;
+	}
+
+	// Counts and sums of ratings times two per RestaurantId, sorted by it.
+	private static class Totals {
+		int size;
+		final int[] keys;
+		final int[] counts;
+		final long[] ratingSums;
+
+		Totals(int capacity) {
+			keys = new int[capacity];
+			counts = new int[capacity];
+			ratingSums = new long[capacity];
+		}
+
+		void add(int key, int count, long ratingSum) {
+			if (size > 0 && keys[size - 1] == key) {
+				counts[size - 1] += count;
+				ratingSums[size - 1] += ratingSum;
+			} else {
+				keys[size] = key;
+				counts[size] = count;
+				ratingSums[size] = ratingSum;
+				size++;
+			}
+		}
+
+		static Totals merge(Totals a, Totals b) {
+			Totals merged = new Totals(a.size + b.size);
+			int i = 0;
+			int j = 0;
+			while (i < a.size || j < b.size) {
+				if (j == b.size || (i < a.size && a.keys[i] <= b.keys[j])) {
+					merged.add(a.keys[i], a.counts[i], a.ratingSums[i]);
+					i++;
+				} else {
+					merged.add(b.keys[j], b.counts[j], b.ratingSums[j]);
+					j++;
+				}
+			}
+			return merged;
+		}
+
+		// Best first: higher average, then more reviews, then lower RestaurantId.
+		int compare(int a, int b) {
+			int byAverage = Long.compare(ratingSums[b] * counts[a], ratingSums[a] * counts[b]);
+			if (byAverage != 0) {
+				return byAverage;
+			}
+			if (counts[a] != counts[b]) {
+				return Integer.compare(counts[b], counts[a]);
+			}
+			return Integer.compare(keys[a], keys[b]);
+		}
+	}
+
+	private static Totals totals(Segment segment, int from, int to) {
+		if (from == to) {
+			return new Totals(0);
+		}
+		// The range is sorted, so each restaurant is one run of rows.
+		int distinct = 1;
+		int[] restaurantIds = segment.restaurantIds;
+		for (int i = from + 1; i < to; i++) {
+			if (restaurantIds[i] != restaurantIds[i - 1]) {
+				distinct++;
+			}
+		}
+		Totals totals = new Totals(distinct);
+		byte[] ratings = segment.ratings;
+		for (int i = from; i < to; i++) {
+			totals.add(restaurantIds[i], 1, ratings[i]);
+		}
+		return totals;
+	}
+
+	// A computation over rows from (inclusive) to to (exclusive) of a segment.
+	private interface RangeFunction<R> {
+		R apply(Segment segment, int from, int to);
+	}
+
+	// Split the rows of every segment into ranges of at most PARALLEL_THRESHOLD
+	// rows, apply function to each range in the common ForkJoinPool, and combine
+	// the results in segment and row order.
+	private <R> R parallel(RangeFunction<R> function, BinaryOperator<R> combine, R identity) {
+		if (segments.length == 0) {
+			return identity;
+		}
+		return ForkJoinPool.commonPool().invoke(new RangeTask<R>(segments, 0, size, function, combine));
+	}
+
+	// Rows from (inclusive) to to (exclusive) of all segments, numbered across
+	// segments in order.
+	private static class RangeTask<R> extends RecursiveTask<R> {
+		private static final long serialVersionUID = 1L;
+
+		private final Segment[] segments;
+		private final int from;
+		private final int to;
+		private final RangeFunction<R> function;
+		private final BinaryOperator<R> combine;
+
+		RangeTask(Segment[] segments, int from, int to, RangeFunction<R> function, BinaryOperator<R> combine) {
+			this.segments = segments;
+			this.from = from;
+			this.to = to;
+			this.function = function;
+			this.combine = combine;
+		}
+
+		@Override
+		protected R compute() {
+			if (to - from > Math.max(PARALLEL_THRESHOLD, 1)) {
+				int middle = (from + to) >>> 1;
+				RangeTask<R> left = new RangeTask<R>(segments, from, middle, function, combine);
+				RangeTask<R> right = new RangeTask<R>(segments, middle, to, function, combine);
+				left.fork();
+				R rightResult = right.compute();
+				return combine.apply(left.join(), rightResult);
+			}
+			// Apply function to the part of each segment within the range.
+			R result = null;
+			int start = 0;
+			for (Segment segment : segments) {
+				int end = start + segment.size;
+				if (end > from && start < to) {
+					R part = function.apply(segment, Math.max(from, start) - start, Math.min(to, end) - start);
+					result = result == null ? part : combine.apply(result, part);
+				}
+				start = end;
+			}
+			return result;
+		}
+	}
+}
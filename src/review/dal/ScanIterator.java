@@ -0,0 +1,191 @@
+package review.dal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A closeable iterator over a query that may return more rows than fit in
+ * memory, such as a scan of a whole table.
+ *
+ * The query runs in Connector/J streaming mode (fetch size Integer.MIN_VALUE):
+ * the driver hands rows over as they arrive instead of buffering the whole
+ * result. The iterator reads chunkSize rows at a time, and only when the
+ * caller asks for more, so at most one chunk is held in memory and a slow
+ * consumer holds back the server through TCP flow control. Each chunk is
+ * passed to a ChunkResolver before it is handed out, which the DAOs use to
+ * resolve the referenced entities of the chunk with one BatchLoader dispatch.
+ *
+ * The scan holds a pooled connection, which can run nothing else until the
+ * iterator is closed. Always close it, e.g. with try-with-resources, or close
+ * the Stream from stream(); it closes itself once exhausted. Closing it early
+ * cancels the query rather than reading the remaining rows.
+ *
+ * SQLExceptions while iterating are rethrown as IllegalStateException, since
+ * Iterator methods cannot throw them. A ScanIterator is not thread-safe.
+ */
+public class ScanIterator<T> implements Iterator<T>, AutoCloseable {
+	// Rows read (and resolved) per chunk.
+	public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("review.scan.chunkSize", 1000);
+
+	/** Builds one item from the current row of the result set. */
+	public interface RowMapper<T> {
+		T map(ResultSet results) throws SQLException;
+	}
+
+	/** Completes the items of a chunk before they are handed out. */
+	public interface ChunkResolver<T> {
+		void resolve(List<T> chunk) throws SQLException;
+	}
+
+	private final RowMapper<T> mapper;
+	private final ChunkResolver<T> resolver;
+	private final int chunkSize;
+
+	private Connection connection;
+	private PreparedStatement selectStmt;
+	private ResultSet results;
+	private boolean exhausted = false;
+	private boolean closed = false;
+	private List<T> chunk = new ArrayList<T>();
+	private int position = 0;
+
+	/**
+	 * Run query (whose parameters are bound from keys in order) in streaming mode.
+	 * resolver may be null.
+	 *
+	 * @throws SQLException
+	 */
+	public ScanIterator(ConnectionManager connectionManager, String query, RowMapper<T> mapper,
+			ChunkResolver<T> resolver, int chunkSize, Object... keys) throws SQLException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		this.mapper = mapper;
+		this.resolver = resolver;
+		this.chunkSize = chunkSize;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			// Integer.MIN_VALUE is how Connector/J is told to stream the result row by
+			// row instead of reading all of it into memory.
+			selectStmt.setFetchSize(Integer.MIN_VALUE);
+			for (int i = 0; i < keys.length; i++) {
+				selectStmt.setObject(i + 1, keys[i]);
+			}
+			results = selectStmt.executeQuery();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (position < chunk.size()) {
+			return true;
+		}
+		if (exhausted || closed) {
+			return false;
+		}
+		try {
+			readChunk();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			close();
+			throw new IllegalStateException("Failed to read the next rows of the scan", e);
+		}
+		return position < chunk.size();
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T item = chunk.get(position);
+		// Drop the reference so the chunk's items can be collected as they are used.
+		chunk.set(position++, null);
+		return item;
+	}
+
+	// Read up to chunkSize rows into a new chunk and resolve it. Closes the scan
+	// once the result set is exhausted, which frees its connection before the
+	// consumer is done with the last chunk.
+	private void readChunk() throws SQLException {
+		List<T> nextChunk = new ArrayList<T>(chunkSize);
+		while (nextChunk.size() < chunkSize) {
+			if (!results.next()) {
+				exhausted = true;
+				close();
+				break;
+			}
+			nextChunk.add(mapper.map(results));
+		}
+		if (resolver != null && !nextChunk.isEmpty()) {
+			resolver.resolve(nextChunk);
+		}
+		chunk = nextChunk;
+		position = 0;
+	}
+
+	/**
+	 * A sequential Stream over the remaining items. Closing the Stream closes this
+	 * iterator.
+	 */
+	public Stream<T> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Release the result set, statement and connection. Items already read into
+	 * the current chunk can still be iterated.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			// Closing a streaming result set reads the rest of it first; cancel the
+			// query instead, unless it has been read to the end.
+			if (!exhausted && results != null) {
+				selectStmt.cancel();
+			}
+			// Unlike the DAOs' finally blocks, close the result set before returning the
+			// connection: a pooled connection must not be handed out mid-stream.
+			if (results != null) {
+				results.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+		} catch (SQLException e) {
+			// The result set of a cancelled query may fail to close; the connection is
+			// still returned below.
+			e.printStackTrace();
+		} finally {
+			if (connection != null) {
+				try {
+					connection.close();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
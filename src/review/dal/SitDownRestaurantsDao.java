@@ -4,8 +4,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import review.model.*;
 
@@ -16,47 +20,50 @@ import review.model.*;
  * {@link SitDownRestaurantsDao} from MySQL instance.
  */
 public class SitDownRestaurantsDao extends RestaurantsDao {
-	// Single pattern: instantiation is limited to one object.
-	private static SitDownRestaurantsDao instance = null;
-
-	protected SitDownRestaurantsDao() {
-		super();
+	protected SitDownRestaurantsDao(ConnectionManager connectionManager, RestaurantCache restaurantCache,
+			CuisineIndex cuisineIndex, RankingIndex rankingIndex) {
+		super(connectionManager, restaurantCache, cuisineIndex, rankingIndex);
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static SitDownRestaurantsDao getInstance() {
-		if (instance == null) {
-			instance = new SitDownRestaurantsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getSitDownRestaurantsDao();
 	}
 
 	/**
 	 * Save the SitDownRestaurants instance by storing it in your MySQL instance.
-	 * This runs a INSERT statement.
+	 * This runs two INSERT statements, into Restaurants and then SitDownRestaurant, in
+	 * a single transaction on one connection. The auto-generated RestaurantId is
+	 * set on sitDownRestaurant and used for the SitDownRestaurant row.
 	 * 
 	 * @throws SQLException
 	 */
 	public SitDownRestaurants create(SitDownRestaurants sitDownRestaurant) throws SQLException {
-		// Insert into the superclass table first.
-		create(new Restaurants(sitDownRestaurant.getRestaurantId(), sitDownRestaurant.getName(),
-				sitDownRestaurant.getDescription(), sitDownRestaurant.getMenu(), sitDownRestaurant.getHours(),
-				sitDownRestaurant.isActive(), sitDownRestaurant.getCuisineType(), sitDownRestaurant.getStreet1(),
-				sitDownRestaurant.getStreet2(), sitDownRestaurant.getCity(), sitDownRestaurant.getState(),
-				sitDownRestaurant.getZip(), sitDownRestaurant.getCompany()));
-
-		String insertSitDownRestaurant =
-			"INSERT INTO SitDownRestaurant(RestaurantId,Capacity) VALUES(?,?);";
+		String insertSitDownRestaurant = "INSERT INTO SitDownRestaurant(RestaurantId,Capacity) VALUES(?,?);";
+		int originalRestaurantId = sitDownRestaurant.getRestaurantId();
 		Connection connection = null;
 		PreparedStatement insertStmt = null;
 		try {
 			connection = connectionManager.getConnection();
+			// Both rows are committed together, so a failure can never leave a
+			// Restaurants row without its SitDownRestaurant row.
+			connection.setAutoCommit(false);
+			// Insert into the superclass table first; this sets the generated key.
+			insertRestaurant(connection, sitDownRestaurant);
+
 			insertStmt = connection.prepareStatement(insertSitDownRestaurant);
 			insertStmt.setInt(1, sitDownRestaurant.getRestaurantId());
 			insertStmt.setInt(2, sitDownRestaurant.getCapacity());
 			insertStmt.executeUpdate();
+			connection.commit();
+			cuisineIndex.added(Collections.singletonList(sitDownRestaurant));
 			return sitDownRestaurant;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			sitDownRestaurant.setRestaurantId(originalRestaurantId);
 			throw e;
 		} finally {
 			if (connection != null) {
@@ -69,65 +76,82 @@ public class SitDownRestaurantsDao extends RestaurantsDao {
 	}
 
 	/**
-	 * Get the SitDownRestaurants record by fetching it from your MySQL instance.
-	 * This runs a SELECT statement and returns a single SitDownRestaurants
-	 * instance. Note that we use CompaniesDao to retrieve the referenced Companies
-	 * instance. One alternative (possibly more efficient) is using a single SELECT
-	 * statement to join the SitDownRestaurants, Companies tables and then build
-	 * each object.
+	 * Save all the SitDownRestaurants instances,
+	 * ConnectionManager.DEFAULT_BATCH_SIZE restaurants per batch. See
+	 * createAllSitDownRestaurants(List, int).
 	 * 
 	 * @throws SQLException
 	 */
-	public SitDownRestaurants getSitDownRestaurantById(int sitDownRestaurantId) throws SQLException {
-		// To build an SitDownRestaurants object, we need the Restaurants record, too.
-		String selectSitDownRestaurant =
-			"SELECT SitDownRestaurant.RestaurantId AS RestaurantId, Name, Description, Menu, Hours, Active, CuisineType, Street1, Street2, City, State, Zip, CompanyName, Capacity "
-			+ "FROM SitDownRestaurant INNER JOIN Restaurants "
-			+ "  ON SitDownRestaurant.RestaurantId = Restaurants.RestaurantId "
-			+ "WHERE SitDownRestaurant.RestaurantId=?;";
+	public List<SitDownRestaurants> createAllSitDownRestaurants(List<SitDownRestaurants> sitDownRestaurants)
+			throws SQLException {
+		return createAllSitDownRestaurants(sitDownRestaurants, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the SitDownRestaurants instances by storing them in your MySQL
+	 * instance. For every batch of batchSize restaurants, this runs one batched
+	 * INSERT into Restaurants (setting the auto-generated RestaurantIds) and one
+	 * into SitDownRestaurant, and commits both in a single transaction. If a batch
+	 * fails, it is rolled back; the batches before it stay committed.
+	 *
+	 * This is not named createAll() because it would clash with
+	 * RestaurantsDao.createAll(List) after erasure.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<SitDownRestaurants> createAllSitDownRestaurants(List<SitDownRestaurants> sitDownRestaurants,
+			int batchSize) throws SQLException {
+		String insertSitDownRestaurant = "INSERT INTO SitDownRestaurant(RestaurantId,Capacity) VALUES(?,?);";
 		Connection connection = null;
-		PreparedStatement selectStmt = null;
-		ResultSet results = null;
+		PreparedStatement insertRestaurantStmt = null;
+		PreparedStatement insertStmt = null;
 		try {
 			connection = connectionManager.getConnection();
-			selectStmt = connection.prepareStatement(selectSitDownRestaurant);
-			selectStmt.setInt(1, sitDownRestaurantId);
-			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
-			if (results.next()) {
-				int resultRestaurantId = results.getInt("RestaurantId");
-				String name = results.getString("Name");
-				String description = results.getString("Description");
-				String menu = results.getString("Menu");
-				String hours = results.getString("Hours");
-				boolean active = results.getBoolean("Active");
-				Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
-				String street1 = results.getString("Street1");
-				String street2 = results.getString("Street2");
-				String city = results.getString("City");
-				String state = results.getString("State");
-				int zip = results.getInt("Zip");
-				String companyName = results.getString("CompanyName");
-				Companies company = companiesDao.getCompanyByCompanyName(companyName);
-				int capacity = results.getInt("Capacity");
-				SitDownRestaurants sitDownRestaurant = new SitDownRestaurants(resultRestaurantId, name, description,
-						menu, hours, active, cuisineType, street1, street2, city, state, zip, company, capacity);
-				return sitDownRestaurant;
+			connection.setAutoCommit(false);
+			insertRestaurantStmt = connection.prepareStatement(INSERT_RESTAURANT, Statement.RETURN_GENERATED_KEYS);
+			insertStmt = connection.prepareStatement(insertSitDownRestaurant);
+			for (List<SitDownRestaurants> batch : JdbcBatch.partition(sitDownRestaurants, batchSize)) {
+				JdbcBatch.execute(insertRestaurantStmt, batch, RestaurantsDao::bindRestaurant,
+						Restaurants::setRestaurantId);
+				JdbcBatch.execute(insertStmt, batch, (stmt, sitDownRestaurant) -> {
+					stmt.setInt(1, sitDownRestaurant.getRestaurantId());
+					stmt.setInt(2, sitDownRestaurant.getCapacity());
+				}, null);
+				connection.commit();
+				cuisineIndex.added(batch);
 			}
+			return sitDownRestaurants;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
 				connection.close();
 			}
-			if (selectStmt != null) {
-				selectStmt.close();
+			if (insertRestaurantStmt != null) {
+				insertRestaurantStmt.close();
 			}
-			if (results != null) {
-				results.close();
+			if (insertStmt != null) {
+				insertStmt.close();
 			}
 		}
+	}
+
+	/**
+	 * Get the SitDownRestaurants record from the restaurant cache shared with
+	 * RestaurantsDao, fetching it from your MySQL instance on a miss. Returns null
+	 * if there is no such restaurant, or if it is not a SitDownRestaurants.
+	 * 
+	 * @throws SQLException
+	 */
+	public SitDownRestaurants getSitDownRestaurantById(int sitDownRestaurantId) throws SQLException {
+		Restaurants restaurant = getRestaurantById(sitDownRestaurantId);
+		if (restaurant instanceof SitDownRestaurants) {
+			return (SitDownRestaurants) restaurant;
+		}
 		return null;
 	}
 
@@ -148,12 +172,12 @@ public class SitDownRestaurantsDao extends RestaurantsDao {
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
+		String resultCompanyName = null;
 		try {
 			connection = connectionManager.getConnection();
 			selectStmt = connection.prepareStatement(selectSitDownRestaurants);
 			selectStmt.setString(1, companyName);
 			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
 			while (results.next()) {
 				int restaurantId = results.getInt("RestaurantId");
 				String name = results.getString("Name");
@@ -167,11 +191,10 @@ public class SitDownRestaurantsDao extends RestaurantsDao {
 				String city = results.getString("City");
 				String state = results.getString("State");
 				int zip = results.getInt("Zip");
-				String resultCompanyName = results.getString("CompanyName");
-				Companies resultCompany = companiesDao.getCompanyByCompanyName(resultCompanyName);
+				resultCompanyName = results.getString("CompanyName");
 				int capacity = results.getInt("Capacity");
 				SitDownRestaurants sitDownRestaurant = new SitDownRestaurants(restaurantId, name, description, menu,
-						hours, active, cuisineType, street1, street2, city, state, zip, resultCompany, capacity);
+						hours, active, cuisineType, street1, street2, city, state, zip, null, capacity);
 				sitDownRestaurants.add(sitDownRestaurant);
 			}
 		} catch (SQLException e) {
@@ -188,11 +211,52 @@ public class SitDownRestaurantsDao extends RestaurantsDao {
 				results.close();
 			}
 		}
+		// Every row is of the one company. It is looked up once the connection is
+		// given back, since CompaniesDao borrows its own on a cache miss.
+		if (resultCompanyName != null) {
+			Companies company = CompaniesDao.getInstance().getCompanyByCompanyName(resultCompanyName);
+			for (SitDownRestaurants sitDownRestaurant : sitDownRestaurants) {
+				sitDownRestaurant.setCompany(company);
+			}
+		}
 		return sitDownRestaurants;
 	}
 
 	/**
-	 * Delete the SitDownRestaurants instance. This runs a DELETE statement.
+	 * Get the RestaurantSummary of every SitDownRestaurants of a company, in
+	 * RestaurantId order. This runs a SELECT statement for just the summary
+	 * columns; see RestaurantsDao.getRestaurantSummariesByCuisine().
+	 * 
+	 * @throws SQLException
+	 */
+	public List<RestaurantSummary> getSitDownRestaurantSummariesByCompanyName(String companyName) throws SQLException {
+		return selectRestaurantSummaries("INNER JOIN SitDownRestaurant "
+				+ "  ON SitDownRestaurant.RestaurantId = Restaurants.RestaurantId "
+				+ "WHERE CompanyName=? ORDER BY Restaurants.RestaurantId;", companyName);
+	}
+
+	/**
+	 * Get the SitDownRestaurants records for the given restaurantIds from the
+	 * restaurant cache shared with RestaurantsDao, fetching all the misses with one
+	 * batch. Returns the matching SitDownRestaurants keyed by RestaurantId; ids
+	 * without a record, or whose restaurant is not a SitDownRestaurants, are absent.
+	 * 
+	 * @throws SQLException
+	 */
+	public Map<Integer, SitDownRestaurants> getSitDownRestaurantsByIds(int[] restaurantIds) throws SQLException {
+		Map<Integer, SitDownRestaurants> sitDownRestaurants = new HashMap<Integer, SitDownRestaurants>();
+		for (Restaurants restaurant : getRestaurantsWithSubtypeByIds(restaurantIds).values()) {
+			if (restaurant instanceof SitDownRestaurants) {
+				sitDownRestaurants.put(restaurant.getRestaurantId(), (SitDownRestaurants) restaurant);
+			}
+		}
+		return sitDownRestaurants;
+	}
+
+	/**
+	 * Delete the SitDownRestaurants instance. This runs two DELETE statements, from
+	 * SitDownRestaurant and then Restaurants, in a single transaction on one
+	 * connection, and then invalidates the cached restaurant.
 	 * 
 	 * @throws SQLException
 	 */
@@ -206,6 +270,7 @@ public class SitDownRestaurantsDao extends RestaurantsDao {
 		PreparedStatement deleteStmt = null;
 		try {
 			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
 			deleteStmt = connection.prepareStatement(deleteSitDownRestaurant);
 			deleteStmt.setInt(1, sitDownRestaurant.getRestaurantId());
 			int affectedRows = deleteStmt.executeUpdate();
@@ -214,15 +279,21 @@ public class SitDownRestaurantsDao extends RestaurantsDao {
 						"No records available to delete for RestaurantId=" + sitDownRestaurant.getRestaurantId());
 			}
 
-			// Then also delete from the superclass.
+			// Then also delete from the superclass, on the same connection.
 			// Notes:
-			// Due to the fk constraint (ON DELETE CASCADE), we could simply call
-			// super.delete() without even needing to delete from Restaurants first.
-			super.delete(sitDownRestaurant);
+			// Due to the fk constraint (ON DELETE CASCADE), we could simply delete
+			// from Restaurants without even needing to delete from SitDownRestaurant first.
+			deleteRestaurant(connection, sitDownRestaurant);
+			connection.commit();
+			restaurantCache.invalidate(sitDownRestaurant.getRestaurantId());
+			UnitOfWork.evict(Restaurants.class, sitDownRestaurant.getRestaurantId());
 
 			return null;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
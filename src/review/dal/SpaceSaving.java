@@ -0,0 +1,196 @@
+package review.dal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import review.model.*;
+
+/**
+ * A Space-Saving summary of the most frequent items added to it, e.g. the
+ * users who wrote the most reviews, in at most capacity counters.
+ *
+ * While there are free counters every new item gets one. Once they are all in
+ * use, a new item takes over the counter with the smallest count, and starts
+ * from that count, which it records as its error. So a counted item's count
+ * never undercounts it, and overcounts it by at most its error; every item
+ * whose true count is above total / capacity is counted.
+ *
+ * Summaries merge as in Agarwal et al., "Mergeable Summaries": an item missing
+ * from a full summary is taken to have that summary's smallest count, and the
+ * capacity largest sums are kept. As with CountMinSketch, only merge summaries
+ * of disjoint additions. Counts cannot be removed. A SpaceSaving is not
+ * thread-safe.
+ */
+public class SpaceSaving {
+	private static final int VERSION = 1;
+
+	// Smallest count first; ties by item so that distinct counters never compare equal.
+	private static final Comparator<Counter> BY_COUNT = new Comparator<Counter>() {
+		@Override
+		public int compare(Counter a, Counter b) {
+			int order = Long.compare(a.count, b.count);
+			return order != 0 ? order : a.item.compareTo(b.item);
+		}
+	};
+
+	// The count of one item. A counter is removed from byCount while it changes.
+	private static class Counter {
+		final String item;
+		long count;
+		long error;
+
+		Counter(String item, long count, long error) {
+			this.item = item;
+			this.count = count;
+			this.error = error;
+		}
+	}
+
+	private final int capacity;
+	private final Map<String, Counter> counters = new HashMap<String, Counter>();
+	private final TreeSet<Counter> byCount = new TreeSet<Counter>(BY_COUNT);
+	private long total = 0;
+
+	public SpaceSaving(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** The sum of all the counts added. */
+	public long getTotal() {
+		return total;
+	}
+
+	public void add(String item, long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative: " + count);
+		}
+		total += count;
+		Counter counter = counters.get(item);
+		if (counter != null) {
+			byCount.remove(counter);
+			counter.count += count;
+			byCount.add(counter);
+			return;
+		}
+		long floor = 0;
+		if (counters.size() == capacity) {
+			Counter smallest = byCount.pollFirst();
+			counters.remove(smallest.item);
+			floor = smallest.count;
+		}
+		counter = new Counter(item, floor + count, floor);
+		counters.put(item, counter);
+		byCount.add(counter);
+	}
+
+	/**
+	 * The estimated count of item: its counter's count, or the smallest count if
+	 * it has none and the summary is full (0 if it is not).
+	 */
+	public long estimate(String item) {
+		Counter counter = counters.get(item);
+		return counter != null ? counter.count : floor();
+	}
+
+	/** The n items with the largest counts, largest first. */
+	public List<HeavyHitter> getTop(int n) {
+		List<HeavyHitter> top = new ArrayList<HeavyHitter>(Math.min(n, counters.size()));
+		Iterator<Counter> iterator = byCount.descendingIterator();
+		while (top.size() < n && iterator.hasNext()) {
+			Counter counter = iterator.next();
+			top.add(new HeavyHitter(counter.item, counter.count, counter.error));
+		}
+		return top;
+	}
+
+	/**
+	 * Add the counts of other to this summary, keeping this summary's capacity.
+	 */
+	public void merge(SpaceSaving other) {
+		long floor = floor();
+		long otherFloor = other.floor();
+		List<Counter> merged = new ArrayList<Counter>(counters.size() + other.counters.size());
+		for (Counter counter : counters.values()) {
+			Counter otherCounter = other.counters.get(counter.item);
+			if (otherCounter != null) {
+				merged.add(new Counter(counter.item, counter.count + otherCounter.count,
+						counter.error + otherCounter.error));
+			} else {
+				merged.add(new Counter(counter.item, counter.count + otherFloor, counter.error + otherFloor));
+			}
+		}
+		for (Counter otherCounter : other.counters.values()) {
+			if (!counters.containsKey(otherCounter.item)) {
+				merged.add(new Counter(otherCounter.item, otherCounter.count + floor,
+						otherCounter.error + floor));
+			}
+		}
+		merged.sort(BY_COUNT.reversed());
+		counters.clear();
+		byCount.clear();
+		for (Counter counter : merged.subList(0, Math.min(capacity, merged.size()))) {
+			counters.put(counter.item, counter);
+			byCount.add(counter);
+		}
+		total += other.total;
+	}
+
+	/**
+	 * Write the summary: each counter's item, count and error, the counts
+	 * variable-length.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeByte(VERSION);
+		out.writeInt(capacity);
+		CountMinSketch.writeVarLong(out, total);
+		out.writeInt(counters.size());
+		for (Counter counter : byCount) {
+			out.writeUTF(counter.item);
+			CountMinSketch.writeVarLong(out, counter.count);
+			CountMinSketch.writeVarLong(out, counter.error);
+		}
+	}
+
+	/** Read a summary written by writeTo(). */
+	public static SpaceSaving readFrom(DataInput in) throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unknown SpaceSaving version: " + version);
+		}
+		SpaceSaving summary = new SpaceSaving(in.readInt());
+		summary.total = CountMinSketch.readVarLong(in);
+		int size = in.readInt();
+		if (size > summary.capacity) {
+			throw new IOException("SpaceSaving has " + size + " counters for a capacity of "
+					+ summary.capacity);
+		}
+		for (int i = 0; i < size; i++) {
+			String item = in.readUTF();
+			long count = CountMinSketch.readVarLong(in);
+			Counter counter = new Counter(item, count, CountMinSketch.readVarLong(in));
+			summary.counters.put(item, counter);
+			summary.byCount.add(counter);
+		}
+		return summary;
+	}
+
+	// The count an uncounted item may have had: the smallest count once full.
+	private long floor() {
+		return counters.size() == capacity ? byCount.first().count : 0;
+	}
+}
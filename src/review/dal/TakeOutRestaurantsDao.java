@@ -4,7 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import review.model.*;
@@ -16,46 +18,50 @@ import review.model.*;
  * {@link TakeOutRestaurantsDao} from MySQL instance.
  */
 public class TakeOutRestaurantsDao extends RestaurantsDao {
-	// Single pattern: instantiation is limited to one object.
-	private static TakeOutRestaurantsDao instance = null;
-
-	protected TakeOutRestaurantsDao() {
-		super();
+	protected TakeOutRestaurantsDao(ConnectionManager connectionManager, RestaurantCache restaurantCache,
+			CuisineIndex cuisineIndex, RankingIndex rankingIndex) {
+		super(connectionManager, restaurantCache, cuisineIndex, rankingIndex);
 	}
 
+	// The single instance is built and owned by DaoRegistry.
 	public static TakeOutRestaurantsDao getInstance() {
-		if (instance == null) {
-			instance = new TakeOutRestaurantsDao();
-		}
-		return instance;
+		return DaoRegistry.get().getTakeOutRestaurantsDao();
 	}
 
 	/**
 	 * Save the TakeOutRestaurants instance by storing it in your MySQL instance.
-	 * This runs a INSERT statement.
+	 * This runs two INSERT statements, into Restaurants and then TakeOutRestaurant, in
+	 * a single transaction on one connection. The auto-generated RestaurantId is
+	 * set on takeOutRestaurant and used for the TakeOutRestaurant row.
 	 * 
 	 * @throws SQLException
 	 */
 	public TakeOutRestaurants create(TakeOutRestaurants takeOutRestaurant) throws SQLException {
-		// Insert into the superclass table first.
-		create(new Restaurants(takeOutRestaurant.getRestaurantId(), takeOutRestaurant.getName(),
-				takeOutRestaurant.getDescription(), takeOutRestaurant.getMenu(), takeOutRestaurant.getHours(),
-				takeOutRestaurant.isActive(), takeOutRestaurant.getCuisineType(), takeOutRestaurant.getStreet1(),
-				takeOutRestaurant.getStreet2(), takeOutRestaurant.getCity(), takeOutRestaurant.getState(),
-				takeOutRestaurant.getZip(), takeOutRestaurant.getCompany()));
-
 		String insertTakeOutRestaurant = "INSERT INTO TakeOutRestaurant(RestaurantId,MaxWaitTime) VALUES(?,?);";
+		int originalRestaurantId = takeOutRestaurant.getRestaurantId();
 		Connection connection = null;
 		PreparedStatement insertStmt = null;
 		try {
 			connection = connectionManager.getConnection();
+			// Both rows are committed together, so a failure can never leave a
+			// Restaurants row without its TakeOutRestaurant row.
+			connection.setAutoCommit(false);
+			// Insert into the superclass table first; this sets the generated key.
+			insertRestaurant(connection, takeOutRestaurant);
+
 			insertStmt = connection.prepareStatement(insertTakeOutRestaurant);
 			insertStmt.setInt(1, takeOutRestaurant.getRestaurantId());
 			insertStmt.setInt(2, takeOutRestaurant.getMaxWaitTime());
 			insertStmt.executeUpdate();
+			connection.commit();
+			cuisineIndex.added(Collections.singletonList(takeOutRestaurant));
 			return takeOutRestaurant;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			takeOutRestaurant.setRestaurantId(originalRestaurantId);
 			throw e;
 		} finally {
 			if (connection != null) {
@@ -68,64 +74,82 @@ public class TakeOutRestaurantsDao extends RestaurantsDao {
 	}
 
 	/**
-	 * Get the TakeOutRestaurants record by fetching it from your MySQL instance.
-	 * This runs a SELECT statement and returns a single TakeOutRestaurants
-	 * instance. Note that we use CompaniesDao to retrieve the referenced Companies
-	 * instance. One alternative (possibly more efficient) is using a single SELECT
-	 * statement to join the TakeOutRestaurants, Companies tables and then build
-	 * each object.
+	 * Save all the TakeOutRestaurants instances,
+	 * ConnectionManager.DEFAULT_BATCH_SIZE restaurants per batch. See
+	 * createAllTakeOutRestaurants(List, int).
 	 * 
 	 * @throws SQLException
 	 */
-	public TakeOutRestaurants getTakeOutRestaurantById(int takeOutRestaurantId) throws SQLException {
-		// To build an SitDownRestaurants object, we need the Restaurants record, too.
-		String selectTakeOutRestaurant = "SELECT TakeOutRestaurant.RestaurantId AS RestaurantId, Name, Description, Menu, Hours, Active, CuisineType, Street1, Street2, City, State, Zip, CompanyName, MaxWaitTime "
-				+ "FROM TakeOutRestaurant INNER JOIN Restaurants "
-				+ "  ON TakeOutRestaurant.RestaurantId = Restaurants.RestaurantId "
-				+ "WHERE TakeOutRestaurant.RestaurantId=?;";
+	public List<TakeOutRestaurants> createAllTakeOutRestaurants(List<TakeOutRestaurants> takeOutRestaurants)
+			throws SQLException {
+		return createAllTakeOutRestaurants(takeOutRestaurants, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the TakeOutRestaurants instances by storing them in your MySQL
+	 * instance. For every batch of batchSize restaurants, this runs one batched
+	 * INSERT into Restaurants (setting the auto-generated RestaurantIds) and one
+	 * into TakeOutRestaurant, and commits both in a single transaction. If a batch
+	 * fails, it is rolled back; the batches before it stay committed.
+	 *
+	 * This is not named createAll() because it would clash with
+	 * RestaurantsDao.createAll(List) after erasure.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<TakeOutRestaurants> createAllTakeOutRestaurants(List<TakeOutRestaurants> takeOutRestaurants,
+			int batchSize) throws SQLException {
+		String insertTakeOutRestaurant = "INSERT INTO TakeOutRestaurant(RestaurantId,MaxWaitTime) VALUES(?,?);";
 		Connection connection = null;
-		PreparedStatement selectStmt = null;
-		ResultSet results = null;
+		PreparedStatement insertRestaurantStmt = null;
+		PreparedStatement insertStmt = null;
 		try {
 			connection = connectionManager.getConnection();
-			selectStmt = connection.prepareStatement(selectTakeOutRestaurant);
-			selectStmt.setInt(1, takeOutRestaurantId);
-			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
-			if (results.next()) {
-				int resultRestaurantId = results.getInt("RestaurantId");
-				String name = results.getString("Name");
-				String description = results.getString("Description");
-				String menu = results.getString("Menu");
-				String hours = results.getString("Hours");
-				boolean active = results.getBoolean("Active");
-				Restaurants.CuisineType cuisineType = Restaurants.CuisineType.valueOf(results.getString("CuisineType"));
-				String street1 = results.getString("Street1");
-				String street2 = results.getString("Street2");
-				String city = results.getString("City");
-				String state = results.getString("State");
-				int zip = results.getInt("Zip");
-				String companyName = results.getString("CompanyName");
-				Companies company = companiesDao.getCompanyByCompanyName(companyName);
-				int maxWaitTime = results.getInt("MaxWaitTime");
-				TakeOutRestaurants takeOutRestaurant = new TakeOutRestaurants(resultRestaurantId, name, description,
-						menu, hours, active, cuisineType, street1, street2, city, state, zip, company, maxWaitTime);
-				return takeOutRestaurant;
+			connection.setAutoCommit(false);
+			insertRestaurantStmt = connection.prepareStatement(INSERT_RESTAURANT, Statement.RETURN_GENERATED_KEYS);
+			insertStmt = connection.prepareStatement(insertTakeOutRestaurant);
+			for (List<TakeOutRestaurants> batch : JdbcBatch.partition(takeOutRestaurants, batchSize)) {
+				JdbcBatch.execute(insertRestaurantStmt, batch, RestaurantsDao::bindRestaurant,
+						Restaurants::setRestaurantId);
+				JdbcBatch.execute(insertStmt, batch, (stmt, takeOutRestaurant) -> {
+					stmt.setInt(1, takeOutRestaurant.getRestaurantId());
+					stmt.setInt(2, takeOutRestaurant.getMaxWaitTime());
+				}, null);
+				connection.commit();
+				cuisineIndex.added(batch);
 			}
+			return takeOutRestaurants;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
 				connection.close();
 			}
-			if (selectStmt != null) {
-				selectStmt.close();
+			if (insertRestaurantStmt != null) {
+				insertRestaurantStmt.close();
 			}
-			if (results != null) {
-				results.close();
+			if (insertStmt != null) {
+				insertStmt.close();
 			}
 		}
+	}
+
+	/**
+	 * Get the TakeOutRestaurants record from the restaurant cache shared with
+	 * RestaurantsDao, fetching it from your MySQL instance on a miss. Returns null
+	 * if there is no such restaurant, or if it is not a TakeOutRestaurants.
+	 * 
+	 * @throws SQLException
+	 */
+	public TakeOutRestaurants getTakeOutRestaurantById(int takeOutRestaurantId) throws SQLException {
+		Restaurants restaurant = getRestaurantById(takeOutRestaurantId);
+		if (restaurant instanceof TakeOutRestaurants) {
+			return (TakeOutRestaurants) restaurant;
+		}
 		return null;
 	}
 
@@ -145,12 +169,12 @@ public class TakeOutRestaurantsDao extends RestaurantsDao {
 		Connection connection = null;
 		PreparedStatement selectStmt = null;
 		ResultSet results = null;
+		String resultCompanyName = null;
 		try {
 			connection = connectionManager.getConnection();
 			selectStmt = connection.prepareStatement(selectTakeOutRestaurants);
 			selectStmt.setString(1, companyName);
 			results = selectStmt.executeQuery();
-			CompaniesDao companiesDao = CompaniesDao.getInstance();
 			while (results.next()) {
 				int restaurantId = results.getInt("RestaurantId");
 				String name = results.getString("Name");
@@ -164,11 +188,10 @@ public class TakeOutRestaurantsDao extends RestaurantsDao {
 				String city = results.getString("City");
 				String state = results.getString("State");
 				int zip = results.getInt("Zip");
-				String resultCompanyName = results.getString("CompanyName");
-				Companies resultCompany = companiesDao.getCompanyByCompanyName(resultCompanyName);
+				resultCompanyName = results.getString("CompanyName");
 				int maxWaitTime = results.getInt("MaxWaitTime");
 				TakeOutRestaurants takeOutRestaurant = new TakeOutRestaurants(restaurantId, name, description, menu,
-						hours, active, cuisineType, street1, street2, city, state, zip, resultCompany, maxWaitTime);
+						hours, active, cuisineType, street1, street2, city, state, zip, null, maxWaitTime);
 				takeOutRestaurants.add(takeOutRestaurant);
 			}
 		} catch (SQLException e) {
@@ -185,11 +208,34 @@ public class TakeOutRestaurantsDao extends RestaurantsDao {
 				results.close();
 			}
 		}
+		// Every row is of the one company. It is looked up once the connection is
+		// given back, since CompaniesDao borrows its own on a cache miss.
+		if (resultCompanyName != null) {
+			Companies company = CompaniesDao.getInstance().getCompanyByCompanyName(resultCompanyName);
+			for (TakeOutRestaurants takeOutRestaurant : takeOutRestaurants) {
+				takeOutRestaurant.setCompany(company);
+			}
+		}
 		return takeOutRestaurants;
 	}
 
 	/**
-	 * Delete the TakeOutRestaurants instance. This runs a DELETE statement.
+	 * Get the RestaurantSummary of every TakeOutRestaurants of a company, in
+	 * RestaurantId order. This runs a SELECT statement for just the summary
+	 * columns; see RestaurantsDao.getRestaurantSummariesByCuisine().
+	 * 
+	 * @throws SQLException
+	 */
+	public List<RestaurantSummary> getTakeOutRestaurantSummariesByCompanyName(String companyName) throws SQLException {
+		return selectRestaurantSummaries("INNER JOIN TakeOutRestaurant "
+				+ "  ON TakeOutRestaurant.RestaurantId = Restaurants.RestaurantId "
+				+ "WHERE CompanyName=? ORDER BY Restaurants.RestaurantId;", companyName);
+	}
+
+	/**
+	 * Delete the TakeOutRestaurants instance. This runs two DELETE statements, from
+	 * TakeOutRestaurant and then Restaurants, in a single transaction on one
+	 * connection, and then invalidates the cached restaurant.
 	 * 
 	 * @throws SQLException
 	 */
@@ -199,6 +245,7 @@ public class TakeOutRestaurantsDao extends RestaurantsDao {
 		PreparedStatement deleteStmt = null;
 		try {
 			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
 			deleteStmt = connection.prepareStatement(deleteTakeOutRestaurant);
 			deleteStmt.setInt(1, takeOutRestaurant.getRestaurantId());
 			int affectedRows = deleteStmt.executeUpdate();
@@ -207,15 +254,21 @@ public class TakeOutRestaurantsDao extends RestaurantsDao {
 						"No records available to delete for RestaurantId=" + takeOutRestaurant.getRestaurantId());
 			}
 
-			// Then also delete from the superclass.
+			// Then also delete from the superclass, on the same connection.
 			// Notes:
-			// Due to the fk constraint (ON DELETE CASCADE), we could simply call
-			// super.delete() without even needing to delete from Restaurants first.
-			super.delete(takeOutRestaurant);
+			// Due to the fk constraint (ON DELETE CASCADE), we could simply delete
+			// from Restaurants without even needing to delete from TakeOutRestaurant first.
+			deleteRestaurant(connection, takeOutRestaurant);
+			connection.commit();
+			restaurantCache.invalidate(takeOutRestaurant.getRestaurantId());
+			UnitOfWork.evict(Restaurants.class, takeOutRestaurant.getRestaurantId());
 
 			return null;
 		} catch (SQLException e) {
 			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
 			throw e;
 		} finally {
 			if (connection != null) {
@@ -0,0 +1,569 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A weight-bounded, read-through cache with W-TinyLFU admission, per-entry TTL and
+ * negative caching, for entities whose hot set is small but keeps coming back
+ * (e.g. the few power users behind most reviews).
+ *
+ * Layout, as in W-TinyLFU:
+ * - New entries go into a small LRU window, 1% of maxWeight.
+ * - Entries pushed out of the window become admission candidates for the main
+ *   region. The main region is a segmented LRU: probation, plus protected
+ *   (80% of the main region) for entries that were hit again while on
+ *   probation.
+ * - When the cache is over maxWeight, the candidate competes with the
+ *   probation LRU victim. A count-min sketch of recent access frequency picks
+ *   the one to keep. A burst of one-off keys therefore cannot flush the
+ *   frequently used entries.
+ *
+ * Reads are lock-free: a hit looks the key up in a ConcurrentHashMap and queues
+ * the access in a small buffer. Whichever thread then gets the eviction lock
+ * replays the buffer into the sketch and the LRU order. A full buffer drops
+ * accesses, which only makes the policy slightly less precise.
+ *
+ * A key that loads as null is cached as a negative entry, with its own (usually
+ * shorter) TTL, so repeated lookups of a missing key do not go to MySQL. As in
+ * EntityCache, a load that races an invalidate() is not cached.
+ */
+public class TinyLfuCache<K, V> {
+
+	/** The weight of one entry, in whatever unit maxWeight uses. */
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+
+	private static final int WINDOW_PERCENT = 1;
+	private static final int PROTECTED_PERCENT = 80;
+	private static final int READ_BUFFER_SIZE = 256;
+	// How many entries at the head of each region are checked for expiry per drain.
+	private static final int EXPIRY_SCAN = 16;
+	private static final int NEGATIVE_WEIGHT = 1;
+
+	private static final byte NONE = 0;
+	private static final byte WINDOW = 1;
+	private static final byte PROBATION = 2;
+	private static final byte PROTECTED = 3;
+
+	private final String name;
+	private final long maxWeight;
+	private final long windowMaxWeight;
+	private final long protectedMaxWeight;
+	private final long ttlNanos;
+	private final long negativeTtlNanos;
+	private final Weigher<K, V> weigher;
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<K, Node<K, V>>();
+	private final ArrayBlockingQueue<Node<K, V>> readBuffer = new ArrayBlockingQueue<Node<K, V>>(READ_BUFFER_SIZE);
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	// Guarded by evictionLock.
+	private final FrequencySketch sketch;
+	private final Region<K, V> window = new Region<K, V>();
+	private final Region<K, V> probation = new Region<K, V>();
+	private final Region<K, V> protectedRegion = new Region<K, V>();
+	private long weight = 0;
+	private long generation = 0;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder negativeHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * @param maxWeight the total weight of the cached entries, as measured by
+	 *        weigher; 0 disables caching
+	 * @param expectedEntries roughly how many entries fit in maxWeight, to size the
+	 *        frequency sketch
+	 * @param ttlMillis how long an entry is served after it was loaded
+	 * @param negativeTtlMillis how long a "no such row" entry is served
+	 */
+	public TinyLfuCache(String name, long maxWeight, int expectedEntries, long ttlMillis, long negativeTtlMillis,
+			Weigher<K, V> weigher) {
+		this.name = name;
+		this.maxWeight = maxWeight;
+		this.windowMaxWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+		this.protectedMaxWeight = (maxWeight - windowMaxWeight) * PROTECTED_PERCENT / 100;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.negativeTtlNanos = negativeTtlMillis * 1000000L;
+		this.weigher = weigher;
+		this.sketch = new FrequencySketch(Math.max(64, expectedEntries));
+	}
+
+	/**
+	 * Get the value for key, calling loader on a miss or an expired entry. A null
+	 * result is cached as a negative entry.
+	 *
+	 * @throws SQLException
+	 */
+	public V get(K key, EntityCache.Loader<K, V> loader) throws SQLException {
+		Node<K, V> node = getNode(key, System.nanoTime());
+		if (node != null) {
+			return node.value;
+		}
+		misses.increment();
+		long loadGeneration = beginLoad(key);
+		V value = loader.load(key);
+		putIfCurrent(key, value, loadGeneration);
+		return value;
+	}
+
+	// Count the misses in the sketch and snapshot the generation for putIfCurrent.
+	private long beginLoad(Collection<K> keys) {
+		evictionLock.lock();
+		try {
+			for (K key : keys) {
+				sketch.increment(key);
+			}
+			return generation;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the values for keys, loading all the misses with one call to loader.
+	 * Keys without a row are absent from the returned map and cached as negative
+	 * entries.
+	 *
+	 * @throws SQLException
+	 */
+	public Map<K, V> getAll(Collection<K> keys, EntityCache.BulkLoader<K, V> loader) throws SQLException {
+		Map<K, V> values = new HashMap<K, V>();
+		List<K> missing = new ArrayList<K>();
+		long now = System.nanoTime();
+		for (K key : keys) {
+			Node<K, V> node = getNode(key, now);
+			if (node == null) {
+				missing.add(key);
+			} else if (node.value != null) {
+				values.put(key, node.value);
+			}
+		}
+		if (missing.isEmpty()) {
+			return values;
+		}
+		misses.add(missing.size());
+		long loadGeneration = beginLoad(missing);
+		Map<K, V> loaded = loader.loadAll(missing);
+		for (K key : missing) {
+			V value = loaded.get(key);
+			putIfCurrent(key, value, loadGeneration);
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Drop the entry for key (positive or negative), and make any load in flight
+	 * discard its result.
+	 */
+	public void invalidate(K key) {
+		evictionLock.lock();
+		try {
+			generation++;
+			Node<K, V> node = data.remove(key);
+			if (node != null) {
+				unlink(node);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+		invalidations.increment();
+	}
+
+	public void invalidateAll() {
+		evictionLock.lock();
+		try {
+			generation++;
+			for (Node<K, V> node : data.values()) {
+				unlink(node);
+			}
+			data.clear();
+			readBuffer.clear();
+		} finally {
+			evictionLock.unlock();
+		}
+		invalidations.increment();
+	}
+
+	// The live node for key, or null on a miss. Expired nodes are removed.
+	private Node<K, V> getNode(K key, long now) {
+		Node<K, V> node = data.get(key);
+		if (node == null) {
+			return null;
+		}
+		if (node.expiresAt - now <= 0) {
+			evictionLock.lock();
+			try {
+				if (data.remove(key, node)) {
+					unlink(node);
+					expirations.increment();
+				}
+			} finally {
+				evictionLock.unlock();
+			}
+			return null;
+		}
+		if (node.value == null) {
+			negativeHits.increment();
+		} else {
+			hits.increment();
+		}
+		readBuffer.offer(node);
+		if (evictionLock.tryLock()) {
+			try {
+				drainReadBuffer(now);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		return node;
+	}
+
+	// Count the miss in the sketch and snapshot the generation for putIfCurrent.
+	private long beginLoad(K key) {
+		evictionLock.lock();
+		try {
+			sketch.increment(key);
+			return generation;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void putIfCurrent(K key, V value, long loadGeneration) {
+		if (maxWeight == 0) {
+			return;
+		}
+		int entryWeight = value == null ? NEGATIVE_WEIGHT : weigher.weigh(key, value);
+		evictionLock.lock();
+		try {
+			if (generation != loadGeneration || entryWeight > maxWeight) {
+				return;
+			}
+			long now = System.nanoTime();
+			Node<K, V> node = new Node<K, V>(key, value, entryWeight,
+					now + (value == null ? negativeTtlNanos : ttlNanos));
+			Node<K, V> previous = data.put(key, node);
+			if (previous != null) {
+				unlink(previous);
+			}
+			window.addLast(node, WINDOW);
+			weight += entryWeight;
+			drainReadBuffer(now);
+			evict();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	// Replay buffered hits into the sketch and the LRU order. Holds evictionLock.
+	private void drainReadBuffer(long now) {
+		Node<K, V> node;
+		while ((node = readBuffer.poll()) != null) {
+			if (node.region == NONE) {
+				continue;
+			}
+			sketch.increment(node.key);
+			if (node.region == WINDOW) {
+				window.moveToEnd(node);
+			} else if (node.region == PROBATION) {
+				// Hit again while on probation: promote to protected.
+				probation.remove(node);
+				protectedRegion.addLast(node, PROTECTED);
+				while (protectedRegion.weight > protectedMaxWeight) {
+					Node<K, V> demoted = protectedRegion.first();
+					protectedRegion.remove(demoted);
+					probation.addLast(demoted, PROBATION);
+				}
+			} else {
+				protectedRegion.moveToEnd(node);
+			}
+		}
+		expireHead(window, now);
+		expireHead(probation, now);
+		expireHead(protectedRegion, now);
+	}
+
+	private void expireHead(Region<K, V> region, long now) {
+		Node<K, V> node = region.first();
+		for (int i = 0; i < EXPIRY_SCAN && node != null; i++) {
+			Node<K, V> next = node.next;
+			if (node.expiresAt - now <= 0 && data.remove(node.key, node)) {
+				unlink(node);
+				expirations.increment();
+			}
+			node = next;
+		}
+	}
+
+	// Bring the cache back under maxWeight. Holds evictionLock.
+	private void evict() {
+		// Entries pushed out of the window become candidates at the probation tail.
+		Node<K, V> firstCandidate = null;
+		while (window.weight > windowMaxWeight) {
+			Node<K, V> candidate = window.first();
+			window.remove(candidate);
+			probation.addLast(candidate, PROBATION);
+			if (firstCandidate == null) {
+				firstCandidate = candidate;
+			}
+		}
+		while (weight > maxWeight) {
+			Node<K, V> victim = probation.first();
+			Node<K, V> candidate = probation.last();
+			if (victim == null) {
+				// Probation is empty; fall back to the protected and window LRUs.
+				victim = protectedRegion.first() != null ? protectedRegion.first() : window.first();
+				evictNode(victim);
+				continue;
+			}
+			if (candidate == victim || firstCandidate == null) {
+				evictNode(victim);
+				continue;
+			}
+			if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+				evictNode(victim);
+			} else {
+				evictNode(candidate);
+				rejections.increment();
+				if (candidate == firstCandidate) {
+					firstCandidate = null;
+				}
+			}
+		}
+	}
+
+	private void evictNode(Node<K, V> node) {
+		data.remove(node.key, node);
+		unlink(node);
+		evictions.increment();
+	}
+
+	// Take node out of its region. Holds evictionLock.
+	private void unlink(Node<K, V> node) {
+		if (node.region == WINDOW) {
+			window.remove(node);
+		} else if (node.region == PROBATION) {
+			probation.remove(node);
+		} else if (node.region == PROTECTED) {
+			protectedRegion.remove(node);
+		} else {
+			return;
+		}
+		weight -= node.weight;
+		node.region = NONE;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getWeight() {
+		evictionLock.lock();
+		try {
+			return weight;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getNegativeHitCount() {
+		return negativeHits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/** Candidates that lost to the probation victim and were not admitted. */
+	public long getRejectionCount() {
+		return rejections.sum();
+	}
+
+	public long getExpirationCount() {
+		return expirations.sum();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	public double getHitRate() {
+		long hitCount = hits.sum() + negativeHits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TinyLfuCache[%s size=%d weight=%d/%d hits=%d negativeHits=%d misses=%d hitRate=%.3f "
+				+ "evictions=%d rejections=%d expirations=%d invalidations=%d]", name, size(), getWeight(), maxWeight,
+				getHitCount(), getNegativeHitCount(), getMissCount(), getHitRate(), getEvictionCount(),
+				getRejectionCount(), getExpirationCount(), getInvalidationCount());
+	}
+
+	private static class Node<K, V> {
+		final K key;
+		// Null for a negative entry.
+		final V value;
+		final int weight;
+		final long expiresAt;
+		// Guarded by evictionLock.
+		byte region = NONE;
+		Node<K, V> prev;
+		Node<K, V> next;
+
+		Node(K key, V value, int weight, long expiresAt) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/** An LRU list of nodes, least recently used first, with its total weight. */
+	private static class Region<K, V> {
+		private Node<K, V> head;
+		private Node<K, V> tail;
+		long weight;
+
+		Node<K, V> first() {
+			return head;
+		}
+
+		Node<K, V> last() {
+			return tail;
+		}
+
+		void addLast(Node<K, V> node, byte region) {
+			node.region = region;
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			weight += node.weight;
+		}
+
+		void remove(Node<K, V> node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			weight -= node.weight;
+		}
+
+		void moveToEnd(Node<K, V> node) {
+			if (node != tail) {
+				byte region = node.region;
+				remove(node);
+				addLast(node, region);
+			}
+		}
+	}
+
+	/**
+	 * Count-min sketch of access frequency: four rows of saturating 4-bit
+	 * counters (kept in bytes). Every sampleSize increments, all counters are
+	 * halved, so the sketch tracks recent popularity rather than all-time counts.
+	 */
+	private static class FrequencySketch {
+		private static final int[] SEEDS = { 0x97cb3127, 0xb2f8a6c5, 0x8f1bbcdc, 0x5bd1e995 };
+		private static final int MAX_COUNT = 15;
+
+		private final byte[][] rows;
+		private final int mask;
+		private final int sampleSize;
+		private int additions = 0;
+
+		FrequencySketch(int expectedEntries) {
+			int width = Integer.highestOneBit(Math.min(expectedEntries, 1 << 24) * 2 - 1);
+			rows = new byte[SEEDS.length][width];
+			mask = width - 1;
+			sampleSize = 10 * width;
+		}
+
+		void increment(Object key) {
+			int hash = key.hashCode();
+			for (int row = 0; row < rows.length; row++) {
+				int index = index(hash, row);
+				if (rows[row][index] < MAX_COUNT) {
+					rows[row][index]++;
+				}
+			}
+			if (++additions >= sampleSize) {
+				age();
+			}
+		}
+
+		int frequency(Object key) {
+			int hash = key.hashCode();
+			int frequency = MAX_COUNT;
+			for (int row = 0; row < rows.length; row++) {
+				frequency = Math.min(frequency, rows[row][index(hash, row)]);
+			}
+			return frequency;
+		}
+
+		private int index(int hash, int row) {
+			int h = hash * SEEDS[row];
+			h ^= h >>> 16;
+			h *= 0x85ebca6b;
+			h ^= h >>> 13;
+			return h & mask;
+		}
+
+		private void age() {
+			for (byte[] counters : rows) {
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] = (byte) (counters[i] >> 1);
+				}
+			}
+			additions /= 2;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package review.dal;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request-scoped identity map. While a UnitOfWork is open on a thread, the
+ * DAO lookups of Users, Restaurants and Companies made on that thread load each
+ * (type, key) at most once and hand out the same instance every time, so a page
+ * that reads the reviews, recommendations and reservations of one restaurant
+ * shares one Restaurants, one Companies and one Users per user between them,
+ * even when the shared caches are off or have evicted the entries.
+ *
+ * Open one per request with try-with-resources:
+ *
+ * <pre>
+ * try (UnitOfWork unitOfWork = UnitOfWork.begin()) {
+ * 	...
+ * }
+ * </pre>
+ *
+ * A begin() while a UnitOfWork is already open on the thread joins it, and only
+ * the outermost close() ends it. Missing rows are remembered too. The DAO
+ * writes made on the thread evict what they change; changes made by other
+ * threads are not seen until the UnitOfWork ends, so it reads as a consistent
+ * snapshot. A UnitOfWork is not thread-safe and must be closed on the thread
+ * that began it.
+ */
+public class UnitOfWork implements AutoCloseable {
+	private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<UnitOfWork>();
+
+	// Stands for a key that has no row.
+	private static final Object MISSING = new Object();
+
+	private final Map<Class<?>, Map<Object, Object>> entities = new HashMap<Class<?>, Map<Object, Object>>();
+	private int depth = 1;
+	private long hits = 0;
+	private long misses = 0;
+
+	private UnitOfWork() {
+	}
+
+	/**
+	 * Open a UnitOfWork on the current thread, or join the one already open.
+	 */
+	public static UnitOfWork begin() {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork != null) {
+			unitOfWork.depth++;
+			return unitOfWork;
+		}
+		unitOfWork = new UnitOfWork();
+		CURRENT.set(unitOfWork);
+		return unitOfWork;
+	}
+
+	/**
+	 * The UnitOfWork open on the current thread, or null.
+	 */
+	public static UnitOfWork current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Leave the UnitOfWork. The outermost close() ends it and drops its entities.
+	 */
+	@Override
+	public void close() {
+		if (CURRENT.get() != this) {
+			throw new IllegalStateException("UnitOfWork is not open on this thread");
+		}
+		if (--depth == 0) {
+			CURRENT.remove();
+			entities.clear();
+		}
+	}
+
+	/**
+	 * Get the entity of the given type and key from the current UnitOfWork, calling
+	 * loader the first time it is asked for. Without a UnitOfWork this just calls
+	 * loader.
+	 *
+	 * @throws SQLException
+	 */
+	static <K, V> V get(Class<V> type, K key, EntityCache.Loader<K, V> loader) throws SQLException {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork == null || key == null) {
+			return loader.load(key);
+		}
+		Map<Object, Object> map = unitOfWork.mapOf(type);
+		Object value = map.get(key);
+		if (value != null) {
+			unitOfWork.hits++;
+			return value == MISSING ? null : type.cast(value);
+		}
+		unitOfWork.misses++;
+		V loaded = loader.load(key);
+		// The loader may have registered an instance for key itself; keep that one.
+		return unitOfWork.register(type, key, loaded);
+	}
+
+	/**
+	 * Batch variant of get(): loads all the keys the current UnitOfWork has not
+	 * seen yet with one call to loader. Keys without an entity are absent from the
+	 * returned map.
+	 *
+	 * @throws SQLException
+	 */
+	static <K, V> Map<K, V> getAll(Class<V> type, Collection<K> keys, EntityCache.BulkLoader<K, V> loader)
+			throws SQLException {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork == null) {
+			return loader.loadAll(keys);
+		}
+		Map<K, V> values = new HashMap<K, V>();
+		List<K> missing = new ArrayList<K>();
+		Map<Object, Object> map = unitOfWork.mapOf(type);
+		for (K key : new LinkedHashSet<K>(keys)) {
+			Object value = map.get(key);
+			if (value == null) {
+				missing.add(key);
+			} else if (value != MISSING) {
+				values.put(key, type.cast(value));
+			}
+		}
+		unitOfWork.hits += values.size();
+		if (missing.isEmpty()) {
+			return values;
+		}
+		unitOfWork.misses += missing.size();
+		Map<K, V> loaded = loader.loadAll(missing);
+		for (K key : missing) {
+			V value = unitOfWork.register(type, key, loaded.get(key));
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Return the instance the current UnitOfWork already has for the given type and
+	 * key, or register value as that instance. Used by loaders that build embedded
+	 * entities (e.g. the Companies of restaurant rows). Without a UnitOfWork this
+	 * returns value.
+	 */
+	static <K, V> V intern(Class<V> type, K key, V value) {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork == null || key == null) {
+			return value;
+		}
+		return unitOfWork.register(type, key, value);
+	}
+
+	/**
+	 * Forget the entity of the given type and key in the current UnitOfWork, after
+	 * it was written on this thread.
+	 */
+	static void evict(Class<?> type, Object key) {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork != null) {
+			unitOfWork.mapOf(type).remove(key);
+		}
+	}
+
+	/**
+	 * Forget all the entities of the given type in the current UnitOfWork.
+	 */
+	static void evictAll(Class<?> type) {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork != null) {
+			unitOfWork.entities.remove(type);
+		}
+	}
+
+	// Keep the first instance registered for key; a null value registers MISSING.
+	private <V> V register(Class<V> type, Object key, V value) {
+		Map<Object, Object> map = mapOf(type);
+		Object current = map.get(key);
+		if (current != null && (current != MISSING || value == null)) {
+			return current == MISSING ? null : type.cast(current);
+		}
+		map.put(key, value == null ? MISSING : value);
+		return value;
+	}
+
+	private Map<Object, Object> mapOf(Class<?> type) {
+		Map<Object, Object> map = entities.get(type);
+		if (map == null) {
+			map = new HashMap<Object, Object>();
+			entities.put(type, map);
+		}
+		return map;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Map<Object, Object> map : entities.values()) {
+			size += map.size();
+		}
+		return size;
+	}
+
+	public long getHitCount() {
+		return hits;
+	}
+
+	public long getMissCount() {
+		return misses;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("UnitOfWork[size=%d hits=%d misses=%d]", size(), getHitCount(), getMissCount());
+	}
+}
@@ -4,6 +4,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import review.model.*;
 
@@ -13,20 +19,44 @@ import review.model.*;
  * instance and retrieve {@link Users} from MySQL instance.
  */
 public class UsersDao {
+	// Approximate bytes of Users kept in the cache. 0 turns the cache off.
+	private static final long CACHE_MAX_WEIGHT = Long.getLong("review.cache.users.maxWeight", 16L * 1024 * 1024);
+	// How long a cached user, and a cached "no such user", is served.
+	private static final long CACHE_TTL_SECONDS = Long.getLong("review.cache.users.ttlSeconds", 300);
+	private static final long CACHE_NEGATIVE_TTL_SECONDS = Long.getLong("review.cache.users.negativeTtlSeconds", 30);
+	// Rough heap size of a Users and its strings, less the characters themselves.
+	private static final int USER_OVERHEAD_BYTES = 300;
+
 	protected ConnectionManager connectionManager;
 
-	// Single pattern: instantiation is limited to one object.
-	private static UsersDao instance = null;
+	// Read-through cache of Users by UserName, including negative entries for
+	// names without a row. Every review, recommendation and reservation row looks
+	// up its user, and a few power users account for most of them, so admission is
+	// frequency-aware: see TinyLfuCache. create(), updateUserName() and delete()
+	// invalidate the names they touch.
+	protected final TinyLfuCache<String, Users> cache;
+
+	protected UsersDao(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+		this.cache = new TinyLfuCache<String, Users>("Users", CACHE_MAX_WEIGHT,
+				(int) Math.min(Integer.MAX_VALUE, CACHE_MAX_WEIGHT / USER_OVERHEAD_BYTES),
+				CACHE_TTL_SECONDS * 1000, CACHE_NEGATIVE_TTL_SECONDS * 1000, UsersDao::weigh);
+	}
 
-	protected UsersDao() {
-		connectionManager = new ConnectionManager();
+	// Approximate heap bytes of user: fixed overhead plus two bytes per character.
+	private static int weigh(String userName, Users user) {
+		return USER_OVERHEAD_BYTES + 2 * (length(user.getUserName()) + length(user.getPassword())
+				+ length(user.getFirstName()) + length(user.getLastName()) + length(user.getEmail())
+				+ length(user.getPhone()));
 	}
 
+	private static int length(String value) {
+		return value == null ? 0 : value.length();
+	}
+
+	// The single instance is built and owned by DaoRegistry.
 	public static UsersDao getInstance() {
-		if (instance == null) {
-			instance = new UsersDao();
-		}
-		return instance;
+		return DaoRegistry.get().getUsersDao();
 	}
 
 	/**
@@ -62,6 +92,9 @@ public class UsersDao {
 			// http://docs.oracle.com/javase/7/docs/api/java/sql/PreparedStatement.html
 			// I'll leave it as an exercise for you to write UPDATE/DELETE methods.
 			insertStmt.executeUpdate();
+			// Drop any negative entry cached while the name did not exist yet.
+			cache.invalidate(user.getUserName());
+			UnitOfWork.evict(Users.class, user.getUserName());
 			// Note 1: if this was an UPDATE statement, then the user fields should be
 			// updated before returning to the caller.
 			// Note 2: there are no auto-generated keys, so no update to perform on the
@@ -80,13 +113,91 @@ public class UsersDao {
 		}
 	}
 
+	/**
+	 * Save all the Users instances, ConnectionManager.DEFAULT_BATCH_SIZE rows
+	 * per batch. See createAll(List, int).
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Users> createAll(List<Users> users) throws SQLException {
+		return createAll(users, ConnectionManager.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Save all the Users instances by storing them in your MySQL instance. This
+	 * runs the INSERT statements as JDBC batches of batchSize rows, each sent as
+	 * one multi-row INSERT and committed as one transaction. If a batch fails, it
+	 * is rolled back; the batches before it stay committed.
+	 * 
+	 * @throws SQLException
+	 */
+	public List<Users> createAll(List<Users> users, int batchSize) throws SQLException {
+		String insertUser = "INSERT INTO Users(UserName,Password,FirstName,LastName,Email,Phone) VALUES(?,?,?,?,?,?);";
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = connection.prepareStatement(insertUser);
+			for (List<Users> batch : JdbcBatch.partition(users, batchSize)) {
+				JdbcBatch.execute(insertStmt, batch, (stmt, user) -> {
+					stmt.setString(1, user.getUserName());
+					stmt.setString(2, user.getPassword());
+					stmt.setString(3, user.getFirstName());
+					stmt.setString(4, user.getLastName());
+					stmt.setString(5, user.getEmail());
+					stmt.setString(6, user.getPhone());
+				}, null);
+				connection.commit();
+				for (Users user : batch) {
+					cache.invalidate(user.getUserName());
+					UnitOfWork.evict(Users.class, user.getUserName());
+				}
+			}
+			return users;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+		}
+	}
+
+	public TinyLfuCache<String, Users> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Get the Users record from the cache, fetching it from your MySQL instance on
+	 * a miss. A name without a record is cached as missing too. The returned
+	 * ImmutableUsers is shared with other callers; use updateUserName() to rename
+	 * a user. A null userName, as ON DELETE SET NULL leaves in
+	 * Reviews and Recommendations, returns null.
+	 * 
+	 * @throws SQLException
+	 */
+	public Users getUserByUserName(String userName) throws SQLException {
+		if (userName == null) {
+			return null;
+		}
+		return UnitOfWork.get(Users.class, userName, key -> cache.get(key, this::selectUserByUserName));
+	}
+
 	/**
 	 * Get the Users record by fetching it from your MySQL instance. This runs a
 	 * SELECT statement and returns a single Users instance.
 	 * 
 	 * @throws SQLException
 	 */
-	public Users getUserByUserName(String userName) throws SQLException {
+	protected Users selectUserByUserName(String userName) throws SQLException {
 		String selectUser = 
 			"SELECT UserName,Password,FirstName,LastName,Email,Phone FROM Users WHERE UserName=?;";
 		Connection connection = null;
@@ -111,7 +222,7 @@ public class UsersDao {
 				String lastName = results.getString("LastName");
 				String email = results.getString("Email");
 				String phone = results.getString("Phone");
-				Users user = new Users(resultUserName, password, firstName, lastName, email, phone);
+				Users user = new ImmutableUsers(resultUserName, password, firstName, lastName, email, phone);
 				return user;
 			}
 		} catch (SQLException e) {
@@ -132,7 +243,146 @@ public class UsersDao {
 	}
 
 	/**
-	 * Delete the Users instance. This runs a DELETE statement.
+	 * Get the Users records for the given userNames from the cache, fetching all
+	 * the misses from your MySQL instance with selectUsersByUserNames(). Names
+	 * without a record are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	public Map<String, Users> getUsersByUserNames(Collection<String> userNames) throws SQLException {
+		List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(userNames));
+		keys.remove(null);
+		return UnitOfWork.getAll(Users.class, keys,
+				missing -> cache.getAll(missing, this::selectUsersByUserNames));
+	}
+
+	/**
+	 * Get the Users records for the given userNames by fetching them from your
+	 * MySQL instance. This runs one "WHERE UserName IN (...)" SELECT statement per
+	 * chunk of BatchLoader.CHUNK_SIZE names and returns the matching Users keyed
+	 * by UserName. Names without a record are absent from the map.
+	 * 
+	 * @throws SQLException
+	 */
+	protected Map<String, Users> selectUsersByUserNames(Collection<String> userNames) throws SQLException {
+		Map<String, Users> users = new HashMap<String, Users>();
+		List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(userNames));
+		keys.remove(null);
+		if (keys.isEmpty()) {
+			return users;
+		}
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			for (int from = 0; from < keys.size(); from += BatchLoader.CHUNK_SIZE) {
+				List<String> chunk = keys.subList(from, Math.min(from + BatchLoader.CHUNK_SIZE, keys.size()));
+				String selectUsers =
+					"SELECT UserName,Password,FirstName,LastName,Email,Phone FROM Users "
+					+ "WHERE UserName IN (" + BatchLoader.placeholders(chunk.size()) + ");";
+				selectStmt = connection.prepareStatement(selectUsers);
+				for (int i = 0; i < chunk.size(); i++) {
+					selectStmt.setString(i + 1, chunk.get(i));
+				}
+				results = selectStmt.executeQuery();
+				while (results.next()) {
+					String resultUserName = results.getString("UserName");
+					String password = results.getString("Password");
+					String firstName = results.getString("FirstName");
+					String lastName = results.getString("LastName");
+					String email = results.getString("Email");
+					String phone = results.getString("Phone");
+					users.put(resultUserName,
+							new ImmutableUsers(resultUserName, password, firstName, lastName, email, phone));
+				}
+				results.close();
+				selectStmt.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return users;
+	}
+
+	/**
+	 * Rename the Users instance. This runs a UPDATE statement; the ON UPDATE
+	 * CASCADE foreign keys carry the new UserName to the CreditCards, Reviews,
+	 * Recommendations and Reservations of the user. Both names are invalidated in
+	 * the cache, and the cached Reviews and Reservations views are evicted. user
+	 * is left as is, since it may be shared: a new instance with the new UserName
+	 * is returned, an ImmutableUsers if user is one.
+	 * 
+	 * @throws SQLException
+	 */
+	public Users updateUserName(Users user, String newUserName) throws SQLException {
+		String updateUserName = "UPDATE Users SET UserName=? WHERE UserName=?;";
+		Connection connection = null;
+		PreparedStatement updateStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			updateStmt = connection.prepareStatement(updateUserName);
+			updateStmt.setString(1, newUserName);
+			updateStmt.setString(2, user.getUserName());
+			updateStmt.executeUpdate();
+			cache.invalidate(user.getUserName());
+			UnitOfWork.evict(Users.class, user.getUserName());
+			cache.invalidate(newUserName);
+			UnitOfWork.evict(Users.class, newUserName);
+			invalidateViews();
+
+			if (user instanceof Immutable) {
+				return new ImmutableUsers(newUserName, user.getPassword(), user.getFirstName(),
+						user.getLastName(), user.getEmail(), user.getPhone());
+			}
+			return new Users(newUserName, user.getPassword(), user.getFirstName(), user.getLastName(),
+					user.getEmail(), user.getPhone());
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (updateStmt != null) {
+				updateStmt.close();
+			}
+		}
+	}
+
+	/**
+	 * The ImmutableUsers with the fields of user, or user itself if it is one
+	 * already. null stays null.
+	 */
+	static Users toImmutable(Users user) {
+		if (user == null || user instanceof Immutable) {
+			return user;
+		}
+		return new ImmutableUsers(user.getUserName(), user.getPassword(), user.getFirstName(),
+				user.getLastName(), user.getEmail(), user.getPhone());
+	}
+
+	// The per-restaurant Reviews and Reservations views embed Users, and do not
+	// know which users they hold.
+	private void invalidateViews() {
+		ReviewsDao.getInstance().getReviewsByRestaurantCache().invalidateAll();
+		ReservationsDao.getInstance().getReservationsByRestaurantCache().invalidateAll();
+	}
+
+	/**
+	 * Delete the Users instance. This runs a DELETE statement and invalidates the
+	 * cached user.
 	 * 
 	 * @throws SQLException
 	 */
@@ -154,6 +404,9 @@ public class UsersDao {
 			deleteStmt = connection.prepareStatement(deleteUser);
 			deleteStmt.setString(1, user.getUserName());
 			deleteStmt.executeUpdate();
+			cache.invalidate(user.getUserName());
+			UnitOfWork.evict(Users.class, user.getUserName());
+			invalidateViews();
 			// Return null so the caller can no longer operate on the Users instance.
 			return null;
 		} catch (SQLException e) {
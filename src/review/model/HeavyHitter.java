@@ -0,0 +1,40 @@
+package review.model;
+
+/**
+ * HeavyHitter is one entry of a top-users-by-volume list, e.g. the users who
+ * wrote the most reviews. The counts come from a Space-Saving summary, so they
+ * are approximate: the user's true count is between getCount() - getError()
+ * and getCount().
+ */
+public class HeavyHitter {
+	protected final String userName;
+	protected final long count;
+	protected final long error;
+
+	public HeavyHitter(String userName, long count, long error) {
+		this.userName = userName;
+		this.count = count;
+		this.error = error;
+	}
+
+	/** Getters. A HeavyHitter is read-only. */
+
+	public String getUserName() {
+		return userName;
+	}
+
+	/** The estimated count, which is never below the true count. */
+	public long getCount() {
+		return count;
+	}
+
+	/** How much getCount() may overcount by. */
+	public long getError() {
+		return error;
+	}
+
+	/** The count the user has for sure: getCount() - getError(). */
+	public long getGuaranteedCount() {
+		return count - error;
+	}
+}
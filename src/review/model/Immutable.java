@@ -0,0 +1,10 @@
+package review.model;
+
+/**
+ * Marks the read-only model instances the DAOs share from their caches, such
+ * as ImmutableUsers, ImmutableCompanies and ImmutableRestaurants. Their
+ * setters throw UnsupportedOperationException; the DAOs' update methods return
+ * a new instance instead of changing one of these.
+ */
+public interface Immutable {
+}
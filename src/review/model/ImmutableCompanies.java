@@ -0,0 +1,24 @@
+package review.model;
+
+/**
+ * A Companies whose setters throw. CompaniesDao hands out ImmutableCompanies from
+ * its cache, where one instance is shared by every caller and every Restaurants
+ * that references the company. Use CompaniesDao.updateAbout() to change a
+ * company.
+ */
+public class ImmutableCompanies extends Companies implements Immutable {
+
+	public ImmutableCompanies(String companyName, String about) {
+		super(companyName, about);
+	}
+
+	@Override
+	public void setCompanyName(String companyName) {
+		throw new UnsupportedOperationException("Companies instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setAbout(String about) {
+		throw new UnsupportedOperationException("Companies instances from the cache are immutable.");
+	}
+}
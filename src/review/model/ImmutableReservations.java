@@ -0,0 +1,58 @@
+package review.model;
+
+import java.util.Date;
+
+/**
+ * A Reservations whose setters throw. ReservationsDao caches the Reservations
+ * of each restaurant as ImmutableReservations, since the cached list is shared
+ * by every caller. getStart() and getEnd() return copies, so the shared Dates
+ * cannot be changed either.
+ */
+public class ImmutableReservations extends Reservations implements Immutable {
+
+	public ImmutableReservations(int reservationId, Date start, Date end, int size, Users user,
+			SitDownRestaurants sitDownRestaurants) {
+		super(reservationId, start == null ? null : new Date(start.getTime()),
+				end == null ? null : new Date(end.getTime()), size, user, sitDownRestaurants);
+	}
+
+	@Override
+	public Date getStart() {
+		return start == null ? null : new Date(start.getTime());
+	}
+
+	@Override
+	public Date getEnd() {
+		return end == null ? null : new Date(end.getTime());
+	}
+
+	@Override
+	public void setReservationId(int reservationId) {
+		throw new UnsupportedOperationException("Reservations instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setStart(Date start) {
+		throw new UnsupportedOperationException("Reservations instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setEnd(Date end) {
+		throw new UnsupportedOperationException("Reservations instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setSize(int size) {
+		throw new UnsupportedOperationException("Reservations instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setUser(Users user) {
+		throw new UnsupportedOperationException("Reservations instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setSitDownRestaurants(SitDownRestaurants sitDownRestaurants) {
+		throw new UnsupportedOperationException("Reservations instances from the cache are immutable.");
+	}
+}
@@ -0,0 +1,82 @@
+package review.model;
+
+/**
+ * A Restaurants whose setters throw. RestaurantsDao hands out the restaurants of
+ * its cache as ImmutableRestaurants, or as one of the immutable subtypes, where
+ * one instance is shared by every caller and every cached view that embeds it.
+ * Use RestaurantsDao.updateActive() to change a restaurant.
+ */
+public class ImmutableRestaurants extends Restaurants implements Immutable {
+
+	public ImmutableRestaurants(int restaurantId, String name, String description, String menu, String hours,
+			boolean active, CuisineType cuisineType, String street1, String street2, String city, String state, int zip,
+			Companies company) {
+		super(restaurantId, name, description, menu, hours, active, cuisineType, street1, street2, city, state, zip,
+				company);
+	}
+
+	@Override
+	public void setRestaurantId(int restaurantId) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setName(String name) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setDescription(String description) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setMenu(String menu) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setHours(String hours) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCuisineType(CuisineType cuisineType) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setStreet1(String street1) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setStreet2(String street2) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCity(String city) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setState(String state) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setZip(int zip) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCompany(Companies company) {
+		throw new UnsupportedOperationException("Restaurants instances from the cache are immutable.");
+	}
+}
@@ -0,0 +1,52 @@
+package review.model;
+
+import java.util.Date;
+
+/**
+ * A Reviews whose setters throw. ReviewsDao caches the Reviews of each
+ * restaurant as ImmutableReviews, since the cached list is shared by every
+ * caller. getCreated() returns a copy, so the shared Date cannot be changed
+ * either.
+ */
+public class ImmutableReviews extends Reviews implements Immutable {
+
+	public ImmutableReviews(int reviewId, Date created, String content, double rating, Users user,
+			Restaurants restaurant) {
+		super(reviewId, created == null ? null : new Date(created.getTime()), content, rating, user, restaurant);
+	}
+
+	@Override
+	public Date getCreated() {
+		return created == null ? null : new Date(created.getTime());
+	}
+
+	@Override
+	public void setReviewId(int reviewId) {
+		throw new UnsupportedOperationException("Reviews instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCreated(Date created) {
+		throw new UnsupportedOperationException("Reviews instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setContent(String content) {
+		throw new UnsupportedOperationException("Reviews instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setRating(double rating) {
+		throw new UnsupportedOperationException("Reviews instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setUser(Users user) {
+		throw new UnsupportedOperationException("Reviews instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setRestaurant(Restaurants restaurant) {
+		throw new UnsupportedOperationException("Reviews instances from the cache are immutable.");
+	}
+}
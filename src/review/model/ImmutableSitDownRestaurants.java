@@ -0,0 +1,84 @@
+package review.model;
+
+/**
+ * A SitDownRestaurants whose setters throw. See ImmutableRestaurants.
+ */
+public class ImmutableSitDownRestaurants extends SitDownRestaurants implements Immutable {
+
+	public ImmutableSitDownRestaurants(int restaurantId, String name, String description, String menu, String hours,
+			boolean active, CuisineType cuisineType, String street1, String street2, String city, String state, int zip,
+			Companies company, int capacity) {
+		super(restaurantId, name, description, menu, hours, active, cuisineType, street1, street2, city, state, zip,
+				company, capacity);
+	}
+
+	@Override
+	public void setRestaurantId(int restaurantId) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setName(String name) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setDescription(String description) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setMenu(String menu) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setHours(String hours) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setActive(boolean active) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCuisineType(CuisineType cuisineType) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setStreet1(String street1) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setStreet2(String street2) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCity(String city) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setState(String state) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setZip(int zip) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCompany(Companies company) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setCapacity(int capacity) {
+		throw new UnsupportedOperationException("SitDownRestaurants instances from the cache are immutable.");
+	}
+}
@@ -0,0 +1,45 @@
+package review.model;
+
+/**
+ * A Users whose setters throw. UsersDao hands out ImmutableUsers from its cache,
+ * where one instance is shared by every caller, and the cached Reviews and
+ * Reservations views embed them. Use UsersDao.updateUserName() to rename a
+ * user.
+ */
+public class ImmutableUsers extends Users implements Immutable {
+
+	public ImmutableUsers(String userName, String password, String firstName, String lastName, String email,
+			String phone) {
+		super(userName, password, firstName, lastName, email, phone);
+	}
+
+	@Override
+	public void setUserName(String userName) {
+		throw new UnsupportedOperationException("Users instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setPassword(String password) {
+		throw new UnsupportedOperationException("Users instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setFirstName(String firstName) {
+		throw new UnsupportedOperationException("Users instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setLastName(String lastName) {
+		throw new UnsupportedOperationException("Users instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setEmail(String email) {
+		throw new UnsupportedOperationException("Users instances from the cache are immutable.");
+	}
+
+	@Override
+	public void setPhone(String phone) {
+		throw new UnsupportedOperationException("Users instances from the cache are immutable.");
+	}
+}
@@ -0,0 +1,40 @@
+package review.model;
+
+/**
+ * RankedRestaurant is one entry of a top-rated list: a restaurant's review
+ * count and average rating, and the score it is ranked by, a Bayesian average
+ * that pulls the average of a restaurant with few reviews towards the average
+ * of all restaurants. Use RestaurantsDao.getRestaurantById() with the
+ * restaurantId to load the restaurant itself.
+ */
+public class RankedRestaurant {
+	protected final int restaurantId;
+	protected final int reviewCount;
+	protected final double averageRating;
+	protected final double score;
+
+	public RankedRestaurant(int restaurantId, int reviewCount, double averageRating, double score) {
+		this.restaurantId = restaurantId;
+		this.reviewCount = reviewCount;
+		this.averageRating = averageRating;
+		this.score = score;
+	}
+
+	/** Getters. A RankedRestaurant is read-only. */
+
+	public int getRestaurantId() {
+		return restaurantId;
+	}
+
+	public int getReviewCount() {
+		return reviewCount;
+	}
+
+	public double getAverageRating() {
+		return averageRating;
+	}
+
+	public double getScore() {
+		return score;
+	}
+}
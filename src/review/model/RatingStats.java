@@ -0,0 +1,75 @@
+package review.model;
+
+/**
+ * RatingStats is the rating aggregate of one restaurant: how many Reviews it
+ * has, the sum of their ratings, and how many reviews gave each rating from 0.0
+ * to 5.0 in steps of 0.5 (the values of Reviews.Rating, a DECIMAL(2,1)). It is
+ * maintained by ReviewsDao as reviews are created and deleted, so the average
+ * rating of a restaurant is read without loading its reviews.
+ */
+public class RatingStats {
+	// Number of histogram buckets: 0.0, 0.5, ..., 5.0.
+	public static final int BUCKET_COUNT = 11;
+	public static final double MAX_RATING = 5.0;
+
+	protected final int restaurantId;
+	protected final int reviewCount;
+	protected final double ratingSum;
+	protected final int[] histogram;
+
+	/** Stats of a restaurant without reviews. */
+	public RatingStats(int restaurantId) {
+		this(restaurantId, 0, 0, new int[BUCKET_COUNT]);
+	}
+
+	public RatingStats(int restaurantId, int reviewCount, double ratingSum, int[] histogram) {
+		if (histogram.length != BUCKET_COUNT) {
+			throw new IllegalArgumentException("histogram must have " + BUCKET_COUNT + " buckets");
+		}
+		this.restaurantId = restaurantId;
+		this.reviewCount = reviewCount;
+		this.ratingSum = ratingSum;
+		this.histogram = histogram.clone();
+	}
+
+	/**
+	 * The histogram bucket of rating: 0 for 0.0, 1 for 0.5, ..., 10 for 5.0.
+	 *
+	 * @throws IllegalArgumentException if rating is not between 0.0 and 5.0.
+	 */
+	public static int bucketOf(double rating) {
+		if (!(rating >= 0 && rating <= MAX_RATING)) {
+			throw new IllegalArgumentException("Rating must be between 0.0 and 5.0: " + rating);
+		}
+		return (int) Math.round(rating * 2);
+	}
+
+	/** Getters. RatingStats is read-only. */
+
+	public int getRestaurantId() {
+		return restaurantId;
+	}
+
+	public int getReviewCount() {
+		return reviewCount;
+	}
+
+	public double getRatingSum() {
+		return ratingSum;
+	}
+
+	/** The average rating, or 0 if there are no reviews. */
+	public double getAverageRating() {
+		return reviewCount == 0 ? 0 : ratingSum / reviewCount;
+	}
+
+	/** The number of reviews with the given rating. */
+	public int getRatingCount(double rating) {
+		return histogram[bucketOf(rating)];
+	}
+
+	/** A copy of the histogram; element i counts the ratings of i * 0.5. */
+	public int[] getHistogram() {
+		return histogram.clone();
+	}
+}
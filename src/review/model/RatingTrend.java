@@ -0,0 +1,80 @@
+package review.model;
+
+import java.time.LocalDate;
+
+/**
+ * RatingTrend is the daily review count and rating sum of a restaurant or a
+ * company over the last few days, oldest day first, ending today. Averages over
+ * the whole window and weekly review counts are derived from the days.
+ */
+public class RatingTrend {
+	protected final LocalDate firstDay;
+	protected final int[] counts;
+	protected final double[] ratingSums;
+
+	public RatingTrend(LocalDate firstDay, int[] counts, double[] ratingSums) {
+		if (counts.length != ratingSums.length) {
+			throw new IllegalArgumentException("counts and ratingSums must have the same length");
+		}
+		this.firstDay = firstDay;
+		this.counts = counts.clone();
+		this.ratingSums = ratingSums.clone();
+	}
+
+	/** Getters. RatingTrend is read-only. */
+
+	public LocalDate getFirstDay() {
+		return firstDay;
+	}
+
+	public LocalDate getLastDay() {
+		return firstDay.plusDays(counts.length - 1);
+	}
+
+	/** The number of days in the window. */
+	public int getDays() {
+		return counts.length;
+	}
+
+	/** The number of reviews in the window. */
+	public int getReviewCount() {
+		int total = 0;
+		for (int count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/** The average rating of the reviews in the window, or 0 if there are none. */
+	public double getAverageRating() {
+		double total = 0;
+		for (double ratingSum : ratingSums) {
+			total += ratingSum;
+		}
+		int reviewCount = getReviewCount();
+		return reviewCount == 0 ? 0 : total / reviewCount;
+	}
+
+	/** The number of reviews on day i, 0 being getFirstDay(). */
+	public int getReviewCount(int i) {
+		return counts[i];
+	}
+
+	/** The average rating on day i, or 0 if there were no reviews. */
+	public double getAverageRating(int i) {
+		return counts[i] == 0 ? 0 : ratingSums[i] / counts[i];
+	}
+
+	/**
+	 * The number of reviews per week, counted back from the last day: the last
+	 * element is the last 7 days. If the window is not a whole number of weeks,
+	 * the first element covers fewer days.
+	 */
+	public int[] getWeeklyReviewCounts() {
+		int[] weeks = new int[(counts.length + 6) / 7];
+		for (int i = 0; i < counts.length; i++) {
+			weeks[weeks.length - 1 - (counts.length - 1 - i) / 7] += counts[i];
+		}
+		return weeks;
+	}
+}
@@ -0,0 +1,58 @@
+package review.model;
+
+/**
+ * RestaurantSummary is the list-view projection of a Restaurants row: just the
+ * columns a list page shows, without Description, Menu and Hours (up to 1 KB
+ * each) and without the Companies record. Use RestaurantsDao.getRestaurantById()
+ * with the summary's restaurantId to load the full restaurant for a detail view.
+ */
+public class RestaurantSummary {
+	protected final int restaurantId;
+	protected final String name;
+	protected final boolean active;
+	protected final Restaurants.CuisineType cuisineType;
+	protected final String city;
+	protected final String state;
+	protected final String companyName;
+
+	public RestaurantSummary(int restaurantId, String name, boolean active, Restaurants.CuisineType cuisineType,
+			String city, String state, String companyName) {
+		this.restaurantId = restaurantId;
+		this.name = name;
+		this.active = active;
+		this.cuisineType = cuisineType;
+		this.city = city;
+		this.state = state;
+		this.companyName = companyName;
+	}
+
+	/** Getters. A summary is read-only. */
+
+	public int getRestaurantId() {
+		return restaurantId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public Restaurants.CuisineType getCuisineType() {
+		return cuisineType;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public String getCompanyName() {
+		return companyName;
+	}
+}
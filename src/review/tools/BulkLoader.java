@@ -0,0 +1,595 @@
+package review.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import review.dal.*;
+
+/**
+ * main() runner that bulk loads import files into the ReviewApplication schema.
+ *
+ * Usage: BulkLoader <directory> [--workers N] [--batch-size N] [--load-data]
+ *
+ * The directory holds one file per table, named after the table in lower case
+ * with a .csv or .jsonl extension: users, companies, restaurants, reviews,
+ * recommendations and reservations. Missing files are skipped. Each file's
+ * columns are the table's column names (see the TableSpecs below); columns that
+ * are left out get their default (e.g. an auto-generated ReviewId). The
+ * restaurants file may also have Type (SITDOWN, TAKEOUT or FOODCART), Capacity,
+ * MaxWaitTime and Licensed columns to create the subtype rows. Timestamps are
+ * "yyyy-MM-dd HH:mm:ss".
+ *
+ * Tables are loaded in foreign key order. Within a table, one thread streams the
+ * file and hands batches of --batch-size records to --workers threads, each of
+ * which inserts its batch with a JDBC batch on a pooled connection and commits
+ * it. At most two batches per worker are queued, so memory stays bounded no
+ * matter how large the file is. Progress and rows/sec are printed as it goes.
+ *
+ * --load-data loads .csv files with LOAD DATA LOCAL INFILE instead, which is
+ * much faster but needs local_infile=1 on the MySQL server. In that mode an
+ * empty field is NULL even if it is quoted. The restaurant subtype rows are
+ * still inserted with JDBC batches.
+ *
+ * Reviews loaded here bypass ReviewsDao, so their ratings are not in
+ * RatingStats. Run RatingStatsBackfill after loading a reviews file.
+ */
+public class BulkLoader {
+
+	enum ColumnType {
+		STRING, INT, DECIMAL, BOOLEAN, TIMESTAMP
+	}
+
+	static class Column {
+		final String name;
+		final ColumnType type;
+
+		Column(String name, ColumnType type) {
+			this.name = name;
+			this.type = type;
+		}
+	}
+
+	static class TableSpec {
+		final String fileName;
+		final String table;
+		final Column[] columns;
+
+		TableSpec(String fileName, String table, Column... columns) {
+			this.fileName = fileName;
+			this.table = table;
+			this.columns = columns;
+		}
+	}
+
+	private static Column column(String name, ColumnType type) {
+		return new Column(name, type);
+	}
+
+	private static Column column(String name) {
+		return new Column(name, ColumnType.STRING);
+	}
+
+	static final TableSpec USERS = new TableSpec("users", "Users", column("UserName"), column("Password"),
+			column("FirstName"), column("LastName"), column("Email"), column("Phone"));
+	static final TableSpec COMPANIES = new TableSpec("companies", "Companies", column("CompanyName"),
+			column("About"));
+	static final TableSpec RESTAURANTS = new TableSpec("restaurants", "Restaurants",
+			column("RestaurantId", ColumnType.INT), column("Name"), column("Description"), column("Menu"),
+			column("Hours"), column("Active", ColumnType.BOOLEAN), column("CuisineType"), column("Street1"),
+			column("Street2"), column("City"), column("State"), column("Zip", ColumnType.INT),
+			column("CompanyName"));
+	static final TableSpec REVIEWS = new TableSpec("reviews", "Reviews", column("ReviewId", ColumnType.INT),
+			column("Created", ColumnType.TIMESTAMP), column("Content"), column("Rating", ColumnType.DECIMAL),
+			column("UserName"), column("RestaurantId", ColumnType.INT));
+	static final TableSpec RECOMMENDATIONS = new TableSpec("recommendations", "Recommendations",
+			column("RecommendationId", ColumnType.INT), column("UserName"), column("RestaurantId", ColumnType.INT));
+	static final TableSpec RESERVATIONS = new TableSpec("reservations", "Reservations",
+			column("ReservationId", ColumnType.INT), column("Start", ColumnType.TIMESTAMP),
+			column("End", ColumnType.TIMESTAMP), column("Size", ColumnType.INT), column("UserName"),
+			column("RestaurantId", ColumnType.INT));
+
+	// Parents before children.
+	static final TableSpec[] LOAD_ORDER = { USERS, COMPANIES, RESTAURANTS, REVIEWS, RECOMMENDATIONS, RESERVATIONS };
+
+	private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+	private final File directory;
+	private final int workers;
+	private final int batchSize;
+	private final boolean loadData;
+	private final ConnectionManager connectionManager = new ConnectionManager();
+
+	public BulkLoader(File directory, int workers, int batchSize, boolean loadData) {
+		this.directory = directory;
+		this.workers = workers;
+		this.batchSize = batchSize;
+		this.loadData = loadData;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: BulkLoader <directory> [--workers N] [--batch-size N] [--load-data]");
+			System.exit(2);
+		}
+		int workers = 4;
+		int batchSize = ConnectionManager.DEFAULT_BATCH_SIZE;
+		boolean loadData = false;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("--workers")) {
+				workers = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--batch-size")) {
+				batchSize = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--load-data")) {
+				loadData = true;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		new BulkLoader(new File(args[0]), workers, batchSize, loadData).run();
+	}
+
+	/**
+	 * Load every table file found in the directory, in foreign key order.
+	 */
+	public void run() throws IOException, SQLException, InterruptedException {
+		long start = System.nanoTime();
+		long total = 0;
+		boolean reviewsLoaded = false;
+		for (TableSpec spec : LOAD_ORDER) {
+			File file = findFile(spec);
+			if (file == null) {
+				continue;
+			}
+			long tableStart = System.nanoTime();
+			long rows;
+			if (loadData && file.getName().endsWith(".csv")) {
+				rows = loadWithLoadData(spec, file);
+			} else {
+				rows = loadWithBatches(spec, file);
+			}
+			total += rows;
+			report(spec.table + " done", rows, tableStart);
+			if (spec == REVIEWS && rows > 0) {
+				reviewsLoaded = true;
+			}
+		}
+		report("All tables done", total, start);
+		if (reviewsLoaded) {
+			System.out.println("WARNING: RatingStats does not count the loaded reviews; "
+					+ "run RatingStatsBackfill.");
+		}
+	}
+
+	private File findFile(TableSpec spec) {
+		for (String extension : new String[] { ".csv", ".jsonl" }) {
+			File file = new File(directory, spec.fileName + extension);
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	private static RecordReader open(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+		if (file.getName().endsWith(".jsonl")) {
+			return new JsonLinesRecordReader(reader);
+		}
+		return new CsvRecordReader(reader);
+	}
+
+	// The spec columns present in the file, in spec order.
+	private static List<Column> presentColumns(TableSpec spec, List<String> fileColumns) {
+		List<Column> columns = new ArrayList<Column>();
+		for (Column column : spec.columns) {
+			if (fileColumns.contains(column.name)) {
+				columns.add(column);
+			}
+		}
+		return columns;
+	}
+
+	private long loadWithBatches(TableSpec spec, File file) throws IOException, SQLException, InterruptedException {
+		return load(spec, open(file));
+	}
+
+	/**
+	 * Stream the records from reader and insert them with JDBC batches on parallel
+	 * workers. The reader is closed when done. The source does not need to be a
+	 * file; DataGenerator hands its generated tables to this method directly.
+	 */
+	long load(TableSpec spec, RecordReader reader) throws IOException, SQLException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		// Bounds the number of batches read but not yet written.
+		Semaphore inFlight = new Semaphore(workers * 2);
+		AtomicLong loaded = new AtomicLong();
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		long start = System.nanoTime();
+		try {
+			List<String> fileColumns = reader.getColumns();
+			List<Column> columns = presentColumns(spec, fileColumns);
+			boolean withSubtypes = spec == RESTAURANTS && fileColumns.contains("Type");
+			String insert = buildInsert(spec.table, columns);
+
+			long lastReport = System.currentTimeMillis();
+			List<Map<String, String>> batch = new ArrayList<Map<String, String>>(batchSize);
+			Map<String, String> record;
+			while (failure.get() == null && (record = reader.next()) != null) {
+				batch.add(record);
+				if (batch.size() == batchSize) {
+					submit(executor, inFlight, loaded, failure, insert, columns, withSubtypes, batch);
+					batch = new ArrayList<Map<String, String>>(batchSize);
+				}
+				if (System.currentTimeMillis() - lastReport > PROGRESS_INTERVAL_MILLIS) {
+					lastReport = System.currentTimeMillis();
+					report(spec.table, loaded.get(), start);
+				}
+			}
+			if (!batch.isEmpty() && failure.get() == null) {
+				submit(executor, inFlight, loaded, failure, insert, columns, withSubtypes, batch);
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			reader.close();
+		}
+		Exception e = failure.get();
+		if (e instanceof SQLException) {
+			throw (SQLException) e;
+		}
+		if (e != null) {
+			throw new SQLException("Loading " + spec.table + " failed.", e);
+		}
+		return loaded.get();
+	}
+
+	private void submit(ExecutorService executor, Semaphore inFlight, AtomicLong loaded,
+			AtomicReference<Exception> failure, String insert, List<Column> columns, boolean withSubtypes,
+			List<Map<String, String>> batch) throws InterruptedException {
+		inFlight.acquire();
+		executor.execute(() -> {
+			try {
+				if (failure.get() == null) {
+					writeBatch(insert, columns, withSubtypes, batch);
+					loaded.addAndGet(batch.size());
+				}
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+
+	/**
+	 * Insert one batch (and, for restaurants, its subtype rows) in one
+	 * transaction on a pooled connection.
+	 */
+	private void writeBatch(String insert, List<Column> columns, boolean withSubtypes,
+			List<Map<String, String>> batch) throws SQLException {
+		boolean generatedIds = withSubtypes && !containsColumn(columns, "RestaurantId");
+		Connection connection = null;
+		PreparedStatement insertStmt = null;
+		ResultSet resultKeys = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			insertStmt = generatedIds ? connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)
+					: connection.prepareStatement(insert);
+			for (Map<String, String> record : batch) {
+				for (int i = 0; i < columns.size(); i++) {
+					bind(insertStmt, i + 1, columns.get(i), record.get(columns.get(i).name));
+				}
+				insertStmt.addBatch();
+			}
+			insertStmt.executeBatch();
+
+			if (withSubtypes) {
+				int[] restaurantIds = new int[batch.size()];
+				if (generatedIds) {
+					resultKeys = insertStmt.getGeneratedKeys();
+					for (int i = 0; i < restaurantIds.length; i++) {
+						if (!resultKeys.next()) {
+							throw new SQLException("Unable to retrieve auto-generated key.");
+						}
+						restaurantIds[i] = resultKeys.getInt(1);
+					}
+				} else {
+					for (int i = 0; i < restaurantIds.length; i++) {
+						restaurantIds[i] = Integer.parseInt(batch.get(i).get("RestaurantId").trim());
+					}
+				}
+				writeSubtypes(connection, batch, restaurantIds);
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (insertStmt != null) {
+				insertStmt.close();
+			}
+			if (resultKeys != null) {
+				resultKeys.close();
+			}
+		}
+	}
+
+	// Insert the SitDownRestaurant, TakeOutRestaurant and FoodCartRestaurant rows
+	// for a batch of restaurant records.
+	private void writeSubtypes(Connection connection, List<Map<String, String>> batch, int[] restaurantIds)
+			throws SQLException {
+		PreparedStatement sitDownStmt = null;
+		PreparedStatement takeOutStmt = null;
+		PreparedStatement foodCartStmt = null;
+		try {
+			sitDownStmt = connection.prepareStatement("INSERT INTO SitDownRestaurant(RestaurantId,Capacity) VALUES(?,?);");
+			takeOutStmt = connection.prepareStatement("INSERT INTO TakeOutRestaurant(RestaurantId,MaxWaitTime) VALUES(?,?);");
+			foodCartStmt = connection.prepareStatement("INSERT INTO FoodCartRestaurant(RestaurantId,Licensed) VALUES(?,?);");
+			boolean sitDown = false, takeOut = false, foodCart = false;
+			for (int i = 0; i < batch.size(); i++) {
+				Map<String, String> record = batch.get(i);
+				String type = record.get("Type");
+				if (type == null || type.isEmpty()) {
+					continue;
+				}
+				switch (type.trim().toUpperCase()) {
+				case "SITDOWN":
+					sitDownStmt.setInt(1, restaurantIds[i]);
+					bind(sitDownStmt, 2, column("Capacity", ColumnType.INT), record.get("Capacity"));
+					sitDownStmt.addBatch();
+					sitDown = true;
+					break;
+				case "TAKEOUT":
+					takeOutStmt.setInt(1, restaurantIds[i]);
+					bind(takeOutStmt, 2, column("MaxWaitTime", ColumnType.INT), record.get("MaxWaitTime"));
+					takeOutStmt.addBatch();
+					takeOut = true;
+					break;
+				case "FOODCART":
+					foodCartStmt.setInt(1, restaurantIds[i]);
+					bind(foodCartStmt, 2, column("Licensed", ColumnType.BOOLEAN), record.get("Licensed"));
+					foodCartStmt.addBatch();
+					foodCart = true;
+					break;
+				default:
+					throw new SQLException("Unknown restaurant Type '" + type + "' for RestaurantId=" + restaurantIds[i]);
+				}
+			}
+			if (sitDown) {
+				sitDownStmt.executeBatch();
+			}
+			if (takeOut) {
+				takeOutStmt.executeBatch();
+			}
+			if (foodCart) {
+				foodCartStmt.executeBatch();
+			}
+		} finally {
+			if (sitDownStmt != null) {
+				sitDownStmt.close();
+			}
+			if (takeOutStmt != null) {
+				takeOutStmt.close();
+			}
+			if (foodCartStmt != null) {
+				foodCartStmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Load a CSV file with LOAD DATA LOCAL INFILE. For restaurants, the subtype
+	 * columns are skipped and the subtype rows are inserted afterwards with JDBC
+	 * batches from a second pass over the file.
+	 */
+	private long loadWithLoadData(TableSpec spec, File file) throws IOException, SQLException, InterruptedException {
+		List<String> fileColumns;
+		RecordReader reader = open(file);
+		try {
+			fileColumns = reader.getColumns();
+		} finally {
+			reader.close();
+		}
+		boolean withSubtypes = spec == RESTAURANTS && fileColumns.contains("Type");
+		if (withSubtypes && !fileColumns.contains("RestaurantId")) {
+			// The subtype rows need the ids; only JDBC batches can hand back generated keys.
+			return loadWithBatches(spec, file);
+		}
+
+		StringBuilder variables = new StringBuilder();
+		StringBuilder assignments = new StringBuilder();
+		for (int i = 0; i < fileColumns.size(); i++) {
+			String variable = "@c" + i;
+			variables.append(i > 0 ? "," : "").append(variable);
+			Column column = findColumn(spec, fileColumns.get(i));
+			if (column == null) {
+				// Not a column of this table (e.g. Type); read and ignore it.
+				continue;
+			}
+			assignments.append(assignments.length() > 0 ? "," : "").append(column.name).append('=');
+			if (column.type == ColumnType.BOOLEAN) {
+				assignments.append("IF(").append(variable).append(" IN ('1','true','TRUE','True'),1,0)");
+			} else {
+				assignments.append("NULLIF(").append(variable).append(",'')");
+			}
+		}
+		String loadDataSql = "LOAD DATA LOCAL INFILE '"
+				+ file.getAbsolutePath().replace("\\", "\\\\").replace("'", "\\'") + "' "
+				+ "INTO TABLE " + spec.table + " CHARACTER SET utf8mb4 "
+				+ "FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY '' "
+				+ "LINES TERMINATED BY '\\n' IGNORE 1 LINES "
+				+ "(" + variables + ") SET " + assignments + ";";
+
+		Properties properties = new Properties();
+		properties.put("allowLoadLocalInfile", "true");
+		Connection connection = null;
+		Statement loadStmt = null;
+		long rows;
+		try {
+			connection = ConnectionManager.getUnpooledConnection(properties);
+			loadStmt = connection.createStatement();
+			rows = loadStmt.executeUpdate(loadDataSql);
+		} finally {
+			if (loadStmt != null) {
+				loadStmt.close();
+			}
+			if (connection != null) {
+				connection.close();
+			}
+		}
+
+		if (withSubtypes) {
+			loadSubtypes(file);
+		}
+		return rows;
+	}
+
+	// Second pass over a restaurants file that was loaded with LOAD DATA.
+	private void loadSubtypes(File file) throws IOException, SQLException {
+		RecordReader reader = open(file);
+		Connection connection = null;
+		try {
+			connection = connectionManager.getConnection();
+			connection.setAutoCommit(false);
+			List<Map<String, String>> batch = new ArrayList<Map<String, String>>(batchSize);
+			Map<String, String> record;
+			while (true) {
+				record = reader.next();
+				if (record != null) {
+					batch.add(record);
+				}
+				if (batch.size() == batchSize || (record == null && !batch.isEmpty())) {
+					int[] restaurantIds = new int[batch.size()];
+					for (int i = 0; i < restaurantIds.length; i++) {
+						restaurantIds[i] = Integer.parseInt(batch.get(i).get("RestaurantId").trim());
+					}
+					writeSubtypes(connection, batch, restaurantIds);
+					connection.commit();
+					batch.clear();
+				}
+				if (record == null) {
+					break;
+				}
+			}
+		} catch (SQLException e) {
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			reader.close();
+		}
+	}
+
+	private static Column findColumn(TableSpec spec, String name) {
+		for (Column column : spec.columns) {
+			if (column.name.equals(name)) {
+				return column;
+			}
+		}
+		return null;
+	}
+
+	private static boolean containsColumn(List<Column> columns, String name) {
+		for (Column column : columns) {
+			if (column.name.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String buildInsert(String table, List<Column> columns) {
+		StringBuilder names = new StringBuilder();
+		StringBuilder placeholders = new StringBuilder();
+		for (Column column : columns) {
+			if (names.length() > 0) {
+				names.append(',');
+				placeholders.append(',');
+			}
+			names.append(column.name);
+			placeholders.append('?');
+		}
+		return "INSERT INTO " + table + "(" + names + ") VALUES(" + placeholders + ");";
+	}
+
+	private static void bind(PreparedStatement stmt, int index, Column column, String value) throws SQLException {
+		if (value == null) {
+			stmt.setNull(index, sqlType(column.type));
+			return;
+		}
+		try {
+			switch (column.type) {
+			case INT:
+				stmt.setInt(index, Integer.parseInt(value.trim()));
+				break;
+			case DECIMAL:
+				stmt.setBigDecimal(index, new BigDecimal(value.trim()));
+				break;
+			case BOOLEAN:
+				String flag = value.trim();
+				stmt.setBoolean(index, flag.equals("1") || flag.equalsIgnoreCase("true"));
+				break;
+			case TIMESTAMP:
+				stmt.setTimestamp(index, Timestamp.valueOf(value.trim().replace('T', ' ')));
+				break;
+			default:
+				stmt.setString(index, value);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new SQLException("Invalid value '" + value + "' for column " + column.name + ".", e);
+		}
+	}
+
+	private static int sqlType(ColumnType type) {
+		switch (type) {
+		case INT:
+			return Types.INTEGER;
+		case DECIMAL:
+			return Types.DECIMAL;
+		case BOOLEAN:
+			return Types.BOOLEAN;
+		case TIMESTAMP:
+			return Types.TIMESTAMP;
+		default:
+			return Types.VARCHAR;
+		}
+	}
+
+	static void report(String label, long rows, long startNanos) {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		System.out.format("%s: %,d rows in %.1fs (%,.0f rows/s)%n", label, rows, seconds,
+				seconds > 0 ? rows / seconds : 0.0);
+	}
+}
@@ -0,0 +1,98 @@
+package review.tools;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import review.dal.*;
+
+/**
+ * main() runner that compares the per-call latency of a single-row lookup when
+ * every call opens its own MySQL connection (the old ConnectionManager) against
+ * borrowing from the shared {@link ConnectionPool}.
+ *
+ * Usage: ConnectionBenchmark [iterations] [companyName]
+ * Run Inserter first so that the company exists (default "c2").
+ */
+public class ConnectionBenchmark {
+
+	private static final String SELECT_COMPANY = "SELECT CompanyName,About FROM Companies WHERE CompanyName=?;";
+
+	public static void main(String[] args) throws SQLException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		String companyName = args.length > 1 ? args[1] : "c2";
+		int warmup = Math.max(1, iterations / 10);
+
+		// Before: a fresh connection (TCP + handshake + auth) per lookup.
+		runUnpooled(companyName, warmup);
+		long[] unpooled = runUnpooled(companyName, iterations);
+
+		// After: the same lookup through CompaniesDao, which borrows from the pool.
+		CompaniesDao companiesDao = CompaniesDao.getInstance();
+		runPooled(companiesDao, companyName, warmup);
+		long[] pooled = runPooled(companiesDao, companyName, iterations);
+
+		report("unpooled", unpooled);
+		report("pooled", pooled);
+		System.out.println(ConnectionManager.getDefaultPool());
+	}
+
+	private static long[] runUnpooled(String companyName, int iterations) throws SQLException {
+		long[] latencies = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			Connection connection = null;
+			PreparedStatement selectStmt = null;
+			ResultSet results = null;
+			try {
+				connection = ConnectionManager.getUnpooledConnection();
+				selectStmt = connection.prepareStatement(SELECT_COMPANY);
+				selectStmt.setString(1, companyName);
+				results = selectStmt.executeQuery();
+				results.next();
+			} finally {
+				if (results != null) {
+					results.close();
+				}
+				if (selectStmt != null) {
+					selectStmt.close();
+				}
+				if (connection != null) {
+					connection.close();
+				}
+			}
+			latencies[i] = System.nanoTime() - start;
+		}
+		return latencies;
+	}
+
+	private static long[] runPooled(CompaniesDao companiesDao, String companyName, int iterations)
+			throws SQLException {
+		long[] latencies = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			companiesDao.getCompanyByCompanyName(companyName);
+			latencies[i] = System.nanoTime() - start;
+		}
+		return latencies;
+	}
+
+	private static void report(String label, long[] latencies) {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long latency : sorted) {
+			total += latency;
+		}
+		System.out.format("%-9s n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus%n", label,
+				sorted.length, total / 1e3 / sorted.length, percentile(sorted, 0.50), percentile(sorted, 0.90),
+				percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e3);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e3;
+	}
+}
@@ -0,0 +1,117 @@
+package review.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams records from a CSV file whose first line holds the column names.
+ *
+ * Fields are separated by commas and may be enclosed in double quotes; a quoted
+ * field may contain commas, newlines and doubled quotes (""). An empty field
+ * is NULL. This is the dialect BulkLoader also hands to LOAD DATA INFILE.
+ */
+public class CsvRecordReader implements RecordReader {
+	private final BufferedReader reader;
+	private final List<String> columns;
+	private final List<String> fields = new ArrayList<String>();
+	private final StringBuilder field = new StringBuilder();
+	private long lineNumber = 1;
+
+	public CsvRecordReader(Reader reader) throws IOException {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+		if (!readRecord()) {
+			throw new IOException("CSV file has no header line.");
+		}
+		this.columns = Collections.unmodifiableList(new ArrayList<String>(fields));
+	}
+
+	@Override
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	@Override
+	public Map<String, String> next() throws IOException {
+		if (!readRecord()) {
+			return null;
+		}
+		if (fields.size() != columns.size()) {
+			throw new IOException("Line " + lineNumber + ": expected " + columns.size() + " fields but found "
+					+ fields.size() + ".");
+		}
+		Map<String, String> record = new HashMap<String, String>(columns.size() * 2);
+		for (int i = 0; i < columns.size(); i++) {
+			record.put(columns.get(i), fields.get(i));
+		}
+		return record;
+	}
+
+	// Read the next record into fields. Returns false at the end of the file.
+	private boolean readRecord() throws IOException {
+		fields.clear();
+		int c = reader.read();
+		// Skip blank lines between records.
+		while (c == '\n' || c == '\r') {
+			if (c == '\n') {
+				lineNumber++;
+			}
+			c = reader.read();
+		}
+		if (c == -1) {
+			return false;
+		}
+		while (true) {
+			field.setLength(0);
+			boolean quoted = false;
+			if (c == '"') {
+				quoted = true;
+				while (true) {
+					c = reader.read();
+					if (c == -1) {
+						throw new IOException("Line " + lineNumber + ": unterminated quoted field.");
+					}
+					if (c == '"') {
+						c = reader.read();
+						if (c != '"') {
+							break;
+						}
+					} else if (c == '\n') {
+						lineNumber++;
+					}
+					field.append((char) c);
+				}
+			} else {
+				while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+					field.append((char) c);
+					c = reader.read();
+				}
+			}
+			fields.add(!quoted && field.length() == 0 ? null : field.toString());
+			if (c == ',') {
+				c = reader.read();
+				continue;
+			}
+			if (c == '\r') {
+				reader.mark(1);
+				if (reader.read() != '\n') {
+					reader.reset();
+				}
+			}
+			if (c != -1) {
+				lineNumber++;
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,59 @@
+package review.tools;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records in the CSV dialect that {@link CsvRecordReader} reads: a header
+ * line, then one line per record. A null value is written as an empty field and
+ * an empty string as "", so both survive the round trip.
+ */
+public class CsvRecordWriter implements Closeable {
+	private final BufferedWriter writer;
+	private final List<String> columns;
+
+	public CsvRecordWriter(Writer writer, List<String> columns) throws IOException {
+		this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer, 1 << 16);
+		this.columns = columns;
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				this.writer.write(',');
+			}
+			writeField(columns.get(i));
+		}
+		this.writer.write('\n');
+	}
+
+	public void write(Map<String, String> record) throws IOException {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			String value = record.get(columns.get(i));
+			if (value != null) {
+				writeField(value);
+			}
+		}
+		writer.write('\n');
+	}
+
+	private void writeField(String value) throws IOException {
+		if (!value.isEmpty() && value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.indexOf('\r') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
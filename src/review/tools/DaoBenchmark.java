@@ -0,0 +1,404 @@
+package review.tools;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import review.dal.*;
+import review.model.*;
+
+/**
+ * main() runner that benchmarks the DAO hot paths against a local MySQL.
+ *
+ * Usage: DaoBenchmark [--iterations N] [--seed N] [--fetch-mode MODE]
+ *        [--only name,name,...] [--generate SF]
+ *
+ * Each benchmark runs --iterations / 10 warmup calls and then --iterations
+ * measured calls on the calling thread. For each benchmark it reports:
+ * - throughput in ops/s;
+ * - latency mean, p50, p90, p99, p99.9 and max;
+ * - the bytes allocated per call by the calling thread;
+ * - GC count and GC time during the measured calls.
+ * The allocation and GC figures are what the JMH GC profiler
+ * (gc.alloc.rate.norm, gc.count, gc.time) reports.
+ *
+ * The read benchmarks pick random keys from the rows already in the schema.
+ * --generate SF first loads an empty schema with DataGenerator at scale
+ * factor SF, RatingStats included. Every create benchmark inserts rows whose
+ * names start with a per-run prefix, and those rows are deleted again at the
+ * end of the run; the reviews through ReviewsDao, so that the RatingStats of
+ * the restaurants they reviewed are restored.
+ * --fetch-mode sets the FetchMode of ReviewsDao, RecommendationsDao and
+ * ReservationsDao, so that the modes can be compared.
+ */
+public class DaoBenchmark {
+
+	/**
+	 * One call of the code under measurement. The result is consumed so that the
+	 * call cannot be optimized away.
+	 */
+	interface Operation {
+		Object run(long iteration) throws SQLException;
+	}
+
+	// Upper bound on the number of keys read for each key pool.
+	static final int KEY_POOL_SIZE = 10000;
+
+	private final int iterations;
+	private final SplittableRandom random;
+	private final long runId = System.currentTimeMillis();
+	private final String prefix = "bench" + Long.toString(runId, 36) + "_";
+	private final ConnectionManager connectionManager = new ConnectionManager();
+	private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+	private int[] restaurantIds;
+	private int[] sitDownRestaurantIds;
+	private String[] userNames;
+	private Users benchUser;
+	private Companies benchCompany;
+	private List<Users> reviewers = new ArrayList<Users>();
+
+	// Written by consume() so the JIT cannot drop the calls under measurement.
+	private volatile int sink;
+
+	public DaoBenchmark(int iterations, long seed) {
+		this.iterations = iterations;
+		this.random = new SplittableRandom(seed);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 2000;
+		long seed = 42;
+		FetchMode fetchMode = null;
+		Set<String> only = null;
+		double generateScale = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--iterations")) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--fetch-mode")) {
+				fetchMode = FetchMode.valueOf(args[++i]);
+			} else if (args[i].equals("--only")) {
+				only = new HashSet<String>(Arrays.asList(args[++i].split(",")));
+			} else if (args[i].equals("--generate")) {
+				generateScale = Double.parseDouble(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		if (generateScale > 0) {
+			new DataGenerator(generateScale, seed, 1.0, 1.0)
+					.load(new BulkLoader(null, 4, ConnectionManager.DEFAULT_BATCH_SIZE, false));
+		}
+		if (fetchMode != null) {
+			ReviewsDao.getInstance().setFetchMode(fetchMode);
+			RecommendationsDao.getInstance().setFetchMode(fetchMode);
+			ReservationsDao.getInstance().setFetchMode(fetchMode);
+		}
+
+		DaoBenchmark benchmark = new DaoBenchmark(iterations, seed);
+		try {
+			benchmark.setUp();
+			System.out.format("%-54s %10s %9s %9s %9s %9s %9s %9s %10s %5s %7s%n", "benchmark", "ops/s", "mean(us)",
+					"p50", "p90", "p99", "p99.9", "max", "alloc(B/op)", "gc", "gc(ms)");
+			for (Map.Entry<String, Operation> entry : benchmark.operations.entrySet()) {
+				if (only == null || only.contains(entry.getKey())) {
+					benchmark.measure(entry.getKey(), entry.getValue());
+				}
+			}
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Read the key pools and create the parent rows the create benchmarks need.
+	 */
+	void setUp() throws SQLException {
+		restaurantIds = readIntKeys(connectionManager,
+				"SELECT RestaurantId FROM Restaurants LIMIT " + KEY_POOL_SIZE + ";");
+		sitDownRestaurantIds = readIntKeys(connectionManager,
+				"SELECT RestaurantId FROM SitDownRestaurant LIMIT " + KEY_POOL_SIZE + ";");
+		userNames = readStringKeys(connectionManager,
+				"SELECT DISTINCT UserName FROM Recommendations WHERE UserName IS NOT NULL LIMIT " + KEY_POOL_SIZE + ";");
+		if (restaurantIds.length == 0 || sitDownRestaurantIds.length == 0 || userNames.length == 0) {
+			throw new SQLException("The schema needs restaurants, sit-down restaurants and recommendations; "
+					+ "load it with DataGenerator or run with --generate.");
+		}
+
+		benchUser = UsersDao.getInstance().create(newUser("owner"));
+		benchCompany = CompaniesDao.getInstance().create(new Companies(prefix + "company", "DaoBenchmark"));
+		// A user reviews a restaurant at most once, so every reviewer covers at most
+		// restaurantIds.length review creates.
+		long reviewCreates = warmupIterations() + iterations;
+		for (long i = 0; i * restaurantIds.length < reviewCreates; i++) {
+			reviewers.add(UsersDao.getInstance().create(newUser("reviewer" + i)));
+		}
+
+		addReadOperations();
+		addCreateOperations();
+	}
+
+	private void addReadOperations() {
+		operations.put("RestaurantsDao.getRestaurantById",
+				n -> RestaurantsDao.getInstance().getRestaurantById(randomKey(restaurantIds)));
+		operations.put("RestaurantsDao.getRestaurantsByCuisine", n -> RestaurantsDao.getInstance()
+				.getRestaurantsByCuisine(Restaurants.CuisineType.values()[(int) (n % 5)]));
+		operations.put("RestaurantsDao.getRestaurantSummariesByCuisine", n -> RestaurantsDao.getInstance()
+				.getRestaurantSummariesByCuisine(Restaurants.CuisineType.values()[(int) (n % 5)]));
+		operations.put("ReviewsDao.getReviewsByRestaurantId",
+				n -> ReviewsDao.getInstance().getReviewsByRestaurantId(randomKey(restaurantIds)));
+		operations.put("RecommendationsDao.getRecommendationsByUserName", n -> RecommendationsDao.getInstance()
+				.getRecommendationsByUserName(userNames[random.nextInt(userNames.length)]));
+		operations.put("ReservationsDao.getReservationsBySitDownRestaurantId", n -> ReservationsDao.getInstance()
+				.getReservationsBySitDownRestaurantId(randomKey(sitDownRestaurantIds)));
+	}
+
+	private void addCreateOperations() {
+		// Keys embed the run prefix, a letter per benchmark and the iteration number,
+		// so every call inserts a new row.
+		operations.put("UsersDao.create", n -> UsersDao.getInstance().create(newUser("u" + n)));
+		operations.put("CreditCardsDao.create", n -> CreditCardsDao.getInstance()
+				.create(new CreditCards(cardNumber(n), new Date(), benchUser.getUserName())));
+		operations.put("CompaniesDao.create",
+				n -> CompaniesDao.getInstance().create(new Companies(prefix + "c" + n, "DaoBenchmark")));
+		operations.put("RestaurantsDao.create", n -> RestaurantsDao.getInstance()
+				.create(new Restaurants(prefix + "r" + n, "DaoBenchmark", "menu", "hours", true,
+						Restaurants.CuisineType.AMERICAN, "1 Main St", null, "Seattle", "WA", 98101, benchCompany)));
+		operations.put("SitDownRestaurantsDao.create", n -> SitDownRestaurantsDao.getInstance()
+				.create(new SitDownRestaurants(0, prefix + "s" + n, "DaoBenchmark", "menu", "hours", true,
+						Restaurants.CuisineType.ASIAN, "1 Main St", null, "Seattle", "WA", 98101, benchCompany, 50)));
+		operations.put("TakeOutRestaurantsDao.create", n -> TakeOutRestaurantsDao.getInstance()
+				.create(new TakeOutRestaurants(0, prefix + "t" + n, "DaoBenchmark", "menu", "hours", true,
+						Restaurants.CuisineType.HISPANIC, "1 Main St", null, "Seattle", "WA", 98101, benchCompany, 15)));
+		operations.put("FoodCartRestaurantsDao.create", n -> FoodCartRestaurantsDao.getInstance()
+				.create(new FoodCartRestaurants(0, prefix + "f" + n, "DaoBenchmark", "menu", "hours", true,
+						Restaurants.CuisineType.AFRICAN, "1 Main St", null, "Seattle", "WA", 98101, benchCompany, true)));
+		operations.put("ReviewsDao.create", n -> ReviewsDao.getInstance()
+				.create(new Reviews(new Date(), "DaoBenchmark", 4.5, reviewers.get((int) (n / restaurantIds.length)),
+						new Restaurants(restaurantIds[(int) (n % restaurantIds.length)]))));
+		operations.put("RecommendationsDao.create", n -> RecommendationsDao.getInstance()
+				.create(new Recommendations(benchUser, new Restaurants(randomKey(restaurantIds)))));
+		operations.put("ReservationsDao.create", n -> ReservationsDao.getInstance()
+				.create(new Reservations(new Date(), new Date(), 2, benchUser,
+						new SitDownRestaurants(randomKey(sitDownRestaurantIds)))));
+	}
+
+	/**
+	 * Run the warmup and measured calls of one benchmark and print its row.
+	 */
+	void measure(String name, Operation operation) throws SQLException {
+		int warmup = warmupIterations();
+		for (int i = 0; i < warmup; i++) {
+			consume(operation.run(i));
+		}
+
+		com.sun.management.ThreadMXBean threadBean = allocationBean();
+		long threadId = Thread.currentThread().getId();
+		long[] latencies = new long[iterations];
+		long gcCountBefore = gcCount();
+		long gcTimeBefore = gcTime();
+		long allocatedBefore = threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			long callStart = System.nanoTime();
+			consume(operation.run(warmup + i));
+			latencies[i] = System.nanoTime() - callStart;
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threadBean == null ? -1 : threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		Arrays.sort(latencies);
+		long total = 0;
+		for (long latency : latencies) {
+			total += latency;
+		}
+		System.out.format("%-54s %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %10s %5d %7d%n", name,
+				iterations / (elapsed / 1e9), total / 1e3 / iterations, percentile(latencies, 0.50),
+				percentile(latencies, 0.90), percentile(latencies, 0.99), percentile(latencies, 0.999),
+				latencies[iterations - 1] / 1e3, allocated < 0 ? "n/a" : Long.toString(allocated / iterations),
+				gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+	}
+
+	/**
+	 * Delete every row the create benchmarks inserted. Reviews, Recommendations
+	 * and Reservations go first, since deleting their Users only sets UserName to
+	 * NULL in Reviews and Recommendations.
+	 */
+	void tearDown() throws SQLException {
+		deleteRowsWithPrefix(connectionManager, prefix);
+	}
+
+	/**
+	 * Delete the Users, Companies and Restaurants whose names start with prefix,
+	 * and the Reviews, Recommendations and Reservations of those Users. The
+	 * reviews were created through ReviewsDao on existing restaurants, so they are
+	 * deleted through ReviewsDao too, which takes their ratings back out of
+	 * RatingStats and the indexes.
+	 */
+	static void deleteRowsWithPrefix(ConnectionManager connectionManager, String prefix) throws SQLException {
+		String pattern = prefix + "%";
+		ReviewsDao reviewsDao = ReviewsDao.getInstance();
+		for (int reviewId : selectReviewIds(connectionManager, pattern)) {
+			reviewsDao.delete(new Reviews(reviewId));
+		}
+		String[] deletes = { "DELETE FROM Recommendations WHERE UserName LIKE ?;",
+				"DELETE FROM Reservations WHERE UserName LIKE ?;",
+				"DELETE FROM Restaurants WHERE Name LIKE ?;",
+				"DELETE FROM Users WHERE UserName LIKE ?;",
+				"DELETE FROM Companies WHERE CompanyName LIKE ?;" };
+		Connection connection = null;
+		PreparedStatement deleteStmt = null;
+		try {
+			connection = connectionManager.getConnection();
+			for (String delete : deletes) {
+				deleteStmt = connection.prepareStatement(delete);
+				deleteStmt.setString(1, pattern);
+				deleteStmt.executeUpdate();
+				deleteStmt.close();
+				deleteStmt = null;
+			}
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (deleteStmt != null) {
+				deleteStmt.close();
+			}
+		}
+	}
+
+	// The ReviewIds of the reviews by users matching pattern. The connection is
+	// given back before ReviewsDao borrows its own.
+	private static List<Integer> selectReviewIds(ConnectionManager connectionManager, String pattern)
+			throws SQLException {
+		List<Integer> reviewIds = new ArrayList<Integer>();
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement("SELECT ReviewId FROM Reviews WHERE UserName LIKE ?;");
+			selectStmt.setString(1, pattern);
+			results = selectStmt.executeQuery();
+			while (results.next()) {
+				reviewIds.add(results.getInt("ReviewId"));
+			}
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return reviewIds;
+	}
+
+	private int warmupIterations() {
+		return Math.max(1, iterations / 10);
+	}
+
+	private Users newUser(String name) {
+		String userName = prefix + name;
+		return new Users(userName, "password", "Bench", "Mark", userName + "@example.com", null);
+	}
+
+	// Card numbers no real card uses, unique per run.
+	private long cardNumber(long n) {
+		return 9000000000000000L + (runId % 100000) * 10000000000L + n;
+	}
+
+	private int randomKey(int[] keys) {
+		return keys[random.nextInt(keys.length)];
+	}
+
+	private void consume(Object result) {
+		sink += result == null ? 0 : System.identityHashCode(result);
+	}
+
+	static int[] readIntKeys(ConnectionManager connectionManager, String query) throws SQLException {
+		String[] keys = readStringKeys(connectionManager, query);
+		int[] intKeys = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			intKeys[i] = Integer.parseInt(keys[i]);
+		}
+		return intKeys;
+	}
+
+	static String[] readStringKeys(ConnectionManager connectionManager, String query) throws SQLException {
+		List<String> keys = new ArrayList<String>();
+		Connection connection = null;
+		PreparedStatement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.prepareStatement(query);
+			results = selectStmt.executeQuery();
+			while (results.next()) {
+				keys.add(results.getString(1));
+			}
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+		return keys.toArray(new String[keys.size()]);
+	}
+
+	// The HotSpot bean that reports per-thread allocation, or null on JVMs without it.
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+			if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+				return allocationBean;
+			}
+		}
+		return null;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gcBean.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gcBean.getCollectionTime());
+		}
+		return time;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e3;
+	}
+}
@@ -0,0 +1,638 @@
+package review.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import review.dal.*;
+
+/**
+ * main() runner that generates a synthetic data set for ReviewApplication.sql at
+ * a given scale factor. SF1 is 1k companies, 10k restaurants, 1M users, 10M
+ * reviews, 2M recommendations and 2M reservations; other scale factors (e.g.
+ * 0.01 or 5) scale every table linearly.
+ *
+ * Usage: DataGenerator [--scale SF] [--seed N] [--restaurant-skew S]
+ *        [--user-skew S] (--out <directory> | --mysql [--workers N] [--batch-size N])
+ *
+ * --out writes users.csv, companies.csv, ... in the format BulkLoader reads.
+ * --mysql loads the tables directly through BulkLoader. Restaurants get explicit
+ * ids 1..N, so the tables must be empty. The reviews bypass ReviewsDao, so the
+ * RatingStats table is then rebuilt with RatingStatsBackfill. Files written with
+ * --out need the same backfill after BulkLoader loads them.
+ *
+ * The data is skewed like real traffic. Restaurant popularity is Zipfian: the
+ * restaurant at popularity rank r gets a share of the reviews and reservations
+ * proportional to 1/r^restaurant-skew. User activity is a power law with
+ * exponent user-skew. A user reviews a restaurant at most once
+ * (uq_Reviews_Review), so one restaurant never gets more reviews than half the
+ * users. Reservations are 1h45m long in fixed evening slots, and the parties
+ * booked into one slot never add up to more than the restaurant's Capacity.
+ *
+ * The same arguments always produce the same rows: every table draws from its
+ * own SplittableRandom derived from --seed.
+ */
+public class DataGenerator {
+
+	// Rows per unit of scale factor.
+	static final long COMPANIES_PER_SF = 1000;
+	static final long RESTAURANTS_PER_SF = 10000;
+	static final long USERS_PER_SF = 1000000;
+	static final long REVIEWS_PER_SF = 10000000;
+	static final long RECOMMENDATIONS_PER_SF = 2000000;
+	static final long RESERVATIONS_PER_SF = 2000000;
+
+	private static final byte SITDOWN = 0;
+	private static final byte TAKEOUT = 1;
+	private static final byte FOODCART = 2;
+	private static final String[] TYPE_NAMES = { "SITDOWN", "TAKEOUT", "FOODCART" };
+
+	private static final String[] CUISINES = { "AFRICAN", "AMERICAN", "ASIAN", "EUROPEAN", "HISPANIC" };
+	// Relative frequency of each cuisine, in CUISINES order.
+	private static final int[] CUISINE_WEIGHTS = { 5, 35, 25, 20, 15 };
+
+	private static final String[] FIRST_NAMES = { "Alex", "Bailey", "Casey", "Dana", "Elliot", "Frankie", "Gray",
+			"Harper", "Indy", "Jordan", "Kai", "Logan", "Morgan", "Noel", "Oakley", "Parker", "Quinn", "Riley",
+			"Sage", "Taylor" };
+	private static final String[] LAST_NAMES = { "Anderson", "Brown", "Chen", "Davis", "Garcia", "Johnson", "Kim",
+			"Lee", "Martinez", "Nguyen", "Okafor", "Patel", "Rossi", "Smith", "Tanaka", "Williams" };
+	private static final String[] NAME_WORDS = { "Golden", "Blue", "Corner", "Harbor", "Garden", "Spice", "Olive",
+			"Lantern", "Rustic", "Urban", "Maple", "Copper" };
+	private static final String[] NAME_NOUNS = { "Kitchen", "Table", "Bistro", "Grill", "House", "Cafe", "Diner",
+			"Eatery", "Tavern", "Cantina" };
+	private static final String[] STREETS = { "Main St", "Pine St", "1st Ave", "Broadway", "Lake Rd", "Oak Ave",
+			"Market St", "Union St" };
+	private static final String[] CITIES = { "Seattle", "Portland", "San Francisco", "Austin", "Chicago", "Boston",
+			"New York", "Denver" };
+	private static final String[] STATES = { "WA", "OR", "CA", "TX", "IL", "MA", "NY", "CO" };
+	// Review text by rating, from 1 star up to 5 stars.
+	private static final String[] REVIEW_TEXT = { "Would not come back.", "Disappointing food and slow service.",
+			"Decent, nothing special.", "Good food, friendly staff.", "Excellent, one of my favorites." };
+
+	// Reviews are spread over three years from REVIEWS_START.
+	private static final LocalDateTime REVIEWS_START = LocalDateTime.of(2019, 1, 1, 0, 0);
+	private static final long REVIEWS_SPAN_SECONDS = 3 * 365 * 24 * 3600L;
+	// Reservations are booked into 6 slots a day for 90 days from RESERVATIONS_START.
+	private static final LocalDateTime RESERVATIONS_START = LocalDateTime.of(2022, 1, 1, 0, 0);
+	private static final int[] SLOT_HOURS = { 11, 13, 15, 17, 19, 21 };
+	private static final int DAYS = 90;
+	private static final int SLOT_COUNT = DAYS * SLOT_HOURS.length;
+	private static final int RESERVATION_MINUTES = 105;
+	// Relative frequency of party sizes 1..8.
+	private static final int[] PARTY_SIZE_WEIGHTS = { 10, 35, 12, 25, 5, 8, 2, 3 };
+
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final long seed;
+	private final double restaurantSkew;
+	private final double userSkew;
+	private final int companyCount;
+	private final int restaurantCount;
+	private final int userCount;
+	private final long recommendationCount;
+
+	// Per restaurant, indexed by RestaurantId - 1.
+	private final byte[] restaurantTypes;
+	private final int[] capacities;
+	private final double[] qualities;
+	// Restaurant indexes from most to least popular.
+	private final int[] restaurantsByPopularity;
+	// Sit-down restaurant indexes from most to least popular.
+	private final int[] sitDownsByPopularity;
+	// User indexes from most to least active.
+	private final int[] usersByActivity;
+	// Reviews per popularity rank, and reservations per sit-down popularity rank.
+	private final long[] reviewCounts;
+	private final long[] reservationCounts;
+
+	public DataGenerator(double scaleFactor, long seed, double restaurantSkew, double userSkew) {
+		this.seed = seed;
+		this.restaurantSkew = restaurantSkew;
+		this.userSkew = userSkew;
+		this.companyCount = (int) Math.max(1, Math.round(COMPANIES_PER_SF * scaleFactor));
+		this.restaurantCount = (int) Math.max(1, Math.round(RESTAURANTS_PER_SF * scaleFactor));
+		this.userCount = (int) Math.max(2, Math.round(USERS_PER_SF * scaleFactor));
+		this.recommendationCount = Math.round(RECOMMENDATIONS_PER_SF * scaleFactor);
+
+		SplittableRandom random = random(0);
+		restaurantTypes = new byte[restaurantCount];
+		capacities = new int[restaurantCount];
+		qualities = new double[restaurantCount];
+		int sitDownCount = 0;
+		for (int i = 0; i < restaurantCount; i++) {
+			int type = random.nextInt(10);
+			restaurantTypes[i] = type < 5 ? SITDOWN : type < 8 ? TAKEOUT : FOODCART;
+			capacities[i] = 20 + random.nextInt(181);
+			qualities[i] = 1.5 + random.nextDouble() * 3.3;
+			if (restaurantTypes[i] == SITDOWN) {
+				sitDownCount++;
+			}
+		}
+		restaurantsByPopularity = shuffledIndexes(restaurantCount, random);
+		usersByActivity = shuffledIndexes(userCount, random);
+		sitDownsByPopularity = new int[sitDownCount];
+		for (int rank = 0, j = 0; rank < restaurantCount; rank++) {
+			if (restaurantTypes[restaurantsByPopularity[rank]] == SITDOWN) {
+				sitDownsByPopularity[j++] = restaurantsByPopularity[rank];
+			}
+		}
+
+		long[] reviewCaps = new long[restaurantCount];
+		Arrays.fill(reviewCaps, userCount / 2);
+		reviewCounts = allocate(Math.round(REVIEWS_PER_SF * scaleFactor), reviewCaps, restaurantSkew);
+
+		// Keep bookings to roughly half of every restaurant's seat-slots.
+		long[] reservationCaps = new long[sitDownCount];
+		for (int rank = 0; rank < sitDownCount; rank++) {
+			reservationCaps[rank] = (long) capacities[sitDownsByPopularity[rank]] * SLOT_COUNT / 6;
+		}
+		reservationCounts = allocate(Math.round(RESERVATIONS_PER_SF * scaleFactor), reservationCaps, restaurantSkew);
+	}
+
+	public static void main(String[] args) throws Exception {
+		double scaleFactor = 1;
+		long seed = 42;
+		double restaurantSkew = 1.0;
+		double userSkew = 1.0;
+		File out = null;
+		boolean mysql = false;
+		int workers = 4;
+		int batchSize = ConnectionManager.DEFAULT_BATCH_SIZE;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--scale")) {
+				scaleFactor = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--restaurant-skew")) {
+				restaurantSkew = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--user-skew")) {
+				userSkew = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--out")) {
+				out = new File(args[++i]);
+			} else if (args[i].equals("--mysql")) {
+				mysql = true;
+			} else if (args[i].equals("--workers")) {
+				workers = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--batch-size")) {
+				batchSize = Integer.parseInt(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if ((out == null) == !mysql) {
+			System.err.println("Usage: DataGenerator [--scale SF] [--seed N] [--restaurant-skew S] [--user-skew S]"
+					+ " (--out <directory> | --mysql [--workers N] [--batch-size N])");
+			System.exit(2);
+		}
+
+		DataGenerator generator = new DataGenerator(scaleFactor, seed, restaurantSkew, userSkew);
+		if (mysql) {
+			generator.load(new BulkLoader(null, workers, batchSize, false));
+		} else {
+			generator.write(out);
+		}
+	}
+
+	/**
+	 * Write one CSV file per table into directory, in the layout BulkLoader reads.
+	 */
+	public void write(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create " + directory);
+		}
+		for (BulkLoader.TableSpec spec : BulkLoader.LOAD_ORDER) {
+			long start = System.nanoTime();
+			long rows = 0;
+			RecordReader table = open(spec);
+			CsvRecordWriter writer = null;
+			try {
+				writer = new CsvRecordWriter(new OutputStreamWriter(
+						new FileOutputStream(new File(directory, spec.fileName + ".csv")), StandardCharsets.UTF_8),
+						table.getColumns());
+				Map<String, String> record;
+				while ((record = table.next()) != null) {
+					writer.write(record);
+					rows++;
+				}
+			} finally {
+				if (writer != null) {
+					writer.close();
+				}
+				table.close();
+			}
+			BulkLoader.report(spec.fileName + ".csv", rows, start);
+		}
+	}
+
+	/**
+	 * Insert every table straight into MySQL, in foreign key order, then rebuild
+	 * the RatingStats of the reviews.
+	 */
+	public void load(BulkLoader loader) throws IOException, SQLException, InterruptedException {
+		for (BulkLoader.TableSpec spec : BulkLoader.LOAD_ORDER) {
+			long start = System.nanoTime();
+			long rows = loader.load(spec, open(spec));
+			BulkLoader.report(spec.table, rows, start);
+		}
+		new RatingStatsBackfill(RatingStatsBackfill.DEFAULT_THREADS, RatingStatsBackfill.DEFAULT_SLICE_SIZE)
+				.run();
+	}
+
+	/**
+	 * Start generating the rows of one table. Each call starts over from the seed.
+	 */
+	public RecordReader open(BulkLoader.TableSpec spec) {
+		if (spec == BulkLoader.USERS) {
+			return new UsersTable();
+		} else if (spec == BulkLoader.COMPANIES) {
+			return new CompaniesTable();
+		} else if (spec == BulkLoader.RESTAURANTS) {
+			return new RestaurantsTable();
+		} else if (spec == BulkLoader.REVIEWS) {
+			return new ReviewsTable();
+		} else if (spec == BulkLoader.RECOMMENDATIONS) {
+			return new RecommendationsTable();
+		} else if (spec == BulkLoader.RESERVATIONS) {
+			return new ReservationsTable();
+		}
+		throw new IllegalArgumentException("No generator for " + spec.table);
+	}
+
+	private SplittableRandom random(int stream) {
+		return new SplittableRandom(seed ^ (stream * 0x9E3779B97F4A7C15L));
+	}
+
+	private static String userName(int userIndex) {
+		return "user" + (userIndex + 1);
+	}
+
+	private static String companyName(int companyIndex) {
+		return "company" + (companyIndex + 1);
+	}
+
+	private static String timestamp(LocalDateTime time) {
+		return time.format(TIMESTAMP_FORMAT);
+	}
+
+	private static <T> T pick(SplittableRandom random, T[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private static int pickWeighted(SplittableRandom random, int[] weights) {
+		int total = 0;
+		for (int weight : weights) {
+			total += weight;
+		}
+		int target = random.nextInt(total);
+		for (int i = 0; i < weights.length; i++) {
+			target -= weights[i];
+			if (target < 0) {
+				return i;
+			}
+		}
+		return weights.length - 1;
+	}
+
+	private static int[] shuffledIndexes(int count, SplittableRandom random) {
+		int[] indexes = new int[count];
+		for (int i = 0; i < count; i++) {
+			indexes[i] = i;
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = indexes[i];
+			indexes[i] = indexes[j];
+			indexes[j] = swap;
+		}
+		return indexes;
+	}
+
+	/**
+	 * Draw a rank in [0, n) with probability roughly proportional to
+	 * 1/(rank+1)^skew, by inverting the CDF of the continuous power law.
+	 */
+	static int zipfRank(SplittableRandom random, int n, double skew) {
+		double u = random.nextDouble();
+		double x;
+		if (Math.abs(skew - 1.0) < 1e-9) {
+			x = Math.pow(n + 1, u);
+		} else {
+			double a = 1 - skew;
+			x = Math.pow((Math.pow(n + 1, a) - 1) * u + 1, 1 / a);
+		}
+		return Math.min(Math.max((int) x - 1, 0), n - 1);
+	}
+
+	/**
+	 * Split total across ranks in proportion to 1/(rank+1)^skew without giving any
+	 * rank more than its cap. Whatever the capped ranks cannot take is spread over
+	 * the others. If total exceeds the sum of the caps, every rank gets its cap.
+	 */
+	static long[] allocate(long total, long[] caps, double skew) {
+		int n = caps.length;
+		long[] counts = new long[n];
+		boolean[] capped = new boolean[n];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			weights[i] = 1 / Math.pow(i + 1, skew);
+		}
+		long remaining = total;
+		while (remaining > 0) {
+			double weightSum = 0;
+			for (int i = 0; i < n; i++) {
+				if (!capped[i]) {
+					weightSum += weights[i];
+				}
+			}
+			if (weightSum == 0) {
+				break;
+			}
+			long pool = remaining;
+			boolean newlyCapped = false;
+			for (int i = 0; i < n; i++) {
+				if (!capped[i] && pool * weights[i] / weightSum >= caps[i]) {
+					counts[i] = caps[i];
+					capped[i] = true;
+					remaining -= caps[i];
+					newlyCapped = true;
+				}
+			}
+			if (newlyCapped) {
+				continue;
+			}
+			long assigned = 0;
+			for (int i = 0; i < n; i++) {
+				if (!capped[i]) {
+					counts[i] = (long) (remaining * weights[i] / weightSum);
+					assigned += counts[i];
+				}
+			}
+			// Hand out the rounding remainder to the most popular ranks with room left.
+			for (int i = 0; i < n && assigned < remaining; i++) {
+				if (!capped[i] && counts[i] < caps[i]) {
+					counts[i]++;
+					assigned++;
+				}
+			}
+			break;
+		}
+		return counts;
+	}
+
+	/** A generated table: fixed columns and a next() that never touches a file. */
+	private abstract static class GeneratedTable implements RecordReader {
+		private final List<String> columns;
+
+		GeneratedTable(String... columns) {
+			this.columns = Arrays.asList(columns);
+		}
+
+		@Override
+		public List<String> getColumns() {
+			return columns;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private class UsersTable extends GeneratedTable {
+		private final SplittableRandom random = random(1);
+		private int next = 0;
+
+		UsersTable() {
+			super("UserName", "Password", "FirstName", "LastName", "Email", "Phone");
+		}
+
+		@Override
+		public Map<String, String> next() {
+			if (next == userCount) {
+				return null;
+			}
+			String userName = userName(next++);
+			Map<String, String> record = new HashMap<String, String>();
+			record.put("UserName", userName);
+			record.put("Password", Long.toHexString(random.nextLong()));
+			record.put("FirstName", pick(random, FIRST_NAMES));
+			record.put("LastName", pick(random, LAST_NAMES));
+			record.put("Email", userName + "@example.com");
+			// A fifth of the users have no phone number.
+			record.put("Phone", random.nextInt(5) == 0 ? null
+					: String.format("%03d-%03d-%04d", 200 + random.nextInt(800), random.nextInt(1000),
+							random.nextInt(10000)));
+			return record;
+		}
+	}
+
+	private class CompaniesTable extends GeneratedTable {
+		private int next = 0;
+
+		CompaniesTable() {
+			super("CompanyName", "About");
+		}
+
+		@Override
+		public Map<String, String> next() {
+			if (next == companyCount) {
+				return null;
+			}
+			Map<String, String> record = new HashMap<String, String>();
+			record.put("CompanyName", companyName(next));
+			record.put("About", "About " + companyName(next) + ".");
+			next++;
+			return record;
+		}
+	}
+
+	private class RestaurantsTable extends GeneratedTable {
+		private final SplittableRandom random = random(2);
+		private int next = 0;
+
+		RestaurantsTable() {
+			super("RestaurantId", "Name", "Description", "Menu", "Hours", "Active", "CuisineType", "Street1",
+					"Street2", "City", "State", "Zip", "CompanyName", "Type", "Capacity", "MaxWaitTime", "Licensed");
+		}
+
+		@Override
+		public Map<String, String> next() {
+			if (next == restaurantCount) {
+				return null;
+			}
+			int restaurant = next++;
+			int location = random.nextInt(CITIES.length);
+			String cuisine = CUISINES[pickWeighted(random, CUISINE_WEIGHTS)];
+			Map<String, String> record = new HashMap<String, String>();
+			record.put("RestaurantId", Integer.toString(restaurant + 1));
+			record.put("Name", pick(random, NAME_WORDS) + " " + pick(random, NAME_NOUNS) + " " + (restaurant + 1));
+			record.put("Description", "A " + cuisine.toLowerCase() + " restaurant in " + CITIES[location] + ".");
+			record.put("Menu", "menu" + (restaurant + 1));
+			record.put("Hours", (7 + random.nextInt(5)) + "am-" + (8 + random.nextInt(5)) + "pm");
+			record.put("Active", random.nextInt(10) == 0 ? "false" : "true");
+			record.put("CuisineType", cuisine);
+			record.put("Street1", (1 + random.nextInt(9999)) + " " + pick(random, STREETS));
+			record.put("Street2", random.nextInt(4) == 0 ? "Suite " + (100 + random.nextInt(900)) : null);
+			record.put("City", CITIES[location]);
+			record.put("State", STATES[location]);
+			record.put("Zip", Integer.toString(10000 + random.nextInt(90000)));
+			// Chains: a few companies own most restaurants, and some are independent.
+			record.put("CompanyName",
+					random.nextInt(20) == 0 ? null : companyName(zipfRank(random, companyCount, 1.0)));
+			record.put("Type", TYPE_NAMES[restaurantTypes[restaurant]]);
+			if (restaurantTypes[restaurant] == SITDOWN) {
+				record.put("Capacity", Integer.toString(capacities[restaurant]));
+			} else if (restaurantTypes[restaurant] == TAKEOUT) {
+				record.put("MaxWaitTime", Integer.toString(5 + random.nextInt(56)));
+			} else {
+				record.put("Licensed", random.nextInt(7) == 0 ? "false" : "true");
+			}
+			return record;
+		}
+	}
+
+	private class ReviewsTable extends GeneratedTable {
+		private final SplittableRandom random = random(3);
+		// Users who already reviewed the current restaurant.
+		private final BitSet reviewed = new BitSet(userCount);
+		private int[] reviewers = new int[0];
+		private int rank = -1;
+		private int position = 0;
+
+		ReviewsTable() {
+			super("Created", "Content", "Rating", "UserName", "RestaurantId");
+		}
+
+		@Override
+		public Map<String, String> next() {
+			while (position == reviewers.length) {
+				if (rank + 1 == restaurantCount) {
+					return null;
+				}
+				chooseReviewers((int) reviewCounts[++rank]);
+			}
+			int restaurant = restaurantsByPopularity[rank];
+			int user = reviewers[position++];
+			// Roughly normal around the restaurant's quality, in half stars.
+			double gaussian = (random.nextDouble() + random.nextDouble() + random.nextDouble()
+					+ random.nextDouble() - 2) * Math.sqrt(3);
+			double rating = Math.min(5, Math.max(1, Math.round((qualities[restaurant] + 0.8 * gaussian) * 2) / 2.0));
+			Map<String, String> record = new HashMap<String, String>();
+			record.put("Created", timestamp(REVIEWS_START.plusSeconds(random.nextLong(REVIEWS_SPAN_SECONDS))));
+			record.put("Content", REVIEW_TEXT[(int) Math.ceil(rating) - 1]);
+			record.put("Rating", Double.toString(rating));
+			record.put("UserName", userName(user));
+			record.put("RestaurantId", Integer.toString(restaurant + 1));
+			return record;
+		}
+
+		// Pick count distinct users for the current restaurant, biased toward
+		// active users. count is at most half the users (see allocate()).
+		private void chooseReviewers(int count) {
+			for (int user : reviewers) {
+				reviewed.clear(user);
+			}
+			reviewers = new int[count];
+			position = 0;
+			for (int i = 0; i < count; i++) {
+				int user = -1;
+				for (int attempt = 0; attempt < 8 && user < 0; attempt++) {
+					int candidate = usersByActivity[zipfRank(random, userCount, userSkew)];
+					if (!reviewed.get(candidate)) {
+						user = candidate;
+					}
+				}
+				if (user < 0) {
+					// The active users are taken; fall back to the next free user after
+					// a uniformly random one.
+					user = reviewed.nextClearBit(random.nextInt(userCount));
+					if (user >= userCount) {
+						user = reviewed.nextClearBit(0);
+					}
+				}
+				reviewed.set(user);
+				reviewers[i] = user;
+			}
+		}
+	}
+
+	private class RecommendationsTable extends GeneratedTable {
+		private final SplittableRandom random = random(4);
+		private long next = 0;
+
+		RecommendationsTable() {
+			super("UserName", "RestaurantId");
+		}
+
+		@Override
+		public Map<String, String> next() {
+			if (next == recommendationCount) {
+				return null;
+			}
+			next++;
+			Map<String, String> record = new HashMap<String, String>();
+			record.put("UserName", userName(usersByActivity[zipfRank(random, userCount, userSkew)]));
+			record.put("RestaurantId",
+					Integer.toString(restaurantsByPopularity[zipfRank(random, restaurantCount, restaurantSkew)] + 1));
+			return record;
+		}
+	}
+
+	private class ReservationsTable extends GeneratedTable {
+		private final SplittableRandom random = random(5);
+		// Seats already booked in each slot of the current restaurant.
+		private final int[] booked = new int[SLOT_COUNT];
+		private int rank = -1;
+		private long remaining = 0;
+
+		ReservationsTable() {
+			super("Start", "End", "Size", "UserName", "RestaurantId");
+		}
+
+		@Override
+		public Map<String, String> next() {
+			while (true) {
+				while (remaining == 0) {
+					if (rank + 1 == sitDownsByPopularity.length) {
+						return null;
+					}
+					remaining = reservationCounts[++rank];
+					Arrays.fill(booked, 0);
+				}
+				remaining--;
+				int restaurant = sitDownsByPopularity[rank];
+				int capacity = capacities[restaurant];
+				int size = Math.min(capacity, 1 + pickWeighted(random, PARTY_SIZE_WEIGHTS));
+				int first = random.nextInt(SLOT_COUNT);
+				for (int probe = 0; probe < SLOT_COUNT; probe++) {
+					int slot = (first + probe) % SLOT_COUNT;
+					if (booked[slot] + size > capacity) {
+						continue;
+					}
+					booked[slot] += size;
+					LocalDateTime start = RESERVATIONS_START.plusDays(slot / SLOT_HOURS.length)
+							.plusHours(SLOT_HOURS[slot % SLOT_HOURS.length]);
+					Map<String, String> record = new HashMap<String, String>();
+					record.put("Start", timestamp(start));
+					record.put("End", timestamp(start.plusMinutes(RESERVATION_MINUTES)));
+					record.put("Size", Integer.toString(size));
+					record.put("UserName", userName(usersByActivity[zipfRank(random, userCount, userSkew)]));
+					record.put("RestaurantId", Integer.toString(restaurant + 1));
+					return record;
+				}
+				// Fully booked; move on to the next restaurant.
+				remaining = 0;
+			}
+		}
+	}
+}
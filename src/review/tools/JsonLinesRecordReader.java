@@ -0,0 +1,176 @@
+package review.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams records from a JSON Lines file: one flat JSON object per line, whose
+ * values are strings, numbers, booleans or null. Numbers and booleans are
+ * returned as their JSON text. The columns are the keys of the first record;
+ * keys missing from a later record are NULL.
+ */
+public class JsonLinesRecordReader implements RecordReader {
+	private final BufferedReader reader;
+	private Map<String, String> first;
+	private List<String> columns;
+	private long lineNumber = 0;
+
+	// Parser state for the current line.
+	private String line;
+	private int pos;
+
+	public JsonLinesRecordReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+	}
+
+	@Override
+	public List<String> getColumns() throws IOException {
+		if (columns == null) {
+			first = readRecord();
+			columns = first == null ? new ArrayList<String>() : new ArrayList<String>(first.keySet());
+		}
+		return columns;
+	}
+
+	@Override
+	public Map<String, String> next() throws IOException {
+		getColumns();
+		if (first != null) {
+			Map<String, String> record = first;
+			first = null;
+			return record;
+		}
+		return readRecord();
+	}
+
+	private Map<String, String> readRecord() throws IOException {
+		do {
+			line = reader.readLine();
+			lineNumber++;
+			if (line == null) {
+				return null;
+			}
+		} while (line.trim().isEmpty());
+		pos = 0;
+		Map<String, String> record = new LinkedHashMap<String, String>();
+		expect('{');
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return record;
+		}
+		while (true) {
+			skipWhitespace();
+			String key = readString();
+			expect(':');
+			record.put(key, readValue());
+			skipWhitespace();
+			char c = take();
+			if (c == '}') {
+				return record;
+			}
+			if (c != ',') {
+				throw error("expected ',' or '}'");
+			}
+		}
+	}
+
+	private String readValue() throws IOException {
+		skipWhitespace();
+		char c = peek();
+		if (c == '"') {
+			return readString();
+		}
+		int start = pos;
+		while (pos < line.length() && ",}] \t".indexOf(line.charAt(pos)) < 0) {
+			pos++;
+		}
+		String literal = line.substring(start, pos);
+		if (literal.isEmpty() || literal.equals("{") || literal.startsWith("[")) {
+			throw error("expected a string, number, boolean or null");
+		}
+		return literal.equals("null") ? null : literal;
+	}
+
+	private String readString() throws IOException {
+		expect('"');
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			char c = take();
+			if (c == '"') {
+				return value.toString();
+			}
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			char escaped = take();
+			switch (escaped) {
+			case 'b':
+				value.append('\b');
+				break;
+			case 'f':
+				value.append('\f');
+				break;
+			case 'n':
+				value.append('\n');
+				break;
+			case 'r':
+				value.append('\r');
+				break;
+			case 't':
+				value.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > line.length()) {
+					throw error("truncated \\u escape");
+				}
+				value.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default:
+				value.append(escaped);
+			}
+		}
+	}
+
+	private void expect(char expected) throws IOException {
+		skipWhitespace();
+		if (take() != expected) {
+			throw error("expected '" + expected + "'");
+		}
+	}
+
+	private char peek() throws IOException {
+		if (pos >= line.length()) {
+			throw error("unexpected end of line");
+		}
+		return line.charAt(pos);
+	}
+
+	private char take() throws IOException {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void skipWhitespace() {
+		while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException("Line " + lineNumber + ", column " + (pos + 1) + ": " + message + ".");
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,131 @@
+package review.tools;
+
+import java.util.Arrays;
+
+/**
+ * A log-linear histogram of latencies in the style of HdrHistogram: values
+ * below 2^SUB_BUCKET_BITS are counted exactly, and every power of two above is
+ * split into 2^(SUB_BUCKET_BITS-1) equal sub-buckets, so a recorded value is off
+ * by less than 1% whatever its magnitude. Memory is fixed (about 60KB) and
+ * record() never allocates.
+ *
+ * A LatencyHistogram is not thread-safe. Give each thread its own and add() them
+ * together when the run is over.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 8;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long totalCount;
+	private long min = Long.MAX_VALUE;
+	private long max;
+	private double sum;
+
+	/**
+	 * Record one value. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts[indexOf(value)]++;
+		totalCount++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		sum += value;
+	}
+
+	/**
+	 * Record value and, if it is longer than expectedInterval, also the values a
+	 * caller issuing one request per expectedInterval would have seen while it was
+	 * stalled: value - expectedInterval, value - 2 * expectedInterval, and so on.
+	 * This corrects a closed-loop measurement for coordinated omission.
+	 */
+	public void recordCorrected(long value, long expectedInterval) {
+		record(value);
+		if (expectedInterval <= 0) {
+			return;
+		}
+		for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+			record(missed);
+		}
+	}
+
+	/**
+	 * Add the counts of other to this histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		sum += other.sum;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+		sum = 0;
+	}
+
+	public long getCount() {
+		return totalCount;
+	}
+
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+
+	/**
+	 * The value that percentile percent (0-100) of the recorded values are at or
+	 * below, rounded up to the top of its sub-bucket and capped at getMax().
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * totalCount));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highestValueAt(i), max);
+			}
+		}
+		return max;
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BUCKET_BITS + 1;
+		return SUB_BUCKET_COUNT + (msb - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT
+				+ (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+	}
+
+	// The largest value that indexOf() maps to index.
+	static long highestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int offset = index - SUB_BUCKET_COUNT;
+		int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+		long lowest = (long) (offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,130 @@
+package review.tools;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import review.dal.*;
+
+/**
+ * main() runner that rebuilds the RatingStats table from Reviews.
+ *
+ * Usage: RatingStatsBackfill [--threads N] [--slice N]
+ *
+ * ReviewsDao keeps RatingStats up to date as reviews are created and deleted,
+ * but reviews written around it (by BulkLoader, or before RatingStats existed)
+ * are not counted. This tool recomputes the stats of every restaurant. The
+ * RestaurantId range is split into slices of --slice ids, which --threads
+ * threads rebuild in parallel, each slice in its own short transaction, so
+ * reviews can still be written while it runs. Progress is printed as slices
+ * complete.
+ */
+public class RatingStatsBackfill {
+	static final int DEFAULT_THREADS = 4;
+	static final int DEFAULT_SLICE_SIZE = 1000;
+
+	private final int threads;
+	private final int sliceSize;
+	private final ConnectionManager connectionManager = new ConnectionManager();
+
+	public RatingStatsBackfill(int threads, int sliceSize) {
+		this.threads = threads;
+		this.sliceSize = sliceSize;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = DEFAULT_THREADS;
+		int sliceSize = DEFAULT_SLICE_SIZE;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--slice")) {
+				sliceSize = Integer.parseInt(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		new RatingStatsBackfill(threads, sliceSize).run();
+	}
+
+	/**
+	 * Rebuild the stats of all restaurants, slice by slice.
+	 */
+	public void run() throws SQLException, InterruptedException {
+		int[] range = getRestaurantIdRange();
+		if (range == null) {
+			System.out.println("No restaurants.");
+			return;
+		}
+		final RatingStatsDao ratingStatsDao = RatingStatsDao.getInstance();
+		final AtomicLong restaurants = new AtomicLong();
+		final AtomicLong slicesDone = new AtomicLong();
+		final long sliceCount = ((long) range[1] - range[0]) / sliceSize + 1;
+		final long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (long from = range[0]; from <= range[1]; from += sliceSize) {
+				final int sliceFrom = (int) from;
+				final int sliceTo = (int) Math.min(from + sliceSize - 1, range[1]);
+				futures.add(executor.submit(() -> {
+					restaurants.addAndGet(ratingStatsDao.rebuild(sliceFrom, sliceTo));
+					long done = slicesDone.incrementAndGet();
+					BulkLoader.report("RatingStats " + done + "/" + sliceCount + " slices", restaurants.get(),
+							start);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("Rebuilding RatingStats failed.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		BulkLoader.report("RatingStats done", restaurants.get(), start);
+	}
+
+	// The smallest and largest RestaurantId, or null if there are no restaurants.
+	private int[] getRestaurantIdRange() throws SQLException {
+		Connection connection = null;
+		Statement selectStmt = null;
+		ResultSet results = null;
+		try {
+			connection = connectionManager.getConnection();
+			selectStmt = connection.createStatement();
+			results = selectStmt.executeQuery("SELECT MIN(RestaurantId),MAX(RestaurantId) FROM Restaurants;");
+			results.next();
+			int min = results.getInt(1);
+			if (results.wasNull()) {
+				return null;
+			}
+			return new int[] { min, results.getInt(2) };
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+			if (selectStmt != null) {
+				selectStmt.close();
+			}
+			if (results != null) {
+				results.close();
+			}
+		}
+	}
+}
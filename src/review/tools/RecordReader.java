@@ -0,0 +1,20 @@
+package review.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams records from an import file one at a time, so that files larger than
+ * the heap can be loaded. Each record maps a column name to its value; a null
+ * value is SQL NULL.
+ */
+public interface RecordReader extends Closeable {
+
+	/** The column names present in the file, in file order. */
+	List<String> getColumns() throws IOException;
+
+	/** The next record, or null at the end of the file. */
+	Map<String, String> next() throws IOException;
+}
@@ -0,0 +1,98 @@
+package review.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import review.dal.*;
+import review.model.*;
+
+/**
+ * main() runner that builds ReviewerSketches from Reviews and Recommendations,
+ * or merges saved ones.
+ *
+ * Usage: ReviewerSketchesBackfill [--merge FILE]... OUT
+ *
+ * The ReviewerSketches of a running process only count the reviews and
+ * recommendations it created. Without --merge, this tool streams both tables
+ * and saves the sketches of every row to OUT, for a process to merge into its
+ * own at startup: DaoRegistry does so when the review.sketch.file property
+ * names OUT. With --merge, it
+ * reads no table and saves the merge of the given files, e.g. the sketches
+ * saved by each node, to OUT. Progress is printed every 100000 rows.
+ */
+public class ReviewerSketchesBackfill {
+
+	private static final int REPORT_EVERY = 100000;
+
+	public static void main(String[] args) throws Exception {
+		List<Path> inputs = new ArrayList<Path>();
+		Path out = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--merge")) {
+				inputs.add(Paths.get(args[++i]));
+			} else if (args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			} else if (out == null) {
+				out = Paths.get(args[i]);
+			} else {
+				throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+			}
+		}
+		if (out == null) {
+			throw new IllegalArgumentException("Usage: ReviewerSketchesBackfill [--merge FILE]... OUT");
+		}
+		ReviewerSketches sketches = inputs.isEmpty() ? build() : merge(inputs);
+		sketches.save(out);
+		System.out.println("Saved " + out);
+	}
+
+	/**
+	 * Build the sketches of all the Reviews and Recommendations.
+	 */
+	public static ReviewerSketches build() throws SQLException {
+		ReviewerSketches sketches = new ReviewerSketches(ReviewerSketches.DEFAULT_PRECISION,
+				ReviewerSketches.DEFAULT_WIDTH, ReviewerSketches.DEFAULT_DEPTH,
+				ReviewerSketches.DEFAULT_TOP_CAPACITY);
+		long start = System.nanoTime();
+		long rows = 0;
+		try (ScanIterator<Reviews> reviews = ReviewsDao.getInstance().scanReviews(false)) {
+			while (reviews.hasNext()) {
+				sketches.reviewsCreated(Collections.singletonList(reviews.next()));
+				if (++rows % REPORT_EVERY == 0) {
+					BulkLoader.report("Reviews", rows, start);
+				}
+			}
+		}
+		BulkLoader.report("Reviews done", rows, start);
+		start = System.nanoTime();
+		rows = 0;
+		try (ScanIterator<Recommendations> recommendations = RecommendationsDao.getInstance()
+				.scanRecommendations()) {
+			while (recommendations.hasNext()) {
+				sketches.recommendationsCreated(Collections.singletonList(recommendations.next()));
+				if (++rows % REPORT_EVERY == 0) {
+					BulkLoader.report("Recommendations", rows, start);
+				}
+			}
+		}
+		BulkLoader.report("Recommendations done", rows, start);
+		return sketches;
+	}
+
+	/**
+	 * Merge the sketches saved in files, in order.
+	 */
+	public static ReviewerSketches merge(List<Path> files) throws IOException {
+		ReviewerSketches sketches = ReviewerSketches.load(files.get(0));
+		for (Path file : files.subList(1, files.size())) {
+			sketches.merge(ReviewerSketches.load(file));
+			System.out.println("Merged " + file);
+		}
+		return sketches;
+	}
+}
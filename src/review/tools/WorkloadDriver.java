@@ -0,0 +1,407 @@
+package review.tools;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import review.dal.*;
+import review.model.*;
+
+/**
+ * main() runner that drives a mix of user-facing operations through the real
+ * DAOs from many threads and records their latencies in LatencyHistograms.
+ *
+ * Usage: WorkloadDriver [--threads N[,N...]] [--rate OPS_PER_SEC]
+ *        [--expected-interval US] [--warmup S] [--duration S]
+ *        [--mix browse=W,reviews=W,post=W,recommend=W,reserve=W] [--seed N] [--csv FILE]
+ *
+ * The operations are:
+ * - browse: RestaurantsDao.getRestaurantsByCuisine.
+ * - reviews: ReviewsDao.getReviewsByRestaurantId.
+ * - post: ReviewsDao.create.
+ * - recommend: RecommendationsDao.create.
+ * - reserve: ReservationsDao.create.
+ * Each is picked with probability proportional to its weight in --mix.
+ *
+ * Without --rate the driver runs closed-loop: each thread issues its next
+ * operation as soon as the previous one returns. A closed loop stops sending
+ * while a call stalls, so it never measures the requests a real user would
+ * have sent meanwhile. With --expected-interval, the interval at which a user
+ * of the closed loop expects to issue requests, each response time longer than
+ * that is also recorded as the waits of the requests it held back (see
+ * LatencyHistogram.recordCorrected()). Without it, the closed-loop response
+ * time is the service time. With --rate the driver runs
+ * open-loop: the threads share a schedule of that many operations per second,
+ * and each operation's response time is measured from when the schedule said it
+ * should start, not from when a stalled thread got around to it. That is the
+ * coordinated omission correction. Each operation gets two histograms: service
+ * time (start to end) and response time (intended start to end); the gap
+ * between them is the time spent queued behind slow calls. Operations that
+ * throw, whether an SQLException or an unchecked exception (e.g. the
+ * IllegalStateException of a LAZY reference or a ScanIterator that cannot
+ * load), are counted as errors.
+ *
+ * --threads takes a list to sweep concurrency levels. Throughput that stops
+ * growing while p99 keeps rising marks the level where the DAO layer (or the
+ * connection pool, see the "pool wait" column) saturates. --csv writes one row
+ * per level and operation.
+ *
+ * Every row written is tagged with a per-run prefix and is deleted at the end.
+ */
+public class WorkloadDriver {
+
+	enum OperationType {
+		BROWSE("browse"), READ_REVIEWS("reviews"), POST_REVIEW("post"), RECOMMEND("recommend"), RESERVE("reserve");
+
+		final String label;
+
+		OperationType(String label) {
+			this.label = label;
+		}
+
+		static OperationType fromLabel(String label) {
+			for (OperationType type : values()) {
+				if (type.label.equals(label)) {
+					return type;
+				}
+			}
+			throw new IllegalArgumentException("Unknown operation: " + label);
+		}
+	}
+
+	private static final OperationType[] OPERATIONS = OperationType.values();
+
+	private final int[] mixWeights;
+	private final int mixTotal;
+	private final double rate;
+	private final long expectedIntervalNanos;
+	private final long warmupNanos;
+	private final long durationNanos;
+	private final long seed;
+	private final ConnectionManager connectionManager = new ConnectionManager();
+	private final String prefix = "load" + Long.toString(System.currentTimeMillis(), 36) + "_";
+
+	private int[] restaurantIds;
+	private int[] sitDownRestaurantIds;
+
+	public WorkloadDriver(int[] mixWeights, double rate, long expectedIntervalMicros, int warmupSeconds,
+			int durationSeconds, long seed) {
+		this.mixWeights = mixWeights;
+		int total = 0;
+		for (int weight : mixWeights) {
+			total += weight;
+		}
+		this.mixTotal = total;
+		this.rate = rate;
+		this.expectedIntervalNanos = expectedIntervalMicros * 1000L;
+		this.warmupNanos = warmupSeconds * 1000000000L;
+		this.durationNanos = durationSeconds * 1000000000L;
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] threadCounts = { 8 };
+		double rate = 0;
+		long expectedIntervalMicros = 0;
+		int warmupSeconds = 10;
+		int durationSeconds = 30;
+		int[] mixWeights = { 40, 30, 10, 10, 10 };
+		long seed = 42;
+		File csv = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--threads")) {
+				String[] counts = args[++i].split(",");
+				threadCounts = new int[counts.length];
+				for (int j = 0; j < counts.length; j++) {
+					threadCounts[j] = Integer.parseInt(counts[j].trim());
+				}
+			} else if (args[i].equals("--rate")) {
+				rate = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--expected-interval")) {
+				expectedIntervalMicros = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--warmup")) {
+				warmupSeconds = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--duration")) {
+				durationSeconds = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--mix")) {
+				mixWeights = new int[OPERATIONS.length];
+				for (String entry : args[++i].split(",")) {
+					String[] parts = entry.split("=");
+					mixWeights[OperationType.fromLabel(parts[0].trim()).ordinal()] = Integer.parseInt(parts[1].trim());
+				}
+			} else if (args[i].equals("--seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--csv")) {
+				csv = new File(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		WorkloadDriver driver = new WorkloadDriver(mixWeights, rate, expectedIntervalMicros, warmupSeconds,
+				durationSeconds, seed);
+		PrintWriter csvWriter = null;
+		try {
+			driver.setUp();
+			if (csv != null) {
+				csvWriter = new PrintWriter(new FileWriter(csv));
+				csvWriter.println("threads,target_rate,operation,count,errors,throughput,"
+						+ "service_p50_us,service_p99_us,service_p999_us,service_max_us,"
+						+ "response_p50_us,response_p99_us,response_p999_us,response_max_us,pool_wait_avg_us");
+			}
+			for (int threads : threadCounts) {
+				driver.runLevel(threads, csvWriter);
+			}
+		} finally {
+			if (csvWriter != null) {
+				csvWriter.close();
+			}
+			driver.tearDown();
+		}
+	}
+
+	void setUp() throws SQLException {
+		restaurantIds = DaoBenchmark.readIntKeys(connectionManager,
+				"SELECT RestaurantId FROM Restaurants LIMIT " + DaoBenchmark.KEY_POOL_SIZE + ";");
+		sitDownRestaurantIds = DaoBenchmark.readIntKeys(connectionManager,
+				"SELECT RestaurantId FROM SitDownRestaurant LIMIT " + DaoBenchmark.KEY_POOL_SIZE + ";");
+		if (restaurantIds.length == 0 || sitDownRestaurantIds.length == 0) {
+			throw new SQLException("The schema needs restaurants and sit-down restaurants; load it with DataGenerator.");
+		}
+	}
+
+	void tearDown() throws SQLException {
+		DaoBenchmark.deleteRowsWithPrefix(connectionManager, prefix);
+	}
+
+	/**
+	 * Run warmup plus measurement with the given number of threads, then print
+	 * (and optionally write as CSV) the results per operation.
+	 */
+	void runLevel(int threadCount, PrintWriter csvWriter) throws SQLException, InterruptedException {
+		List<Worker> workers = new ArrayList<Worker>();
+		for (int i = 0; i < threadCount; i++) {
+			workers.add(new Worker(threadCount, i));
+		}
+		ConnectionPool pool = connectionManager.getPool();
+		long start = System.nanoTime() + 10000000L;
+		long measureStart = start + warmupNanos;
+		long end = measureStart + durationNanos;
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (Worker worker : workers) {
+			worker.schedule(start, measureStart, end);
+			Thread thread = new Thread(worker, "workload-" + threadCount + "-" + worker.index);
+			threads.add(thread);
+			thread.start();
+		}
+		// Snapshot the pool counters when measurement starts.
+		LockSupport.parkNanos(Math.max(0, measureStart - System.nanoTime()));
+		long borrowsBefore = pool.getBorrowCount();
+		long waitBefore = pool.getTotalWaitNanos();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long borrows = pool.getBorrowCount() - borrowsBefore;
+		double poolWaitMicros = borrows == 0 ? 0 : (pool.getTotalWaitNanos() - waitBefore) / 1e3 / borrows;
+
+		double seconds = durationNanos / 1e9;
+		String mode;
+		if (rate > 0) {
+			mode = String.format("open-loop target=%.0f ops/s", rate);
+		} else if (expectedIntervalNanos > 0) {
+			mode = String.format("closed-loop expected interval=%dus", expectedIntervalNanos / 1000);
+		} else {
+			mode = "closed-loop, uncorrected";
+		}
+		System.out.format("threads=%d %s%n", threadCount, mode);
+		System.out.format("  %-10s %9s %7s %10s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "errors",
+				"ops/s", "svc p50", "svc p99", "svc p99.9", "rsp p50", "rsp p99", "rsp p99.9");
+		LatencyHistogram allService = new LatencyHistogram();
+		LatencyHistogram allResponse = new LatencyHistogram();
+		long allErrors = 0;
+		for (OperationType type : OPERATIONS) {
+			LatencyHistogram service = new LatencyHistogram();
+			LatencyHistogram response = new LatencyHistogram();
+			long errors = 0;
+			for (Worker worker : workers) {
+				service.add(worker.service[type.ordinal()]);
+				response.add(worker.response[type.ordinal()]);
+				errors += worker.errors[type.ordinal()];
+			}
+			if (service.getCount() == 0 && errors == 0) {
+				continue;
+			}
+			allService.add(service);
+			allResponse.add(response);
+			allErrors += errors;
+			report(threadCount, type.label, service, response, errors, seconds, poolWaitMicros, csvWriter);
+		}
+		report(threadCount, "all", allService, allResponse, allErrors, seconds, poolWaitMicros, csvWriter);
+		System.out.format("  pool wait avg=%.1fus over %d borrows; %s%n", poolWaitMicros, borrows, pool);
+		if (csvWriter != null) {
+			csvWriter.flush();
+		}
+	}
+
+	private void report(int threadCount, String label, LatencyHistogram service, LatencyHistogram response,
+			long errors, double seconds, double poolWaitMicros, PrintWriter csvWriter) {
+		System.out.format("  %-10s %9d %7d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", label,
+				service.getCount(), errors, service.getCount() / seconds, micros(service, 50), micros(service, 99),
+				micros(service, 99.9), micros(response, 50), micros(response, 99), micros(response, 99.9));
+		if (csvWriter != null) {
+			csvWriter.format("%d,%.1f,%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f%n", threadCount, rate,
+					label, service.getCount(), errors, service.getCount() / seconds, micros(service, 50),
+					micros(service, 99), micros(service, 99.9), service.getMax() / 1e3, micros(response, 50),
+					micros(response, 99), micros(response, 99.9), response.getMax() / 1e3, poolWaitMicros);
+		}
+	}
+
+	private static double micros(LatencyHistogram histogram, double percentile) {
+		return histogram.getValueAtPercentile(percentile) / 1e3;
+	}
+
+	/** One driver thread, with its own random stream and histograms. */
+	private class Worker implements Runnable {
+		final int index;
+		final int threadCount;
+		final SplittableRandom random;
+		final LatencyHistogram[] service = new LatencyHistogram[OPERATIONS.length];
+		final LatencyHistogram[] response = new LatencyHistogram[OPERATIONS.length];
+		final long[] errors = new long[OPERATIONS.length];
+
+		private long startNanos;
+		private long measureStartNanos;
+		private long endNanos;
+		// The user this worker posts reviews as, and the next restaurant it reviews.
+		private Users reviewer;
+		private int reviewerCount = 0;
+		private int reviewCursor = 0;
+
+		Worker(int threadCount, int index) throws SQLException {
+			this.threadCount = threadCount;
+			this.index = index;
+			this.random = new SplittableRandom(seed * 1000003L + threadCount * 1009L + index);
+			for (int i = 0; i < OPERATIONS.length; i++) {
+				service[i] = new LatencyHistogram();
+				response[i] = new LatencyHistogram();
+			}
+			this.reviewer = newReviewer();
+		}
+
+		void schedule(long startNanos, long measureStartNanos, long endNanos) {
+			this.startNanos = startNanos;
+			this.measureStartNanos = measureStartNanos;
+			this.endNanos = endNanos;
+		}
+
+		@Override
+		public void run() {
+			// In open-loop mode the workers take turns on one shared schedule.
+			long interval = rate > 0 ? (long) (1e9 * threadCount / rate) : 0;
+			long next = startNanos + (interval * index) / threadCount;
+			LockSupport.parkNanos(Math.max(0, startNanos - System.nanoTime()));
+			while (true) {
+				long intended;
+				if (interval > 0) {
+					intended = next;
+					next += interval;
+					long now;
+					while ((now = System.nanoTime()) < intended) {
+						LockSupport.parkNanos(intended - now);
+					}
+				} else {
+					intended = System.nanoTime();
+				}
+				if (intended >= endNanos) {
+					return;
+				}
+				OperationType type = pickOperation();
+				long start = System.nanoTime();
+				boolean succeeded;
+				// Each operation is one request, with its own UnitOfWork.
+				UnitOfWork unitOfWork = UnitOfWork.begin();
+				try {
+					execute(type);
+					succeeded = true;
+				} catch (SQLException | RuntimeException e) {
+					succeeded = false;
+				} finally {
+					unitOfWork.close();
+				}
+				long end = System.nanoTime();
+				if (intended >= measureStartNanos) {
+					if (succeeded) {
+						service[type.ordinal()].record(end - start);
+						if (interval > 0) {
+							response[type.ordinal()].record(end - intended);
+						} else {
+							response[type.ordinal()].recordCorrected(end - intended, expectedIntervalNanos);
+						}
+					} else {
+						errors[type.ordinal()]++;
+					}
+				}
+			}
+		}
+
+		private OperationType pickOperation() {
+			int target = random.nextInt(mixTotal);
+			for (int i = 0; i < mixWeights.length; i++) {
+				target -= mixWeights[i];
+				if (target < 0) {
+					return OPERATIONS[i];
+				}
+			}
+			return OPERATIONS[OPERATIONS.length - 1];
+		}
+
+		private void execute(OperationType type) throws SQLException {
+			switch (type) {
+			case BROWSE:
+				RestaurantsDao.getInstance().getRestaurantsByCuisine(
+						Restaurants.CuisineType.values()[random.nextInt(Restaurants.CuisineType.values().length)]);
+				break;
+			case READ_REVIEWS:
+				ReviewsDao.getInstance().getReviewsByRestaurantId(randomKey(restaurantIds));
+				break;
+			case POST_REVIEW:
+				// A user reviews a restaurant at most once; switch to a new user once this
+				// one has reviewed every restaurant in the key pool.
+				if (reviewCursor == restaurantIds.length) {
+					reviewer = newReviewer();
+					reviewCursor = 0;
+				}
+				ReviewsDao.getInstance().create(new Reviews(new Date(), "WorkloadDriver", 1 + random.nextInt(9) / 2.0,
+						reviewer, new Restaurants(restaurantIds[reviewCursor++])));
+				break;
+			case RECOMMEND:
+				RecommendationsDao.getInstance().create(
+						new Recommendations(reviewer, new Restaurants(randomKey(restaurantIds))));
+				break;
+			case RESERVE:
+				long startMillis = System.currentTimeMillis() + (1 + random.nextInt(60)) * 86400000L;
+				ReservationsDao.getInstance().create(new Reservations(new Date(startMillis),
+						new Date(startMillis + 90 * 60000L), 1 + random.nextInt(6), reviewer,
+						new SitDownRestaurants(randomKey(sitDownRestaurantIds))));
+				break;
+			}
+		}
+
+		private Users newReviewer() throws SQLException {
+			String userName = prefix + threadCount + "_" + index + "_" + reviewerCount++;
+			return UsersDao.getInstance().create(
+					new Users(userName, "password", "Work", "Load", userName + "@example.com", null));
+		}
+
+		private int randomKey(int[] keys) {
+			return keys[random.nextInt(keys.length)];
+		}
+	}
+}